@@ -7,6 +7,8 @@ import com.renomad.inmra.featurelogic.misc.Message;
 import com.renomad.inmra.featurelogic.persons.PersonLruCache;
 import com.renomad.inmra.featurelogic.persons.PersonMetrics;
 import com.renomad.inmra.featurelogic.persons.services.FamilyGraphBuilder;
+import com.renomad.inmra.featurelogic.persons.services.PersonSearchIndex;
+import com.renomad.inmra.featurelogic.persons.services.PersonTypeahead;
 import com.renomad.inmra.featurelogic.photo.*;
 import com.renomad.inmra.security.ISecurityUtils;
 import com.renomad.inmra.security.SecurityUtils;
@@ -14,7 +16,6 @@ import com.renomad.inmra.utils.*;
 import com.renomad.minum.database.AbstractDb;
 import com.renomad.minum.logging.Logger;
 import com.renomad.minum.state.Context;
-import com.renomad.minum.utils.LRUCache;
 import com.renomad.minum.utils.MyThread;
 import com.renomad.minum.utils.StacktraceUtils;
 import com.renomad.minum.utils.StringUtils;
@@ -63,6 +64,9 @@ public class TheRegister {
     private final Map<UUID, PersonMetrics> personMetricsMap;
     private final FamilyGraphBuilder familyGraphBuilder;
     private final GettingOlderLoop gettingOlderLoop;
+    private final Path staticFilesDirectory;
+    private final int staticFileCacheTime;
+    private final ResponseCompression responseCompression;
 
     public void registerDomains() {
 
@@ -127,6 +131,7 @@ public class TheRegister {
         webFramework.registerPath(GET, "personsearch", personEndpoints::searchPersonGet);
         webFramework.registerPath(GET, "headersearch", personEndpoints::headerSearchGet);
         webFramework.registerPath(GET, "relationsearch", personEndpoints::searchRelationGet);
+        webFramework.registerPath(GET, "typeahead", personEndpoints::typeaheadGet);
         webFramework.registerPath(GET, "descendants_printable", personEndpoints::descendantsPrintableGet);
         webFramework.registerPath(GET, "ancestors_printable", personEndpoints::ancestorsPrintableGet);
 
@@ -141,6 +146,7 @@ public class TheRegister {
 
         // The Administration page - for controlling the system
         webFramework.registerPath(GET, "admin", admin::get);
+        webFramework.registerPath(POST, "photobackfill", admin::photoBackfillPost);
 
         // An endpoint for Certbot / letsencrypt
         // see https://eff-certbot.readthedocs.io/en/stable/using.html#webroot
@@ -176,7 +182,31 @@ public class TheRegister {
                 return Respond.redirectTo(secureEndpoint);
             }
         }
-        IResponse response = endpoint.apply(request);
+        // static files, like our CSS and JavaScript, get validators so a browser
+        // can check whether its copy is current - see ConditionalGet.
+        ConditionalGet.Validators staticFileValidators = null;
+        if (request.getRequestLine().getMethod().equals(GET)) {
+            Path staticFile = ConditionalGet.findStaticFile(staticFilesDirectory, request.getRequestLine().getPathDetails().getIsolatedPath());
+            if (staticFile != null) {
+                try {
+                    staticFileValidators = ConditionalGet.forFile(staticFile);
+                } catch (IOException ex) {
+                    logger.logDebug(() -> "Unable to get validators for " + staticFile + ": " + ex.getMessage());
+                }
+                if (staticFileValidators != null && ConditionalGet.isNotModified(request.getHeaders(), staticFileValidators)) {
+                    logger.logRequests(() -> String.format("Response to %s: the copy of %s is current, sending 304",
+                            request.getRemoteRequester(), staticFile));
+                    return ConditionalGet.notModified(staticFileValidators,
+                            Map.of("Cache-Control", "max-age=" + staticFileCacheTime));
+                }
+            }
+        }
+
+        // whatever we learn about who sent this request is kept with it, so the
+        // endpoint and everything it calls on only work that out once.
+        IRequest authContextRequest = new AuthContextRequest(request);
+        IResponse validatedResponse = addValidators(endpoint.apply(authContextRequest), staticFileValidators);
+        IResponse response = responseCompression == null ? validatedResponse : responseCompression.compressIfAccepted(request, validatedResponse);
         int bodyLength = response.getBody() == null ? 0 : response.getBody().length;
 
         String extraHeaders = response.getExtraHeaders().isEmpty() ? "(none)" : String.join(";", response.getExtraHeaders().getHeaderStrings());
@@ -192,6 +222,19 @@ public class TheRegister {
         return response;
     }
 
+    /**
+     * Add the ETag and Last-Modified headers to a successful response, if we have them
+     */
+    private static IResponse addValidators(IResponse response, ConditionalGet.Validators validators) {
+        if (validators == null || response.getBody() == null || ! response.getStatusCode().equals(StatusLine.StatusCode.CODE_200_OK)) {
+            return response;
+        }
+        return Response.buildResponse(
+                response.getStatusCode(),
+                validators.addTo(ConditionalGet.toMap(response.getExtraHeaders())),
+                response.getBody());
+    }
+
     private String response404;
 
     private IResponse lastMinuteHandlerCode(LastMinuteHandlerInputs inputs) {
@@ -215,21 +258,26 @@ public class TheRegister {
         this.memoriaContext = memoriaContext;
         this.webFramework = context.getFullSystem().getWebFramework();
         this.logger = new MemoriaLogger((Logger)context.getLogger());
+        this.staticFilesDirectory = Path.of(context.getConstants().staticFilesDirectory);
+        this.staticFileCacheTime = context.getConstants().staticFileCacheTime;
+        this.responseCompression = memoriaContext.getConstants().COMPRESS_RESPONSES ? new ResponseCompression() : null;
 
         ISecurityUtils securityUtils = new SecurityUtils(context.getExecutorService(), context.getLogger());
         securityUtils.initialize();
         memoriaContext.setSecurityUtils(securityUtils);
 
         // initialize our databases
-        AbstractDb<SessionId> sessionDb = context.getDb2("sessions", SessionId.EMPTY).loadData();
-        userDb = context.getDb2("users", User.EMPTY).loadData();
+        AbstractDb<SessionId> sessionDb = context.getDb2("sessions", SessionId.EMPTY).registerIndex(SessionId.SESSION_CODE_INDEX, x -> SessionId.normalizeSessionCode(x.getSessionCode())).loadData();
+        userDb = context.getDb2("users", User.EMPTY).registerIndex(User.USER_INDEX, x -> String.valueOf(x.getIndex())).loadData();
         AbstractDb<Photograph> photoDb = context.getDb2("photos", Photograph.EMPTY).loadData();
         AbstractDb<Video> videoDb = context.getDb2("videos", Video.EMPTY).loadData();
         AbstractDb<Person> personDb = context.getDb2("persons", Person.EMPTY).registerIndex("id", x -> x.getId().toString()).loadData();
-        AbstractDb<PhotoToPerson> photoToPersonDb = context.getDb2("photo_to_person", PhotoToPerson.EMPTY).registerIndex("persons", x -> String.valueOf(x.getPersonIndex())).loadData();
-        AbstractDb<VideoToPerson> videoToPersonDb = context.getDb2("video_to_person", VideoToPerson.EMPTY).registerIndex("persons", x -> String.valueOf(x.getPersonIndex())).loadData();
+        AbstractDb<PhotoToPerson> photoToPersonDb = context.getDb2("photo_to_person", PhotoToPerson.EMPTY).registerIndex(MediaByPerson.PERSONS_INDEX, x -> String.valueOf(x.getPersonIndex())).loadData();
+        AbstractDb<VideoToPerson> videoToPersonDb = context.getDb2("video_to_person", VideoToPerson.EMPTY).registerIndex(MediaByPerson.PERSONS_INDEX, x -> String.valueOf(x.getPersonIndex())).loadData();
         AbstractDb<PersonMetrics> personMetricsDb = context.getDb2("person_metrics", PersonMetrics.EMPTY).registerIndex("id", x -> x.getPersonUuid().toString()).loadData();
-        Map<String, byte[]> photoLruCache = LRUCache.getLruCache();
+        var photoCache = new PhotoByteCache(memoriaContext.getConstants().PHOTO_CACHE_MEGABYTES * 1024L * 1024L);
+        int photoMappedMegabytes = memoriaContext.getConstants().PHOTO_MAPPED_MEGABYTES;
+        var mappedPhotoStore = photoMappedMegabytes > 0 ? new MappedPhotoStore(photoMappedMegabytes * 1024L * 1024L, context.getLogger()) : null;
 
         // instantiate the Person LRU cache
         var dbDir = Path.of(context.getConstants().dbDirectory);
@@ -243,24 +291,29 @@ public class TheRegister {
         var personLruCache = new PersonLruCache(personDirectory, context.getLogger());
 
         // instantiate the classes
-        AuthUtils au = new AuthUtils(sessionDb, userDb, context, memoriaContext);
+        var sessionExpiry = new SessionExpiry(context, sessionDb);
+        sessionExpiry.initialize();
+        AuthUtils au = new AuthUtils(sessionDb, userDb, context, memoriaContext, sessionExpiry);
         AuthHeader authHeader = new AuthHeader(memoriaContext);
 
         var navigationHeader = new NavigationHeader(memoriaContext, authHeader);
-        ap = new AuthPages(au, sessionDb, userDb, context, memoriaContext, securityUtils, navigationHeader);
-        new LoopingSessionReviewing(context, ap).initialize();
-        PhotoService photoService = new PhotoService(context, memoriaContext, photoDb, videoDb, photoLruCache, photoToPersonDb, videoToPersonDb, personDb, au);
+        ap = new AuthPages(au, sessionDb, userDb, context, memoriaContext, securityUtils, navigationHeader, sessionExpiry);
+        PhotoService photoService = new PhotoService(context, memoriaContext, photoDb, videoDb, photoCache, mappedPhotoStore, photoToPersonDb, videoToPersonDb, personDb, au);
 
         // the personMetricsMap is necessary to greatly increase the speed of obtaining metrics
         // for a person, which happens when paging through the list as admin.  The
         // LoopingPersonMetricsReview class will update its values every time it runs.
         personMetricsMap = new HashMap<>();
-        familyGraphBuilder = new FamilyGraphBuilder(personDb, personLruCache, logger);
-        gettingOlderLoop = new GettingOlderLoop(context, memoriaContext, personMetricsDb, familyGraphBuilder, personLruCache, personDb, photoToPersonDb, videoToPersonDb, personMetricsMap).initialize();
-        personEndpoints = new PersonEndpoints(context, memoriaContext, personDb, au, photoToPersonDb, photoDb, videoToPersonDb, videoDb, personMetricsDb, photoService, navigationHeader, personLruCache, personMetricsMap, familyGraphBuilder, gettingOlderLoop);
+        familyGraphBuilder = new FamilyGraphBuilder(personDb, personLruCache, logger, memoriaContext.getConstants().FAMILY_GRAPH_PARALLEL_BUILD);
+        // the typeahead is ranked once the metrics are loaded, and kept current by the GettingOlderLoop
+        var personTypeahead = new PersonTypeahead(personDb.values().stream().map(personLruCache::getCachedPersonFile).toList(), personMetricsMap);
+        gettingOlderLoop = new GettingOlderLoop(context, memoriaContext, personMetricsDb, familyGraphBuilder, personLruCache, personDb, photoToPersonDb, videoToPersonDb, personMetricsMap, personTypeahead).initialize();
+        var personSearchIndex = new PersonSearchIndex(personDb);
+        personEndpoints = new PersonEndpoints(context, memoriaContext, personDb, au, photoToPersonDb, photoDb, videoToPersonDb, videoDb, personMetricsDb, photoService, navigationHeader, personLruCache, personMetricsMap, familyGraphBuilder, gettingOlderLoop, personSearchIndex, personTypeahead);
         up = new UploadPhoto(context, memoriaContext, au, photoService, navigationHeader);
-        lp = new ListPhotos(context, memoriaContext, au, personEndpoints, photoLruCache, photoToPersonDb, photoDb, videoToPersonDb, videoDb, personDb, navigationHeader, personLruCache);
-        admin = new Admin(au, userDb, sessionDb, context, memoriaContext, personDb, photoDb, videoDb, navigationHeader, personMetricsDb);
+        lp = new ListPhotos(context, memoriaContext, au, personEndpoints, photoCache, mappedPhotoStore, photoToPersonDb, photoDb, videoToPersonDb, videoDb, personDb, navigationHeader, personLruCache);
+        var photoBackfill = new PhotoBackfill(context, memoriaContext, photoService);
+        admin = new Admin(au, userDb, sessionDb, context, memoriaContext, personDb, photoDb, videoDb, navigationHeader, personMetricsDb, photoBackfill);
         letsEncrypt = new LetsEncrypt(context);
         message = new Message(memoriaContext);
         help = new Help(memoriaContext, navigationHeader);
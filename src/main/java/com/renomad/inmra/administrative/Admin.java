@@ -5,6 +5,7 @@ import com.renomad.inmra.auth.SessionId;
 import com.renomad.inmra.featurelogic.persons.Date;
 import com.renomad.inmra.featurelogic.persons.Person;
 import com.renomad.inmra.featurelogic.persons.PersonMetrics;
+import com.renomad.inmra.featurelogic.photo.PhotoBackfill;
 import com.renomad.inmra.featurelogic.photo.Photograph;
 import com.renomad.inmra.featurelogic.photo.Video;
 import com.renomad.inmra.utils.*;
@@ -41,6 +42,7 @@ public class Admin {
     private final AbstractDb<Video> videoDb;
     private final NavigationHeader navigationHeader;
     private final AbstractDb<PersonMetrics> personMetricsDb;
+    private final PhotoBackfill photoBackfill;
 
     public Admin(IAuthUtils authUtils,
                  AbstractDb<User> userDb,
@@ -51,7 +53,8 @@ public class Admin {
                  AbstractDb<Photograph> photoDb,
                  AbstractDb<Video> videoDb,
                  NavigationHeader navigationHeader,
-                 AbstractDb<PersonMetrics> personMetricsDb) {
+                 AbstractDb<PersonMetrics> personMetricsDb,
+                 PhotoBackfill photoBackfill) {
         this.authUtils = authUtils;
         this.userDb = userDb;
         this.sessionDb = sessionDb;
@@ -60,6 +63,7 @@ public class Admin {
         this.videoDb = videoDb;
         this.navigationHeader = navigationHeader;
         this.personMetricsDb = personMetricsDb;
+        this.photoBackfill = photoBackfill;
         IFileUtils fileUtils = memoriaContext.getFileUtils();
         this.constants = context.getConstants();
         String template = fileUtils.readTemplate("admin/admin_page_template.html");
@@ -139,7 +143,35 @@ public class Admin {
         long totalBioBytesCount = personMetricsDb.values().stream().mapToInt(PersonMetrics::getBioCharCount).sum();
         adminPageValues.put("total_bio_bytes", String.valueOf(totalBioBytesCount));
 
+        // how regenerating the missing sizes of photos is going
+        PhotoBackfill.Progress backfillProgress = photoBackfill.getProgress();
+        adminPageValues.put("photo_backfill_progress", String.format(
+                "%s. Reviewed %d of %d photos. Regenerated %d, unable to convert %d. %.1f photos per minute over %d seconds.",
+                backfillProgress.state(),
+                backfillProgress.checked(),
+                backfillProgress.total(),
+                backfillProgress.regenerated(),
+                backfillProgress.failed(),
+                backfillProgress.photosPerMinute(),
+                backfillProgress.elapsed().toSeconds()));
+
         String responseBody = adminPageProcessor.renderTemplate(adminPageValues);
         return Respond.htmlOk(responseBody);
     }
+
+    /**
+     * Start or stop regenerating the missing sizes of photos.  See {@link PhotoBackfill}
+     */
+    public IResponse photoBackfillPost(IRequest request) {
+        if (! authUtils.processAuth(request).isAuthenticated()) return Response.buildLeanResponse(StatusLine.StatusCode.CODE_403_FORBIDDEN);
+        String action = request.getBody().asString("action");
+        if ("start".equals(action)) {
+            photoBackfill.start();
+        } else if ("stop".equals(action)) {
+            photoBackfill.stop();
+        } else {
+            return Respond.userInputError();
+        }
+        return Respond.redirectTo("admin");
+    }
 }
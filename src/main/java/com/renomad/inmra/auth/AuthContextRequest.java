@@ -0,0 +1,111 @@
+package com.renomad.inmra.auth;
+
+import com.renomad.minum.web.*;
+
+import java.util.function.Function;
+
+/**
+ * A request which remembers what we learn about who sent it, so that
+ * it is only worked out once per request.
+ * <br>
+ * Rendering a single page may ask several times whether the user is logged
+ * in, or may see private information - the endpoint, the navigation header,
+ * the privacy check, and so on. Each of those used to read the cookies and
+ * look up the session again.  Every request is wrapped in one of these
+ * before it reaches an endpoint (see the prehandler in TheRegister), and
+ * {@link AuthUtils} and {@link PrivacyCheck} keep their results here.
+ * <br>
+ * Nothing is worked out until it is first asked for, so requests for
+ * static files and the like cost nothing extra.  A request is handled by
+ * a single thread, so this needs no locking.
+ */
+public class AuthContextRequest implements IRequest {
+
+    private final IRequest request;
+    private RequestCookies cookies;
+    private AuthResult authResult;
+    private PrivacyCheckStatus privacyCheckStatus;
+
+    public AuthContextRequest(IRequest request) {
+        this.request = request;
+    }
+
+    public RequestCookies getCookies() {
+        if (cookies == null) {
+            cookies = RequestCookies.parse(request);
+        }
+        return cookies;
+    }
+
+    /**
+     * Get the result of authenticating this request, computing it
+     * if it hasn't been already
+     */
+    AuthResult getAuthResult(Function<RequestCookies, AuthResult> computeAuthResult) {
+        if (authResult == null) {
+            authResult = computeAuthResult.apply(getCookies());
+        }
+        return authResult;
+    }
+
+    /**
+     * Get whether this request may see private information, computing
+     * it if it hasn't been already
+     */
+    PrivacyCheckStatus getPrivacyCheckStatus(Function<IRequest, PrivacyCheckStatus> computePrivacyCheckStatus) {
+        if (privacyCheckStatus == null) {
+            privacyCheckStatus = computePrivacyCheckStatus.apply(this);
+        }
+        return privacyCheckStatus;
+    }
+
+    @Override
+    public Headers getHeaders() {
+        return request.getHeaders();
+    }
+
+    @Override
+    public RequestLine getRequestLine() {
+        return request.getRequestLine();
+    }
+
+    @Override
+    public Body getBody() {
+        return request.getBody();
+    }
+
+    @Override
+    public String getRemoteRequester() {
+        return request.getRemoteRequester();
+    }
+
+    @Override
+    public ISocketWrapper getSocketWrapper() {
+        return request.getSocketWrapper();
+    }
+
+    @Override
+    public Iterable<UrlEncodedKeyValue> getUrlEncodedIterable() {
+        return request.getUrlEncodedIterable();
+    }
+
+    @Override
+    public Iterable<StreamingMultipartPartition> getMultipartIterable() {
+        return request.getMultipartIterable();
+    }
+
+    @Override
+    public boolean hasAccessedBody() {
+        return request.hasAccessedBody();
+    }
+
+    @Override
+    public IBodyProcessor getBodyProcessor() {
+        return request.getBodyProcessor();
+    }
+
+    @Override
+    public boolean isHasStartedReadingBody() {
+        return request.isHasStartedReadingBody();
+    }
+}
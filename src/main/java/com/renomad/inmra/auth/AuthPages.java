@@ -1,6 +1,8 @@
 package com.renomad.inmra.auth;
 
 import com.renomad.inmra.auth.services.BruteForceChecker;
+import com.renomad.inmra.auth.services.PasswordHasher;
+import com.renomad.inmra.auth.services.PasswordHashingOverloadedException;
 import com.renomad.inmra.security.ISecurityUtils;
 import com.renomad.inmra.utils.*;
 import com.renomad.minum.database.AbstractDb;
@@ -9,7 +11,6 @@ import com.renomad.minum.security.ITheBrig;
 import com.renomad.minum.state.Constants;
 import com.renomad.minum.state.Context;
 import com.renomad.minum.templating.TemplateProcessor;
-import com.renomad.minum.utils.CryptoUtils;
 import com.renomad.minum.utils.StringUtils;
 import com.renomad.minum.web.IRequest;
 import com.renomad.minum.web.IResponse;
@@ -43,6 +44,8 @@ public class AuthPages {
     private final MemoriaContext memoriaContext;
     private final Auditor auditor;
     private final NavigationHeader navigationHeader;
+    private final SessionExpiry sessionExpiry;
+    private final PasswordHasher passwordHasher;
 
 
     public AuthPages(IAuthUtils authUtils,
@@ -51,7 +54,8 @@ public class AuthPages {
                      Context context,
                      MemoriaContext memoriaContext,
                      ISecurityUtils securityUtils,
-                     NavigationHeader navigationHeader) {
+                     NavigationHeader navigationHeader,
+                     SessionExpiry sessionExpiry) {
         this.authUtils = authUtils;
         this.memoriaContext = memoriaContext;
         this.auditor = memoriaContext.getAuditor();
@@ -76,26 +80,22 @@ public class AuthPages {
         privacyLogoutTemplate = TemplateProcessor.buildProcessor(fileUtils.readTemplate("auth/privacy_logout_page_template.html"));
         this.bruteForceChecker = new BruteForceChecker(securityUtils, theBrig, logger);
         this.navigationHeader = navigationHeader;
+        this.sessionExpiry = sessionExpiry;
+        var memoriaConstants = memoriaContext.getConstants();
+        this.passwordHasher = new PasswordHasher(context, memoriaConstants.PASSWORD_HASHING_THREADS, memoriaConstants.PASSWORD_HASHING_QUEUE_SIZE);
 
     }
 
-    public List<SessionId> getSessions() {
-        return sessionDiskData.values().stream().toList();
-    }
-
-    public void deleteSession(SessionId s) {
-        sessionDiskData.delete(s);
-    }
-
     /**
      * Given a new username and password, create a new user
+     * @throws PasswordHashingOverloadedException if too many passwords are being hashed right now
      */
     public RegisterResult registerUserPost(String newUsername, String newPassword) {
         if (userDb.values().stream().anyMatch(x -> x.getUsername().equals(newUsername))) {
             return new RegisterResult(ALREADY_EXISTING_USER, User.EMPTY);
         }
         final var newSalt = StringUtils.generateSecureRandomString(10);
-        final var hashedPassword = CryptoUtils.createPasswordHash(newPassword, newSalt);
+        final var hashedPassword = passwordHasher.hash(newPassword, newSalt);
         final var newUser = new User(0L, newUsername, hashedPassword, newSalt);
         userDb.write(newUser);
         return new RegisterResult(RegisterResultStatus.SUCCESS, newUser);
@@ -110,6 +110,7 @@ public class AuthPages {
      *     If we don't find a user, return NO_USER_FOUND.
      *     If we find more than one user, something is broken.
      * </p>
+     * @throws PasswordHashingOverloadedException if too many passwords are being hashed right now
      */
     LoginResult findUser(String username, String password) {
         User user = findExactlyOne(userDb.values().stream(), x -> x.getUsername().equals(username));
@@ -124,10 +125,10 @@ public class AuthPages {
      * Given a user and password, check it's a valid password for that user.
      */
     private LoginResult passwordCheck(User user, String password) {
-        final var hash = CryptoUtils.createPasswordHash(password, user.getSalt());
+        final var hash = passwordHasher.hash(password, user.getSalt());
         if (user.getHashedPassword().equals(hash)) {
-            SessionId newSession = SessionId.createNewSession(0, user.getIndex(), Instant.now());
-            sessionDiskData.write(newSession);
+            SessionId newSession = sessionDiskData.write(SessionId.createNewSession(0, user.getIndex(), Instant.now()));
+            sessionExpiry.scheduleExpiry(newSession);
             return new LoginResult(LoginResultStatus.SUCCESS, newSession, user);
         } else {
             return new LoginResult(LoginResultStatus.DID_NOT_MATCH_PASSWORD, SessionId.EMPTY, User.EMPTY);
@@ -142,6 +143,7 @@ public class AuthPages {
         final List<SessionId> userSessions = sessionDiskData.values().stream().filter(x -> x.getUserId() == user.getIndex()).toList();
 
         for (SessionId s : userSessions) {
+            sessionExpiry.cancelExpiry(s);
             sessionDiskData.delete(s);
         }
     }
@@ -152,7 +154,7 @@ public class AuthPages {
      * login to the system.  If they're doing this, it's
      * presumed they don't have current access to a cookie
      * connected to a SessionID, even if they are logged in
-     * elsewhere.  That's ok, we have a tool, {@link LoopingSessionReviewing},
+     * elsewhere.  That's ok, we have a tool, {@link SessionExpiry},
      * that will clear out stale sessions.
      */
     public IResponse loginUserPost(IRequest r) {
@@ -167,7 +169,13 @@ public class AuthPages {
 
         final var username = r.getBody().asString("username");
         final var password = r.getBody().asString("password");
-        final LoginResult loginResult = findUser(username, password);
+        final LoginResult loginResult;
+        try {
+            loginResult = findUser(username, password);
+        } catch (PasswordHashingOverloadedException ex) {
+            logger.logDebug(() -> "Too many passwords being hashed to check the login for user named: " + username);
+            return tryAgainShortly();
+        }
 
         return switch (loginResult.status()) {
             case SUCCESS -> {
@@ -219,7 +227,12 @@ public class AuthPages {
                 authResult.user().getUsername(),
                 authResult.user().getIndex(),
                 username), authResult.user());
-        final var registrationResult = registerUserPost(username, password);
+        final RegisterResult registrationResult;
+        try {
+            registrationResult = registerUserPost(username, password);
+        } catch (PasswordHashingOverloadedException ex) {
+            return tryAgainShortly();
+        }
 
         if (registrationResult.status() == ALREADY_EXISTING_USER) {
             auditor.audit(() -> String.format("registration for %s failed - already registered", username), authResult.user());
@@ -299,7 +312,12 @@ public class AuthPages {
         }
         // salting and hashing that delicious password
         final var newSalt = StringUtils.generateSecureRandomString(10);
-        final var hashedPassword = CryptoUtils.createPasswordHash(newPassword, newSalt);
+        final String hashedPassword;
+        try {
+            hashedPassword = passwordHasher.hash(newPassword, newSalt);
+        } catch (PasswordHashingOverloadedException ex) {
+            return tryAgainShortly();
+        }
 
         // write the updated salted password to the database
         final var updatedUser = new User(
@@ -339,7 +357,12 @@ public class AuthPages {
         // convert to ascii because headers must be ascii (not UTF-8) and we're about to use this in the location header
         String asciiBackRef = Cleaners.utf8ToAscii(backref);
         String password = request.getBody().asString("password");
-        String passwordHash = CryptoUtils.createPasswordHash(password, PRIVACY_PASSWORD_SALT);
+        final String passwordHash;
+        try {
+            passwordHash = passwordHasher.hash(password, PRIVACY_PASSWORD_SALT);
+        } catch (PasswordHashingOverloadedException ex) {
+            return tryAgainShortly();
+        }
         if (passwordHash.equals(memoriaContext.getHashedPrivacyPassword())) {
             logger.logAudit(() -> String.format("%s has entered the privacy password", request.getRemoteRequester()));
             return Response.buildLeanResponse(CODE_303_SEE_OTHER, Map.of(
@@ -360,4 +383,12 @@ public class AuthPages {
         logger.logAudit(() -> String.format("%s has removed their privacy password", request.getRemoteRequester()));
         return Response.buildResponse(CODE_200_OK, Map.of("Content-Type", "text/html; charset=UTF-8", "Set-Cookie","%s=%s; Secure; HttpOnly; Domain=%s; Max-Age=%d".formatted(PRIVACY_KEY, "removing_this_cookie", constants.hostName, 0)), template);
     }
+
+    /**
+     * The response when there are too many passwords being hashed to
+     * take on another.  See {@link PasswordHasher}
+     */
+    private static IResponse tryAgainShortly() {
+        return Response.buildLeanResponse(CODE_429_TOO_MANY_REQUESTS, Map.of("Retry-After", "1"));
+    }
 }
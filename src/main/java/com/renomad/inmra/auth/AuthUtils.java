@@ -9,12 +9,10 @@ import com.renomad.minum.web.IRequest;
 import com.renomad.minum.web.IResponse;
 import com.renomad.minum.web.Response;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Map;
-import java.util.Objects;
-import java.util.stream.Collectors;
 
-import static com.renomad.minum.utils.SearchUtils.findExactlyOne;
 import static com.renomad.minum.web.StatusLine.StatusCode.CODE_403_FORBIDDEN;
 
 
@@ -33,39 +31,41 @@ public class AuthUtils implements IAuthUtils {
     private final AbstractDb<SessionId> sessionDiskData;
     private final String forbiddenPage;
     private final PrivacyCheck privacyCheck;
+    private final SessionExpiry sessionExpiry;
+
+    /**
+     * How far behind a session's deadline may fall before we write
+     * an update to it.  See {@link SessionId#needsDeadlineUpdate(Instant, Duration)}
+     */
+    private final Duration sessionDeadlineWriteInterval;
 
     public AuthUtils(AbstractDb<SessionId> sessionDiskData,
                      AbstractDb<User> userDb,
                      Context context,
-                     MemoriaContext memoriaContext) {
+                     MemoriaContext memoriaContext,
+                     SessionExpiry sessionExpiry) {
         IFileUtils fileUtils = memoriaContext.getFileUtils();
         this.userDb = userDb;
         this.sessionDiskData = sessionDiskData;
+        this.sessionExpiry = sessionExpiry;
         this.logger = context.getLogger();
         this.forbiddenPage = fileUtils.readTemplate("forbidden_page.html");
         this.privacyCheck = new PrivacyCheck(memoriaContext.getHashedPrivacyPassword(), this);
+        this.sessionDeadlineWriteInterval = Duration.ofMinutes(memoriaContext.getConstants().SESSION_DEADLINE_WRITE_MINUTES);
     }
 
     @Override
     public AuthResult processAuth(IRequest request) {
-        // grab the headers from the request.
-        final var headers = request.getHeaders().getHeaderStrings();
-
-        // get all the headers that start with "cookie", case-insensitive
-        final var cookieHeaders = headers.stream()
-                .map(String::toLowerCase)
-                .filter(x -> x.startsWith("cookie"))
-                .collect(Collectors.joining("; "));
-
-        // extract session identifiers from the cookies
-        final var cookieMatcher = IAuthUtils.sessionIdCookieRegex.matcher(cookieHeaders);
-        String sessionIdValue;
-        if (cookieMatcher.find()) {
-            sessionIdValue = cookieMatcher.group("sessionIdValue");
-        } else {
-            sessionIdValue = null;
+        // if we have already authenticated this request, use that
+        if (request instanceof AuthContextRequest authContextRequest) {
+            return authContextRequest.getAuthResult(this::authenticate);
         }
-        if (cookieMatcher.find()) {
+        return authenticate(RequestCookies.parse(request));
+    }
+
+    private AuthResult authenticate(RequestCookies cookies) {
+        String sessionIdValue = cookies.sessionIdValue();
+        if (cookies.hasMultipleSessionIds()) {
             logger.logDebug(() -> "there must be either zero or one session id found " +
                     "in the cookie headers.  Anything more is invalid");
             return new AuthResult(false, null, User.EMPTY);
@@ -80,9 +80,9 @@ public class AuthUtils implements IAuthUtils {
         }
 
         // Did we find that session identifier in the database?
-        final SessionId sessionFoundInDatabase = findExactlyOne(
-                sessionDiskData.values().stream(),
-                x -> Objects.equals(x.getSessionCode().toLowerCase(), sessionIdValue.toLowerCase()),
+        final SessionId sessionFoundInDatabase = sessionDiskData.findExactlyOne(
+                SessionId.SESSION_CODE_INDEX,
+                SessionId.normalizeSessionCode(sessionIdValue),
                 () -> SessionId.EMPTY);
 
         // they are authenticated if we find their session id in the database
@@ -93,11 +93,16 @@ public class AuthUtils implements IAuthUtils {
         }
 
         // find the user
-        User authenticatedUser = findExactlyOne(userDb.values().stream(), x -> x.getIndex() == sessionFoundInDatabase.getUserId());
-
-        // update the time we will kill this session
-        SessionId updatedSessionId = sessionFoundInDatabase.updateSessionDeadline(Instant.now());
-        sessionDiskData.write(updatedSessionId);
+        User authenticatedUser = userDb.findExactlyOne(User.USER_INDEX, String.valueOf(sessionFoundInDatabase.getUserId()));
+
+        // update the time we will kill this session - but only once it has fallen
+        // far enough behind, so that browsing around doesn't write to disk each time.
+        Instant now = Instant.now();
+        if (sessionFoundInDatabase.needsDeadlineUpdate(now, sessionDeadlineWriteInterval)) {
+            SessionId updatedSessionId = sessionFoundInDatabase.updateSessionDeadline(now);
+            sessionDiskData.write(updatedSessionId);
+            sessionExpiry.scheduleExpiry(updatedSessionId);
+        }
 
         return new AuthResult(true, sessionFoundInDatabase.getCreationDateTime(), authenticatedUser);
     }
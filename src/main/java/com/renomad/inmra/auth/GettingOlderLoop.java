@@ -4,6 +4,8 @@ import com.renomad.inmra.featurelogic.persons.*;
 import com.renomad.inmra.featurelogic.persons.services.BirthDeathDays;
 import com.renomad.inmra.featurelogic.persons.services.FamilyGraphBuilder;
 import com.renomad.inmra.featurelogic.persons.services.PersonSearch;
+import com.renomad.inmra.featurelogic.persons.services.PersonTypeahead;
+import com.renomad.inmra.featurelogic.photo.MediaByPerson;
 import com.renomad.inmra.featurelogic.photo.PhotoToPerson;
 import com.renomad.inmra.featurelogic.photo.VideoToPerson;
 import com.renomad.inmra.utils.MemoriaContext;
@@ -13,16 +15,18 @@ import com.renomad.minum.logging.LoggingLevel;
 import com.renomad.minum.state.Constants;
 import com.renomad.minum.state.Context;
 import com.renomad.minum.testing.StopwatchUtils;
-import com.renomad.minum.utils.SearchUtils;
 import com.renomad.minum.utils.StacktraceUtils;
 import com.renomad.minum.utils.TimeUtils;
 
 import java.time.LocalDate;
-import java.util.List;
-import java.util.Map;
-import java.util.UUID;
+import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class starts an infinite loop when the application begins,
@@ -43,10 +47,22 @@ public class GettingOlderLoop {
     private final FamilyGraphBuilder familyGraphBuilder;
     private final IPersonLruCache personLruCache;
     private final AbstractDb<Person> personDb;
-    private final AbstractDb<PhotoToPerson> photoToPersonDb;
-    private final AbstractDb<VideoToPerson> videoToPersonDb;
+    private final MediaByPerson mediaByPerson;
     private final Map<UUID, PersonMetrics> personMetricsMap;
     private final PersonSearch personSearch;
+    private final PersonTypeahead personTypeahead;
+
+    /**
+     * How many threads calculate a full pass of the metrics - all the cores
+     * of the host, if PERSON_METRICS_PARALLEL is set.
+     */
+    private final int metricsThreadCount;
+    /**
+     * The threads for calculating the metrics in parallel, created once and kept
+     * for every pass.  Null if the metrics are calculated on a single thread.
+     */
+    private final ExecutorService metricsExecutor;
+    private volatile MetricsPass lastMetricsPass;
 
     public GettingOlderLoop(Context context,
                             MemoriaContext memoriaContext,
@@ -58,6 +74,24 @@ public class GettingOlderLoop {
                             AbstractDb<VideoToPerson> videoToPersonDb,
                             Map<UUID, PersonMetrics> personMetricsMap
                             ) {
+        this(context, memoriaContext, pm, familyGraphBuilder, personLruCache, personDb, photoToPersonDb, videoToPersonDb, personMetricsMap, null);
+    }
+
+    /**
+     * @param personTypeahead if provided, its rankings are refreshed here whenever
+     *                        the metrics change, so that searching never needs to.
+     */
+    public GettingOlderLoop(Context context,
+                            MemoriaContext memoriaContext,
+                            AbstractDb<PersonMetrics> pm,
+                            FamilyGraphBuilder familyGraphBuilder,
+                            IPersonLruCache personLruCache,
+                            AbstractDb<Person> personDb,
+                            AbstractDb<PhotoToPerson> photoToPersonDb,
+                            AbstractDb<VideoToPerson> videoToPersonDb,
+                            Map<UUID, PersonMetrics> personMetricsMap,
+                            PersonTypeahead personTypeahead
+                            ) {
         this.es = context.getExecutorService();
         this.logger = context.getLogger();
         this.constants = context.getConstants();
@@ -66,10 +100,23 @@ public class GettingOlderLoop {
         this.familyGraphBuilder = familyGraphBuilder;
         this.personLruCache = personLruCache;
         this.personDb = personDb;
-        this.photoToPersonDb = photoToPersonDb;
-        this.videoToPersonDb = videoToPersonDb;
+        this.mediaByPerson = new MediaByPerson(photoToPersonDb, videoToPersonDb);
         this.personMetricsMap = personMetricsMap;
         this.personSearch = new PersonSearch(personDb, personLruCache, personMetricsMap);
+        this.personTypeahead = personTypeahead;
+        this.metricsThreadCount = memoriaContext.getConstants().PERSON_METRICS_PARALLEL ? Runtime.getRuntime().availableProcessors() : 1;
+        if (metricsThreadCount > 1) {
+            var threadNumber = new AtomicInteger();
+            ThreadFactory threadFactory = runnable -> {
+                Thread thread = new Thread(runnable, "person_metrics-" + threadNumber.incrementAndGet());
+                // don't keep the program alive just for these
+                thread.setDaemon(true);
+                return thread;
+            };
+            this.metricsExecutor = Executors.newFixedThreadPool(metricsThreadCount, threadFactory);
+        } else {
+            this.metricsExecutor = null;
+        }
         // wake up once every 6 hours
         this.sleepTime = 6 * 60 * 60 * 1000;
     }
@@ -140,6 +187,12 @@ public class GettingOlderLoop {
         loadPersonMetricsData();
         logger.logDebug(() -> "Took %d milliseconds to load the metrics".formatted(pmDataLoadTimer.stopTimer()));
 
+        if (personTypeahead != null) {
+            var typeaheadTimer = new StopwatchUtils().startTimer();
+            personTypeahead.rebuildRankings();
+            logger.logDebug(() -> "Took %d milliseconds to rank the typeahead suggestions".formatted(typeaheadTimer.stopTimer()));
+        }
+
         LocalDate now = LocalDate.now();
 
         var stopwatch2 = new StopwatchUtils().startTimer();
@@ -177,30 +230,194 @@ public class GettingOlderLoop {
         memoriaContext.getCachedData().setBirthDeathDaysWithLivingRendered(birthDeathHtmlWithLiving);
     }
 
+    /**
+     * The outcome of one full pass of calculating metrics for every person
+     * @param personCount how many persons had their metrics calculated
+     * @param changedCount how many of those had different metrics than before, and were written
+     * @param threadCount how many threads did the calculating
+     * @param calculationMillis how long it took to calculate the metrics
+     * @param writeMillis how long it took to write the changed metrics, one row at a time
+     */
+    public record MetricsPass(int personCount, int changedCount, int threadCount, long calculationMillis, long writeMillis) {}
+
     public void processMetrics() {
         logger.logDebug(() -> "Waking up to calculate metrics for all persons");
-        for (Map.Entry<UUID, PersonNode> entry : familyGraphBuilder.getPersonNodes().entrySet()) {
-            UUID personId = entry.getKey();
-            PersonNode personNode = entry.getValue();
-            PersonMetrics personMetrics = FamilyGraph.getPersonMetrics(personNode, personLruCache, photoToPersonDb, videoToPersonDb);
-            // Replace any existing metric entry for this person
-            PersonMetrics existingPersonMetric = pm.findExactlyOne("id", personId.toString());
-            if (existingPersonMetric != null) {
-                personMetrics.setIndex(existingPersonMetric.getIndex());
-                pm.write(personMetrics);
-            } else {
-                // add a new person metrics entry
-                logger.logTrace(() -> "Adding new metric: " + personMetrics);
-                pm.write(personMetrics);
+        var calculationStopwatch = new StopwatchUtils().startTimer();
+        List<PersonNode> personNodes = new ArrayList<>(familyGraphBuilder.getPersonNodes().values());
+        int threadCount = metricsThreadCount;
+        List<PersonMetrics> allPersonMetrics;
+        if (metricsExecutor != null) {
+            allPersonMetrics = calculateMetricsInParallel(personNodes, threadCount);
+            if (allPersonMetrics == null) return;
+        } else {
+            allPersonMetrics = new ArrayList<>(personNodes.size());
+            for (PersonNode personNode : personNodes) {
+                allPersonMetrics.add(calculateMetrics(personNode));
+            }
+        }
+        long calculationMillis = calculationStopwatch.stopTimer();
+
+        // only write the rows that have changed since the last pass.  The database
+        // takes one row per write, so each changed row is its own write.
+        var writeStopwatch = new StopwatchUtils().startTimer();
+        List<PersonMetrics> changedPersonMetrics = new ArrayList<>();
+        for (PersonMetrics personMetrics : allPersonMetrics) {
+            if (hasChanged(personMetrics)) {
+                changedPersonMetrics.add(personMetrics);
             }
-            personMetricsMap.put(personId, personMetrics);
         }
+        for (PersonMetrics personMetrics : changedPersonMetrics) {
+            store(personMetrics);
+        }
+        long writeMillis = writeStopwatch.stopTimer();
+        if (! changedPersonMetrics.isEmpty()) {
+            memoriaContext.getCachedData().incrementPersonMetricsVersion();
+            // many persons may have changed, so the suggestions are ranked afresh
+            if (personTypeahead != null) {
+                personTypeahead.rebuildRankings();
+            }
+        }
+
+        var metricsPass = new MetricsPass(allPersonMetrics.size(), changedPersonMetrics.size(), threadCount, calculationMillis, writeMillis);
+        lastMetricsPass = metricsPass;
+        logger.logDebug(() -> "Calculated metrics for %d persons on %d threads in %d milliseconds. %d changed, written in %d milliseconds".formatted(
+                metricsPass.personCount(), metricsPass.threadCount(), metricsPass.calculationMillis(), metricsPass.changedCount(), metricsPass.writeMillis()));
     }
 
-    public void updatePersonMetricsMap(UUID personId) {
-        var personNode = SearchUtils.findExactlyOne(familyGraphBuilder.getPersonNodes().values().stream(), x -> x.getId().equals(personId));
-        PersonMetrics personMetrics = FamilyGraph.getPersonMetrics(personNode, personLruCache, photoToPersonDb, videoToPersonDb);
-        personMetricsMap.put(personNode.getId(), personMetrics);
+    /**
+     * Calculates the metrics for all the persons, in batches spread across the
+     * threads of {@link #metricsExecutor}.  Returns null if the work could not be completed.
+     */
+    private List<PersonMetrics> calculateMetricsInParallel(List<PersonNode> personNodes, int threadCount) {
+        // several batches per thread, so a thread getting a batch of slow persons doesn't hold up the rest
+        int batchSize = Math.max(1, personNodes.size() / (threadCount * 4));
+        List<Callable<List<PersonMetrics>>> batches = new ArrayList<>();
+        for (int i = 0; i < personNodes.size(); i += batchSize) {
+            List<PersonNode> batch = personNodes.subList(i, Math.min(i + batchSize, personNodes.size()));
+            batches.add(() -> {
+                List<PersonMetrics> batchMetrics = new ArrayList<>(batch.size());
+                for (PersonNode personNode : batch) {
+                    batchMetrics.add(calculateMetrics(personNode));
+                }
+                return batchMetrics;
+            });
+        }
+
+        try {
+            List<PersonMetrics> allPersonMetrics = new ArrayList<>(personNodes.size());
+            for (Future<List<PersonMetrics>> batchResult : metricsExecutor.invokeAll(batches)) {
+                allPersonMetrics.addAll(batchResult.get());
+            }
+            return allPersonMetrics;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            logger.logAsyncError(() -> "Interrupted while calculating metrics in parallel");
+            return null;
+        } catch (ExecutionException ex) {
+            logger.logAsyncError(() -> "Error calculating metrics in parallel: " + StacktraceUtils.stackTraceToString(ex));
+            return null;
+        }
+    }
+
+    private PersonMetrics calculateMetrics(PersonNode personNode) {
+        return FamilyGraph.getPersonMetrics(personNode, personLruCache, mediaByPerson, familyGraphBuilder.getFamilyTreeComponents());
+    }
+
+    /**
+     * The results of the most recent full pass of calculating metrics,
+     * or null if there hasn't been one yet.
+     */
+    public MetricsPass getLastMetricsPass() {
+        return lastMetricsPass;
+    }
+
+    /**
+     * Recalculate the metrics for just those persons who might have been affected
+     * by an edit - see {@link FamilyGraphBuilder#updateNode(PersonFile)}.
+     * <br>
+     * The change may also have merged or split family trees, so for everyone else in the
+     * trees of those persons, we adjust the size of the family tree, which is cheap.
+     */
+    public void updatePersonMetrics(Set<UUID> affectedPersonIds) {
+        var stopwatch = new StopwatchUtils().startTimer();
+        Map<UUID, PersonNode> personNodes = familyGraphBuilder.getPersonNodes();
+        FamilyTreeComponents familyTreeComponents = familyGraphBuilder.getFamilyTreeComponents();
+        Set<UUID> changedPersonIds = new HashSet<>();
+        for (UUID personId : affectedPersonIds) {
+            PersonNode personNode = personNodes.get(personId);
+            if (personNode == null) continue;
+            PersonMetrics personMetrics = FamilyGraph.getPersonMetrics(personNode, personLruCache, mediaByPerson, familyTreeComponents);
+            if (writeIfChanged(personMetrics)) changedPersonIds.add(personId);
+        }
+
+        Set<UUID> familyTreeMembers = new HashSet<>();
+        for (UUID personId : affectedPersonIds) {
+            if (familyTreeMembers.contains(personId)) continue;
+            familyTreeMembers.addAll(familyTreeComponents.getFamilyTreeMembers(personId));
+        }
+        for (UUID personId : familyTreeMembers) {
+            if (affectedPersonIds.contains(personId)) continue;
+            PersonMetrics existingPersonMetrics = personMetricsMap.get(personId);
+            if (existingPersonMetrics == null) continue;
+            int familyTreeSize = familyTreeComponents.getFamilyTreeSize(personId);
+            if (existingPersonMetrics.getFamilyTreeSize() != familyTreeSize) {
+                if (writeIfChanged(existingPersonMetrics.withFamilyTreeSize(familyTreeSize))) changedPersonIds.add(personId);
+            }
+        }
+
+        if (! changedPersonIds.isEmpty()) {
+            memoriaContext.getCachedData().incrementPersonMetricsVersion();
+            // just a few persons, so we re-rank only where their names are
+            if (personTypeahead != null) {
+                personTypeahead.rescore(changedPersonIds);
+            }
+        }
+        logger.logDebug(() -> "Recalculated metrics for %d affected persons, %d changed, in %d milliseconds"
+                .formatted(affectedPersonIds.size(), changedPersonIds.size(), stopwatch.stopTimer()));
+    }
+
+    /**
+     * Store these metrics, unless they are identical to what we already have
+     * for this person.
+     * @return true if we wrote the metrics
+     */
+    private boolean writeIfChanged(PersonMetrics personMetrics) {
+        if (hasChanged(personMetrics)) {
+            store(personMetrics);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if these metrics differ from what we have for this person,
+     * or if we have nothing for them yet.  If we have a previous entry, the
+     * index is copied over so that a write will replace it.
+     */
+    private boolean hasChanged(PersonMetrics personMetrics) {
+        UUID personId = personMetrics.getPersonUuid();
+        PersonMetrics existingPersonMetric = personMetricsMap.get(personId);
+        if (existingPersonMetric == null) {
+            existingPersonMetric = pm.findExactlyOne("id", personId.toString());
+        }
+        if (existingPersonMetric == null) {
+            return true;
+        }
+        personMetrics.setIndex(existingPersonMetric.getIndex());
+        if (existingPersonMetric.equals(personMetrics)) {
+            personMetricsMap.put(personId, existingPersonMetric);
+            return false;
+        }
+        return true;
+    }
+
+    private void store(PersonMetrics personMetrics) {
+        if (personMetrics.getIndex() == 0) {
+            // add a new person metrics entry
+            logger.logTrace(() -> "Adding new metric: " + personMetrics);
+        }
+        pm.write(personMetrics);
+        personMetricsMap.put(personMetrics.getPersonUuid(), personMetrics);
     }
 
 }
@@ -3,7 +3,6 @@ package com.renomad.inmra.auth;
 import com.renomad.minum.web.IRequest;
 
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 /**
  * This class holds static helper methods for checking the request for
@@ -23,26 +22,20 @@ public class PrivacyCheck {
     }
 
     public static boolean hasValidPrivacyCookie(IRequest request, String hashedPrivacyPassword) {
-        // grab the headers from the request.
-        final var headers = request.getHeaders().getHeaderStrings();
-
-        // get all the headers that start with "cookie", case-insensitive
-        final var cookieHeaders = headers.stream()
-                .map(String::toLowerCase)
-                .filter(x -> x.startsWith("cookie"))
-                .collect(Collectors.joining("; "));
-
-        // extract session identifiers from the cookies
-        final var cookieMatcher = privacyKeyCookieRegex.matcher(cookieHeaders);
-        if (cookieMatcher.find()) {
-            final var privacyKeyValue = cookieMatcher.group("privacyKeyValue");
-            // here is where it may return true
-            return privacyKeyValue.equals(hashedPrivacyPassword);
-        }
-        return false;
+        final var privacyKeyValue = RequestCookies.of(request).privacyKeyValue();
+        // here is where it may return true
+        return privacyKeyValue != null && privacyKeyValue.equals(hashedPrivacyPassword);
     }
 
     public PrivacyCheckStatus canShowPrivateInformation(IRequest request) {
+        // if we have already checked this request, use that
+        if (request instanceof AuthContextRequest authContextRequest) {
+            return authContextRequest.getPrivacyCheckStatus(this::checkPrivacy);
+        }
+        return checkPrivacy(request);
+    }
+
+    private PrivacyCheckStatus checkPrivacy(IRequest request) {
         boolean isPrivacyAuthenticated = hasValidPrivacyCookie(request, this.hashedPrivacyPassword);
 
         AuthResult authResult = this.authUtils.processAuth(request);
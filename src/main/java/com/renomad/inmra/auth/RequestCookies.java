@@ -0,0 +1,48 @@
+package com.renomad.inmra.auth;
+
+import com.renomad.minum.web.IRequest;
+
+import java.util.stream.Collectors;
+
+/**
+ * The cookies of a request that matter for authentication - the session
+ * identifier and the privacy key - found in one pass over the headers.
+ * @param sessionIdValue the value of the session cookie, or null if there was none
+ * @param hasMultipleSessionIds whether there was more than one session cookie, which is invalid
+ * @param privacyKeyValue the value of the privacy cookie, or null if there was none
+ */
+public record RequestCookies(String sessionIdValue, boolean hasMultipleSessionIds, String privacyKeyValue) {
+
+    /**
+     * Get the cookies of the request, reading them from the headers only
+     * if this hasn't been done already for the request - see {@link AuthContextRequest}
+     */
+    public static RequestCookies of(IRequest request) {
+        if (request instanceof AuthContextRequest authContextRequest) {
+            return authContextRequest.getCookies();
+        }
+        return parse(request);
+    }
+
+    static RequestCookies parse(IRequest request) {
+        // get all the headers that start with "cookie", case-insensitive
+        final var cookieHeaders = request.getHeaders().getHeaderStrings().stream()
+                .map(String::toLowerCase)
+                .filter(x -> x.startsWith("cookie"))
+                .collect(Collectors.joining("; "));
+
+        // extract session identifiers from the cookies
+        final var sessionMatcher = IAuthUtils.sessionIdCookieRegex.matcher(cookieHeaders);
+        String sessionIdValue = null;
+        boolean hasMultipleSessionIds = false;
+        if (sessionMatcher.find()) {
+            sessionIdValue = sessionMatcher.group("sessionIdValue");
+            hasMultipleSessionIds = sessionMatcher.find();
+        }
+
+        final var privacyMatcher = PrivacyCheck.privacyKeyCookieRegex.matcher(cookieHeaders);
+        String privacyKeyValue = privacyMatcher.find() ? privacyMatcher.group("privacyKeyValue") : null;
+
+        return new RequestCookies(sessionIdValue, hasMultipleSessionIds, privacyKeyValue);
+    }
+}
@@ -0,0 +1,148 @@
+package com.renomad.inmra.auth;
+
+import com.renomad.inmra.utils.TimingWheel;
+import com.renomad.minum.database.AbstractDb;
+import com.renomad.minum.logging.ILogger;
+import com.renomad.minum.logging.LoggingLevel;
+import com.renomad.minum.state.Constants;
+import com.renomad.minum.state.Context;
+import com.renomad.minum.utils.StacktraceUtils;
+import com.renomad.minum.utils.TimeUtils;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Deletes each session once it reaches its kill time.
+ * <br>
+ * The kill time of each session is kept in a {@link TimingWheel}, scheduled
+ * when the session is created and again whenever its deadline is moved
+ * later (see {@link SessionId#updateSessionDeadline(Instant)}).  A thread
+ * started when the application begins moves the wheel along each second and
+ * deletes the sessions which have come due, so a session is gone within
+ * about a second of expiring, without reviewing all the sessions to find it.
+ * <br>
+ * See <a href="https://cheatsheetseries.owasp.org/cheatsheets/Session_Management_Cheat_Sheet.html">Session Cheat Sheet</a>
+ */
+public class SessionExpiry {
+
+    /**
+     * How often, in milliseconds, we move the wheel along, which is also
+     * how long after its kill time a session may remain.
+     */
+    static final long TICK_MILLIS = 1_000;
+
+    /**
+     * With 64 slots to a wheel, three wheels reach about three days ahead, which
+     * covers a session's lifespan.  Deadlines beyond that are still handled, just
+     * by going around the highest wheel more than once.
+     */
+    static final int WHEEL_COUNT = 3;
+
+    private final ExecutorService es;
+    private final ILogger logger;
+    private final Constants constants;
+    private final AbstractDb<SessionId> sessionDb;
+    private final TimingWheel<Long, SessionId> timingWheel;
+
+    public SessionExpiry(Context context, AbstractDb<SessionId> sessionDb) {
+        this.es = context.getExecutorService();
+        this.logger = context.getLogger();
+        this.constants = context.getConstants();
+        this.sessionDb = sessionDb;
+        this.timingWheel = new TimingWheel<>(TICK_MILLIS, WHEEL_COUNT, System.currentTimeMillis());
+    }
+
+    /**
+     * Schedule the sessions already in the database, and start the
+     * thread which deletes them as they expire.
+     */
+    // Regarding the BusyWait - indeed, we expect that the while loop
+    // below is an infinite loop unless there's an exception thrown, that's what it is.
+    @SuppressWarnings({"BusyWait"})
+    public void initialize() {
+        logger.logDebug(() -> "Initializing SessionExpiry main loop");
+        for (SessionId session : sessionDb.values()) {
+            scheduleExpiry(session);
+        }
+        Callable<Object> innerLoopThread = () -> {
+            Thread.currentThread().setName("SessionExpiry");
+            while (true) {
+                try {
+                    deleteExpiredSessions(System.currentTimeMillis());
+                    Thread.sleep(TICK_MILLIS);
+                } catch (InterruptedException ex) {
+
+                    /*
+                    this is what we expect to happen.
+                    once this happens, we just continue on.
+                    this only gets called when we are trying to shut everything
+                    down cleanly
+                     */
+
+                    if (constants.logLevels.contains(LoggingLevel.DEBUG)) System.out.printf(TimeUtils.getTimestampIsoInstant() + " SessionExpiry is stopped.%n");
+                    Thread.currentThread().interrupt();
+                    return null;
+                } catch (Throwable ex) {
+                    logger.logAsyncError(() -> StacktraceUtils.stackTraceToString(ex));
+                }
+            }
+        };
+        es.submit(innerLoopThread);
+    }
+
+    /**
+     * Schedule the deletion of this session at its kill time, replacing
+     * whatever was scheduled for it before.  This should be called each
+     * time a session is written.  If its kill time has already passed, it
+     * is deleted now.
+     */
+    public void scheduleExpiry(SessionId session) {
+        SessionId expired = timingWheel.schedule(
+                session.getIndex(),
+                session,
+                session.getKillDateTime().toEpochMilli());
+        if (expired != null) {
+            deleteSession(expired);
+        }
+    }
+
+    /**
+     * Stop tracking this session, for when it is deleted some other way, such as
+     * by logging out.
+     */
+    public void cancelExpiry(SessionId session) {
+        timingWheel.cancel(session.getIndex());
+    }
+
+    /**
+     * Delete the sessions whose kill time is before this time
+     * @return the sessions deleted
+     */
+    List<SessionId> deleteExpiredSessions(long nowMillis) {
+        List<SessionId> expiredSessions = timingWheel.advance(nowMillis);
+        for (SessionId s : expiredSessions) {
+            deleteSession(s);
+        }
+        return expiredSessions;
+    }
+
+    private void deleteSession(SessionId s) {
+        logger.logDebug(() -> String.format("Session %d for user %d has expired, deleting", s.getIndex(), s.getUserId()));
+        try {
+            sessionDb.delete(s);
+        } catch (Exception ex) {
+            // it may have been deleted some other way in the meantime
+            logger.logDebug(() -> String.format("Unable to delete expired session %d: %s", s.getIndex(), ex.getMessage()));
+        }
+    }
+
+    /**
+     * The count of sessions scheduled to expire
+     */
+    int getScheduledCount() {
+        return timingWheel.size();
+    }
+}
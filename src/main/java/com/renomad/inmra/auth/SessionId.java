@@ -5,6 +5,7 @@ import com.renomad.minum.database.DbData;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.TemporalAmount;
+import java.util.Locale;
 import java.util.Objects;
 
 import static com.renomad.minum.utils.SerializationUtils.deserializeHelper;
@@ -24,6 +25,11 @@ public class SessionId extends DbData<SessionId> {
     private final long userId;
     private static final TemporalAmount sessionExtensionTime = Duration.ofHours(36L);
 
+    /**
+     * The name of the database index of sessions by their {@link #normalizeSessionCode(String) normalized} session code
+     */
+    public static final String SESSION_CODE_INDEX = "session_code";
+
     /**
      * @param index            a simple numeric identifier that lets us distinguish one record from another
      * @param sessionCode      the sessionCode is a randomly-generated string that will be used
@@ -82,6 +88,26 @@ public class SessionId extends DbData<SessionId> {
         );
     }
 
+    /**
+     * Whether updating the deadline for a recent usage would move it by at least
+     * the given interval.  Writing each small extension to disk isn't worth it, so
+     * the deadline is only written once it has fallen behind by that much.
+     * @param lastUsage the {@link Instant} of the last activity on this session
+     * @param interval how far behind the deadline may fall before we write it
+     */
+    public boolean needsDeadlineUpdate(Instant lastUsage, Duration interval) {
+        Instant newKillDateTime = lastUsage.plus(sessionExtensionTime);
+        return ! killDateTime.plus(interval).isAfter(newKillDateTime);
+    }
+
+    /**
+     * Session codes are compared without regard to case, since the cookie
+     * headers they arrive in are lower-cased
+     */
+    public static String normalizeSessionCode(String sessionCode) {
+        return sessionCode.toLowerCase(Locale.ROOT);
+    }
+
     @Override
     public long getIndex() {
         return index;
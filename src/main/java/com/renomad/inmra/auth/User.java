@@ -12,6 +12,11 @@ import static com.renomad.minum.utils.SerializationUtils.serializeHelper;
 public class User extends DbData<User> {
 
     public static final User EMPTY = new User(0L, "", "", "");
+
+    /**
+     * The name of the database index of users by their index, as a string
+     */
+    public static final String USER_INDEX = "user_index";
     private Long id;
     private final String username;
     private final String hashedPassword;
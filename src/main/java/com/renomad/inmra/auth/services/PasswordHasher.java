@@ -0,0 +1,95 @@
+package com.renomad.inmra.auth.services;
+
+import com.renomad.minum.logging.ILogger;
+import com.renomad.minum.state.Context;
+import com.renomad.minum.utils.CryptoUtils;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BinaryOperator;
+
+/**
+ * Hashes passwords on a few threads of its own, rather than on the threads
+ * handling requests.
+ * <br>
+ * Hashing a password is deliberately slow and heavy on the processor.  If it
+ * were done on the request threads, a burst of logins - say, someone trying
+ * passwords as fast as they can - could tie them all up, and nobody else's
+ * pages would load.  Here, only a few hashes run at once, and only a few more
+ * may wait.  Beyond that, we refuse right away with {@link PasswordHashingOverloadedException},
+ * so the caller can tell the client to try again shortly.
+ */
+public class PasswordHasher {
+
+    private final ThreadPoolExecutor hashingExecutor;
+    private final BinaryOperator<String> hashFunction;
+
+    /**
+     * @param threadCount the count of passwords hashed at the same time.  If zero or less, one.
+     * @param queueSize the count of passwords that may wait to be hashed.  If zero or less, none may wait.
+     */
+    public PasswordHasher(Context context, int threadCount, int queueSize) {
+        this(context, threadCount, queueSize, CryptoUtils::createPasswordHash);
+    }
+
+    /**
+     * @param hashFunction given a password and a salt, returns the hash
+     */
+    PasswordHasher(Context context, int threadCount, int queueSize, BinaryOperator<String> hashFunction) {
+        ILogger logger = context.getLogger();
+        this.hashFunction = hashFunction;
+        int workers = Math.max(1, threadCount);
+        var threadNumber = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "password_hashing-" + threadNumber.incrementAndGet());
+            // don't keep the program alive just for these
+            thread.setDaemon(true);
+            return thread;
+        };
+        BlockingQueue<Runnable> queue = queueSize > 0 ? new ArrayBlockingQueue<>(queueSize) : new SynchronousQueue<>();
+        hashingExecutor = new ThreadPoolExecutor(
+                workers,
+                workers,
+                60L,
+                TimeUnit.SECONDS,
+                queue,
+                threadFactory,
+                new ThreadPoolExecutor.AbortPolicy());
+        // logins come in bursts, so let the workers go away when there's nothing to do
+        hashingExecutor.allowCoreThreadTimeOut(true);
+        logger.logDebug(() -> String.format("Password hashing will use %d workers, with room for %d waiting", workers, Math.max(0, queueSize)));
+    }
+
+    /**
+     * Hash the password with the salt, waiting for it to be done.
+     * @throws PasswordHashingOverloadedException if too many passwords are already
+     *         being hashed, or waiting to be
+     */
+    public String hash(String password, String salt) {
+        Future<String> hashing;
+        try {
+            hashing = hashingExecutor.submit(() -> hashFunction.apply(password, salt));
+        } catch (RejectedExecutionException ex) {
+            throw new PasswordHashingOverloadedException();
+        }
+        try {
+            return hashing.get();
+        } catch (InterruptedException ex) {
+            hashing.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new PasswordHashingOverloadedException();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new RuntimeException(ex.getCause());
+        }
+    }
+
+    /**
+     * The count of passwords waiting to be hashed
+     */
+    int getQueuedCount() {
+        return hashingExecutor.getQueue().size();
+    }
+}
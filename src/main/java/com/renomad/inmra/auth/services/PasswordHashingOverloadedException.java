@@ -0,0 +1,8 @@
+package com.renomad.inmra.auth.services;
+
+/**
+ * Thrown if there are too many passwords being hashed already
+ * to take on another.  See {@link PasswordHasher}
+ */
+public class PasswordHashingOverloadedException extends RuntimeException {
+}
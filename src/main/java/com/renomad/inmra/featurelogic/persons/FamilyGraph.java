@@ -2,6 +2,7 @@ package com.renomad.inmra.featurelogic.persons;
 
 import com.renomad.inmra.featurelogic.persons.services.ObscureInformationProcessor;
 import com.renomad.inmra.featurelogic.persons.services.RelationInputs;
+import com.renomad.inmra.featurelogic.photo.MediaByPerson;
 import com.renomad.inmra.featurelogic.photo.PhotoToPerson;
 import com.renomad.inmra.featurelogic.photo.VideoToPerson;
 import com.renomad.minum.database.AbstractDb;
@@ -49,11 +50,14 @@ public class FamilyGraph {
      * adds this personNode to the map of personNodes.
      * <br>
      * Returns the fully built {@link PersonNode}
+     * @param personIndex a mapping of a person's id (a UUID in string form) to the {@link Person},
+     *                    used to resolve the anchor elements in the relation fields.  See
+     *                    {@link #buildPersonIndex(Collection)}
      * @throws FamilyGraphProcessingException thrown if any of the processing of text fails in any way.
      */
     public static PersonNode createNodeWithConnections(
             PersonFile personFile,
-            Collection<Person> persons,
+            Map<String, Person> personIndex,
             Map<UUID, PersonNode> personNodes,
             IPersonLruCache personLruCache) {
 
@@ -69,56 +73,131 @@ public class FamilyGraph {
             boolean isLiving = ObscureInformationProcessor.isLiving(personFile.getBorn(), personFile.getDied(), LocalDate.now());
             var personNode = getPersonNode(personFile.getId(), personFile.getName(), personNodes, personFile.getGender(), isLiving);
 
-            List<HtmlParseNode> parsedSiblings = htmlParser.parse(personFile.getSiblings()).stream()
-                    .filter(x -> x.getTagInfo().getTagName().equals(TagName.A)).toList();
-            addVerifiedRelations(parsedSiblings, persons, personNode, "sibling", personNodes, personLruCache);
+            addVerifiedRelations(extractRelationIds(personFile.getSiblings()), personIndex, personNode, "sibling", personNodes, personLruCache);
+            addVerifiedRelations(extractRelationIds(personFile.getParents()), personIndex, personNode, "parent", personNodes, personLruCache);
+            addVerifiedRelations(extractRelationIds(personFile.getSpouses()), personIndex, personNode, "spouse", personNodes, personLruCache);
+            addVerifiedRelations(extractRelationIds(personFile.getChildren()), personIndex, personNode, "child", personNodes, personLruCache);
 
-            List<HtmlParseNode> parsedParents = htmlParser.parse(personFile.getParents()).stream()
-                    .filter(x -> x.getTagInfo().getTagName().equals(TagName.A)).toList();
-            addVerifiedRelations(parsedParents, persons, personNode, "parent", personNodes, personLruCache);
+            return personNode;
+        } catch (Exception ex) {
+            throw new FamilyGraphProcessingException(
+                    String.format("Error: processing during createNodeWithConnections for person: %s personid: %s",
+                            personFile.getName(), personFile.getId()), ex);
+        }
 
-            List<HtmlParseNode> parsedSpouse = htmlParser.parse(personFile.getSpouses()).stream()
-                    .filter(x -> x.getTagInfo().getTagName().equals(TagName.A)).toList();
-            addVerifiedRelations(parsedSpouse, persons, personNode, "spouse", personNodes, personLruCache);
+    }
 
-            List<HtmlParseNode> parsedChildren = htmlParser.parse(personFile.getChildren()).stream()
-                    .filter(x -> x.getTagInfo().getTagName().equals(TagName.A)).toList();
-            addVerifiedRelations(parsedChildren, persons, personNode, "child", personNodes, personLruCache);
+    /**
+     * Builds a mapping of each person's id (a UUID in string form) to the {@link Person}, so
+     * that resolving the anchor elements in a relation field is a hash lookup rather than a
+     * scan through every person.  Build this once and reuse it for all the nodes in a graph build.
+     */
+    public static Map<String, Person> buildPersonIndex(Collection<Person> persons) {
+        Map<String, Person> personIndex = new HashMap<>(persons.size() * 2);
+        for (Person person : persons) {
+            personIndex.put(person.getId().toString(), person);
+        }
+        return personIndex;
+    }
 
-            return personNode;
+    /**
+     * Parse the HTML of a relation field (e.g. a person's siblings) exactly once,
+     * returning the ids found in the href of each anchor ("a") element, in the
+     * order they appear.
+     */
+    static List<String> extractRelationIds(String relationHtml) {
+        return extractRelationIds(htmlParser, relationHtml);
+    }
+
+    /**
+     * Similar to {@link #extractRelationIds(String)}, but with a parser provided by
+     * the caller, for when we are processing persons on multiple threads and each
+     * thread needs its own parser.
+     */
+    static List<String> extractRelationIds(HtmlParser parser, String relationHtml) {
+        List<String> relationIds = new ArrayList<>();
+        for (HtmlParseNode node : parser.parse(relationHtml)) {
+            if (node.getTagInfo().getTagName().equals(TagName.A)) {
+                String hrefValue = node.getTagInfo().getAttribute("href");
+                relationIds.add(hrefValue.replace("person?id=", ""));
+            }
+        }
+        return relationIds;
+    }
+
+    /**
+     * The relations of one person, each resolved to the id of a valid person but not
+     * yet connected into the graph.  This lets the expensive part of building the
+     * graph - reading and parsing each person's file - run on many threads, with
+     * the connecting of nodes done afterwards in one pass.
+     * @param relations pairs of relationship to person id, e.g. "sibling" -> 1234-...,
+     *                  in the same order as they would be added by {@link #createNodeWithConnections}
+     */
+    public record PersonRelations(UUID id, String name, Gender gender, boolean isLiving, List<Map.Entry<String, UUID>> relations) {}
+
+    /**
+     * Examine the relation fields of a {@link PersonFile} and find the persons
+     * they refer to, without touching the graph.  See {@link PersonRelations}
+     * @param parser a parser used only by the calling thread
+     * @throws FamilyGraphProcessingException thrown if any of the processing of text fails in any way.
+     */
+    public static PersonRelations resolveRelations(PersonFile personFile, Map<String, Person> personIndex, HtmlParser parser) {
+        try {
+            boolean isLiving = ObscureInformationProcessor.isLiving(personFile.getBorn(), personFile.getDied(), LocalDate.now());
+            List<Map.Entry<String, UUID>> relations = new ArrayList<>();
+            addResolvedRelations(extractRelationIds(parser, personFile.getSiblings()), personIndex, "sibling", relations);
+            addResolvedRelations(extractRelationIds(parser, personFile.getParents()), personIndex, "parent", relations);
+            addResolvedRelations(extractRelationIds(parser, personFile.getSpouses()), personIndex, "spouse", relations);
+            addResolvedRelations(extractRelationIds(parser, personFile.getChildren()), personIndex, "child", relations);
+            return new PersonRelations(personFile.getId(), personFile.getName(), personFile.getGender(), isLiving, relations);
         } catch (Exception ex) {
             throw new FamilyGraphProcessingException(
-                    String.format("Error: processing during createNodeWithConnections for person: %s personid: %s",
+                    String.format("Error: processing during resolveRelations for person: %s personid: %s",
                             personFile.getName(), personFile.getId()), ex);
         }
+    }
 
+    private static void addResolvedRelations(
+            List<String> relationIds,
+            Map<String, Person> personIndex,
+            String relation,
+            List<Map.Entry<String, UUID>> relations) {
+        for (String personUuid : relationIds) {
+            Person foundPerson = personIndex.get(personUuid);
+            if (foundPerson != null) {
+                relations.add(Map.entry(relation, foundPerson.getId()));
+            }
+        }
     }
 
     /**
-     * For each of the anchor ("a") elements we find in a person's data
-     * field (e.g. their siblings, parents, and so on), look through all
-     * the other persons - if the anchor element references a valid person,
-     * add that link as a relation to the {@link PersonNode} connections.
+     * For each of the ids we found in a person's data field (e.g. their
+     * siblings, parents, and so on), look up the person in the index - if
+     * the id references a valid person, add that link as a relation to
+     * the {@link PersonNode} connections.
      */
     private static void addVerifiedRelations(
-            Collection<HtmlParseNode> parsedRelationHtmlNodes,
-            Collection<Person> persons,
+            List<String> relationIds,
+            Map<String, Person> personIndex,
             PersonNode personNode,
             String relation,
             Map<UUID, PersonNode> personNodes,
             IPersonLruCache personLruCache) {
         List<Map.Entry<String, PersonNode>> connections = personNode.getConnections();
-        for (var personAnchorElement : parsedRelationHtmlNodes) {
-            String hrefValue = personAnchorElement.getTagInfo().getAttribute("href");
-            String personUuid = hrefValue.replace("person?id=", "");
+        for (String personUuid : relationIds) {
 
             // now we have the UUID, check that person's details:
-            Person foundPerson = SearchUtils.findExactlyOne(persons.stream(), x -> x.getId().toString().equals(personUuid));
+            Person foundPerson = personIndex.get(personUuid);
             if (foundPerson != null) {
-                PersonFile personFile = personLruCache.getCachedPersonFile(foundPerson.getId().toString());
-                Gender gender = personFile.getGender();
-                boolean isLiving = ObscureInformationProcessor.isLiving(personFile.getBorn(), personFile.getDied(), LocalDate.now());
-                connections.add(Map.entry(relation, getPersonNode(foundPerson.getId(), foundPerson.getName(), personNodes, gender, isLiving)));
+                PersonNode relativeNode = personNodes.get(foundPerson.getId());
+                // only read the relative's file if we haven't already built a node for them
+                if (relativeNode == null) {
+                    PersonFile personFile = personLruCache.getCachedPersonFile(foundPerson.getId().toString());
+                    Gender gender = personFile.getGender();
+                    boolean isLiving = ObscureInformationProcessor.isLiving(personFile.getBorn(), personFile.getDied(), LocalDate.now());
+                    relativeNode = getPersonNode(foundPerson.getId(), foundPerson.getName(), personNodes, gender, isLiving);
+                }
+                connections.add(Map.entry(relation, relativeNode));
             }
         }
         personNode.setConnections(connections);
@@ -1242,6 +1321,20 @@ public class FamilyGraph {
     }
 
     public static PersonMetrics getPersonMetrics(PersonNode personNode, IPersonLruCache personLruCache, AbstractDb<PhotoToPerson> photoToPersonDb, AbstractDb<VideoToPerson> videoToPersonDb) {
+        return getPersonMetrics(personNode, personLruCache, new MediaByPerson(photoToPersonDb, videoToPersonDb), null);
+    }
+
+    public static PersonMetrics getPersonMetrics(PersonNode personNode, IPersonLruCache personLruCache, AbstractDb<PhotoToPerson> photoToPersonDb, AbstractDb<VideoToPerson> videoToPersonDb, FamilyTreeComponents familyTreeComponents) {
+        return getPersonMetrics(personNode, personLruCache, new MediaByPerson(photoToPersonDb, videoToPersonDb), familyTreeComponents);
+    }
+
+    /**
+     * Calculate the {@link PersonMetrics} for a person.
+     * @param mediaByPerson used to count the photos and videos of this person
+     * @param familyTreeComponents if provided, we get the size of this person's family tree
+     *                             from here rather than walking the entire tree.  If null, we walk.
+     */
+    public static PersonMetrics getPersonMetrics(PersonNode personNode, IPersonLruCache personLruCache, MediaByPerson mediaByPerson, FamilyTreeComponents familyTreeComponents) {
         var personAncestors = ancestors(personNode, 99999, false);
         // number of ancestors of this person
         int countAncestors = personAncestors.size() - 1;
@@ -1285,9 +1378,9 @@ public class FamilyGraph {
         }
 
         // how many photos this person has
-        long countPhotos = photoToPersonDb.values().stream().filter(x -> x.getPersonIndex() == personFile.getIndex()).count();
+        long countPhotos = mediaByPerson.getPhotoCount(personFile.getIndex());
         // how many videos this person has
-        long countVideos = videoToPersonDb.values().stream().filter(x -> x.getPersonIndex() == personFile.getIndex()).count();
+        long countVideos = mediaByPerson.getVideoCount(personFile.getIndex());
         var closeRelatives = FamilyGraph.closeRelativesIncludingMarriage(personNode, 2, false, false);
         // count of relatives closely related, including marriage
         int countCloseRelatives = closeRelatives.size() - 1;
@@ -1330,11 +1423,16 @@ public class FamilyGraph {
         // whether this person has a headshot
         boolean hasHeadshot = ! personFile.getImageUrl().isBlank();
 
-        // get the entire relatives graph for this person, mainly to see whether they are
+        // get the size of the entire relatives graph for this person, mainly to see whether they are
         // disconnected from the primary tree.  If they have a different size than everyone
         // else, they are disconnected.
-        List<ShortRelationship> fullGraph = FamilyGraph.closeRelativesIncludingMarriage(personNode, 9999, false, false);
-        int familyTreeSize = fullGraph.size();
+        int familyTreeSize;
+        if (familyTreeComponents != null) {
+            familyTreeSize = familyTreeComponents.getFamilyTreeSize(personNode.getId());
+        } else {
+            List<ShortRelationship> fullGraph = FamilyGraph.closeRelativesIncludingMarriage(personNode, 9999, false, false);
+            familyTreeSize = fullGraph.size();
+        }
 
         // size of the notes field for this person
         int notesCharCount = personFile.getNotes().length();
@@ -1390,13 +1488,74 @@ public class FamilyGraph {
     }
 
 
-    public static void updateNode(PersonNode personNode, PersonFile newPersonFileData, Map<UUID, PersonNode> personNodes, Collection<Person> persons, IPersonLruCache personLruCache) {
+    /**
+     * Finds the persons whose {@link PersonMetrics} might change if the relationships
+     * of the given persons changed.  This is intentionally generous - it is everyone
+     * within the reach of the calculations in {@link #getPersonMetrics}, looking
+     * outward from the changed persons:
+     * <ul>
+     *     <li>anyone within two steps of any kind (close relatives, siblings, spouses, children)</li>
+     *     <li>all ancestors (their count of descendants) and all descendants (their count of ancestors)</li>
+     *     <li>the descendants of the near ancestors - the persons who might count one of the
+     *     changed persons as a nephew, niece, uncle, aunt, or cousin.
+     *     See {@link #findExtendedBloodRelations(PersonNode)}</li>
+     * </ul>
+     * Note that this does not include the change of familyTreeSize for everyone in the tree,
+     * since that comes cheaply from {@link FamilyTreeComponents}.
+     * <br>
+     * To catch relationships that were removed, call this both before and after the change.
+     */
+    public static Set<UUID> personsWithMetricsAffectedBy(Collection<PersonNode> changedPersons) {
+        Set<UUID> affected = new HashSet<>();
+        for (PersonNode personNode : collectRelatives(changedPersons, x -> true, 2)) {
+            affected.add(personNode.getId());
+        }
+        for (PersonNode personNode : collectRelatives(changedPersons, x -> x.equals("parent"), Integer.MAX_VALUE)) {
+            affected.add(personNode.getId());
+        }
+        for (PersonNode personNode : collectRelatives(changedPersons, x -> x.equals("child"), Integer.MAX_VALUE)) {
+            affected.add(personNode.getId());
+        }
+        // cousins are found by going up to five levels of ancestors, and then
+        // down to two levels further than that.  Reversing that, we go up seven and down five.
+        Set<PersonNode> nearAncestors = collectRelatives(changedPersons, x -> x.equals("parent"), 7);
+        for (PersonNode personNode : collectRelatives(nearAncestors, x -> x.equals("child"), 5)) {
+            affected.add(personNode.getId());
+        }
+        return affected;
+    }
+
+    /**
+     * A breadth-first search from the starting persons along the relationships
+     * matching the predicate, up to a maximum distance.  Includes the starting persons.
+     */
+    private static Set<PersonNode> collectRelatives(Collection<PersonNode> startingPersons, Predicate<String> relationPredicate, int maxDistance) {
+        Set<PersonNode> seen = new HashSet<>();
+        var currentRing = new ArrayList<PersonNode>();
+        for (PersonNode personNode : startingPersons) {
+            if (personNode != null && seen.add(personNode)) currentRing.add(personNode);
+        }
+        for (int distance = 1; distance <= maxDistance && !currentRing.isEmpty(); distance++) {
+            var nextRing = new ArrayList<PersonNode>();
+            for (PersonNode personNode : currentRing) {
+                for (Map.Entry<String, PersonNode> connection : personNode.getConnections()) {
+                    if (relationPredicate.test(connection.getKey()) && seen.add(connection.getValue())) {
+                        nextRing.add(connection.getValue());
+                    }
+                }
+            }
+            currentRing = nextRing;
+        }
+        return seen;
+    }
+
+    public static void updateNode(PersonNode personNode, PersonFile newPersonFileData, Map<UUID, PersonNode> personNodes, Map<String, Person> personIndex, IPersonLruCache personLruCache) {
         // create copy of list
         List<Map.Entry<String, PersonNode>> oldNodeConnections = personNode.getConnections().stream().toList();
         // delete the personNode from the map
         personNodes.remove(personNode.getId());
         // build a new personNode with the new data
-        PersonNode newPersonNode = createNodeWithConnections(newPersonFileData, persons, personNodes, personLruCache);
+        PersonNode newPersonNode = createNodeWithConnections(newPersonFileData, personIndex, personNodes, personLruCache);
         mustBeTrue(personNode.getId().equals(newPersonFileData.getId()), "person is being updated (not deleted) so id remains");
         // for each person who was connected to this person, adjust their connections to point at the new person node
         for (Map.Entry<String, PersonNode> connection : oldNodeConnections) {
@@ -0,0 +1,260 @@
+package com.renomad.inmra.featurelogic.persons;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps track of which persons are connected to each other, directly or
+ * through any chain of relationships - that is, which separate family
+ * tree each person belongs to.
+ * <br>
+ * Each connected group of persons (a "component") gets a number, and we hold
+ * the members of each component, so that asking for the size of a person's
+ * tree, or who else is in it, is a lookup rather than a walk of the
+ * whole graph.
+ * <br>
+ * This is kept current by {@link com.renomad.inmra.featurelogic.persons.services.FamilyGraphBuilder}
+ * as nodes are added, updated, and removed.  Adding relationships merges components,
+ * the smaller into the larger.  Removing relationships may split a component, so
+ * in that case we relabel just the persons in the affected component.
+ * <br>
+ * Relationships are followed in both directions here, so that if only one side
+ * of a relationship was recorded, the two persons are still in the same tree.
+ */
+public class FamilyTreeComponents {
+
+    private final Map<UUID, Integer> componentOfPerson;
+    private final Map<Integer, Set<UUID>> personsInComponent;
+    private int nextComponentId;
+    private final ReentrantLock lock;
+
+    public FamilyTreeComponents() {
+        this.componentOfPerson = new HashMap<>();
+        this.personsInComponent = new HashMap<>();
+        this.nextComponentId = 0;
+        this.lock = new ReentrantLock();
+    }
+
+    /**
+     * Throw away all the current data and label every person in the graph
+     */
+    public void rebuild(Map<UUID, PersonNode> personNodes) {
+        lock.lock();
+        try {
+            componentOfPerson.clear();
+            personsInComponent.clear();
+            labelComponents(personNodes.keySet(), personNodes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Call this after a new node has been added to the graph.  The new person
+     * and all the components they connect to become one component.
+     */
+    public void personAdded(UUID personId, Map<UUID, PersonNode> personNodes) {
+        lock.lock();
+        try {
+            mergeWithRelatives(personId, personNodes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Call this after a node has been updated in the graph.
+     * @param previousRelativeIds the ids of the persons this person was connected
+     *                            to before the update.
+     */
+    public void personUpdated(UUID personId, Set<UUID> previousRelativeIds, Map<UUID, PersonNode> personNodes) {
+        lock.lock();
+        try {
+            Set<UUID> currentRelativeIds = getRelativeIds(personNodes.get(personId));
+            if (currentRelativeIds.equals(previousRelativeIds)) {
+                // no change to relationships, so no change to the components
+                return;
+            }
+            if (currentRelativeIds.containsAll(previousRelativeIds)) {
+                // relationships were only added - this can only merge components
+                mergeWithRelatives(personId, personNodes);
+            } else {
+                // some relationships were removed, which might split the component.
+                Set<UUID> affectedPersons = new HashSet<>();
+                affectedPersons.add(personId);
+                affectedPersons.addAll(removeComponentOf(personId));
+                for (UUID relativeId : currentRelativeIds) {
+                    affectedPersons.addAll(removeComponentOf(relativeId));
+                }
+                labelComponents(affectedPersons, personNodes);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Call this after a node has been removed from the graph.  The remaining
+     * members of their component may now be split into several components.
+     */
+    public void personRemoved(UUID personId, Map<UUID, PersonNode> personNodes) {
+        lock.lock();
+        try {
+            Set<UUID> affectedPersons = removeComponentOf(personId);
+            affectedPersons.remove(personId);
+            labelComponents(affectedPersons, personNodes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The number of persons in the same family tree as this person, including
+     * themselves. Returns 0 if we don't know this person.
+     */
+    public int getFamilyTreeSize(UUID personId) {
+        lock.lock();
+        try {
+            Integer componentId = componentOfPerson.get(personId);
+            if (componentId == null) return 0;
+            return personsInComponent.get(componentId).size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The ids of everyone in the same family tree as this person, including
+     * themselves.  Returns an empty set if we don't know this person.
+     */
+    public Set<UUID> getFamilyTreeMembers(UUID personId) {
+        lock.lock();
+        try {
+            Integer componentId = componentOfPerson.get(personId);
+            if (componentId == null) return Set.of();
+            return new HashSet<>(personsInComponent.get(componentId));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The count of separate family trees
+     */
+    public int getComponentCount() {
+        lock.lock();
+        try {
+            return personsInComponent.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Put the person, and everyone in the components of their relatives, into the
+     * largest of those components.  Must be called while holding the lock.
+     */
+    private void mergeWithRelatives(UUID personId, Map<UUID, PersonNode> personNodes) {
+        if (!personNodes.containsKey(personId)) return;
+        Set<Integer> componentsToMerge = new HashSet<>();
+        Integer personComponent = componentOfPerson.get(personId);
+        if (personComponent != null) componentsToMerge.add(personComponent);
+        for (UUID relativeId : getRelativeIds(personNodes.get(personId))) {
+            Integer relativeComponent = componentOfPerson.get(relativeId);
+            if (relativeComponent != null) componentsToMerge.add(relativeComponent);
+        }
+
+        // find the largest of the components, everyone else will move into it
+        Integer targetComponent = null;
+        for (Integer componentId : componentsToMerge) {
+            if (targetComponent == null || personsInComponent.get(componentId).size() > personsInComponent.get(targetComponent).size()) {
+                targetComponent = componentId;
+            }
+        }
+        if (targetComponent == null) {
+            targetComponent = nextComponentId++;
+            personsInComponent.put(targetComponent, new HashSet<>());
+        }
+
+        Set<UUID> targetMembers = personsInComponent.get(targetComponent);
+        for (Integer componentId : componentsToMerge) {
+            if (componentId.equals(targetComponent)) continue;
+            Set<UUID> members = personsInComponent.remove(componentId);
+            for (UUID member : members) {
+                componentOfPerson.put(member, targetComponent);
+            }
+            targetMembers.addAll(members);
+        }
+        componentOfPerson.put(personId, targetComponent);
+        targetMembers.add(personId);
+    }
+
+    /**
+     * Removes the component this person is in, returning its members.  Must
+     * be called while holding the lock.
+     */
+    private Set<UUID> removeComponentOf(UUID personId) {
+        Integer componentId = componentOfPerson.get(personId);
+        if (componentId == null) return new HashSet<>();
+        Set<UUID> members = personsInComponent.remove(componentId);
+        for (UUID member : members) {
+            componentOfPerson.remove(member);
+        }
+        return members;
+    }
+
+    /**
+     * Does a breadth-first search among the given persons, giving each connected
+     * group a new component.  Only relationships between persons in the
+     * given collection are considered.  Must be called while holding the lock.
+     */
+    private void labelComponents(Collection<UUID> personIds, Map<UUID, PersonNode> personNodes) {
+        Set<UUID> inScope = new HashSet<>();
+        for (UUID id : personIds) {
+            if (personNodes.containsKey(id)) inScope.add(id);
+        }
+
+        // build a list of neighbors going both directions
+        Map<UUID, List<UUID>> neighbors = new HashMap<>();
+        for (UUID id : inScope) {
+            for (UUID relativeId : getRelativeIds(personNodes.get(id))) {
+                if (!inScope.contains(relativeId)) continue;
+                neighbors.computeIfAbsent(id, x -> new ArrayList<>()).add(relativeId);
+                neighbors.computeIfAbsent(relativeId, x -> new ArrayList<>()).add(id);
+            }
+        }
+
+        var queue = new ArrayDeque<UUID>();
+        for (UUID id : inScope) {
+            if (componentOfPerson.containsKey(id)) continue;
+            int componentId = nextComponentId++;
+            Set<UUID> members = new HashSet<>();
+            personsInComponent.put(componentId, members);
+            componentOfPerson.put(id, componentId);
+            members.add(id);
+            queue.add(id);
+            while (!queue.isEmpty()) {
+                UUID current = queue.poll();
+                for (UUID relativeId : neighbors.getOrDefault(current, List.of())) {
+                    if (!componentOfPerson.containsKey(relativeId)) {
+                        componentOfPerson.put(relativeId, componentId);
+                        members.add(relativeId);
+                        queue.add(relativeId);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The ids of the persons this node has connections to
+     */
+    public static Set<UUID> getRelativeIds(PersonNode personNode) {
+        if (personNode == null) return new HashSet<>();
+        Set<UUID> relativeIds = new HashSet<>();
+        for (Map.Entry<String, PersonNode> connection : personNode.getConnections()) {
+            relativeIds.add(connection.getValue().getId());
+        }
+        return relativeIds;
+    }
+}
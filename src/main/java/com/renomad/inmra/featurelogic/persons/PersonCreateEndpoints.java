@@ -73,7 +73,9 @@ public class PersonCreateEndpoints {
                 auth,
                 personEndpoints.personLruCache,
                 personEndpoints.familyGraphBuilder,
-                gettingOlderLoop
+                gettingOlderLoop,
+                personEndpoints.personSearchIndex,
+                personEndpoints.personTypeahead
                 );
         this.personTrasher = new PersonTrasher(
                 personEndpoints.getPersonDirectory(),
@@ -83,6 +85,10 @@ public class PersonCreateEndpoints {
                 personEndpoints.personLruCache,
                 personEndpoints.photoService,
                 personEndpoints.familyGraphBuilder,
+                personEndpoints.personSearchIndex,
+                personEndpoints.personTypeahead,
+                gettingOlderLoop,
+                memoriaContext.getCachedData(),
                 fileUtils,
                 auditor);
     }
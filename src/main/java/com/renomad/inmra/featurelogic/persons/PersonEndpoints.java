@@ -3,6 +3,8 @@ package com.renomad.inmra.featurelogic.persons;
 import com.renomad.inmra.auth.IAuthUtils;
 import com.renomad.inmra.auth.GettingOlderLoop;
 import com.renomad.inmra.featurelogic.persons.services.FamilyGraphBuilder;
+import com.renomad.inmra.featurelogic.persons.services.PersonSearchIndex;
+import com.renomad.inmra.featurelogic.persons.services.PersonTypeahead;
 import com.renomad.inmra.featurelogic.photo.*;
 import com.renomad.inmra.utils.IFileUtils;
 import com.renomad.inmra.utils.MemoriaContext;
@@ -30,6 +32,8 @@ public class PersonEndpoints {
     protected final PhotoService photoService;
     protected final RenderPhotoRowsService renderPhotoRowsService;
     protected final FamilyGraphBuilder familyGraphBuilder;
+    protected final PersonSearchIndex personSearchIndex;
+    protected final PersonTypeahead personTypeahead;
 
     public PersonEndpoints(Context context,
                            MemoriaContext memoriaContext,
@@ -45,16 +49,20 @@ public class PersonEndpoints {
                            PersonLruCache personLruCache,
                            Map<UUID, PersonMetrics> personMetricsMap,
                            FamilyGraphBuilder familyGraphBuilder,
-                           GettingOlderLoop gettingOlderLoop) {
+                           GettingOlderLoop gettingOlderLoop,
+                           PersonSearchIndex personSearchIndex,
+                           PersonTypeahead personTypeahead) {
 
         this.familyGraphBuilder = familyGraphBuilder;
+        this.personSearchIndex = personSearchIndex;
+        this.personTypeahead = personTypeahead;
         this.personLruCache = personLruCache;
         this.photoToPersonDb = photoToPersonDb;
         this.personDb = personDb;
         IFileUtils fileUtils = memoriaContext.getFileUtils();
         this.personDirectory = Path.of(context.getConstants().dbDirectory).resolve("person_files");
         this.photoService = photoService;
-        this.personListEndpoints = new PersonListEndpoints(context, memoriaContext, auth, personDb, personLruCache, familyGraphBuilder, photoToPersonDb, videoToPersonDb, personMetricsDb, navigationHeader, personMetricsMap);
+        this.personListEndpoints = new PersonListEndpoints(context, memoriaContext, auth, personDb, personLruCache, familyGraphBuilder, photoToPersonDb, videoToPersonDb, personMetricsDb, navigationHeader, personMetricsMap, personSearchIndex, personTypeahead);
         this.personCreateEndpoints = new PersonCreateEndpoints(context, memoriaContext, auth, this, navigationHeader, familyGraphBuilder, gettingOlderLoop);
         this.renderPhotoRowsService = new RenderPhotoRowsService(photoToPersonDb, photographDb, videoToPersonDb, videoDb, personDb, fileUtils, personLruCache);
     }
@@ -133,6 +141,13 @@ public class PersonEndpoints {
         return personListEndpoints.searchRelationGet(request);
     }
 
+    /**
+     * Suggestions of persons as the user types a name
+     */
+    public IResponse typeaheadGet(IRequest request) {
+        return personListEndpoints.typeaheadGet(request);
+    }
+
     public IResponse addRelationGet(IRequest request) {
         return personCreateEndpoints.addRelationGet(request);
     }
@@ -59,7 +59,9 @@ public class PersonListEndpoints {
             AbstractDb<VideoToPerson> videoToPersonDb,
             AbstractDb<PersonMetrics> personMetricsDb,
             NavigationHeader navigationHeader,
-            Map<UUID, PersonMetrics> personMetricsMap) {
+            Map<UUID, PersonMetrics> personMetricsMap,
+            PersonSearchIndex personSearchIndex,
+            PersonTypeahead personTypeahead) {
         this.auth = auth;
         this.logger = context.getLogger();
         this.familyGraphBuilder = familyGraphBuilder;
@@ -78,9 +80,9 @@ public class PersonListEndpoints {
         this.personDb = personDb;
         var stats = new Stats(logger, fileUtils, personMetricsDb, this.personMetricsMap, photoToPersonDb, videoToPersonDb);
         this.detailedViewRenderer = new DetailedViewRenderer(fileUtils, personLruCache, familyGraphBuilder, lifespan, personDb, logger, stats);
-        this.enhancedPersonList = new EnhancedPersonList(logger, fileUtils, personDb, personLruCache, photoToPersonDb, this.personMetricsMap, stats);
-        this.personSearch = new PersonSearch(personDb, personLruCache, this.personMetricsMap);
-        this.relationSearch = new RelationSearch(personLruCache, personSearch);
+        this.enhancedPersonList = new EnhancedPersonList(logger, fileUtils, personDb, personLruCache, photoToPersonDb, this.personMetricsMap, stats, personSearchIndex, memoriaContext.getCachedData());
+        this.personSearch = new PersonSearch(personDb, personLruCache, this.personMetricsMap, personSearchIndex);
+        this.relationSearch = new RelationSearch(personLruCache, personSearch, personTypeahead);
         this.homepagePersonRenderer = new HomepagePersonRenderer(fileUtils, personLruCache);
         this.oip = new ObscureInformationProcessor();
     }
@@ -485,6 +487,26 @@ public class PersonListEndpoints {
         }
     }
 
+    /**
+     * Suggest persons by the beginnings of the words in their names, for
+     * the search field in the navigation header.  The results are in the same
+     * form as {@link #searchRelationGet(IRequest)}
+     */
+    public IResponse typeaheadGet(IRequest r) {
+        // if this person is alive, we'll redact their info. unless the user is authenticated
+        PrivacyCheckStatus privacyCheckStatus = auth.canShowPrivateInformation(r);
+
+        String query = r.getRequestLine().queryString().get("query");
+
+        String renderedHtml = relationSearch.searchTypeahead(query, privacyCheckStatus.canShowPrivateInformation());
+
+        if (renderedHtml.isBlank()) {
+            return Response.buildLeanResponse(CODE_204_NO_CONTENT);
+        } else {
+            return Respond.htmlOk(renderedHtml);
+        }
+    }
+
     public IResponse descendantsPrintableGet(IRequest r) {
         // if this person is alive, we'll redact their info. unless the user is authenticated
         PrivacyCheckStatus privacyCheckStatus = auth.canShowPrivateInformation(r);
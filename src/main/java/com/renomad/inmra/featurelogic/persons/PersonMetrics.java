@@ -164,6 +164,41 @@ public final class PersonMetrics extends DbData<PersonMetrics> {
         );
     }
 
+    /**
+     * A copy of these metrics, with a different size of family tree
+     */
+    public PersonMetrics withFamilyTreeSize(int familyTreeSize) {
+        return new PersonMetrics(
+                index,
+                name,
+                personUuid,
+                bioImageCount,
+                bioVideoCount,
+                imageCount,
+                videoCount,
+                spouseCount,
+                siblingCount,
+                childCount,
+                ageYears,
+                bioCharCount,
+                countCloseRelatives,
+                countFirstCousins,
+                countAncestors,
+                countDescendants,
+                countNephewsNieces,
+                countUnclesAunts,
+                birthdate,
+                deathdate,
+                biographyStart,
+                extraFields,
+                hasHeadshot,
+                familyTreeSize,
+                notesCharCount,
+                summaryCharCount,
+                countCousins
+        );
+    }
+
     @Override
     public long getIndex() {
         return index;
@@ -388,16 +388,33 @@ public class DetailedViewRenderer {
      * life - their history.  It has some special needs - we need to remove
      * script elements, and we need to wrap img elements with a elements that
      * point to the original-size image.  If the user is authenticated to see
-     * living people, we'll show them the archival photo.
+     * living people, we'll show them the archival photo.  The images are also
+     * given a srcset, so narrow screens can get a smaller size - see {@link #addSrcset(String, String)}
      */
-    private static String adjustBiographyText(String biography, boolean shouldShowPrivateInformation) {
+    static String adjustBiographyText(String biography, boolean shouldShowPrivateInformation) {
         String cleanedBio = Cleaners.cleanScript(biography);
         Matcher matcher = imageRegex.matcher(cleanedBio);
-        if (shouldShowPrivateInformation) {
-            return matcher.replaceAll("<a href=\"photo?name=$1&size=archive\">$0</a>");
-        } else {
-            return matcher.replaceAll("<a href=\"photo?name=$1&size=original\">$0</a>");
+        String linkedSize = shouldShowPrivateInformation ? "archive" : "original";
+        return matcher.replaceAll(match -> Matcher.quoteReplacement(
+                "<a href=\"photo?name=" + match.group("photo") + "&size=" + linkedSize + "\">" +
+                        addSrcset(match.group(), match.group("photo")) +
+                        "</a>"));
+    }
+
+    /**
+     * Let the browser choose between the midsize (600 pixels) and the
+     * medium (1200 pixels) photo, depending on how wide the image will
+     * be shown. Biography images are at most 70% of the width of the page,
+     * per person_detail_page.css.  Images that already have a srcset, or ask
+     * for a particular size, are left alone.
+     */
+    static String addSrcset(String imageTag, String photo) {
+        if (imageTag.contains("srcset") || photo.contains("&")) {
+            return imageTag;
         }
+        return imageTag.replaceFirst("^<img", Matcher.quoteReplacement(
+                "<img srcset=\"photo?name=" + photo + "&amp;size=midsize 600w, photo?name=" + photo + " 1200w\" " +
+                        "sizes=\"(max-width: 860px) 70vw, 1200px\""));
     }
 
     /**
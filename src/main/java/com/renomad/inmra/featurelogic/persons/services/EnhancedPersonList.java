@@ -2,17 +2,22 @@ package com.renomad.inmra.featurelogic.persons.services;
 
 import com.renomad.inmra.featurelogic.persons.*;
 import com.renomad.inmra.featurelogic.persons.Date;
+import com.renomad.inmra.featurelogic.photo.MediaByPerson;
 import com.renomad.inmra.featurelogic.photo.PhotoToPerson;
+import com.renomad.inmra.utils.CachedData;
 import com.renomad.inmra.utils.IFileUtils;
 import com.renomad.minum.database.AbstractDb;
 import com.renomad.minum.logging.ILogger;
 import com.renomad.minum.templating.TemplateProcessor;
+import com.renomad.minum.utils.LRUCache;
 import com.renomad.minum.utils.StringUtils;
 
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
 import java.util.stream.Stream;
 
 import static com.renomad.inmra.featurelogic.persons.services.InterestingScore.getInterestingScore;
@@ -27,12 +32,36 @@ public class EnhancedPersonList {
 
     private final AbstractDb<Person> personDb;
     private final IPersonLruCache personLruCache;
-    private final AbstractDb<PhotoToPerson> photoToPersonDb;
+    private final MediaByPerson mediaByPerson;
     private final TemplateProcessor personEditListItemTemplateProcessor;
     private final Map<UUID, PersonMetrics> personMetricsMap;
     private final Stats stats;
     private final Lifespan lifespan;
     private final PersonSearch personSearch;
+    private final CachedData cachedData;
+
+    /**
+     * The full list of persons, filtered and sorted, for the combinations of sort and
+     * filter recently requested - so moving from page to page does not require sorting
+     * everything again.  See {@link #getSortedView(SortResult, String, FilterResult, String)}
+     */
+    private final Map<SortedViewKey, SortedView> sortedViews;
+    private final ReentrantLock sortedViewsLock;
+
+    /**
+     * The most sorted views we will hold.  There are a few dozen sorts and a handful
+     * of filters, but only a few are in use at any one time.
+     */
+    private static final int MAX_SORTED_VIEWS = 20;
+
+    record SortedViewKey(String sortCode, String filterCode) {}
+
+    /**
+     * A filtered and sorted list of persons
+     * @param personDataVersion the value of {@link CachedData#getPersonDataVersion()} when this was built
+     * @param personMetricsVersion the value of {@link CachedData#getPersonMetricsVersion()} when this was built
+     */
+    record SortedView(long personDataVersion, long personMetricsVersion, List<Person> persons) {}
 
     public EnhancedPersonList(
             ILogger logger,
@@ -42,14 +71,36 @@ public class EnhancedPersonList {
             AbstractDb<PhotoToPerson> photoToPersonDb,
             Map<UUID, PersonMetrics> personMetricsMap,
             Stats stats) {
+        this(logger, fileUtils, personDb, personLruCache, photoToPersonDb, personMetricsMap, stats, null, null);
+    }
+
+    /**
+     * @param personSearchIndex if provided, searches use this index rather than examining every person
+     * @param cachedData if provided, the sorted lists of persons are held between requests, until
+     *                   the data they were built from changes.
+     */
+
+    public EnhancedPersonList(
+            ILogger logger,
+            IFileUtils fileUtils,
+            AbstractDb<Person> personDb,
+            IPersonLruCache personLruCache,
+            AbstractDb<PhotoToPerson> photoToPersonDb,
+            Map<UUID, PersonMetrics> personMetricsMap,
+            Stats stats,
+            PersonSearchIndex personSearchIndex,
+            CachedData cachedData) {
         this.personDb = personDb;
         this.personLruCache = personLruCache;
-        this.photoToPersonDb = photoToPersonDb;
+        this.mediaByPerson = stats.getMediaByPerson();
         personEditListItemTemplateProcessor = TemplateProcessor.buildProcessor(fileUtils.readTemplate("person/person_edit_list_item.html"));
         this.lifespan = new Lifespan(logger);
         this.personMetricsMap = personMetricsMap;
         this.stats = stats;
-        this.personSearch = new PersonSearch(personDb, personLruCache, personMetricsMap);
+        this.personSearch = new PersonSearch(personDb, personLruCache, personMetricsMap, personSearchIndex);
+        this.cachedData = cachedData;
+        this.sortedViews = LRUCache.getLruCache(MAX_SORTED_VIEWS);
+        this.sortedViewsLock = new ReentrantLock();
     }
 
     /**
@@ -112,7 +163,16 @@ public class EnhancedPersonList {
     }
 
 
-    public record SortResult(Comparator<Person> personComparator, String currentSortValue) {
+    /**
+     * @param sortKey if not null, the value each person is sorted by, which
+     *                is calculated just once per person when sorting.
+     * @param descending if true, the sort key is sorted from largest to smallest
+     */
+    public record SortResult(Comparator<Person> personComparator, String currentSortValue, ToDoubleFunction<Person> sortKey, boolean descending) {
+
+        public SortResult(Comparator<Person> personComparator, String currentSortValue) {
+            this(personComparator, currentSortValue, null, false);
+        }
     }
 
     public record FilterResult(String currentFilterValue, Predicate<Person> filter) {
@@ -156,31 +216,24 @@ public class EnhancedPersonList {
 
         var sb = new StringBuilder();
 
-        // get all the persons
-        Collection<Person> allPersons = personDb.values();
-
-        // the persons we will iterate over
-        Collection<Person> persons;
+        // the persons we will iterate over, filtered and sorted
+        List<Person> persons;
 
         // if we have a search string, filter the results case-insensitively,
         // otherwise just use the whole collection.
         if (!lowercaseSearch.isBlank()) {
             PersonSearchResult result = personSearch.getPeople(lowercaseSearch, true, Integer.MAX_VALUE);
-            persons = Stream.concat(result.exactMatches().stream(), result.soundsLikeMatches().stream())
+            persons = sortPersons(Stream.concat(result.exactMatches().stream(), result.soundsLikeMatches().stream())
                     .filter(filterResult.filter())  // here we apply a filter, if the user provided it.
-                    .toList();
+                    .toList(), sortResult);
         } else {
-            persons = allPersons
-                    .stream()
-                    .filter(filterResult.filter()) // here we apply a filter, if the user provided it.
-                    .toList();
+            persons = getSortedView(sortResult, currentSortCode, filterResult, currentFilterCode);
         }
 
         totalCountPersons = persons.size();
 
-        // this is where we apply sorting and paging to the list of persons
+        // this is where we apply paging to the list of persons
         var listOfPersons = persons.stream()
-                .sorted(sortResult.personComparator())
                 .skip((long) maxPersonsPerPage * (page - 1))
                 .limit(maxPersonsPerPage).toList();
 
@@ -314,16 +367,77 @@ public class EnhancedPersonList {
     }
 
 
+    /**
+     * Get all the persons, filtered and sorted.  If we sorted the same way
+     * recently, and nothing has changed in the persons, their photos, or their
+     * metrics, the same list is returned without sorting again.
+     */
+    List<Person> getSortedView(SortResult sortResult, String currentSortCode, FilterResult filterResult, String currentFilterCode) {
+        if (cachedData == null) {
+            return sortPersons(personDb.values().stream().filter(filterResult.filter()).toList(), sortResult);
+        }
+
+        var key = new SortedViewKey(currentSortCode, currentFilterCode);
+        // these are read before building, so if anything changes while we build, the
+        // view will be seen as stale next time.
+        long personDataVersion = cachedData.getPersonDataVersion();
+        long personMetricsVersion = cachedData.getPersonMetricsVersion();
+
+        sortedViewsLock.lock();
+        try {
+            SortedView sortedView = sortedViews.get(key);
+            if (sortedView != null &&
+                    sortedView.personDataVersion() == personDataVersion &&
+                    sortedView.personMetricsVersion() == personMetricsVersion) {
+                return sortedView.persons();
+            }
+        } finally {
+            sortedViewsLock.unlock();
+        }
+
+        List<Person> persons = sortPersons(personDb.values().stream().filter(filterResult.filter()).toList(), sortResult);
+
+        sortedViewsLock.lock();
+        try {
+            sortedViews.put(key, new SortedView(personDataVersion, personMetricsVersion, persons));
+        } finally {
+            sortedViewsLock.unlock();
+        }
+        return persons;
+    }
+
+    /**
+     * Sort the persons.  If the sort has a sort key, it is calculated once
+     * for each person beforehand, so comparisons are between plain numbers.
+     * Like {@link Stream#sorted(Comparator)}, this is a stable sort.
+     */
+    static List<Person> sortPersons(List<Person> persons, SortResult sortResult) {
+        if (sortResult.sortKey() == null) {
+            return persons.stream().sorted(sortResult.personComparator()).toList();
+        }
+        double[] keys = new double[persons.size()];
+        Integer[] order = new Integer[persons.size()];
+        for (int i = 0; i < persons.size(); i++) {
+            keys[i] = sortResult.sortKey().applyAsDouble(persons.get(i));
+            order[i] = i;
+        }
+        Comparator<Integer> byKey = Comparator.comparingDouble(i -> keys[i]);
+        Arrays.sort(order, sortResult.descending() ? byKey.reversed() : byKey);
+
+        List<Person> sortedPersons = new ArrayList<>(persons.size());
+        for (Integer i : order) {
+            sortedPersons.add(persons.get(i));
+        }
+        return Collections.unmodifiableList(sortedPersons);
+    }
+
     /**
      * Returns a list of identifiers for photos that are associated
      * with a person
      * @param person the {@link Person} we are inspecting for photos
      */
     public List<Long> getPhotoIdsForPerson(Person person) {
-        return photoToPersonDb.values().stream()
-                .filter(x -> x.getPersonIndex() == person.getIndex())
-                .map(PhotoToPerson::getPhotoIndex)
-                .toList();
+        return mediaByPerson.getPhotoIdsForPerson(person);
     }
 
     /**
@@ -341,7 +455,7 @@ public class EnhancedPersonList {
         myMap.put("name", safeHtml(deserializedPersonFile.getName()));
         myMap.put("last_modified", deserializedPersonFile.getLastModified().truncatedTo(ChronoUnit.SECONDS).toString());
         myMap.put("lifespan", lifespan.renderLifespan(deserializedPersonFile));
-        myMap.put("photo_count", String.valueOf(getPhotoIdsForPerson(p).size()));
+        myMap.put("photo_count", String.valueOf(mediaByPerson.getPhotoCount(p.getIndex())));
 
         if (deserializedPersonFile.getImageUrl().isBlank()) {
             myMap.put("person_image", "");
@@ -368,22 +482,28 @@ public class EnhancedPersonList {
      */
     public SortResult determineSorting(String sort) {
         String currentSortValue;
-        Comparator<Person> personComparator;
+        Comparator<Person> personComparator = null;
+        // the value each person is sorted by, for most sorts.  This is calculated
+        // once per person when sorting, rather than on every comparison.
+        ToDoubleFunction<Person> sortKey = null;
+        boolean descending = false;
         switch (sort) {
             case "bda" -> {
-                personComparator = Comparator.comparing(x -> x.getBirthday().toLocalDate().orElse(LocalDate.MIN));
+                sortKey = x -> x.getBirthday().toLocalDate().orElse(LocalDate.MIN).toEpochDay();
                 currentSortValue = "Birthday, ascending";
             }
             case "bdd" -> {
-                personComparator = Comparator.comparing(x -> x.getBirthday().toLocalDate().orElse(LocalDate.MIN), Comparator.reverseOrder());
+                sortKey = x -> x.getBirthday().toLocalDate().orElse(LocalDate.MIN).toEpochDay();
+                descending = true;
                 currentSortValue = "Birthday, descending";
             }
             case "dda" -> {
-                personComparator = Comparator.comparing(x -> x.getDeathday().toLocalDate().orElse(LocalDate.MIN));
+                sortKey = x -> x.getDeathday().toLocalDate().orElse(LocalDate.MIN).toEpochDay();
                 currentSortValue = "Deathday, ascending";
             }
             case "ddd" -> {
-                personComparator = Comparator.comparing(x -> x.getDeathday().toLocalDate().orElse(LocalDate.MIN), Comparator.reverseOrder());
+                sortKey = x -> x.getDeathday().toLocalDate().orElse(LocalDate.MIN).toEpochDay();
+                descending = true;
                 currentSortValue = "Deathday, descending";
             }
             case "na" -> {
@@ -395,250 +515,264 @@ public class EnhancedPersonList {
                 currentSortValue = "Name, descending";
             }
             case "pca" -> {
-                personComparator = Comparator.comparing(x -> getPhotoIdsForPerson(x).size());
+                sortKey = x -> mediaByPerson.getPhotoCount(x.getIndex());
                 currentSortValue = "Photos count, ascending";
             }
             case "pcd" -> {
-                personComparator = Comparator.comparing(x -> getPhotoIdsForPerson(x).size(), Comparator.reverseOrder());
+                sortKey = x -> mediaByPerson.getPhotoCount(x.getIndex());
+                descending = true;
                 currentSortValue = "Photos count, descending";
             }
             case "lma" -> {
-                personComparator = Comparator.comparing(x -> personLruCache.getCachedPersonFile(x.getId().toString()).getLastModified());
+                sortKey = x -> personLruCache.getCachedPersonFile(x.getId().toString()).getLastModified().toEpochMilli();
                 currentSortValue = "Last modified, ascending";
             }
             case "lmd" -> {
-                personComparator = Comparator.comparing(x -> personLruCache.getCachedPersonFile(x.getId().toString()).getLastModified(), Comparator.reverseOrder());
+                sortKey = x -> personLruCache.getCachedPersonFile(x.getId().toString()).getLastModified().toEpochMilli();
+                descending = true;
                 currentSortValue = "Last modified, descending";
             }
 
             case "cbpa" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getBioImageCount());
+                sortKey = x -> personMetricsMap.get(x.getId()).getBioImageCount();
                 currentSortValue = "Count of biography photos, ascending";
             }
 
             case "cbpd" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getBioImageCount(), Comparator.reverseOrder());
+                sortKey = x -> personMetricsMap.get(x.getId()).getBioImageCount();
+                descending = true;
                 currentSortValue = "Count of biography photos, descending";
             }
 
             case "rcbpapa" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getImageCount() == 0 ? 0 :
-                        personMetricsMap.get(x.getId()).getBioImageCount() / (double) personMetricsMap.get(x.getId()).getImageCount());
+                sortKey = x -> personMetricsMap.get(x.getId()).getImageCount() == 0 ? 0 : personMetricsMap.get(x.getId()).getBioImageCount() / (double) personMetricsMap.get(x.getId()).getImageCount();
                 currentSortValue = "Ratio of biography photos to all photos, ascending";
             }
 
             case "rcbpapd" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getImageCount() == 0 ? 0 :
-                        personMetricsMap.get(x.getId()).getBioImageCount() / (double) personMetricsMap.get(x.getId()).getImageCount(), Comparator.reverseOrder());
+                sortKey = x -> personMetricsMap.get(x.getId()).getImageCount() == 0 ? 0 : personMetricsMap.get(x.getId()).getBioImageCount() / (double) personMetricsMap.get(x.getId()).getImageCount();
+                descending = true;
                 currentSortValue = "Ratio of biography photos to all photos, descending";
             }
 
             case "rcapbpa" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getBioImageCount() == 0 ? 0 :
-                        personMetricsMap.get(x.getId()).getImageCount() / (double) personMetricsMap.get(x.getId()).getBioImageCount());
+                sortKey = x -> personMetricsMap.get(x.getId()).getBioImageCount() == 0 ? 0 : personMetricsMap.get(x.getId()).getImageCount() / (double) personMetricsMap.get(x.getId()).getBioImageCount();
                 currentSortValue = "Ratio of all photos to biography photos, ascending";
             }
 
             case "rcapbpd" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getBioImageCount() == 0 ? 0 :
-                        personMetricsMap.get(x.getId()).getImageCount() / (double) personMetricsMap.get(x.getId()).getBioImageCount(), Comparator.reverseOrder());
+                sortKey = x -> personMetricsMap.get(x.getId()).getBioImageCount() == 0 ? 0 : personMetricsMap.get(x.getId()).getImageCount() / (double) personMetricsMap.get(x.getId()).getBioImageCount();
+                descending = true;
                 currentSortValue = "Ratio of all photos to biography photos, descending";
             }
 
             case "cbva" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getBioVideoCount());
+                sortKey = x -> personMetricsMap.get(x.getId()).getBioVideoCount();
                 currentSortValue = "Count of biography videos, ascending";
             }
 
             case "cbvd" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getBioVideoCount(), Comparator.reverseOrder());
+                sortKey = x -> personMetricsMap.get(x.getId()).getBioVideoCount();
+                descending = true;
                 currentSortValue = "Count of biography videos, descending";
             }
 
             case "rcbvava" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getVideoCount() == 0 ? 0 :
-                        personMetricsMap.get(x.getId()).getBioVideoCount() / (double) personMetricsMap.get(x.getId()).getVideoCount());
+                sortKey = x -> personMetricsMap.get(x.getId()).getVideoCount() == 0 ? 0 : personMetricsMap.get(x.getId()).getBioVideoCount() / (double) personMetricsMap.get(x.getId()).getVideoCount();
                 currentSortValue = "Ratio of biography videos to all videos, ascending";
             }
 
             case "rcbvavd" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getVideoCount() == 0 ? 0 :
-                        personMetricsMap.get(x.getId()).getBioVideoCount() / (double) personMetricsMap.get(x.getId()).getVideoCount(), Comparator.reverseOrder());
+                sortKey = x -> personMetricsMap.get(x.getId()).getVideoCount() == 0 ? 0 : personMetricsMap.get(x.getId()).getBioVideoCount() / (double) personMetricsMap.get(x.getId()).getVideoCount();
+                descending = true;
                 currentSortValue = "Ratio of biography videos to all videos, descending";
             }
 
             case "rcavbva" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getBioVideoCount() == 0 ? 0 :
-                         personMetricsMap.get(x.getId()).getVideoCount() / (double) personMetricsMap.get(x.getId()).getBioVideoCount());
+                sortKey = x -> personMetricsMap.get(x.getId()).getBioVideoCount() == 0 ? 0 : personMetricsMap.get(x.getId()).getVideoCount() / (double) personMetricsMap.get(x.getId()).getBioVideoCount();
                 currentSortValue = "Ratio of all videos to biography videos, ascending";
             }
 
             case "rcavbvd" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getBioVideoCount() == 0 ? 0 :
-                        personMetricsMap.get(x.getId()).getVideoCount() / (double) personMetricsMap.get(x.getId()).getBioVideoCount(), Comparator.reverseOrder());
+                sortKey = x -> personMetricsMap.get(x.getId()).getBioVideoCount() == 0 ? 0 : personMetricsMap.get(x.getId()).getVideoCount() / (double) personMetricsMap.get(x.getId()).getBioVideoCount();
+                descending = true;
                 currentSortValue = "Ratio of all videos to biography videos, descending";
             }
 
             case "vca" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getVideoCount());
+                sortKey = x -> personMetricsMap.get(x.getId()).getVideoCount();
                 currentSortValue = "Count of videos, ascending";
             }
 
             case "vcd" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getVideoCount(), Comparator.reverseOrder());
+                sortKey = x -> personMetricsMap.get(x.getId()).getVideoCount();
+                descending = true;
                 currentSortValue = "Count of videos, descending";
             }
 
             case "ccra" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getCountCloseRelatives());
+                sortKey = x -> personMetricsMap.get(x.getId()).getCountCloseRelatives();
                 currentSortValue = "Count of close relatives, ascending";
             }
 
             case "ccrd" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getCountCloseRelatives(), Comparator.reverseOrder());
+                sortKey = x -> personMetricsMap.get(x.getId()).getCountCloseRelatives();
+                descending = true;
                 currentSortValue = "Count of close relatives, descending";
             }
 
             case "cfca" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getCountFirstCousins());
+                sortKey = x -> personMetricsMap.get(x.getId()).getCountFirstCousins();
                 currentSortValue = "Count of first cousins, ascending";
             }
 
             case "cfcd" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getCountFirstCousins(), Comparator.reverseOrder());
+                sortKey = x -> personMetricsMap.get(x.getId()).getCountFirstCousins();
+                descending = true;
                 currentSortValue = "Count of first cousins, descending";
             }
 
             case "cca" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getCousinsCount());
+                sortKey = x -> personMetricsMap.get(x.getId()).getCousinsCount();
                 currentSortValue = "Count of all cousins, ascending";
             }
 
             case "ccd" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getCousinsCount(), Comparator.reverseOrder());
+                sortKey = x -> personMetricsMap.get(x.getId()).getCousinsCount();
+                descending = true;
                 currentSortValue = "Count of all cousins, descending";
             }
 
             case "rfcaca" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getCousinsCount()  == 0 ? 0 : (float) personMetricsMap.get(x.getId()).getCountFirstCousins() / personMetricsMap.get(x.getId()).getCousinsCount());
+                sortKey = x -> personMetricsMap.get(x.getId()).getCousinsCount() == 0 ? 0 : (float) personMetricsMap.get(x.getId()).getCountFirstCousins() / personMetricsMap.get(x.getId()).getCousinsCount();
                 currentSortValue = "Ratio of first cousins to all cousins, ascending";
             }
 
             case "rfcacd" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getCousinsCount()  == 0 ? 0 : (float) personMetricsMap.get(x.getId()).getCountFirstCousins() / personMetricsMap.get(x.getId()).getCousinsCount(), Comparator.reverseOrder());
+                sortKey = x -> personMetricsMap.get(x.getId()).getCousinsCount() == 0 ? 0 : (float) personMetricsMap.get(x.getId()).getCountFirstCousins() / personMetricsMap.get(x.getId()).getCousinsCount();
+                descending = true;
                 currentSortValue = "Ratio of first cousins to all cousins, descending";
             }
 
             case "caa" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getCountAncestors());
+                sortKey = x -> personMetricsMap.get(x.getId()).getCountAncestors();
                 currentSortValue = "Count of ancestors, ascending";
             }
 
             case "cad" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getCountAncestors(), Comparator.reverseOrder());
+                sortKey = x -> personMetricsMap.get(x.getId()).getCountAncestors();
+                descending = true;
                 currentSortValue = "Count of ancestors, descending";
             }
 
             case "cda" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getCountDescendants());
+                sortKey = x -> personMetricsMap.get(x.getId()).getCountDescendants();
                 currentSortValue = "Count of descendants, ascending";
             }
 
             case "cdd" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getCountDescendants(), Comparator.reverseOrder());
+                sortKey = x -> personMetricsMap.get(x.getId()).getCountDescendants();
+                descending = true;
                 currentSortValue = "Count of descendants, descending";
             }
 
             case "aa" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getAgeYears());
+                sortKey = x -> personMetricsMap.get(x.getId()).getAgeYears();
                 currentSortValue = "Age, ascending";
             }
 
             case "ad" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getAgeYears(), Comparator.reverseOrder());
+                sortKey = x -> personMetricsMap.get(x.getId()).getAgeYears();
+                descending = true;
                 currentSortValue = "Age, descending";
             }
 
             case "bsa" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getBioCharCount());
+                sortKey = x -> personMetricsMap.get(x.getId()).getBioCharCount();
                 currentSortValue = "Biography size, ascending";
             }
 
             case "bsd" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getBioCharCount(), Comparator.reverseOrder());
+                sortKey = x -> personMetricsMap.get(x.getId()).getBioCharCount();
+                descending = true;
                 currentSortValue = "Biography size, descending";
             }
 
             case "rbsnsa" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getNotesCharCount() == 0 ? 0 :
-                        personMetricsMap.get(x.getId()).getBioCharCount() / (double)personMetricsMap.get(x.getId()).getNotesCharCount());
+                sortKey = x -> personMetricsMap.get(x.getId()).getNotesCharCount() == 0 ? 0 : personMetricsMap.get(x.getId()).getBioCharCount() / (double)personMetricsMap.get(x.getId()).getNotesCharCount();
                 currentSortValue = "Ratio of biography size to notes size, ascending";
             }
 
             case "rbsnsd" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getNotesCharCount() == 0 ? 0 :
-                        personMetricsMap.get(x.getId()).getBioCharCount() / (double)personMetricsMap.get(x.getId()).getNotesCharCount(), Comparator.reverseOrder());
+                sortKey = x -> personMetricsMap.get(x.getId()).getNotesCharCount() == 0 ? 0 : personMetricsMap.get(x.getId()).getBioCharCount() / (double)personMetricsMap.get(x.getId()).getNotesCharCount();
+                descending = true;
                 currentSortValue = "Ratio of biography size to notes size, descending";
             }
 
             case "rnsbsa" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getBioCharCount() == 0 ? 0 :
-                         personMetricsMap.get(x.getId()).getNotesCharCount() / (double)personMetricsMap.get(x.getId()).getBioCharCount());
+                sortKey = x -> personMetricsMap.get(x.getId()).getBioCharCount() == 0 ? 0 : personMetricsMap.get(x.getId()).getNotesCharCount() / (double)personMetricsMap.get(x.getId()).getBioCharCount();
                 currentSortValue = "Ratio of notes size to biography size, ascending";
             }
 
             case "rnsbsd" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getBioCharCount() == 0 ? 0 :
-                        personMetricsMap.get(x.getId()).getNotesCharCount() / (double)personMetricsMap.get(x.getId()).getBioCharCount(), Comparator.reverseOrder());
+                sortKey = x -> personMetricsMap.get(x.getId()).getBioCharCount() == 0 ? 0 : personMetricsMap.get(x.getId()).getNotesCharCount() / (double)personMetricsMap.get(x.getId()).getBioCharCount();
+                descending = true;
                 currentSortValue = "Ratio of notes size to biography size, descending";
             }
 
             case "inta" -> {
-                personComparator = Comparator.comparing(x -> getInterestingScore(personMetricsMap.get(x.getId())));
+                sortKey = x -> getInterestingScore(personMetricsMap.get(x.getId()));
                 currentSortValue = "Interesting (combination of biography, pictures, videos...), ascending";
             }
 
             case "intd" -> {
-                personComparator = Comparator.comparing(x -> getInterestingScore(personMetricsMap.get(x.getId())), Comparator.reverseOrder());
+                sortKey = x -> getInterestingScore(personMetricsMap.get(x.getId()));
+                descending = true;
                 currentSortValue = "Interesting (combination of biography, pictures, videos...), descending";
             }
 
             case "nsa" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getNotesCharCount());
+                sortKey = x -> personMetricsMap.get(x.getId()).getNotesCharCount();
                 currentSortValue = "Size of notes, ascending";
             }
 
             case "nsd" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getNotesCharCount(), Comparator.reverseOrder());
+                sortKey = x -> personMetricsMap.get(x.getId()).getNotesCharCount();
+                descending = true;
                 currentSortValue = "Size of notes, descending";
             }
 
             case "ftsa" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getFamilyTreeSize());
+                sortKey = x -> personMetricsMap.get(x.getId()).getFamilyTreeSize();
                 currentSortValue = "Size of family tree, ascending";
             }
 
             case "ftsd" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getFamilyTreeSize(), Comparator.reverseOrder());
+                sortKey = x -> personMetricsMap.get(x.getId()).getFamilyTreeSize();
+                descending = true;
                 currentSortValue = "Size of family tree, descending";
             }
 
             case "ssa" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getSummarySize());
+                sortKey = x -> personMetricsMap.get(x.getId()).getSummarySize();
                 currentSortValue = "Size of summary, ascending";
             }
 
             case "ssd" -> {
-                personComparator = Comparator.comparing(x -> personMetricsMap.get(x.getId()).getSummarySize(), Comparator.reverseOrder());
+                sortKey = x -> personMetricsMap.get(x.getId()).getSummarySize();
+                descending = true;
                 currentSortValue = "Size of summary, descending";
             }
 
             default -> {
-                personComparator = Comparator.comparing(Person::getIndex);
+                sortKey = Person::getIndex;
                 currentSortValue = "None (sorted by index, i.e. by order of when they were added)";
             }
         }
-        return new SortResult(personComparator, currentSortValue);
+        if (sortKey != null) {
+            personComparator = descending ? Comparator.comparingDouble(sortKey).reversed() : Comparator.comparingDouble(sortKey);
+        }
+        return new SortResult(personComparator, currentSortValue, sortKey, descending);
     }
 
 }
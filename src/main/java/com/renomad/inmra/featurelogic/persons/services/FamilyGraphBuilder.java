@@ -4,27 +4,66 @@ import com.renomad.inmra.featurelogic.persons.*;
 import com.renomad.minum.database.AbstractDb;
 import com.renomad.minum.htmlparsing.HtmlParser;
 import com.renomad.minum.logging.ILogger;
+import com.renomad.minum.testing.StopwatchUtils;
 import com.renomad.minum.utils.StacktraceUtils;
 
-import java.util.Map;
-import java.util.UUID;
+import java.time.LocalDate;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 
 public class FamilyGraphBuilder {
 
     private final AbstractDb<Person> personDb;
     private final IPersonLruCache personLruCache;
     private final ILogger logger;
-    protected final Map<UUID, PersonNode> personNodes;
+    /**
+     * The nodes of the graph, by the id of each person.  A full rebuild
+     * makes a new map and puts it here when it is complete, so anyone
+     * reading the graph meanwhile sees the whole of the old one.
+     */
+    protected volatile Map<UUID, PersonNode> personNodes;
     HtmlParser htmlParser;
 
+    /**
+     * Which separate family tree each person belongs to. Kept current
+     * as we add, update, and delete nodes.
+     */
+    private final FamilyTreeComponents familyTreeComponents;
+
+    /**
+     * If true, the full graph build reads and parses the persons on
+     * multiple threads.  See {@link #buildFamilyGraphInParallel()}
+     */
+    private final boolean buildInParallel;
+
+    /**
+     * The {@link HtmlParser} is not shared between threads during a parallel
+     * build - each worker thread gets its own.
+     */
+    private static final ThreadLocal<HtmlParser> threadLocalParser = ThreadLocal.withInitial(HtmlParser::new);
+
     public FamilyGraphBuilder(
             AbstractDb<Person> personDb,
             IPersonLruCache personLruCache,
             ILogger logger) {
+        this(personDb, personLruCache, logger, false);
+    }
+
+    /**
+     * @param buildInParallel whether to build the whole graph using all the
+     *                        cores of the host.  See {@link #buildFamilyGraphInParallel()}
+     */
+    public FamilyGraphBuilder(
+            AbstractDb<Person> personDb,
+            IPersonLruCache personLruCache,
+            ILogger logger,
+            boolean buildInParallel) {
         this.personDb = personDb;
         this.personLruCache = personLruCache;
         this.logger = logger;
+        this.buildInParallel = buildInParallel;
         htmlParser = new HtmlParser();
 
         // build the graph of relationships
@@ -38,44 +77,224 @@ public class FamilyGraphBuilder {
 
         // now build the graph
         this.personNodes = new ConcurrentHashMap<>();
+        this.familyTreeComponents = new FamilyTreeComponents();
         buildFamilyGraph();
     }
 
-    public void updateNode(PersonFile newPersonFileData) {
-        PersonNode personNode = this.personNodes.get(newPersonFileData.getId());
-        FamilyGraph.updateNode(personNode, newPersonFileData, this.personNodes, this.personDb.values(), this.personLruCache);
+    /**
+     * Updates the node for this person in the graph.
+     * @return the ids of the persons whose metrics might have changed because of
+     *         this update - see {@link FamilyGraph#personsWithMetricsAffectedBy(Collection)}.
+     *         If the relationships did not change, that is just this person.
+     */
+    public Set<UUID> updateNode(PersonFile newPersonFileData) {
+        UUID id = newPersonFileData.getId();
+        PersonNode personNode = this.personNodes.get(id);
+        Set<UUID> previousRelativeIds = FamilyTreeComponents.getRelativeIds(personNode);
+        Set<Map.Entry<String, UUID>> previousRelations = getRelations(personNode);
+
+        // before the change, look outwards from the relatives, in case some relationships are removed
+        Set<UUID> affectedPersons = new HashSet<>(FamilyGraph.personsWithMetricsAffectedBy(getSelfAndRelatives(personNode)));
+
+        FamilyGraph.updateNode(personNode, newPersonFileData, this.personNodes, FamilyGraph.buildPersonIndex(personDb.values()), this.personLruCache);
+        familyTreeComponents.personUpdated(id, previousRelativeIds, this.personNodes);
+
+        PersonNode updatedPersonNode = this.personNodes.get(id);
+        if (previousRelations.equals(getRelations(updatedPersonNode))) {
+            // nobody else's metrics depend on this person's own details
+            return Set.of(id);
+        }
+        affectedPersons.addAll(FamilyGraph.personsWithMetricsAffectedBy(getSelfAndRelatives(updatedPersonNode)));
+        return affectedPersons;
     }
 
-    public void createNewNode(UUID id) {
-        FamilyGraph.createNodeWithConnections(personLruCache.getCachedPersonFile(id.toString()), personDb.values(), personNodes, personLruCache);
+    /**
+     * Adds a node for this new person to the graph.
+     * @return the ids of the persons whose metrics might have changed because of
+     *         this person being added, including this person.
+     */
+    public Set<UUID> createNewNode(UUID id) {
+        FamilyGraph.createNodeWithConnections(personLruCache.getCachedPersonFile(id.toString()), FamilyGraph.buildPersonIndex(personDb.values()), personNodes, personLruCache);
+        familyTreeComponents.personAdded(id, this.personNodes);
+        Set<UUID> affectedPersons = new HashSet<>();
+        affectedPersons.add(id);
+        PersonNode personNode = this.personNodes.get(id);
+        if (personNode != null) {
+            affectedPersons.addAll(FamilyGraph.personsWithMetricsAffectedBy(getSelfAndRelatives(personNode)));
+        }
+        return affectedPersons;
+    }
+
+    private static List<PersonNode> getSelfAndRelatives(PersonNode personNode) {
+        List<PersonNode> selfAndRelatives = new ArrayList<>();
+        selfAndRelatives.add(personNode);
+        for (Map.Entry<String, PersonNode> connection : personNode.getConnections()) {
+            selfAndRelatives.add(connection.getValue());
+        }
+        return selfAndRelatives;
     }
 
-    public void deleteNode(UUID id) {
+    /**
+     * The relationships of this person, as pairs of the kind of relationship and the relative's id
+     */
+    private static Set<Map.Entry<String, UUID>> getRelations(PersonNode personNode) {
+        Set<Map.Entry<String, UUID>> relations = new HashSet<>();
+        for (Map.Entry<String, PersonNode> connection : personNode.getConnections()) {
+            relations.add(Map.entry(connection.getKey(), connection.getValue().getId()));
+        }
+        return relations;
+    }
+
+    /**
+     * Removes the node for this person from the graph.
+     * @return the ids of the persons whose metrics might have changed because of
+     *         this person being removed, not including this person.
+     */
+    public Set<UUID> deleteNode(UUID id) {
         PersonNode oldPersonNode = this.personNodes.get(id);
+
+        // look outwards before unlinking, since afterwards the relatives can't be reached from here
+        Set<UUID> affectedPersons = new HashSet<>(FamilyGraph.personsWithMetricsAffectedBy(getSelfAndRelatives(oldPersonNode)));
+        affectedPersons.remove(id);
+
         FamilyGraph.deleteNode(oldPersonNode, this.personNodes);
+        familyTreeComponents.personRemoved(id, this.personNodes);
+        return affectedPersons;
     }
 
     /**
      * Rebuilds the family graph.
+     * <br>
+     * The relations of each person are resolved through an index of persons
+     * by id, built once at the start, so the time this takes grows linearly
+     * with the number of persons and relationships.  The new nodes replace
+     * the old ones all at once at the end.
      */
     public void buildFamilyGraph() {
+        if (buildInParallel) {
+            buildFamilyGraphInParallel();
+            return;
+        }
+        var stopwatch = new StopwatchUtils().startTimer();
 
+        Map<UUID, PersonNode> newPersonNodes = new ConcurrentHashMap<>();
 
-            this.personNodes.clear();
+        Map<String, Person> personIndex = FamilyGraph.buildPersonIndex(personDb.values());
+        for (var person : personDb.values()) {
+            try {
+                FamilyGraph.createNodeWithConnections(personLruCache.getCachedPersonFile(person), personIndex, newPersonNodes, personLruCache);
+            } catch (FamilyGraphProcessingException ex) {
+                // if this exception is thrown, there is something wrong in our data
+                this.logger.logAsyncError(() -> "Error building family graph: " + ex.getMessage() + " " + StacktraceUtils.stackTraceToString(ex));
+            }
+        }
 
-            for (var person : personDb.values()) {
-                try {
-                    FamilyGraph.createNodeWithConnections(personLruCache.getCachedPersonFile(person), personDb.values(), personNodes, personLruCache);
-                } catch (FamilyGraphProcessingException ex) {
-                    // if this exception is thrown, there is something wrong in our data
-                    this.logger.logAsyncError(() -> "Error building family graph: " + ex.getMessage() + " " + StacktraceUtils.stackTraceToString(ex));
+        this.personNodes = newPersonNodes;
+        familyTreeComponents.rebuild(newPersonNodes);
+
+        long millis = stopwatch.stopTimer();
+        int nodeCount = personNodes.size();
+        int edgeCount = countEdges();
+        logger.logDebug(() -> "Built family graph of %d nodes and %d edges in %d milliseconds".formatted(nodeCount, edgeCount, millis));
+    }
+
+    /**
+     * Rebuilds the family graph, spreading the work across the cores of the host.
+     * <br>
+     * This runs in two phases.  First, on a fork-join pool, each person's file is read and
+     * their relation fields parsed and resolved to ids (see {@link FamilyGraph#resolveRelations}),
+     * with a parser per thread.  Then, on this thread, the nodes are created and connected in
+     * the same order as the persons in the database, so that the resulting graph is the
+     * same no matter how the work was split up.  The new nodes replace the old ones all at
+     * once at the end.
+     */
+    public void buildFamilyGraphInParallel() {
+        var stopwatch = new StopwatchUtils().startTimer();
+
+        List<Person> persons = new ArrayList<>(personDb.values());
+        Map<String, Person> personIndex = FamilyGraph.buildPersonIndex(persons);
+        int threadCount = Runtime.getRuntime().availableProcessors();
+
+        List<FamilyGraph.PersonRelations> allPersonRelations;
+        ForkJoinPool forkJoinPool = new ForkJoinPool(threadCount);
+        try {
+            allPersonRelations = forkJoinPool.submit(() -> persons.parallelStream()
+                    .map(person -> resolveRelationsForPerson(person, personIndex))
+                    .filter(Objects::nonNull)
+                    .toList()).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            logger.logAsyncError(() -> "Interrupted while building family graph in parallel");
+            return;
+        } catch (ExecutionException ex) {
+            logger.logAsyncError(() -> "Error building family graph in parallel: " + StacktraceUtils.stackTraceToString(ex));
+            return;
+        } finally {
+            forkJoinPool.shutdown();
+        }
+
+        // merge into new nodes, deterministically
+        Map<UUID, PersonNode> newPersonNodes = new ConcurrentHashMap<>(allPersonRelations.size() * 2);
+        for (FamilyGraph.PersonRelations personRelations : allPersonRelations) {
+            newPersonNodes.put(personRelations.id(), new PersonNode(personRelations.id(), personRelations.name(), personRelations.gender(), personRelations.isLiving()));
+        }
+        for (FamilyGraph.PersonRelations personRelations : allPersonRelations) {
+            List<Map.Entry<String, PersonNode>> connections = new ArrayList<>(personRelations.relations().size());
+            for (Map.Entry<String, UUID> relation : personRelations.relations()) {
+                PersonNode relativeNode = newPersonNodes.get(relation.getValue());
+                // if the relative's own file failed to process, they still get a node, like in the single-threaded build
+                if (relativeNode == null) {
+                    PersonFile relativeFile = personLruCache.getCachedPersonFile(relation.getValue().toString());
+                    boolean isLiving = ObscureInformationProcessor.isLiving(relativeFile.getBorn(), relativeFile.getDied(), LocalDate.now());
+                    relativeNode = FamilyGraph.getPersonNode(relation.getValue(), personIndex.get(relation.getValue().toString()).getName(), newPersonNodes, relativeFile.getGender(), isLiving);
                 }
+                connections.add(Map.entry(relation.getKey(), relativeNode));
             }
+            newPersonNodes.get(personRelations.id()).setConnections(connections);
+        }
+
+        this.personNodes = newPersonNodes;
+        familyTreeComponents.rebuild(newPersonNodes);
+
+        long millis = stopwatch.stopTimer();
+        int nodeCount = personNodes.size();
+        int edgeCount = countEdges();
+        logger.logDebug(() -> "Built family graph in parallel on %d threads, %d nodes and %d edges in %d milliseconds".formatted(threadCount, nodeCount, edgeCount, millis));
+    }
+
+    /**
+     * Runs on a worker thread of the parallel build.  Returns null if this
+     * person's data could not be processed, after logging the problem.
+     */
+    private FamilyGraph.PersonRelations resolveRelationsForPerson(Person person, Map<String, Person> personIndex) {
+        try {
+            return FamilyGraph.resolveRelations(personLruCache.getCachedPersonFile(person), personIndex, threadLocalParser.get());
+        } catch (FamilyGraphProcessingException ex) {
+            // if this exception is thrown, there is something wrong in our data
+            this.logger.logAsyncError(() -> "Error building family graph: " + ex.getMessage() + " " + StacktraceUtils.stackTraceToString(ex));
+            return null;
+        }
+    }
 
+    /**
+     * Count of all the connections between nodes in the graph.  Note
+     * that a relationship appears from both sides, e.g. a parent has a
+     * "child" connection and the child has a "parent" connection.
+     */
+    public int countEdges() {
+        int edgeCount = 0;
+        for (PersonNode personNode : personNodes.values()) {
+            edgeCount += personNode.getConnections().size();
+        }
+        return edgeCount;
     }
 
     public Map<UUID, PersonNode> getPersonNodes() {
         return personNodes;
     }
 
+    public FamilyTreeComponents getFamilyTreeComponents() {
+        return familyTreeComponents;
+    }
+
 }
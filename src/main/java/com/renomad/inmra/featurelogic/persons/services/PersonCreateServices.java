@@ -6,6 +6,7 @@ import com.renomad.inmra.auth.User;
 import com.renomad.inmra.featurelogic.persons.Date;
 import com.renomad.inmra.featurelogic.persons.*;
 import com.renomad.inmra.utils.Auditor;
+import com.renomad.inmra.utils.CachedData;
 import com.renomad.inmra.utils.FileWriteStringWrapper;
 import com.renomad.inmra.utils.IFileUtils;
 import com.renomad.inmra.utils.MemoriaContext;
@@ -33,6 +34,8 @@ public class PersonCreateServices {
     private final IPersonLruCache personLruCache;
     private final FamilyGraphBuilder familyGraphBuilder;
     private final GettingOlderLoop gettingOlderLoop;
+    private final PersonSearchIndex personSearchIndex;
+    private final PersonTypeahead personTypeahead;
     private final Random random;
     private final TemplateProcessor extraFieldTemplateProcessor;
     private final IAuthUtils auth;
@@ -40,6 +43,7 @@ public class PersonCreateServices {
     private final Path personFileAuditDirectory;
     private final PersonAuditor personAuditor;
     private final Auditor auditor;
+    private final CachedData cachedData;
 
     public PersonCreateServices(
             PersonEndpoints personEndpoints,
@@ -49,14 +53,19 @@ public class PersonCreateServices {
             IAuthUtils auth,
             IPersonLruCache personLruCache,
             FamilyGraphBuilder familyGraphBuilder,
-            GettingOlderLoop gettingOlderLoop) {
+            GettingOlderLoop gettingOlderLoop,
+            PersonSearchIndex personSearchIndex,
+            PersonTypeahead personTypeahead) {
         this.personEndpoints = personEndpoints;
         this.logger = logger;
         this.personLruCache = personLruCache;
         this.familyGraphBuilder = familyGraphBuilder;
         this.gettingOlderLoop = gettingOlderLoop;
+        this.personSearchIndex = personSearchIndex;
+        this.personTypeahead = personTypeahead;
         var fileUtils = memoriaContext.getFileUtils();
         this.auditor = memoriaContext.getAuditor();
+        this.cachedData = memoriaContext.getCachedData();
         extraFieldTemplateProcessor = TemplateProcessor.buildProcessor(fileUtils.readTemplate("person/extra_field_template.html"));
         random = new Random();
         this.auth = auth;
@@ -551,13 +560,16 @@ public class PersonCreateServices {
 
         // add this person to the LRU cache
         personLruCache.putToPersonFileLruCache(personFile.getId().toString(), personFile);
+        personTypeahead.addOrUpdate(personFile);
+        cachedData.incrementPersonDataVersion();
 
         // if updating an existing person
+        Set<UUID> personsWithAffectedMetrics;
         if (id != null && !id.isBlank()) {
-            familyGraphBuilder.updateNode(personFile);
+            personsWithAffectedMetrics = familyGraphBuilder.updateNode(personFile);
         } else {
             // otherwise, create a new person
-            familyGraphBuilder.createNewNode(personFile.getId());
+            personsWithAffectedMetrics = familyGraphBuilder.createNewNode(personFile.getId());
         }
 
         // update the interesting people, so that if we have just added a new interesting
@@ -565,7 +577,7 @@ public class PersonCreateServices {
         // don't do this, they will only show up after the GettingOlder loop runs which
         // recalculates all birthdays and determines whether a person meets "interesting"
         // criteria.
-        gettingOlderLoop.updatePersonMetricsMap(personFile.getId());
+        gettingOlderLoop.updatePersonMetrics(personsWithAffectedMetrics);
         gettingOlderLoop.cacheInterestingPeople();
 
         return person;
@@ -586,6 +598,7 @@ public class PersonCreateServices {
                 diedDate);
         auditor.audit(() -> String.format("%s is adding information for a new person, %s id: %s", user.getUsername(), nameInput, person.getId()), user);
         personEndpoints.getPersonDb().write(person);
+        personSearchIndex.addOrUpdate(person);
 
         personAuditor.storePersonToAudit(person.getId(), person.serialize(), personAuditDirectory, person.getName());
 
@@ -625,6 +638,7 @@ public class PersonCreateServices {
         personAuditor.storePersonToAudit(updatedPerson.getId(), updatedPerson.serialize(), personAuditDirectory, person.getName());
 
         personEndpoints.getPersonDb().write(updatedPerson);
+        personSearchIndex.addOrUpdate(updatedPerson);
         // if we edited a person, remove them from the cache
         personLruCache.removeFromPersonFileLruCache(id.toString());
         return person;
@@ -3,7 +3,7 @@ package com.renomad.inmra.featurelogic.persons.services;
 import com.renomad.inmra.featurelogic.persons.IPersonLruCache;
 import com.renomad.inmra.featurelogic.persons.Person;
 import com.renomad.inmra.featurelogic.persons.PersonMetrics;
-import com.renomad.inmra.utils.DaitchMokotoffSoundex;
+import com.renomad.inmra.utils.CachedSoundex;
 import com.renomad.minum.database.AbstractDb;
 
 import java.util.*;
@@ -23,14 +23,24 @@ public class PersonSearch {
     private final AbstractDb<Person> personDb;
     private final IPersonLruCache personLruCache;
     private final Map<UUID, PersonMetrics> personMetricsMap;
-    private final DaitchMokotoffSoundex soundex;
+    private final CachedSoundex soundex;
+
+    /**
+     * If available, searches use this rather than examining every person
+     */
+    private final PersonSearchIndex personSearchIndex;
 
     public PersonSearch(AbstractDb<Person> personDb, IPersonLruCache personLruCache, Map<UUID, PersonMetrics> personMetricsMap) {
+        this(personDb, personLruCache, personMetricsMap, null);
+    }
+
+    public PersonSearch(AbstractDb<Person> personDb, IPersonLruCache personLruCache, Map<UUID, PersonMetrics> personMetricsMap, PersonSearchIndex personSearchIndex) {
 
         this.personDb = personDb;
         this.personLruCache = personLruCache;
         this.personMetricsMap = personMetricsMap;
-        this.soundex = new DaitchMokotoffSoundex();
+        this.soundex = new CachedSoundex(10_000);
+        this.personSearchIndex = personSearchIndex;
     }
 
     /**
@@ -45,6 +55,10 @@ public class PersonSearch {
             return new PersonSearchResult(List.of(), List.of());
         }
 
+        if (personSearchIndex != null) {
+            return personSearchIndex.search(searchQuery, shouldShowPrivateInformation, maxPersonCount);
+        }
+
         String[] splitName = searchQuery.split("\\s+", 5);
         mustBeTrue(splitName.length > 0, "if the input string is not null or blank, expect to get at least one value here");
         String firstName = splitName[0];
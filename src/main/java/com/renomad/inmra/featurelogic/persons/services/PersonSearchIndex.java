@@ -0,0 +1,240 @@
+package com.renomad.inmra.featurelogic.persons.services;
+
+import com.renomad.inmra.featurelogic.persons.Date;
+import com.renomad.inmra.featurelogic.persons.Person;
+import com.renomad.inmra.utils.CachedSoundex;
+import com.renomad.minum.database.AbstractDb;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.renomad.minum.utils.Invariants.mustBeTrue;
+
+/**
+ * An in-memory index of the names of persons, so that searching
+ * for persons does not require examining every person's name
+ * on every search.
+ * <br>
+ * There are two parts:
+ * <ul>
+ *     <li>
+ *         A trigram index - for each sequence of three characters found in a
+ *         lowercased name, the persons whose names contain it.  A search for a
+ *         piece of a name only has to check the persons who have all the
+ *         trigrams of that search.
+ *     </li>
+ *     <li>
+ *         A "sounds-like" index - for each Daitch-Mokotoff code of a word in
+ *         a name, the persons who have a word with that code.
+ *     </li>
+ * </ul>
+ * This must be kept current as persons are added, changed, and removed - see
+ * {@link #addOrUpdate(Person)} and {@link #remove(UUID)}.
+ */
+public class PersonSearchIndex {
+
+    /**
+     * The data we hold for each person, computed once as they are indexed
+     * @param lowercaseName their name, lowercased, for substring matches
+     * @param soundexCodes the Daitch-Mokotoff codes for each word of their name. Because
+     *                     these are precomputed, a search only has to encode the query.
+     */
+    record IndexedPerson(Person person, String lowercaseName, Set<String> soundexCodes) {}
+
+    private final Map<UUID, IndexedPerson> indexedPersons;
+    private final Map<String, Set<UUID>> trigramIndex;
+    private final Map<String, Set<UUID>> soundexIndex;
+    private final CachedSoundex soundex;
+    private final ReentrantLock lock;
+
+    public PersonSearchIndex(AbstractDb<Person> personDb) {
+        this(personDb.values());
+    }
+
+    public PersonSearchIndex(Collection<Person> persons) {
+        this.indexedPersons = new HashMap<>();
+        this.trigramIndex = new HashMap<>();
+        this.soundexIndex = new HashMap<>();
+        this.soundex = new CachedSoundex(10_000);
+        this.lock = new ReentrantLock();
+        for (Person person : persons) {
+            addOrUpdate(person);
+        }
+    }
+
+    /**
+     * Add a person to the index, or if they are already there,
+     * replace what we had for them.
+     */
+    public void addOrUpdate(Person person) {
+        String lowercaseName = person.getName().toLowerCase();
+        Set<String> soundexCodes = new HashSet<>();
+        for (String word : person.getName().split("\\s+")) {
+            soundexCodes.add(soundex.encode(word));
+        }
+        var indexedPerson = new IndexedPerson(person, lowercaseName, soundexCodes);
+
+        lock.lock();
+        try {
+            removeFromPostings(person.getId());
+            indexedPersons.put(person.getId(), indexedPerson);
+            for (String trigram : trigrams(lowercaseName)) {
+                trigramIndex.computeIfAbsent(trigram, x -> new HashSet<>()).add(person.getId());
+            }
+            for (String code : soundexCodes) {
+                soundexIndex.computeIfAbsent(code, x -> new HashSet<>()).add(person.getId());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove a person from the index
+     */
+    public void remove(UUID personId) {
+        lock.lock();
+        try {
+            removeFromPostings(personId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Search for persons by name.  This follows the same rules as searching
+     * through every person - see {@link PersonSearch#getPeople(String, boolean, int)}
+     * <br>
+     * The results are ordered by the index of the person in the database, that
+     * is, the order in which they were added.
+     */
+    public PersonSearchResult search(String searchQuery, boolean shouldShowPrivateInformation, int maxPersonCount) {
+        if (searchQuery == null || searchQuery.isBlank()) {
+            return new PersonSearchResult(List.of(), List.of());
+        }
+
+        String[] splitName = searchQuery.split("\\s+", 5);
+        mustBeTrue(splitName.length > 0, "if the input string is not null or blank, expect to get at least one value here");
+        String firstName = splitName[0].toLowerCase();
+        String encodedQuery = soundex.encode(splitName[0]);
+
+        // the extra words of the search, and their codes, which every result must match
+        List<String> extraWords = new ArrayList<>();
+        List<String> extraWordCodes = new ArrayList<>();
+        for (int i = 1; i < splitName.length; i++) {
+            extraWords.add(splitName[i].toLowerCase());
+            extraWordCodes.add(soundex.encode(splitName[i]));
+        }
+
+        List<Person> exactMatches = new ArrayList<>();
+        List<Person> soundsLikeMatches = new ArrayList<>();
+        lock.lock();
+        try {
+            for (IndexedPerson indexedPerson : findBySubstring(firstName)) {
+                if (isIncluded(indexedPerson, shouldShowPrivateInformation, extraWords, extraWordCodes)) {
+                    exactMatches.add(indexedPerson.person());
+                }
+            }
+            for (UUID personId : soundexIndex.getOrDefault(encodedQuery, Set.of())) {
+                IndexedPerson indexedPerson = indexedPersons.get(personId);
+                if (! indexedPerson.lowercaseName().contains(firstName) &&
+                        isIncluded(indexedPerson, shouldShowPrivateInformation, extraWords, extraWordCodes)) {
+                    soundsLikeMatches.add(indexedPerson.person());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        Comparator<Person> byIndex = Comparator.comparingLong(Person::getIndex);
+        List<Person> limitedExactMatches = exactMatches.stream().sorted(byIndex).limit(maxPersonCount).toList();
+        List<Person> limitedSoundsLikeMatches = soundsLikeMatches.stream().sorted(byIndex).limit(maxPersonCount - limitedExactMatches.size()).toList();
+        return new PersonSearchResult(limitedExactMatches, limitedSoundsLikeMatches);
+    }
+
+    /**
+     * Whether a person who matched the first word of a search is included in the results:
+     * unless we can show private information, they must be deceased, and they must match
+     * each extra word of the search, either by containing it or sounding like it.
+     */
+    private static boolean isIncluded(IndexedPerson indexedPerson, boolean shouldShowPrivateInformation, List<String> extraWords, List<String> extraWordCodes) {
+        if (! shouldShowPrivateInformation && indexedPerson.person().getDeathday().equals(Date.EMPTY)) {
+            return false;
+        }
+        for (int i = 0; i < extraWords.size(); i++) {
+            if (! (indexedPerson.lowercaseName().contains(extraWords.get(i)) ||
+                    indexedPerson.soundexCodes().contains(extraWordCodes.get(i)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find the persons whose lowercased name contains this lowercase text.  If the
+     * text is long enough to have trigrams, we only check the persons who have all of them.
+     * Must be called while holding the lock.
+     */
+    private List<IndexedPerson> findBySubstring(String lowercaseText) {
+        List<String> queryTrigrams = trigrams(lowercaseText);
+        Collection<UUID> candidates;
+        if (queryTrigrams.isEmpty()) {
+            candidates = indexedPersons.keySet();
+        } else {
+            // start with the rarest trigram, to examine as few persons as possible
+            Set<UUID> smallestPosting = null;
+            for (String trigram : queryTrigrams) {
+                Set<UUID> posting = trigramIndex.get(trigram);
+                if (posting == null) return List.of();
+                if (smallestPosting == null || posting.size() < smallestPosting.size()) {
+                    smallestPosting = posting;
+                }
+            }
+            candidates = smallestPosting;
+        }
+
+        List<IndexedPerson> results = new ArrayList<>();
+        for (UUID personId : candidates) {
+            IndexedPerson indexedPerson = indexedPersons.get(personId);
+            if (indexedPerson.lowercaseName().contains(lowercaseText)) {
+                results.add(indexedPerson);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Removes what we have indexed for this person.  Must be called while holding the lock.
+     */
+    private void removeFromPostings(UUID personId) {
+        IndexedPerson previous = indexedPersons.remove(personId);
+        if (previous == null) return;
+        for (String trigram : trigrams(previous.lowercaseName())) {
+            removeFromPosting(trigramIndex, trigram, personId);
+        }
+        for (String code : previous.soundexCodes()) {
+            removeFromPosting(soundexIndex, code, personId);
+        }
+    }
+
+    private static void removeFromPosting(Map<String, Set<UUID>> index, String key, UUID personId) {
+        Set<UUID> posting = index.get(key);
+        if (posting == null) return;
+        posting.remove(personId);
+        if (posting.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    /**
+     * Every sequence of three characters in the text
+     */
+    static List<String> trigrams(String text) {
+        List<String> trigrams = new ArrayList<>();
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            trigrams.add(text.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+}
@@ -1,11 +1,13 @@
 package com.renomad.inmra.featurelogic.persons.services;
 
+import com.renomad.inmra.auth.GettingOlderLoop;
 import com.renomad.inmra.auth.User;
 import com.renomad.inmra.featurelogic.persons.IPersonLruCache;
 import com.renomad.inmra.featurelogic.persons.Person;
 import com.renomad.inmra.featurelogic.photo.PhotoService;
 import com.renomad.inmra.featurelogic.photo.Photograph;
 import com.renomad.inmra.utils.Auditor;
+import com.renomad.inmra.utils.CachedData;
 import com.renomad.inmra.utils.IFileUtils;
 import com.renomad.minum.database.AbstractDb;
 import com.renomad.minum.logging.ILogger;
@@ -17,6 +19,8 @@ import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.Set;
+import java.util.UUID;
 
 /**
  * A class responsible for the tasks when putting a person in the trash.
@@ -41,6 +45,10 @@ public class PersonTrasher {
     private final IPersonLruCache personLruCache;
     private final PhotoService photoService;
     private final FamilyGraphBuilder familyGraphBuilder;
+    private final PersonSearchIndex personSearchIndex;
+    private final PersonTypeahead personTypeahead;
+    private final GettingOlderLoop gettingOlderLoop;
+    private final CachedData cachedData;
     private final Auditor auditor;
 
     public PersonTrasher(
@@ -51,6 +59,10 @@ public class PersonTrasher {
             IPersonLruCache personLruCache,
             PhotoService photoService,
             FamilyGraphBuilder familyGraphBuilder,
+            PersonSearchIndex personSearchIndex,
+            PersonTypeahead personTypeahead,
+            GettingOlderLoop gettingOlderLoop,
+            CachedData cachedData,
             IFileUtils fileUtils,
             Auditor auditor
             ) {
@@ -61,6 +73,10 @@ public class PersonTrasher {
         this.personLruCache = personLruCache;
         this.photoService = photoService;
         this.familyGraphBuilder = familyGraphBuilder;
+        this.personSearchIndex = personSearchIndex;
+        this.personTypeahead = personTypeahead;
+        this.gettingOlderLoop = gettingOlderLoop;
+        this.cachedData = cachedData;
         this.auditor = auditor;
 
         try {
@@ -84,12 +100,20 @@ public class PersonTrasher {
         Files.writeString(personTrash.resolve(newFileNameAfterDelete + person.getId() + ".ddps"), person.serialize());
 
         // remove this person from the family graph
-        familyGraphBuilder.deleteNode(person.getId());
+        Set<UUID> personsWithAffectedMetrics = familyGraphBuilder.deleteNode(person.getId());
 
         // finally, once we have written a trash-version of the person, send the delete command.
         personDb.delete(person);
+        personSearchIndex.remove(person.getId());
+        personTypeahead.remove(person.getId());
+        cachedData.incrementPersonDataVersion();
         personLruCache.removeFromPersonFileLruCache(person.getId().toString());
 
+        // the relatives of this person may have lost a parent, a sibling, a descendant, and
+        // so on, and their family tree may have split apart.
+        gettingOlderLoop.updatePersonMetrics(personsWithAffectedMetrics);
+        gettingOlderLoop.cacheInterestingPeople();
+
         // move the person file data to the person_file_trash directory
         Path target = personFileTrash.resolve(newFileNameAfterDelete + person.getId().toString());
         auditor.audit(() -> String.format("%s is moving the data for %s to %s", user.getUsername(), person, target), user);
@@ -0,0 +1,434 @@
+package com.renomad.inmra.featurelogic.persons.services;
+
+import com.renomad.inmra.featurelogic.persons.Date;
+import com.renomad.inmra.featurelogic.persons.PersonFile;
+import com.renomad.inmra.featurelogic.persons.PersonMetrics;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.renomad.inmra.featurelogic.persons.services.InterestingScore.getInterestingScore;
+
+/**
+ * Suggestions for persons as someone types a name, meant to be quick enough
+ * to run on every keystroke.
+ * <br>
+ * Each word of each person's name is put into a prefix tree (a "trie"),
+ * one letter per level.  Every node of the tree holds the few most
+ * interesting persons (see {@link InterestingScore}) having a word that
+ * starts with the letters leading to that node, so answering for
+ * a single typed word is just a walk down the tree.  Those rankings are kept
+ * current as persons are added and removed.  When metrics change, the
+ * rankings are refreshed by whoever changed them - for a few persons, see
+ * {@link #rescore(Collection)}, and for everyone, {@link #rebuildRankings()} - so
+ * searching never has that work to do.
+ * <br>
+ * We also hold a short summary of each person's parents and children, so
+ * we don't need to read their file for each suggestion.
+ */
+public class PersonTypeahead {
+
+    /**
+     * The most suggestions we will provide
+     */
+    public static final int MAX_RESULTS = 10;
+
+    /**
+     * What we hold for each person
+     * @param lowercaseNameWords the distinct words of their name, lowercased
+     * @param parentNames the names of their parents, like "Alice and Bob", or "no one"
+     * @param childNames the names of their children, like "Alice and Bob", or "no one"
+     */
+    public record TypeaheadEntry(UUID id, String name, Date born, Date died, Set<String> lowercaseNameWords, String parentNames, String childNames) {
+
+        boolean isDeceased() {
+            return ! died.equals(Date.EMPTY);
+        }
+    }
+
+    private static final class TrieNode {
+        private final Map<Character, TrieNode> children = new HashMap<>();
+        /**
+         * persons having a word that ends at this node
+         */
+        private final Set<UUID> personsEndingHere = new HashSet<>();
+        /**
+         * the most interesting persons in this node or below it
+         */
+        private List<UUID> topPersons = List.of();
+        /**
+         * the most interesting deceased persons in this node or below it
+         */
+        private List<UUID> topDeceasedPersons = List.of();
+    }
+
+    /**
+     * This is used to pull the names out of the links in the relation fields
+     */
+    private static final Pattern linkPattern = Pattern.compile("<.*?>(?<personname>.*?)</a>");
+
+    private final Map<UUID, TypeaheadEntry> entries;
+    private final Map<UUID, PersonMetrics> personMetricsMap;
+
+    /**
+     * The interesting score of each person, and the tree ranked by them.
+     * A full rebuild makes new ones and swaps them in together.
+     */
+    private Map<UUID, Integer> scores;
+    private TrieNode root;
+
+    /**
+     * Held while searching or changing the tree
+     */
+    private final ReentrantLock lock;
+
+    /**
+     * Held while changing the persons, or rebuilding the tree.  A rebuild
+     * holds only this while it works, and takes {@link #lock} just to swap in
+     * the new tree, so searches carry on meanwhile.  Changes to the persons
+     * wait for it, so the rebuild sees a steady set of them.
+     */
+    private final ReentrantLock rebuildLock;
+
+    public PersonTypeahead(Collection<PersonFile> personFiles, Map<UUID, PersonMetrics> personMetricsMap) {
+        this.entries = new HashMap<>();
+        this.personMetricsMap = personMetricsMap;
+        this.lock = new ReentrantLock();
+        this.rebuildLock = new ReentrantLock();
+        for (PersonFile personFile : personFiles) {
+            entries.put(personFile.getId(), buildEntry(personFile));
+        }
+        this.scores = scoreAll();
+        this.root = buildTrie(scores);
+    }
+
+    /**
+     * Add a person, or if they are already here, replace what we had for them
+     */
+    public void addOrUpdate(PersonFile personFile) {
+        TypeaheadEntry entry = buildEntry(personFile);
+        rebuildLock.lock();
+        lock.lock();
+        try {
+            removeFromTrie(personFile.getId());
+            entries.put(entry.id(), entry);
+            scores.put(entry.id(), getInterestingScore(personMetricsMap.get(entry.id())));
+            for (String word : entry.lowercaseNameWords()) {
+                List<TrieNode> path = pathTo(root, word, true);
+                path.getLast().personsEndingHere.add(entry.id());
+                updateRankings(path);
+            }
+        } finally {
+            lock.unlock();
+            rebuildLock.unlock();
+        }
+    }
+
+    /**
+     * Remove a person
+     */
+    public void remove(UUID personId) {
+        rebuildLock.lock();
+        lock.lock();
+        try {
+            removeFromTrie(personId);
+            entries.remove(personId);
+            scores.remove(personId);
+        } finally {
+            lock.unlock();
+            rebuildLock.unlock();
+        }
+    }
+
+    /**
+     * Refresh the scores of these persons from their metrics, re-ranking just
+     * the parts of the tree leading to the words of their names.  This suits
+     * a change to a few persons, like after an edit.
+     */
+    public void rescore(Collection<UUID> personIds) {
+        rebuildLock.lock();
+        lock.lock();
+        try {
+            for (UUID personId : personIds) {
+                if (entries.containsKey(personId)) {
+                    scores.put(personId, getInterestingScore(personMetricsMap.get(personId)));
+                }
+            }
+            for (UUID personId : personIds) {
+                TypeaheadEntry entry = entries.get(personId);
+                if (entry == null) continue;
+                for (String word : entry.lowercaseNameWords()) {
+                    List<TrieNode> path = pathTo(root, word, false);
+                    if (! path.isEmpty()) updateRankings(path);
+                }
+            }
+        } finally {
+            lock.unlock();
+            rebuildLock.unlock();
+        }
+    }
+
+    /**
+     * Refresh everyone's score from the metrics, and build a new tree ranked by
+     * them.  Searches carry on using the old tree until the new one is ready.
+     * This suits a change to the metrics of many persons, like after a full
+     * pass of calculating them.
+     */
+    public void rebuildRankings() {
+        rebuildLock.lock();
+        try {
+            Map<UUID, Integer> newScores = scoreAll();
+            TrieNode newRoot = buildTrie(newScores);
+            lock.lock();
+            try {
+                this.scores = newScores;
+                this.root = newRoot;
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    /**
+     * Get the most interesting persons whose names have words starting with
+     * each of the words of the query.  For example, "jo sm" would find "John Smith".
+     * @param shouldShowPrivateInformation if false, only deceased persons are included
+     */
+    public List<TypeaheadEntry> search(String query, boolean shouldShowPrivateInformation) {
+        if (query == null || query.isBlank()) {
+            return List.of();
+        }
+        List<String> queryWords = Arrays.asList(query.toLowerCase().trim().split("\\s+"));
+
+        lock.lock();
+        try {
+            List<List<UUID>> topPersonsByWord = new ArrayList<>();
+            for (String queryWord : queryWords) {
+                List<TrieNode> path = pathTo(root, queryWord, false);
+                if (path.isEmpty()) return List.of();
+                TrieNode node = path.getLast();
+                topPersonsByWord.add(shouldShowPrivateInformation ? node.topPersons : node.topDeceasedPersons);
+            }
+
+            if (queryWords.size() == 1) {
+                return topPersonsByWord.getFirst().stream().map(entries::get).toList();
+            }
+
+            // a node holding fewer than the most we keep holds everyone at or below
+            // it, so every match is among those - we just check the other words.
+            for (List<UUID> topPersons : topPersonsByWord) {
+                if (topPersons.size() < MAX_RESULTS) {
+                    return topPersons.stream()
+                            .filter(x -> matchesAll(entries.get(x), queryWords))
+                            .map(entries::get)
+                            .toList();
+                }
+            }
+
+            // otherwise, those among the best for every word are matches, and rank
+            // above any match left out.  So if there are enough of them, they are the answer.
+            List<UUID> bestForEveryWord = new ArrayList<>(topPersonsByWord.getFirst());
+            for (List<UUID> topPersons : topPersonsByWord.subList(1, topPersonsByWord.size())) {
+                bestForEveryWord.retainAll(topPersons);
+            }
+            if (bestForEveryWord.size() == MAX_RESULTS) {
+                return bestForEveryWord.stream().map(entries::get).toList();
+            }
+
+            // if not, we gather everyone under the longest word (likely the
+            // fewest persons) and check the other words against each of them
+            String longestWord = queryWords.stream().max(Comparator.comparingInt(String::length)).orElseThrow();
+            Set<UUID> candidates = new HashSet<>();
+            collectPersons(pathTo(root, longestWord, false).getLast(), candidates);
+            List<UUID> matches = new ArrayList<>();
+            for (UUID candidate : candidates) {
+                TypeaheadEntry entry = entries.get(candidate);
+                if (! shouldShowPrivateInformation && ! entry.isDeceased()) continue;
+                if (matchesAll(entry, queryWords)) {
+                    matches.add(candidate);
+                }
+            }
+            return topOf(matches, scores).stream().map(entries::get).toList();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * True if each of the query words is the start of some word of this person's name
+     */
+    private static boolean matchesAll(TypeaheadEntry entry, List<String> queryWords) {
+        return queryWords.stream().allMatch(queryWord -> entry.lowercaseNameWords().stream().anyMatch(x -> x.startsWith(queryWord)));
+    }
+
+    /**
+     * Get the summary we hold for this person, or null if we don't know them
+     */
+    public TypeaheadEntry getEntry(UUID personId) {
+        lock.lock();
+        try {
+            return entries.get(personId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static TypeaheadEntry buildEntry(PersonFile personFile) {
+        Set<String> words = new HashSet<>();
+        for (String word : personFile.getName().toLowerCase().split("\\s+")) {
+            if (! word.isBlank()) words.add(word);
+        }
+        return new TypeaheadEntry(
+                personFile.getId(),
+                personFile.getName(),
+                personFile.getBorn(),
+                personFile.getDied(),
+                words,
+                extractNames(personFile.getParents()),
+                extractNames(personFile.getChildren()));
+    }
+
+    /**
+     * Get the names from the links in a relation field, like "Alice and Bob"
+     */
+    static String extractNames(String relationHtml) {
+        StringJoiner stringJoiner = new StringJoiner(" and ");
+        stringJoiner.setEmptyValue("no one");
+        Matcher matcher = linkPattern.matcher(relationHtml);
+        while (matcher.find()) {
+            stringJoiner.add(matcher.group("personname"));
+        }
+        return stringJoiner.toString();
+    }
+
+    /**
+     * Gets the nodes from this root to the end of this word, creating them if asked.
+     * If not creating, and the word isn't found, returns an empty list.
+     * Must be called while holding the lock, unless the tree is a new one not yet in use.
+     */
+    private static List<TrieNode> pathTo(TrieNode root, String word, boolean create) {
+        List<TrieNode> path = new ArrayList<>(word.length() + 1);
+        TrieNode current = root;
+        path.add(current);
+        for (int i = 0; i < word.length(); i++) {
+            char letter = word.charAt(i);
+            TrieNode next = current.children.get(letter);
+            if (next == null) {
+                if (! create) return List.of();
+                next = new TrieNode();
+                current.children.put(letter, next);
+            }
+            current = next;
+            path.add(current);
+        }
+        return path;
+    }
+
+    /**
+     * Must be called while holding the lock.
+     */
+    private void removeFromTrie(UUID personId) {
+        TypeaheadEntry previous = entries.get(personId);
+        if (previous == null) return;
+        for (String word : previous.lowercaseNameWords()) {
+            List<TrieNode> path = pathTo(root, word, false);
+            if (path.isEmpty()) continue;
+            path.getLast().personsEndingHere.remove(personId);
+            // drop any nodes that no longer lead anywhere
+            for (int i = path.size() - 1; i > 0; i--) {
+                TrieNode node = path.get(i);
+                if (node.personsEndingHere.isEmpty() && node.children.isEmpty()) {
+                    path.get(i - 1).children.remove(word.charAt(i - 1));
+                }
+            }
+            updateRankings(path);
+        }
+    }
+
+    /**
+     * Recalculate the rankings for the nodes on this path, from the bottom up.
+     * Must be called while holding the lock.
+     */
+    private void updateRankings(List<TrieNode> path) {
+        for (int i = path.size() - 1; i >= 0; i--) {
+            rankNode(path.get(i), scores);
+        }
+    }
+
+    /**
+     * The top persons of a node are the best of the persons ending there and the
+     * top persons of each of its children, ranked by these scores.  Must be called
+     * while holding the lock, unless the tree is a new one not yet in use.
+     */
+    private void rankNode(TrieNode node, Map<UUID, Integer> scores) {
+        Set<UUID> candidates = new HashSet<>(node.personsEndingHere);
+        Set<UUID> deceasedCandidates = new HashSet<>();
+        for (UUID personId : node.personsEndingHere) {
+            if (entries.get(personId).isDeceased()) deceasedCandidates.add(personId);
+        }
+        for (TrieNode child : node.children.values()) {
+            candidates.addAll(child.topPersons);
+            deceasedCandidates.addAll(child.topDeceasedPersons);
+        }
+        node.topPersons = topOf(candidates, scores);
+        node.topDeceasedPersons = topOf(deceasedCandidates, scores);
+    }
+
+    /**
+     * Everyone's score, from their metrics.  Must be called while holding
+     * the {@link #rebuildLock}, or before anyone else has this object.
+     */
+    private Map<UUID, Integer> scoreAll() {
+        Map<UUID, Integer> newScores = new HashMap<>();
+        for (UUID personId : entries.keySet()) {
+            newScores.put(personId, getInterestingScore(personMetricsMap.get(personId)));
+        }
+        return newScores;
+    }
+
+    /**
+     * A new tree of everyone's names, ranked by these scores.  Must be called
+     * while holding the {@link #rebuildLock}, or before anyone else has this object.
+     */
+    private TrieNode buildTrie(Map<UUID, Integer> scores) {
+        TrieNode newRoot = new TrieNode();
+        for (TypeaheadEntry entry : entries.values()) {
+            for (String word : entry.lowercaseNameWords()) {
+                pathTo(newRoot, word, true).getLast().personsEndingHere.add(entry.id());
+            }
+        }
+        rankSubtree(newRoot, scores);
+        return newRoot;
+    }
+
+    private void rankSubtree(TrieNode node, Map<UUID, Integer> scores) {
+        for (TrieNode child : node.children.values()) {
+            rankSubtree(child, scores);
+        }
+        rankNode(node, scores);
+    }
+
+    private static void collectPersons(TrieNode node, Set<UUID> persons) {
+        persons.addAll(node.personsEndingHere);
+        for (TrieNode child : node.children.values()) {
+            collectPersons(child, persons);
+        }
+    }
+
+    /**
+     * The most interesting of these persons, at most {@link #MAX_RESULTS}.  Ties
+     * are broken by name, and then id, so the results are stable.
+     */
+    private List<UUID> topOf(Collection<UUID> personIds, Map<UUID, Integer> scores) {
+        Comparator<UUID> byInterest = Comparator
+                .comparing((UUID x) -> scores.getOrDefault(x, 0), Comparator.reverseOrder())
+                .thenComparing(x -> entries.get(x).name())
+                .thenComparing(x -> x);
+        return personIds.stream().sorted(byInterest).limit(MAX_RESULTS).toList();
+    }
+
+}
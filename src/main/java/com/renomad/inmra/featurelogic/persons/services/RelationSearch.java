@@ -6,27 +6,31 @@ import com.renomad.inmra.featurelogic.persons.Person;
 import com.renomad.inmra.featurelogic.persons.PersonFile;
 import com.renomad.minum.utils.StringUtils;
 
+import java.util.HashSet;
 import java.util.List;
-import java.util.StringJoiner;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.UUID;
 import java.util.stream.Stream;
 
 public class RelationSearch {
 
     private final IPersonLruCache personLruCache;
     private final PersonSearch personSearch;
+    private final PersonTypeahead personTypeahead;
 
     public RelationSearch(IPersonLruCache personLruCache, PersonSearch personSearch) {
-        this.personLruCache = personLruCache;
-        this.personSearch = personSearch;
+        this(personLruCache, personSearch, null);
     }
 
     /**
-     * This is used in a search and replace, so we just get the strings
+     * @param personTypeahead if provided, we use the summaries of parents and
+     *                        children it holds, rather than reading each person's file.
      */
-    private static final Pattern linkPattern = Pattern.compile("<.*?>(?<personname>.*?)</a>");
+    public RelationSearch(IPersonLruCache personLruCache, PersonSearch personSearch, PersonTypeahead personTypeahead) {
+        this.personLruCache = personLruCache;
+        this.personSearch = personSearch;
+        this.personTypeahead = personTypeahead;
+    }
 
     public String searchRelations(String query, boolean shouldShowPrivateInformation) {
         PersonSearchResult searchResult = personSearch.getPeople(query, shouldShowPrivateInformation,10);
@@ -34,41 +38,79 @@ public class RelationSearch {
 
         var sb = new StringBuilder();
         for (int i = 0; i < foundPersons.size() && i < 10; i++) {
-            String birthdayString = "(unknown birthdate)";
-            Person person = foundPersons.get(i);
-
-            if (! person.getBirthday().equals(com.renomad.inmra.featurelogic.persons.Date.EMPTY) &&
-                    ! person.getBirthday().equals(Date.EXISTS_BUT_UNKNOWN)) {
-                birthdayString = "born " + person.getBirthday().getPrettyString();
-            }
+            sb.append(renderPerson(foundPersons.get(i))).append("\n");
+        }
 
-            PersonFile personFile = personLruCache.getCachedPersonFile(person);
+        return sb.toString();
+    }
 
-            StringJoiner parentsStringJoiner = new StringJoiner(" and ");
-            parentsStringJoiner.setEmptyValue("no one");
-            Matcher parentsMatcher = linkPattern.matcher(personFile.getParents());
-            while (parentsMatcher.find()) {
-                parentsStringJoiner.add(parentsMatcher.group("personname"));
+    /**
+     * Suggest persons as the user types, by the beginnings of the words
+     * of their names - see {@link PersonTypeahead}.  The results are in
+     * the same form as {@link #searchRelations(String, boolean)}
+     * <br>
+     * If there are fewer than {@link PersonTypeahead#MAX_RESULTS} of those, the
+     * rest are filled in by {@link #searchRelations(String, boolean)}'s matching -
+     * within a name, and by how it sounds - so a misspelled name, or a
+     * piece from the middle of one, is still found.
+     */
+    public String searchTypeahead(String query, boolean shouldShowPrivateInformation) {
+        if (personTypeahead == null) {
+            return searchRelations(query, shouldShowPrivateInformation);
+        }
+        var sb = new StringBuilder();
+        Set<UUID> suggestedIds = new HashSet<>();
+        for (PersonTypeahead.TypeaheadEntry entry : personTypeahead.search(query, shouldShowPrivateInformation)) {
+            sb.append(renderSearchResult(entry.id(), entry.name(), entry.born(), entry.parentNames(), entry.childNames())).append("\n");
+            suggestedIds.add(entry.id());
+        }
+        if (suggestedIds.size() < PersonTypeahead.MAX_RESULTS && query != null && ! query.isBlank()) {
+            PersonSearchResult searchResult = personSearch.getPeople(query, shouldShowPrivateInformation, PersonTypeahead.MAX_RESULTS);
+            List<Person> foundPersons = Stream.concat(searchResult.exactMatches().stream(), searchResult.soundsLikeMatches().stream()).toList();
+            for (Person person : foundPersons) {
+                if (suggestedIds.size() >= PersonTypeahead.MAX_RESULTS) break;
+                if (suggestedIds.add(person.getId())) {
+                    sb.append(renderPerson(person)).append("\n");
+                }
             }
+        }
+        return sb.toString();
+    }
 
-            StringJoiner childrenStringJoiner = new StringJoiner(" and ");
-            childrenStringJoiner.setEmptyValue("no one");
-            Matcher childrenMatcher = linkPattern.matcher(personFile.getChildren());
-            while (childrenMatcher.find()) {
-                childrenStringJoiner.add(childrenMatcher.group("personname"));
-            }
+    /**
+     * Render a person found by {@link PersonSearch}, using the summary of their
+     * parents and children held by the typeahead if we can, and otherwise
+     * reading their file.
+     */
+    private String renderPerson(Person person) {
+        PersonTypeahead.TypeaheadEntry entry = personTypeahead == null ? null : personTypeahead.getEntry(person.getId());
+        String parentNames;
+        String childNames;
+        if (entry != null) {
+            parentNames = entry.parentNames();
+            childNames = entry.childNames();
+        } else {
+            PersonFile personFile = personLruCache.getCachedPersonFile(person);
+            parentNames = PersonTypeahead.extractNames(personFile.getParents());
+            childNames = PersonTypeahead.extractNames(personFile.getChildren());
+        }
+        return renderSearchResult(person.getId(), person.getName(), person.getBirthday(), parentNames, childNames);
+    }
 
-            sb.append(String.format("<li><span data-personid=\"%s\" data-personname=\"%s\" >%s %s, child of %s, parent to %s</span></li>",
-                    person.getId().toString(),
-                    StringUtils.safeAttr(person.getName()),
-                    StringUtils.safeHtml(person.getName()),
-                    birthdayString,
-                    StringUtils.safeHtml(parentsStringJoiner.toString()),
-                    StringUtils.safeHtml(childrenStringJoiner.toString())
-                    )).append("\n");
+    private static String renderSearchResult(UUID id, String name, Date birthday, String parentNames, String childNames) {
+        String birthdayString = "(unknown birthdate)";
+        if (! birthday.equals(Date.EMPTY) && ! birthday.equals(Date.EXISTS_BUT_UNKNOWN)) {
+            birthdayString = "born " + birthday.getPrettyString();
         }
 
-        return sb.toString();
+        return String.format("<li><span data-personid=\"%s\" data-personname=\"%s\" >%s %s, child of %s, parent to %s</span></li>",
+                id.toString(),
+                StringUtils.safeAttr(name),
+                StringUtils.safeHtml(name),
+                birthdayString,
+                StringUtils.safeHtml(parentNames),
+                StringUtils.safeHtml(childNames)
+        );
     }
 
 }
@@ -1,6 +1,7 @@
 package com.renomad.inmra.featurelogic.persons.services;
 
 import com.renomad.inmra.featurelogic.persons.*;
+import com.renomad.inmra.featurelogic.photo.MediaByPerson;
 import com.renomad.inmra.featurelogic.photo.PhotoToPerson;
 import com.renomad.inmra.featurelogic.photo.VideoToPerson;
 import com.renomad.inmra.utils.IFileUtils;
@@ -11,7 +12,6 @@ import com.renomad.minum.templating.TemplateProcessor;
 import java.text.DecimalFormat;
 import java.time.temporal.ChronoUnit;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -23,8 +23,7 @@ public class Stats {
     private final TemplateProcessor statsTemplateProcessor;
     private final AbstractDb<PersonMetrics> personMetricsDb;
     private final Map<UUID, PersonMetrics> personMetricsMap;
-    private final AbstractDb<PhotoToPerson> photoToPersonDb;
-    private final AbstractDb<VideoToPerson> videoToPersonDb;
+    private final MediaByPerson mediaByPerson;
 
     public Stats(
             ILogger logger,
@@ -38,12 +37,11 @@ public class Stats {
         this.statsTemplateProcessor = TemplateProcessor.buildProcessor(fileUtils.readTemplate("person/stats.html"));
         this.personMetricsDb = personMetricsDb;
         this.personMetricsMap = personMetricsMap;
-        this.photoToPersonDb = photoToPersonDb;
-        this.videoToPersonDb = videoToPersonDb;
+        this.mediaByPerson = new MediaByPerson(photoToPersonDb, videoToPersonDb);
     }
 
     public void rebuildMetricsForPerson(PersonNode personNode, IPersonLruCache personLruCache) {
-        PersonMetrics personMetrics = FamilyGraph.getPersonMetrics(personNode, personLruCache, photoToPersonDb, videoToPersonDb);
+        PersonMetrics personMetrics = FamilyGraph.getPersonMetrics(personNode, personLruCache, mediaByPerson, null);
         // Replace any existing metric entry for this person
         PersonMetrics existingPersonMetric = personMetricsDb.findExactlyOne("id", personNode.getId().toString());
         if (existingPersonMetric != null) {
@@ -62,16 +60,8 @@ public class Stats {
         return personMetricsDb.findExactlyOne("id", x.getId().toString(), () -> PersonMetrics.EMPTY);
     }
 
-    /**
-     * Returns a list of identifiers for photos that are associated
-     * with a person
-     * @param person the {@link Person} we are inspecting for photos
-     */
-    private List<Long> getPhotoIdsForPerson(Person person) {
-        return photoToPersonDb.values().stream()
-                .filter(x -> x.getPersonIndex() == person.getIndex())
-                .map(PhotoToPerson::getPhotoIndex)
-                .toList();
+    public MediaByPerson getMediaByPerson() {
+        return mediaByPerson;
     }
 
     public String prepareStatsTemplate(Person p, PersonFile deserializedPersonFile) {
@@ -79,7 +69,7 @@ public class Stats {
         float cousinsRatio = metricsForPerson.getCousinsCount() == 0 ? 0 : (float)metricsForPerson.getCountFirstCousins() / metricsForPerson.getCousinsCount();
 
         Map<String, String> statsMap = new HashMap<>();
-        statsMap.put("photoCount", String.valueOf(getPhotoIdsForPerson(p).size()));
+        statsMap.put("photoCount", String.valueOf(mediaByPerson.getPhotoCount(p.getIndex())));
         statsMap.put("lastModified", deserializedPersonFile.getLastModified().truncatedTo(ChronoUnit.SECONDS).toString());
         statsMap.put("bioImageCount", String.valueOf(metricsForPerson.getBioImageCount()));
         statsMap.put("bioVideoCount", String.valueOf(metricsForPerson.getBioVideoCount()));
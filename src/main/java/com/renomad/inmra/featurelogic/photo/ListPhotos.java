@@ -6,6 +6,7 @@ import com.renomad.inmra.auth.PrivacyCheckStatus;
 import com.renomad.inmra.featurelogic.persons.Person;
 import com.renomad.inmra.featurelogic.persons.PersonEndpoints;
 import com.renomad.inmra.featurelogic.persons.PersonLruCache;
+import com.renomad.inmra.utils.ConditionalGet;
 import com.renomad.inmra.utils.IFileUtils;
 import com.renomad.inmra.utils.MemoriaContext;
 import com.renomad.inmra.utils.NavigationHeader;
@@ -29,10 +30,10 @@ import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Pattern;
 
 import static com.renomad.inmra.utils.FileUtils.badFilePathPatterns;
@@ -49,8 +50,13 @@ public class ListPhotos {
     private final Path dbDir;
 
     private final IAuthUtils auth;
-    private final Map<String, byte[]> lruCache;
-    private final ReentrantLock cacheLock = new ReentrantLock();
+    private final PhotoByteCache photoCache;
+    private final MappedPhotoStore mappedPhotoStore;
+    /**
+     * The MIME type of the extra format photos may be sent in, or null if none.
+     * See {@link PhotoResizing#usableExtraFormat(String, ILogger)}
+     */
+    private final String extraFormat;
     private final PersonEndpoints personEndpoints;
     private final Constants constants;
     private final RenderPhotoRowsService renderPhotoRowsService;
@@ -62,7 +68,8 @@ public class ListPhotos {
             MemoriaContext memoriaContext,
             IAuthUtils auth,
             PersonEndpoints personEndpoints,
-            Map<String, byte[]> lruCache,
+            PhotoByteCache photoCache,
+            MappedPhotoStore mappedPhotoStore,
             AbstractDb<PhotoToPerson> photoToPersonDb,
             AbstractDb<Photograph> photographDb,
             AbstractDb<VideoToPerson> videoToPersonDb,
@@ -79,7 +86,9 @@ public class ListPhotos {
         listPhotosTemplateProcessor = TemplateProcessor.buildProcessor(fileUtils.readTemplate("listphotos/list_photos_template.html"));
         photoTableTemplateProcessor = TemplateProcessor.buildProcessor(fileUtils.readTemplate("listphotos/photo_table_template.html"));
         this.auth = auth;
-        this.lruCache = lruCache;
+        this.photoCache = photoCache;
+        this.mappedPhotoStore = mappedPhotoStore;
+        this.extraFormat = PhotoResizing.usableExtraFormat(memoriaContext.getConstants().PHOTO_EXTRA_FORMAT, logger);
         this.personEndpoints = personEndpoints;
         this.renderPhotoRowsService = new RenderPhotoRowsService(photoToPersonDb, photographDb, videoToPersonDb, videoDb, personDb, fileUtils, personLruCache);
     }
@@ -235,47 +244,67 @@ public class ListPhotos {
         }
 
         // we default to the medium-sized files.
-        photoPath = switch (sizeQuery) {
+        Path sizedPhotoPath = switch (sizeQuery) {
             case "small" -> dbDir.resolve("photo_files_thumbnail").resolve(filename);
+            case "midsize" -> dbDir.resolve("photo_files_midsize").resolve(filename);
             case "original" -> dbDir.resolve("photo_files_original").resolve(filename);
             case "icon" -> dbDir.resolve("photo_files_icon").resolve(filename);
             default -> dbDir.resolve("photo_files_medium").resolve(filename);
         };
 
-        /*
-        The "photo_archive" directory is a special case.  The files there can be
-        huge (more than 5-10 megabytes in some cases).  So, we won't be storing
-        those in the cache at all.  Also, we will only return the archive files
-        if the user is authenticated. So it's a special case - all other image files
-        can be downloaded like normal.
-         */
+        // photos from before there was a midsize won't have one, so send the medium instead
+        if (sizeQuery.equals("midsize") && ! Files.isRegularFile(sizedPhotoPath)) {
+            sizedPhotoPath = dbDir.resolve("photo_files_medium").resolve(filename);
+        }
 
-        // first, is it already in our cache? (by the way, "archive" photos won't ever be in the cache)
-        if (lruCache.containsKey(photoPath.toString())) {
-            logger.logTrace(() -> "Found " + photoPath + " in the cache. Serving.");
-            cacheLock.lock();
-            byte[] photo;
-            try {
-                photo = lruCache.get(photoPath.toString());
-            } finally {
-                cacheLock.unlock();
+        var photoHeaders = new HashMap<String, String>();
+        photoHeaders.put("Cache-Control", "max-age=" + constants.staticFileCacheTime * 60 + ", immutable");
+
+        // if the browser accepts our extra format, and we have the photo in
+        // that format, send it instead. See PhotoResizing.usableExtraFormat
+        if (extraFormat != null) {
+            // what we send depends on what the browser accepts
+            photoHeaders.put("Vary", "Accept");
+            Path extraFormatPath = PhotoResizing.extraFormatPath(sizedPhotoPath, extraFormat);
+            if (accepts(r.getHeaders().valueByKey("accept"), extraFormat) && Files.isRegularFile(extraFormatPath)) {
+                sizedPhotoPath = extraFormatPath;
+                mime = extraFormat;
             }
-
-            return Response.buildResponse(CODE_200_OK,
-                    Map.of(
-                            "Cache-Control","max-age=" + constants.staticFileCacheTime * 60 + ", immutable",
-                            "Content-Type", mime
-                    ),
-                    photo);
         }
+        photoHeaders.put("Content-Type", mime);
+        photoPath = sizedPhotoPath;
 
-        // It's not in the cache - but if it's also not in the folder, bail with a 404
-        if (! Files.exists(photoPath)) {
+        // if it's not in the folder, bail with a 404.  Otherwise, the validators
+        // let a browser check whether its copy is still current, and if so, we
+        // can say so without reading the file or looking in the cache.
+        ConditionalGet.Validators validators;
+        try {
+            validators = ConditionalGet.forFile(photoPath);
+        } catch (IOException ex) {
             logger.logDebug(() -> "User requested a filename of " + photoPath + " that does not exist in the directory");
             return Response.buildLeanResponse(CODE_404_NOT_FOUND);
         }
+        if (ConditionalGet.isNotModified(r.getHeaders(), validators)) {
+            logger.logTrace(() -> "The requester's copy of " + photoPath + " is current. Sending 304");
+            return ConditionalGet.notModified(validators, photoHeaders);
+        }
+
+        // the smaller sizes may be served from memory-mapped files, outside the heap
+        if (mappedPhotoStore != null && ! sizeQuery.equals("original")) {
+            IResponse mappedPhotoResponse = serveMappedPhoto(photoPath, validators.addTo(photoHeaders));
+            if (mappedPhotoResponse != null) {
+                return mappedPhotoResponse;
+            }
+        }
 
-        // otherwise, read the bytes
+        // is it already in our cache? (by the way, "archive" photos won't ever be in the cache)
+        byte[] photo = photoCache.get(photoPath.toString());
+        if (photo != null) {
+            logger.logTrace(() -> "Found " + photoPath + " in the cache. Serving.");
+            return Response.buildResponse(CODE_200_OK, validators.addTo(photoHeaders), photo);
+        }
+
+        // It's not in the cache, so read the bytes
         Path finalPhotoPath2 = photoPath;
         logger.logDebug(() -> "about to read file at " + finalPhotoPath2);
 
@@ -304,19 +333,9 @@ public class ListPhotos {
 
                 // we won't store archive photos in the cache, they are too large
                 logger.logDebug(() -> "Storing " + finalPhotoPath2 + " in the cache");
-                cacheLock.lock();
-                try {
-                    lruCache.put(finalPhotoPath2.toString(), bytes);
-                } finally {
-                    cacheLock.unlock();
-                }
+                photoCache.put(finalPhotoPath2.toString(), bytes);
 
-                return Response.buildResponse(CODE_200_OK,
-                        Map.of(
-                                "Cache-Control","max-age=" + constants.staticFileCacheTime * 60,
-                                "Content-Type", mime
-                        ),
-                        bytes);
+                return Response.buildResponse(CODE_200_OK, validators.addTo(photoHeaders), bytes);
 
             }
         } catch (IOException e){
@@ -331,6 +350,51 @@ public class ListPhotos {
         }
     }
 
+    /**
+     * Serve a photo from its memory-mapped file, see {@link MappedPhotoStore}.
+     * Returns null if that's not possible, in which case the photo should be
+     * served the ordinary way (which also takes care of photos that don't exist).
+     */
+    private IResponse serveMappedPhoto(Path photoPath, Map<String, String> photoHeaders) {
+        ByteBuffer photo;
+        try {
+            photo = mappedPhotoStore.get(photoPath);
+        } catch (NoSuchFileException ex) {
+            return null;
+        } catch (IOException ex) {
+            logger.logDebug(() -> "Unable to map " + photoPath + ", continuing without. " + ex.getMessage());
+            return null;
+        }
+        if (photo == null) {
+            return null;
+        }
+        logger.logTrace(() -> "Serving " + photoPath + " from its mapped file");
+        return Response.buildStreamingResponse(
+                CODE_200_OK,
+                photoHeaders,
+                socketWrapper -> MappedPhotoStore.send(photo, socketWrapper),
+                photo.remaining());
+    }
+
+    /**
+     * Whether the Accept headers of a request include this MIME type,
+     * without forbidding it with a "q" of zero, like "image/webp;q=0"
+     */
+    static boolean accepts(List<String> acceptHeaders, String mimeType) {
+        if (acceptHeaders == null) {
+            return false;
+        }
+        for (String headerValue : acceptHeaders) {
+            for (String mediaRange : headerValue.split(",")) {
+                String[] parts = mediaRange.trim().split(";");
+                if (parts[0].trim().equalsIgnoreCase(mimeType)) {
+                    return parts.length < 2 || ! parts[1].replace(" ", "").matches("q=0(\\.0*)?");
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * archive photos require special handling because they can be very large
      */
@@ -338,13 +402,23 @@ public class ListPhotos {
 
         String archivalPhoto = "";
         try {
-            archivalPhoto = dbDir.resolve("photo_archive").resolve(filename).toString();
+            Path archivalPhotoPath = dbDir.resolve("photo_archive").resolve(filename);
+            archivalPhoto = archivalPhotoPath.toString();
 
-            var extraContentHeaders = Map.of(
+            var validators = ConditionalGet.forFile(archivalPhotoPath);
+            if (ConditionalGet.isNotModified(r.getHeaders(), validators)) {
+                return ConditionalGet.notModified(validators, Map.of(
+                        "Cache-Control","max-age=" + constants.staticFileCacheTime * 60 + ", immutable"));
+            }
+
+            var extraContentHeaders = validators.addTo(Map.of(
                     "Cache-Control","max-age=" + constants.staticFileCacheTime * 60 + ", immutable",
                     "Content-Type", mime
-            );
+            ));
             return Response.buildLargeFileResponse(extraContentHeaders, archivalPhoto, r.getHeaders(), minumFileUtils);
+        } catch (NoSuchFileException ex) {
+            logger.logDebug(() -> "User requested an archive file of " + filename + " that was not found.  Returning 404 NOT FOUND");
+            return Response.buildLeanResponse(CODE_404_NOT_FOUND);
         } catch (WebServerException e){
             // this is the only branch in the logic where we adjust to use a size of "original" and pass
             // through to the following section of logic.  All the other branches handle edge cases that
@@ -388,11 +462,20 @@ public class ListPhotos {
 
         String videoFile = null;
         try {
-            videoFile = dbDir.resolve("video_files").resolve(filename).toString();
-            var extraContentHeaders = Map.of(
+            Path videoPath = dbDir.resolve("video_files").resolve(filename);
+            videoFile = videoPath.toString();
+
+            var validators = ConditionalGet.forFile(videoPath);
+            if (ConditionalGet.isNotModified(r.getHeaders(), validators)) {
+                return ConditionalGet.notModified(validators, Map.of());
+            }
+
+            var extraContentHeaders = validators.addTo(Map.of(
                     "Content-Type", "video/mp4"
-            );
+            ));
             return Response.buildLargeFileResponse(extraContentHeaders, videoFile, r.getHeaders(), minumFileUtils);
+        } catch (NoSuchFileException ex) {
+            return Response.buildLeanResponse(CODE_404_NOT_FOUND);
         } catch (WebServerException e){
             if (e.getCause().getClass().equals(NoSuchFileException.class)) {
                 return Response.buildLeanResponse(CODE_404_NOT_FOUND);
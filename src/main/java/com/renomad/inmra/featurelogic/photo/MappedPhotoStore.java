@@ -0,0 +1,152 @@
+package com.renomad.inmra.featurelogic.photo;
+
+import com.renomad.minum.logging.ILogger;
+import com.renomad.minum.web.ISocketWrapper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds the smaller sizes of photos - thumbnails, icons, and medium - as
+ * memory-mapped files, rather than as arrays of bytes in the heap.
+ * <br>
+ * The operating system keeps the contents of a mapped file in its own
+ * page cache, outside the heap, so a page full of thumbnails doesn't
+ * create a pile of garbage for each visitor, and a large gallery
+ * can be served with a small heap.
+ * <br>
+ * Mapping stops once the mapped files add up to the budget, and
+ * photos beyond that are served the ordinary way.  A mapping is only
+ * released once nothing refers to it, so a deleted photo must
+ * be removed here - see {@link #remove(Path)}.
+ * <br>
+ * A mapped file must never be shortened, or reading past its new end
+ * crashes the reader.  So the sizes of a photo are never written over in
+ * place: each is written to a new file and renamed over the old one (see
+ * {@link PhotoResizing}), which leaves any mapping with the old contents.
+ * The mapping is also removed before the photo is rewritten, and again
+ * after, so the next request maps the new file.
+ */
+public class MappedPhotoStore {
+
+    /**
+     * The size of the piece of a photo we copy to the socket at a time
+     */
+    static final int CHUNK_SIZE = 16 * 1024;
+
+    /**
+     * Each thread sending photos reuses one small buffer, rather than
+     * needing an array the size of the photo.
+     */
+    private static final ThreadLocal<byte[]> chunkBuffer = ThreadLocal.withInitial(() -> new byte[CHUNK_SIZE]);
+
+    private final Map<String, MappedByteBuffer> mappedPhotos;
+    private final AtomicLong mappedBytes;
+    private final long maxMappedBytes;
+    private final ILogger logger;
+
+    /**
+     * @param maxMappedBytes the most bytes of photos we will map
+     */
+    public MappedPhotoStore(long maxMappedBytes, ILogger logger) {
+        this.mappedPhotos = new ConcurrentHashMap<>();
+        this.mappedBytes = new AtomicLong();
+        this.maxMappedBytes = maxMappedBytes;
+        this.logger = logger;
+    }
+
+    /**
+     * Get the contents of a photo file, mapping it if this is the first
+     * time we've seen it.  Returns null if the file is empty, or
+     * if mapping it would go over the budget.
+     * <br>
+     * The buffer returned is a separate view of the file, so its position
+     * may be changed without affecting anyone else.
+     * @throws IOException if the file can't be read, for example if it does not exist
+     */
+    public ByteBuffer get(Path photoPath) throws IOException {
+        String key = photoPath.toString();
+        MappedByteBuffer mapped = mappedPhotos.get(key);
+        if (mapped == null) {
+            mapped = map(photoPath);
+            if (mapped == null) {
+                return null;
+            }
+            MappedByteBuffer existing = mappedPhotos.putIfAbsent(key, mapped);
+            if (existing != null) {
+                // someone else mapped it at the same moment, use theirs.
+                mappedBytes.addAndGet(-mapped.capacity());
+                mapped = existing;
+            }
+        }
+        return mapped.asReadOnlyBuffer();
+    }
+
+    /**
+     * Stop holding a mapping for this photo, if we have one
+     */
+    public void remove(Path photoPath) {
+        MappedByteBuffer removed = mappedPhotos.remove(photoPath.toString());
+        if (removed != null) {
+            mappedBytes.addAndGet(-removed.capacity());
+        }
+    }
+
+    /**
+     * The count of photos mapped
+     */
+    public int size() {
+        return mappedPhotos.size();
+    }
+
+    /**
+     * The total bytes of the photos mapped
+     */
+    public long getMappedBytes() {
+        return mappedBytes.get();
+    }
+
+    private MappedByteBuffer map(Path photoPath) throws IOException {
+        try (FileChannel channel = FileChannel.open(photoPath, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                return null;
+            }
+            // reserve our part of the budget before mapping, so threads
+            // mapping at the same time can't go over it together.
+            if (mappedBytes.addAndGet(size) > maxMappedBytes) {
+                mappedBytes.addAndGet(-size);
+                logger.logTrace(() -> "Mapping " + photoPath + " would exceed the budget of " + maxMappedBytes + " bytes. Not mapping");
+                return null;
+            }
+            try {
+                // the mapping stays valid after the channel is closed
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } catch (IOException | RuntimeException ex) {
+                mappedBytes.addAndGet(-size);
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Send the contents of the buffer to the socket, a piece at a time.
+     * The socket only accepts arrays of bytes, so this goes through a small
+     * buffer kept for each thread, rather than copying the whole photo.
+     */
+    static void send(ByteBuffer photo, ISocketWrapper socketWrapper) throws IOException {
+        byte[] chunk = chunkBuffer.get();
+        while (photo.hasRemaining()) {
+            int length = Math.min(chunk.length, photo.remaining());
+            photo.get(chunk, 0, length);
+            socketWrapper.send(chunk, 0, length);
+        }
+    }
+}
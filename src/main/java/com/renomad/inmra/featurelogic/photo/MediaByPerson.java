@@ -0,0 +1,87 @@
+package com.renomad.inmra.featurelogic.photo;
+
+import com.renomad.inmra.featurelogic.persons.Person;
+import com.renomad.minum.database.AbstractDb;
+
+import java.util.List;
+
+/**
+ * Finds the photos and videos associated with a person.
+ * <br>
+ * This relies on the "persons" index of the photo_to_person and
+ * video_to_person databases - see {@link #PERSONS_INDEX} - which
+ * groups each entry by the index of its person, so a lookup only
+ * touches that person's entries, rather than going through every
+ * photo and video in the system.
+ * <br>
+ * Whoever builds those databases must register that index, like this:
+ * <pre>
+ *     photoToPersonDb.registerIndex(MediaByPerson.PERSONS_INDEX, x -&gt; String.valueOf(x.getPersonIndex()))
+ * </pre>
+ */
+public class MediaByPerson {
+
+    /**
+     * The name of the index, on both the photo_to_person and video_to_person
+     * databases, which is keyed by the index of the person.
+     */
+    public static final String PERSONS_INDEX = "persons";
+
+    private final AbstractDb<PhotoToPerson> photoToPersonDb;
+    private final AbstractDb<VideoToPerson> videoToPersonDb;
+
+    public MediaByPerson(AbstractDb<PhotoToPerson> photoToPersonDb, AbstractDb<VideoToPerson> videoToPersonDb) {
+        this.photoToPersonDb = photoToPersonDb;
+        this.videoToPersonDb = videoToPersonDb;
+    }
+
+    /**
+     * Returns the identifiers for the photos associated with a person
+     */
+    public List<Long> getPhotoIdsForPerson(Person person) {
+        return getPhotoIdsForPerson(person.getIndex());
+    }
+
+    /**
+     * Returns the identifiers for the photos associated with a person
+     * @param personIndex the index of the person in the database, see {@link Person#getIndex()}
+     */
+    public List<Long> getPhotoIdsForPerson(long personIndex) {
+        return photoToPersonDb.getIndexedData(PERSONS_INDEX, String.valueOf(personIndex)).stream()
+                .map(PhotoToPerson::getPhotoIndex)
+                .toList();
+    }
+
+    /**
+     * Returns the count of photos associated with a person
+     * @param personIndex the index of the person in the database, see {@link Person#getIndex()}
+     */
+    public int getPhotoCount(long personIndex) {
+        return photoToPersonDb.getIndexedData(PERSONS_INDEX, String.valueOf(personIndex)).size();
+    }
+
+    /**
+     * Returns the identifiers for the videos associated with a person
+     */
+    public List<Long> getVideoIdsForPerson(Person person) {
+        return getVideoIdsForPerson(person.getIndex());
+    }
+
+    /**
+     * Returns the identifiers for the videos associated with a person
+     * @param personIndex the index of the person in the database, see {@link Person#getIndex()}
+     */
+    public List<Long> getVideoIdsForPerson(long personIndex) {
+        return videoToPersonDb.getIndexedData(PERSONS_INDEX, String.valueOf(personIndex)).stream()
+                .map(VideoToPerson::getVideoIndex)
+                .toList();
+    }
+
+    /**
+     * Returns the count of videos associated with a person
+     * @param personIndex the index of the person in the database, see {@link Person#getIndex()}
+     */
+    public int getVideoCount(long personIndex) {
+        return videoToPersonDb.getIndexedData(PERSONS_INDEX, String.valueOf(personIndex)).size();
+    }
+}
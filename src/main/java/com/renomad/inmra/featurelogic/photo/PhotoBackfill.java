@@ -0,0 +1,328 @@
+package com.renomad.inmra.featurelogic.photo;
+
+import com.renomad.inmra.utils.Constants;
+import com.renomad.inmra.utils.MemoriaContext;
+import com.renomad.minum.logging.ILogger;
+import com.renomad.minum.state.Context;
+import com.renomad.minum.utils.StacktraceUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Goes through every photo in the archive and regenerates any of its sizes
+ * that are missing or older than the archived photo - for example, if a
+ * conversion failed, or a new size has been added since the photo was uploaded.
+ * Videos still showing the placeholder poster get a poster made, too.
+ * <br>
+ * This is started by hand from the Admin page.  It works through the photos
+ * in order of filename, a few at a time, and after each batch records
+ * the last filename done, so if it is stopped (or the server restarts)
+ * it picks up from there the next time it is started.
+ * <br>
+ * Converting photos is heavy work, so it is kept from crowding out the
+ * people using the site: it uses only a few low-priority threads, pauses
+ * between batches, and waits whenever newly-uploaded photos are waiting
+ * to be converted, or being converted.  Photos still being uploaded or
+ * converted are skipped, since their sizes are on the way.
+ */
+public class PhotoBackfill {
+
+    /**
+     * The states the backfill may be in, as shown on the Admin page
+     */
+    public enum State {
+        NOT_STARTED,
+        RUNNING,
+        STOPPING,
+        STOPPED,
+        FINISHED
+    }
+
+    /**
+     * A snapshot of how the backfill is going
+     * @param total the count of photos in the archive
+     * @param checked the count of photos reviewed so far, including those done in earlier runs
+     * @param checkedAtStart the count of photos which had been reviewed in earlier runs, when this one started
+     * @param regenerated the count of photos which needed some sizes regenerated, in this run
+     * @param failed the count of photos we were unable to convert, in this run
+     * @param elapsed how long this run has taken (or took)
+     */
+    public record Progress(State state, int total, int checked, int checkedAtStart, int regenerated, int failed, Duration elapsed) {
+
+        /**
+         * How many photos were reviewed each minute, in this run
+         */
+        public double photosPerMinute() {
+            double minutes = elapsed.toMillis() / 60_000.0;
+            if (minutes <= 0) {
+                return 0;
+            }
+            return (checked - checkedAtStart) / minutes;
+        }
+    }
+
+    private final PhotoService photoService;
+    private final ILogger logger;
+    private final ExecutorService runner;
+    private final Path checkpointFile;
+    private final int threadCount;
+    private final long pauseMillis;
+
+    private volatile State state;
+    private volatile Instant startTime;
+    private volatile Instant endTime;
+    private volatile int total;
+    private volatile int checkedAtStart;
+    private final AtomicInteger checked;
+    private final AtomicInteger regenerated;
+    private final AtomicInteger failed;
+
+    public PhotoBackfill(Context context, MemoriaContext memoriaContext, PhotoService photoService) {
+        Constants constants = memoriaContext.getConstants();
+        this.photoService = photoService;
+        this.logger = context.getLogger();
+        this.runner = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "photo_backfill_runner");
+            // don't keep the program alive just for this
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.checkpointFile = Path.of(context.getConstants().dbDirectory).resolve("photo_backfill_checkpoint.txt");
+        this.threadCount = Math.max(1, constants.PHOTO_BACKFILL_THREADS);
+        this.pauseMillis = Math.max(0, constants.PHOTO_BACKFILL_PAUSE_MILLIS);
+        this.state = State.NOT_STARTED;
+        this.checked = new AtomicInteger();
+        this.regenerated = new AtomicInteger();
+        this.failed = new AtomicInteger();
+    }
+
+    /**
+     * Start the backfill, continuing from where the last run stopped, if
+     * it didn't finish.
+     * @return false if it was already running
+     */
+    public synchronized boolean start() {
+        if (state == State.RUNNING || state == State.STOPPING) {
+            return false;
+        }
+        state = State.RUNNING;
+        startTime = Instant.now();
+        endTime = null;
+        regenerated.set(0);
+        failed.set(0);
+        runner.submit(() -> {
+            try {
+                run();
+            } catch (Throwable ex) {
+                logger.logAsyncError(() -> "Error while running the photo backfill: " + StacktraceUtils.stackTraceToString(ex));
+                state = State.STOPPED;
+            } finally {
+                endTime = Instant.now();
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Ask the backfill to stop once it finishes its current batch.  The next
+     * time it is started, it will continue from there.
+     */
+    public synchronized void stop() {
+        if (state == State.RUNNING) {
+            state = State.STOPPING;
+        }
+    }
+
+    public Progress getProgress() {
+        Instant start = startTime;
+        Instant end = endTime == null ? Instant.now() : endTime;
+        Duration elapsed = start == null ? Duration.ZERO : Duration.between(start, end);
+        return new Progress(state, total, checked.get(), checkedAtStart, regenerated.get(), failed.get(), elapsed);
+    }
+
+    private void run() throws IOException, InterruptedException {
+        // videos without a poster get one made, on the poster thread
+        int queuedPosters = photoService.queueMissingVideoPosters();
+        logger.logDebug(() -> String.format("Photo backfill queued %d videos for posters", queuedPosters));
+
+        List<String> photoFilenames = listArchivedPhotos(photoService.getPhotoArchiveDirectory());
+        String checkpoint = readCheckpoint();
+        List<String> remaining = photoFilenames.stream().filter(x -> checkpoint == null || x.compareTo(checkpoint) > 0).toList();
+        total = photoFilenames.size();
+        checkedAtStart = total - remaining.size();
+        checked.set(checkedAtStart);
+        logger.logDebug(() -> String.format("Photo backfill starting. %d photos in the archive, %d left to review", total, remaining.size()));
+
+        ExecutorService workers = Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, "photo_backfill");
+            thread.setDaemon(true);
+            // the people browsing the site come first
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        try {
+            for (int i = 0; i < remaining.size(); i += threadCount) {
+                if (state != State.RUNNING) {
+                    state = State.STOPPED;
+                    logger.logDebug(() -> "Photo backfill stopped at " + checked.get() + " of " + total);
+                    return;
+                }
+                waitForUploadConversions();
+
+                List<String> batch = remaining.subList(i, Math.min(i + threadCount, remaining.size()));
+                List<Callable<Void>> conversions = new ArrayList<>();
+                for (String photoFilename : batch) {
+                    conversions.add(() -> {
+                        try {
+                            backfillPhoto(photoFilename);
+                        } finally {
+                            checked.incrementAndGet();
+                        }
+                        return null;
+                    });
+                }
+                List<Future<Void>> results = workers.invokeAll(conversions);
+                for (int j = 0; j < results.size(); j++) {
+                    String photoFilename = batch.get(j);
+                    try {
+                        results.get(j).get();
+                    } catch (ExecutionException ex) {
+                        // backfillPhoto handles its own exceptions, so this would be something worse
+                        failed.incrementAndGet();
+                        logger.logAsyncError(() -> "Photo backfill failed on " + photoFilename + ": " + StacktraceUtils.stackTraceToString(ex.getCause()));
+                    }
+                }
+                writeCheckpoint(batch.getLast());
+
+                Thread.sleep(pauseMillis);
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+
+        // a complete run - the next one should begin at the start
+        Files.deleteIfExists(checkpointFile);
+        state = State.FINISHED;
+        logger.logDebug(() -> String.format("Photo backfill finished. %d regenerated, %d failed", regenerated.get(), failed.get()));
+    }
+
+    /**
+     * Newly-uploaded photos are converted on their own threads.  While any of
+     * those are waiting or underway, we hold off, so they are done promptly.
+     */
+    private void waitForUploadConversions() throws InterruptedException {
+        while (photoService.getPendingConversionCount() > 0 && state == State.RUNNING) {
+            Thread.sleep(Math.max(pauseMillis, 100));
+        }
+    }
+
+    /**
+     * Regenerate the sizes of this photo which need it, if any
+     */
+    void backfillPhoto(String photoFilename) {
+        // an upload or a video poster still on its way - its sizes are being written
+        // right now, and the archived photo may not even be complete yet.
+        if (photoService.isConversionInProgress(photoFilename)) {
+            logger.logDebug(() -> "Photo backfill is skipping " + photoFilename + ", which is still being converted");
+            return;
+        }
+        Path archivePhoto = photoService.getPhotoArchiveDirectory().resolve(photoFilename);
+        try {
+            List<PhotoResizing.ResizeTarget> targets = findStaleTargets(
+                    archivePhoto,
+                    photoService.resizeTargets(photoFilename),
+                    photoService.getExtraFormat());
+            if (targets.isEmpty()) {
+                return;
+            }
+            logger.logDebug(() -> String.format("Photo backfill is regenerating %d sizes of %s", targets.size(), photoFilename));
+            // let go of any mapping of the old files before they are replaced
+            photoService.forgetCachedPhoto(photoFilename);
+            try (InputStream inputStream = Files.newInputStream(archivePhoto)) {
+                PhotoResizing.writeImageFiles(inputStream, targets, photoService.getExtraFormat(), logger);
+            }
+            // someone may have asked for the photo while it was being
+            // converted, putting the old files (or the lack of them) back in the caches
+            photoService.forgetCachedPhoto(photoFilename);
+            regenerated.incrementAndGet();
+        } catch (InvalidPhotoException | IOException ex) {
+            failed.incrementAndGet();
+            logger.logDebug(() -> "Photo backfill was unable to convert " + photoFilename + ": " + ex.getMessage());
+        } catch (RuntimeException ex) {
+            // for example, ImageIO may throw on a corrupt image
+            failed.incrementAndGet();
+            logger.logAsyncError(() -> "Photo backfill was unable to convert " + photoFilename + ": " + StacktraceUtils.stackTraceToString(ex));
+        }
+    }
+
+    /**
+     * The sizes of a photo which are missing, or older than the archived photo.
+     * If there is an extra format, a size is also stale if it lacks that.
+     * @param extraFormat the MIME type of the extra format, or null if none
+     */
+    static List<PhotoResizing.ResizeTarget> findStaleTargets(
+            Path archivePhoto,
+            List<PhotoResizing.ResizeTarget> targets,
+            String extraFormat) throws IOException {
+        FileTime archiveModified = Files.getLastModifiedTime(archivePhoto);
+        List<PhotoResizing.ResizeTarget> staleTargets = new ArrayList<>();
+        for (PhotoResizing.ResizeTarget target : targets) {
+            Path sizedPhoto = target.file().toPath();
+            if (isStale(sizedPhoto, archiveModified) ||
+                    (extraFormat != null && isStale(PhotoResizing.extraFormatPath(sizedPhoto, extraFormat), archiveModified))) {
+                staleTargets.add(target);
+            }
+        }
+        return staleTargets;
+    }
+
+    private static boolean isStale(Path sizedPhoto, FileTime archiveModified) throws IOException {
+        try {
+            return Files.size(sizedPhoto) == 0 || Files.getLastModifiedTime(sizedPhoto).compareTo(archiveModified) < 0;
+        } catch (NoSuchFileException ex) {
+            return true;
+        }
+    }
+
+    /**
+     * The filenames of the photos in the archive, in order
+     */
+    static List<String> listArchivedPhotos(Path photoArchiveDirectory) throws IOException {
+        try (Stream<Path> files = Files.list(photoArchiveDirectory)) {
+            return files
+                    .filter(Files::isRegularFile)
+                    .map(x -> x.getFileName().toString())
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private String readCheckpoint() throws IOException {
+        try {
+            String checkpoint = Files.readString(checkpointFile).trim();
+            return checkpoint.isEmpty() ? null : checkpoint;
+        } catch (NoSuchFileException ex) {
+            return null;
+        }
+    }
+
+    private void writeCheckpoint(String lastPhotoFilename) {
+        try {
+            Files.writeString(checkpointFile, lastPhotoFilename);
+        } catch (IOException ex) {
+            logger.logAsyncError(() -> "Unable to write the photo backfill checkpoint: " + StacktraceUtils.stackTraceToString(ex));
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.renomad.inmra.featurelogic.photo;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Holds the bytes of recently-served photos in memory, so we
+ * don't need to read them from disk each time.
+ * <br>
+ * The cache is bounded by the total count of bytes it holds, rather than by
+ * a count of photos, since an "original" photo may be a hundred times larger
+ * than a thumbnail.  When adding a photo would go over the budget, the
+ * least-recently used photos are dropped until it fits.
+ * <br>
+ * The photos are spread across several shards by their key, each shard
+ * with its own lock and its own part of the budget, so that many requests
+ * for photos - like when the homepage or a person's page loads - are
+ * rarely held up waiting on each other.
+ */
+public class PhotoByteCache {
+
+    /**
+     * The count of shards, if no count is given
+     */
+    public static final int DEFAULT_SHARD_COUNT = 16;
+
+    private static final class Shard {
+        private final ReentrantLock lock = new ReentrantLock();
+        /**
+         * ordered by access, least-recently used first
+         */
+        private final LinkedHashMap<String, byte[]> photos = new LinkedHashMap<>(16, 0.75f, true);
+        private long sizeInBytes;
+    }
+
+    private final Shard[] shards;
+    private final long maxBytesPerShard;
+    private final long maxBytes;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+
+    /**
+     * Builds with {@link #DEFAULT_SHARD_COUNT} shards
+     * @param maxBytes the most bytes of photos we will hold
+     */
+    public PhotoByteCache(long maxBytes) {
+        this(maxBytes, DEFAULT_SHARD_COUNT);
+    }
+
+    /**
+     * @param maxBytes the most bytes of photos we will hold, split evenly between the shards
+     * @param shardCount the count of shards.  More shards means less waiting
+     *                   between threads, but a smaller budget for each shard.
+     */
+    public PhotoByteCache(long maxBytes, int shardCount) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("The count of shards must be greater than zero. Was: " + shardCount);
+        }
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard();
+        }
+        this.maxBytes = Math.max(0, maxBytes);
+        this.maxBytesPerShard = this.maxBytes / shardCount;
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+    }
+
+    /**
+     * Get the bytes of a photo, or null if we don't have it
+     */
+    public byte[] get(String key) {
+        Shard shard = shardFor(key);
+        byte[] photo;
+        shard.lock.lock();
+        try {
+            photo = shard.photos.get(key);
+        } finally {
+            shard.lock.unlock();
+        }
+        if (photo == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return photo;
+    }
+
+    /**
+     * Store the bytes of a photo, dropping the least-recently used photos
+     * as needed to stay within the budget.  A photo too large to fit
+     * in its shard's part of the budget is not stored at all.
+     */
+    public void put(String key, byte[] photo) {
+        Shard shard = shardFor(key);
+        shard.lock.lock();
+        try {
+            byte[] previous = shard.photos.remove(key);
+            if (previous != null) {
+                shard.sizeInBytes -= previous.length;
+            }
+            if (photo.length > maxBytesPerShard) {
+                return;
+            }
+            Iterator<Map.Entry<String, byte[]>> iterator = shard.photos.entrySet().iterator();
+            while (shard.sizeInBytes + photo.length > maxBytesPerShard && iterator.hasNext()) {
+                shard.sizeInBytes -= iterator.next().getValue().length;
+                iterator.remove();
+                evictions.increment();
+            }
+            shard.photos.put(key, photo);
+            shard.sizeInBytes += photo.length;
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * Remove a photo from the cache, if it's here
+     */
+    public void remove(String key) {
+        Shard shard = shardFor(key);
+        shard.lock.lock();
+        try {
+            byte[] previous = shard.photos.remove(key);
+            if (previous != null) {
+                shard.sizeInBytes -= previous.length;
+            }
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * The count of photos held
+     */
+    public int size() {
+        int count = 0;
+        for (Shard shard : shards) {
+            shard.lock.lock();
+            try {
+                count += shard.photos.size();
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The total bytes of the photos held
+     */
+    public long getSizeInBytes() {
+        long total = 0;
+        for (Shard shard : shards) {
+            shard.lock.lock();
+            try {
+                total += shard.sizeInBytes;
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+        return total;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * The count of times {@link #get(String)} found the photo
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * The count of times {@link #get(String)} did not find the photo
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * The count of photos dropped to make room for others
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    private Shard shardFor(String key) {
+        // spread the bits of the hash, since similar paths can have similar hashes
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return shards[Math.floorMod(hash, shards.length)];
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PhotoByteCache{photos=%d, bytes=%d, maxBytes=%d, hits=%d, misses=%d, evictions=%d}",
+                size(), getSizeInBytes(), maxBytes, getHits(), getMisses(), getEvictions());
+    }
+}
@@ -1,10 +1,9 @@
 package com.renomad.inmra.featurelogic.photo;
 
 import com.renomad.minum.logging.ILogger;
-import com.renomad.minum.queue.AbstractActionQueue;
-import com.renomad.minum.queue.ActionQueue;
 import com.renomad.minum.state.Context;
 import com.renomad.minum.testing.StopwatchUtils;
+import com.renomad.minum.utils.StacktraceUtils;
 
 import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
@@ -14,35 +13,159 @@ import javax.imageio.stream.FileImageOutputStream;
 import javax.imageio.stream.ImageOutputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class is responsible for resizing photos.
  * <br>
  * Our typical use case is to convert new incoming photos
  * to thumbnail-size and medium-size (1200) jpg images.
+ * <br>
+ * The conversions are carried out by a few worker threads, taking from
+ * a queue of limited size.  If the queue is full - say, during a large batch
+ * of uploads - whoever is adding a conversion will wait until there is room,
+ * rather than piling up the bytes of many photos in memory.
+ * <br>
+ * Optionally, each size may also be written in an "extra format", like
+ * WebP, alongside the JPEG - see {@link #usableExtraFormat(String, ILogger)}.
+ * Browsers that accept that format may be sent it instead, since it
+ * is usually smaller for the same quality.
  */
 public class PhotoResizing {
 
-    private final AbstractActionQueue photoResizingQueue;
+    /**
+     * The count of conversions that may wait in the queue, if no count is given
+     */
+    public static final int DEFAULT_QUEUE_SIZE = 20;
+
+    private final ThreadPoolExecutor photoResizingExecutor;
     private final ILogger logger;
+    private final String extraFormat;
 
+    /**
+     * Builds with a worker for each core of the host, and a queue
+     * of {@link #DEFAULT_QUEUE_SIZE}
+     */
     public PhotoResizing(Context context) {
-        photoResizingQueue = new ActionQueue("photo_resizing", context).initialize();
+        this(context, 0, DEFAULT_QUEUE_SIZE);
+    }
+
+    /**
+     * @param threadCount the count of workers converting photos.  If zero or less, one per core of the host.
+     * @param queueSize the count of conversions that may wait for a worker.
+     */
+    public PhotoResizing(Context context, int threadCount, int queueSize) {
+        this(context, threadCount, queueSize, null);
+    }
+
+    /**
+     * @param threadCount the count of workers converting photos.  If zero or less, one per core of the host.
+     * @param queueSize the count of conversions that may wait for a worker.
+     * @param extraFormat the MIME type of an extra format to write each size in, like "image/webp",
+     *                    or null or blank for none.  See {@link #usableExtraFormat(String, ILogger)}
+     */
+    public PhotoResizing(Context context, int threadCount, int queueSize, String extraFormat) {
         logger = context.getLogger();
+        this.extraFormat = usableExtraFormat(extraFormat, logger);
+        int workers = threadCount > 0 ? threadCount : Runtime.getRuntime().availableProcessors();
+        var threadNumber = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "photo_resizing-" + threadNumber.incrementAndGet());
+            // don't keep the program alive just for these
+            thread.setDaemon(true);
+            return thread;
+        };
+        photoResizingExecutor = new ThreadPoolExecutor(
+                workers,
+                workers,
+                60L,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)),
+                threadFactory,
+                PhotoResizing::waitForRoomInQueue);
+        // uploads come in bursts, so let the workers go away when there's nothing to do
+        photoResizingExecutor.allowCoreThreadTimeOut(true);
+        logger.logDebug(() -> String.format("Photo resizing will use %d workers, with room for %d waiting conversions", workers, queueSize));
+    }
+
+    /**
+     * When the queue is full, rather than refusing the conversion, the caller
+     * waits until there is room.
+     */
+    private static void waitForRoomInQueue(Runnable conversion, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Photo resizing has been shut down");
+        }
+        try {
+            executor.getQueue().put(conversion);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting to add a photo conversion", ex);
+        }
+    }
+
+    /**
+     * Runs the conversion on one of the workers.  The returned future completes
+     * when the conversion is finished, whether it succeeded or not - any problems
+     * are logged.
+     */
+    private CompletableFuture<Void> submit(Runnable conversion) {
+        var completion = new CompletableFuture<Void>();
+        photoResizingExecutor.execute(() -> {
+            try {
+                conversion.run();
+            } catch (Exception ex) {
+                logger.logAsyncError(() -> "Error while converting image: " + StacktraceUtils.stackTraceToString(ex));
+            } finally {
+                completion.complete(null);
+            }
+        });
+        return completion;
+    }
+
+    /**
+     * The MIME type of the extra format each size is also written in,
+     * or null if none.  See {@link #usableExtraFormat(String, ILogger)}
+     */
+    public String getExtraFormat() {
+        return extraFormat;
+    }
+
+    /**
+     * The count of conversions waiting for a worker
+     */
+    public int getQueuedCount() {
+        return photoResizingExecutor.getQueue().size();
+    }
+
+    /**
+     * The count of conversions being carried out right now
+     */
+    public int getActiveCount() {
+        return photoResizingExecutor.getActiveCount();
     }
 
     /**
      * The typical way this class is used is by adding an inputStream of
-     * an image here.  It will be processed later, once its turn comes up
-     * in the {@link ActionQueue}
+     * an image here.  It will be processed later, once a worker is available.
      * @param size the maximum size of the image, in pixels, in either dimension
+     * @return a future that completes when the conversion is done
      */
-    public void addConversionToQueue(InputStream inputStream, int size, File file) {
-        this.photoResizingQueue.enqueue(
-                "enqueue an image for resizing and save to " + file.getName(),
+    public CompletableFuture<Void> addConversionToQueue(InputStream inputStream, int size, File file) {
+        return submit(
                 () -> {
                     logger.logDebug(() -> String.format("%s added to queue for photo resizing", file.getName()));
                     StopwatchUtils stopwatchUtils = new StopwatchUtils();
@@ -65,6 +188,103 @@ public class PhotoResizing {
                 });
     }
 
+    /**
+     * A size we will resize an image to, and where to write the result
+     * @param size the maximum size of the image, in pixels, in either dimension
+     */
+    public record ResizeTarget(int size, File file) {}
+
+    /**
+     * Similar to {@link #addConversionToQueue(InputStream, int, File)}, but
+     * converts the image to several sizes in one go, decoding it only once.
+     * See {@link #writeImageFiles(InputStream, List, ILogger)}
+     * <br>
+     * The image is read from its file only once a worker takes up the
+     * conversion, so conversions waiting in the queue don't hold the
+     * bytes of their images in memory.
+     * @param source the file of the image, for example in the photo archive
+     * @return a future that completes when all the sizes are done
+     */
+    public CompletableFuture<Void> addMultiSizeConversionToQueue(Path source, List<ResizeTarget> targets) {
+        String fileNames = String.join(", ", targets.stream().map(x -> x.file().getName()).toList());
+        return submit(
+                () -> {
+                    logger.logDebug(() -> String.format("%s added to queue for photo resizing", fileNames));
+                    try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(source))) {
+                        writeImageFiles(inputStream, targets, extraFormat, logger);
+                    } catch (InvalidPhotoException ex) {
+                        logger.logDebug(ex::getMessage);
+                    } catch (IOException e) {
+                        logger.logAsyncError(() -> "Error while converting image: " + fileNames + ". Error: " + e.getMessage());
+                    }
+                });
+    }
+
+    /**
+     * Decodes an image once, and writes it at each of the sizes requested.
+     * <br>
+     * The sizes are made from largest to smallest, each one scaled down from
+     * the previous (still in memory, not re-read from its JPEG), so that for
+     * example the 20-pixel icon is made from the 150-pixel thumbnail rather
+     * than from the full-size image.
+     */
+    public static void writeImageFiles(
+            InputStream inputStream,
+            List<ResizeTarget> targets,
+            ILogger logger) throws IOException {
+        writeImageFiles(inputStream, targets, null, logger);
+    }
+
+    /**
+     * Like {@link #writeImageFiles(InputStream, List, ILogger)}, but each size is
+     * also written in the extra format, if one is given.  Trouble writing the extra
+     * format is logged, but doesn't stop the JPEG files being written.
+     * @param extraFormat the MIME type of the extra format, like "image/webp", or null for none
+     */
+    public static void writeImageFiles(
+            InputStream inputStream,
+            List<ResizeTarget> targets,
+            String extraFormat,
+            ILogger logger) throws IOException {
+        StopwatchUtils decodeTimer = new StopwatchUtils().startTimer();
+        BufferedImage img = ImageIO.read(inputStream);
+        // see the comment in writeImageFile about why null is an expected possibility
+        if (img == null) {
+            throw new InvalidPhotoException(String.format("Unable to read incoming data as an image for %s", targets));
+        }
+        long decodeMillis = decodeTimer.stopTimer();
+        int width = img.getWidth();
+        int height = img.getHeight();
+        logger.logDebug(() -> String.format("decoded %dx%d image in %d milliseconds", width, height, decodeMillis));
+
+        List<ResizeTarget> largestFirst = targets.stream().sorted(Comparator.comparingInt(ResizeTarget::size).reversed()).toList();
+        List<String> stageTimings = new ArrayList<>();
+        BufferedImage current = img;
+        for (ResizeTarget target : largestFirst) {
+            StopwatchUtils scaleTimer = new StopwatchUtils().startTimer();
+            current = progressiveScaling(current, target.size());
+            long scaleMillis = scaleTimer.stopTimer();
+
+            StopwatchUtils writeTimer = new StopwatchUtils().startTimer();
+            writeJpegImageFile(current, target.file());
+            if (extraFormat != null) {
+                File extraFormatFile = extraFormatPath(target.file().toPath(), extraFormat).toFile();
+                try {
+                    writeExtraFormatImageFile(current, extraFormatFile, extraFormat);
+                } catch (IOException | RuntimeException ex) {
+                    logger.logAsyncError(() -> "Error while writing " + extraFormatFile + ": " + StacktraceUtils.stackTraceToString(ex));
+                }
+            }
+            long writeMillis = writeTimer.stopTimer();
+
+            String stageTiming = String.format("%d: scaled in %d ms, wrote in %d ms", target.size(), scaleMillis, writeMillis);
+            logger.logDebug(() -> String.format("Resized to max of %d and wrote %s (%s)", target.size(), target.file(), stageTiming));
+            stageTimings.add(stageTiming);
+        }
+        logger.logDebug(() -> String.format("Converted image to %d sizes. decoded in %d ms; %s",
+                largestFirst.size(), decodeMillis, String.join("; ", stageTimings)));
+    }
+
     /**
      * @param size the maximum size of the image, in pixels, in either dimension
      */
@@ -96,15 +316,109 @@ public class PhotoResizing {
         jpgWriteParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
         jpgWriteParam.setCompressionQuality(0.35f);
 
-        try (ImageOutputStream outputStream = new FileImageOutputStream(file)) {
-            jpgWriter.setOutput(outputStream);
-            BufferedImage imgWithAlphaRemoved = removeAlphaChannel(img);
-            IIOImage outputImage = new IIOImage(imgWithAlphaRemoved, null, null);
-            jpgWriter.write(null, outputImage, jpgWriteParam);
+        try {
+            writeReplacingFile(file, outputStream -> {
+                jpgWriter.setOutput(outputStream);
+                BufferedImage imgWithAlphaRemoved = removeAlphaChannel(img);
+                IIOImage outputImage = new IIOImage(imgWithAlphaRemoved, null, null);
+                jpgWriter.write(null, outputImage, jpgWriteParam);
+            });
+        } finally {
             jpgWriter.dispose();
         }
     }
 
+    /**
+     * Write an image in a format other than JPEG, using whichever {@link ImageWriter}
+     * is registered for the format.  If the writer supports compression, we
+     * ask for its first (usually lossy) kind, at a moderate quality.
+     * @param mimeType the format to write, like "image/webp"
+     */
+    static void writeExtraFormatImageFile(BufferedImage img, File file, String mimeType) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByMIMEType(mimeType);
+        if (! writers.hasNext()) {
+            throw new IOException("No image writer is available for " + mimeType);
+        }
+        ImageWriter writer = writers.next();
+        try {
+            ImageWriteParam writeParam = writer.getDefaultWriteParam();
+            if (writeParam.canWriteCompressed()) {
+                writeParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                String[] compressionTypes = writeParam.getCompressionTypes();
+                if (compressionTypes != null && compressionTypes.length > 0) {
+                    writeParam.setCompressionType(compressionTypes[0]);
+                }
+                writeParam.setCompressionQuality(0.5f);
+            }
+            writeReplacingFile(file, outputStream -> {
+                writer.setOutput(outputStream);
+                writer.write(null, new IIOImage(img, null, null), writeParam);
+            });
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    /**
+     * Writes an image to an {@link ImageOutputStream}
+     */
+    interface ImageStreamWriter {
+        void write(ImageOutputStream outputStream) throws IOException;
+    }
+
+    /**
+     * Write a file by writing a temporary file beside it, and then moving that
+     * into its place.  A file may be rewritten while it is being served, or while
+     * it is mapped into memory (see {@link MappedPhotoStore}), and writing over it
+     * in place could leave those reading it with a file that is half-written, or
+     * shorter than they expect.  This way, they see either the old file or the new one.
+     */
+    static void writeReplacingFile(File file, ImageStreamWriter imageStreamWriter) throws IOException {
+        Path target = file.toPath().toAbsolutePath();
+        Path temporaryFile = Files.createTempFile(target.getParent(), "." + target.getFileName(), ".tmp");
+        try {
+            try (ImageOutputStream outputStream = new FileImageOutputStream(temporaryFile.toFile())) {
+                imageStreamWriter.write(outputStream);
+            }
+            try {
+                Files.move(temporaryFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temporaryFile, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    /**
+     * Checks whether we are able to write images in the extra format.  Java doesn't
+     * come with writers for the modern formats, like WebP or AVIF, but a pure-Java
+     * ImageIO plugin for one may be put on the classpath, and it will be found here.
+     * @param extraFormat the MIME type asked for, like "image/webp"
+     * @return the MIME type, if there's a writer for it, or null if not (or if none was asked for)
+     */
+    public static String usableExtraFormat(String extraFormat, ILogger logger) {
+        if (extraFormat == null || extraFormat.isBlank()) {
+            return null;
+        }
+        String trimmedFormat = extraFormat.trim().toLowerCase();
+        if (! ImageIO.getImageWritersByMIMEType(trimmedFormat).hasNext()) {
+            logger.logDebug(() -> "No image writer is available for the extra photo format of " + trimmedFormat + ". Only JPEG files will be written.");
+            return null;
+        }
+        return trimmedFormat;
+    }
+
+    /**
+     * Where the extra-format copy of a photo file is kept - beside it, with the
+     * suffix of the format added.  For example, for a MIME type of "image/webp",
+     * "photo_files_medium/abc.jpg" would have "photo_files_medium/abc.jpg.webp"
+     */
+    public static Path extraFormatPath(Path photoPath, String extraFormat) {
+        String suffix = extraFormat.substring(extraFormat.indexOf('/') + 1);
+        return photoPath.resolveSibling(photoPath.getFileName() + "." + suffix);
+    }
+
     /**
      * If the image has an alpha channel, remove it.  Cannot save a JPEG
      * with an alpha channel.
@@ -15,7 +15,6 @@ import com.renomad.minum.state.Context;
 import com.renomad.minum.utils.*;
 import com.renomad.minum.web.*;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -28,6 +27,7 @@ import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.*;
 
 import static com.renomad.minum.utils.SearchUtils.findExactlyOne;
 import static com.renomad.minum.utils.TimeUtils.getTimestampIsoInstant;
@@ -35,11 +35,22 @@ import static com.renomad.minum.web.StatusLine.StatusCode.*;
 
 public class PhotoService {
 
+    /**
+     * The poster shown for a video until one is made from its frames - see {@link VideoPosters}
+     */
+    static final String PLACEHOLDER_VIDEO_POSTER = "/listphotos/video_poster.jpg";
+
     private final AbstractDb<Photograph> photographDb;
     private final AbstractDb<Video> videoDb;
     private final ILogger logger;
     private final Path dbDir;
-    private final Map<String, byte[]> photoLruCache;
+    private final PhotoByteCache photoCache;
+    private final MappedPhotoStore mappedPhotoStore;
+    /**
+     * The MIME type of the extra format photos are written in, or null if none.
+     * See {@link PhotoResizing#usableExtraFormat(String, ILogger)}
+     */
+    private final String extraFormat;
     private final AbstractDb<PhotoToPerson> photoToPersonDb;
     private final AbstractDb<VideoToPerson> videoToPersonDb;
     private final AbstractDb<Person> personDb;
@@ -58,38 +69,67 @@ public class PhotoService {
     private final PhotoDeleter photoDeleter;
     private final FileWriteStringWrapper fileWriteStringWrapper;
     private final PhotoResizing photoResizing;
+    private final VideoPosters videoPosters;
     private final Path videoDirectory;
     private final Path photoArchiveDirectory;
     private final Path photoIconDirectory;
     private final Path photoThumbnailDirectory;
+    private final Path photoMidsizeDirectory;
     private final Path photoMediumDirectory;
     private final Path photoOriginalDirectory;
     private final Auditor auditor;
+    private final CachedData cachedData;
+    private final MediaByPerson mediaByPerson;
+
+    /**
+     * The conversions of newly-uploaded photos which are not yet finished, by
+     * the filename of the photo.  See {@link #waitUntilPhotosConverted(String, long)}
+     */
+    private final Map<String, CompletableFuture<Void>> photoConversions;
+
+    /**
+     * The filenames of photos in the archive which are still being written or
+     * converted - from the moment an upload begins arriving, or a video poster
+     * is queued, until all its sizes are written.  See {@link #isConversionInProgress(String)}
+     */
+    private final Set<String> photosInProgress;
 
     public PhotoService(Context context,
                         MemoriaContext memoriaContext,
                         AbstractDb<Photograph> photographDb,
                         AbstractDb<Video> videoDb,
-                        Map<String, byte[]> photoLruCache,
+                        PhotoByteCache photoCache,
+                        MappedPhotoStore mappedPhotoStore,
                         AbstractDb<PhotoToPerson> photoToPersonDb,
                         AbstractDb<VideoToPerson> videoToPersonDb,
                         AbstractDb<Person> personDb,
                         IAuthUtils auth) {
         IFileUtils fileUtils = memoriaContext.getFileUtils();
         this.auditor = memoriaContext.getAuditor();
+        this.cachedData = memoriaContext.getCachedData();
 
         this.photographDb = photographDb;
         this.videoDb = videoDb;
         this.logger = context.getLogger();
         this.dbDir = Path.of(context.getConstants().dbDirectory);
-        this.photoLruCache = photoLruCache;
+        this.photoCache = photoCache;
+        this.mappedPhotoStore = mappedPhotoStore;
         this.photoToPersonDb = photoToPersonDb;
         this.videoToPersonDb = videoToPersonDb;
+        this.mediaByPerson = new MediaByPerson(photoToPersonDb, videoToPersonDb);
         this.personDb = personDb;
         this.actionQueue = new ActionQueue("photoServiceActionQueue", context).initialize();
         this.auth = auth;
         this.photoDeleter = new PhotoDeleter(logger, new FileDeleteWrapper(), auditor);
-        this.photoResizing = new PhotoResizing(context);
+        this.photoResizing = new PhotoResizing(
+                context,
+                memoriaContext.getConstants().PHOTO_RESIZING_THREADS,
+                memoriaContext.getConstants().PHOTO_RESIZING_QUEUE_SIZE,
+                memoriaContext.getConstants().PHOTO_EXTRA_FORMAT);
+        this.extraFormat = photoResizing.getExtraFormat();
+        this.videoPosters = new VideoPosters(context, memoriaContext.getConstants().VIDEO_POSTER_TOOL);
+        this.photoConversions = new ConcurrentHashMap<>();
+        this.photosInProgress = ConcurrentHashMap.newKeySet();
 
         // we will store the deleted photo metadata in this directory
         this.photoTrash = dbDir.resolve("photo_trash");
@@ -102,6 +142,7 @@ public class PhotoService {
         this.photoArchiveDirectory = dbDir.resolve("photo_archive");
         this.photoIconDirectory = dbDir.resolve("photo_files_icon");
         this.photoThumbnailDirectory = dbDir.resolve("photo_files_thumbnail");
+        this.photoMidsizeDirectory = dbDir.resolve("photo_files_midsize");
         this.photoMediumDirectory = dbDir.resolve("photo_files_medium");
         this.photoOriginalDirectory = dbDir.resolve("photo_files_original");
 
@@ -123,6 +164,7 @@ public class PhotoService {
                 photoArchiveDirectory,
                 photoIconDirectory,
                 photoThumbnailDirectory,
+                photoMidsizeDirectory,
                 photoMediumDirectory,
                 photoOriginalDirectory,
                 videoDirectory,
@@ -145,6 +187,7 @@ public class PhotoService {
             Path photoArchiveDirectory,
             Path photoIconDirectory,
             Path photoThumbnailDirectory,
+            Path photoMidsizeDirectory,
             Path photoMediumDirectory,
             Path photoOriginalDirectory,
             Path videoDirectory,
@@ -159,6 +202,7 @@ public class PhotoService {
             fileUtils.makeDirectory(photoArchiveDirectory);
             fileUtils.makeDirectory(photoIconDirectory);
             fileUtils.makeDirectory(photoThumbnailDirectory);
+            fileUtils.makeDirectory(photoMidsizeDirectory);
             fileUtils.makeDirectory(photoMediumDirectory);
             fileUtils.makeDirectory(photoOriginalDirectory);
             fileUtils.makeDirectory(videoDirectory);
@@ -188,32 +232,94 @@ public class PhotoService {
         // remove the entry for this photo in photo_to_person database
         PhotoToPerson entryToDelete = getPersonByPhoto(photo);
         photoToPersonDb.delete(entryToDelete);
+        cachedData.incrementPersonDataVersion();
 
         // only if no one else is pointing to this URL, will we delete the actual photograph.
         if (photographDb.values().stream().noneMatch(x -> x.getPhotoUrl().equals(photo.getPhotoUrl()))) {
 
-            // clear it from the caches
-            var regularPhotoPath = dbDir.resolve("photo_files_original").resolve(photo.getPhotoUrl());
-            var mediumPhotoPath = dbDir.resolve("photo_files_medium").resolve(photo.getPhotoUrl());
-            var smallPhotoPath = dbDir.resolve("photo_files_thumbnail").resolve(photo.getPhotoUrl());
-            var iconPhotoPath = dbDir.resolve("photo_files_icon").resolve(photo.getPhotoUrl());
             var archivePhotoPath = dbDir.resolve("photo_archive").resolve(photo.getPhotoUrl());
 
-            photoLruCache.remove(regularPhotoPath.toString());
-            photoLruCache.remove(mediumPhotoPath.toString());
-            photoLruCache.remove(smallPhotoPath.toString());
-            photoLruCache.remove(iconPhotoPath.toString());
-
-            photoDeleter.deletePhoto(regularPhotoPath, user);
-            photoDeleter.deletePhoto(mediumPhotoPath, user);
-            photoDeleter.deletePhoto(smallPhotoPath, user);
-            photoDeleter.deletePhoto(iconPhotoPath, user);
+            // clear each size (and its extra format, if any) from the caches, and delete it
+            forgetCachedPhoto(photo.getPhotoUrl());
+            for (Path sizedPhotoPath : sizedPhotoPaths(photo.getPhotoUrl())) {
+                photoDeleter.deletePhoto(sizedPhotoPath, user);
+            }
 
             // don't delete the archive photo, just move it to trash
             movePhotoToTrash(archivePhotoPath, user);
         }
     }
 
+    /**
+     * Each size a photo is converted to, and where that size is written
+     */
+    List<PhotoResizing.ResizeTarget> resizeTargets(String photoFilename) {
+        return List.of(
+                new PhotoResizing.ResizeTarget(3000, photoOriginalDirectory.resolve(photoFilename).toFile()),
+                new PhotoResizing.ResizeTarget(1200, photoMediumDirectory.resolve(photoFilename).toFile()),
+                new PhotoResizing.ResizeTarget(600, photoMidsizeDirectory.resolve(photoFilename).toFile()),
+                new PhotoResizing.ResizeTarget(150, photoThumbnailDirectory.resolve(photoFilename).toFile()),
+                new PhotoResizing.ResizeTarget(20, photoIconDirectory.resolve(photoFilename).toFile()));
+    }
+
+    /**
+     * The paths of every converted size of a photo, and of its extra format, if any.
+     * This doesn't include the photo in the archive.
+     */
+    List<Path> sizedPhotoPaths(String photoFilename) {
+        List<Path> sizedPhotoPaths = new ArrayList<>();
+        for (PhotoResizing.ResizeTarget target : resizeTargets(photoFilename)) {
+            Path sizedPhotoPath = target.file().toPath();
+            sizedPhotoPaths.add(sizedPhotoPath);
+            if (extraFormat != null) {
+                sizedPhotoPaths.add(PhotoResizing.extraFormatPath(sizedPhotoPath, extraFormat));
+            }
+        }
+        return sizedPhotoPaths;
+    }
+
+    /**
+     * Clear every size of a photo from the caches, so that the next
+     * request for it reads the file from the disk.  Needed whenever those
+     * files are deleted or rewritten.
+     */
+    void forgetCachedPhoto(String photoFilename) {
+        for (Path sizedPhotoPath : sizedPhotoPaths(photoFilename)) {
+            photoCache.remove(sizedPhotoPath.toString());
+            if (mappedPhotoStore != null) {
+                mappedPhotoStore.remove(sizedPhotoPath);
+            }
+        }
+    }
+
+    Path getPhotoArchiveDirectory() {
+        return photoArchiveDirectory;
+    }
+
+    /**
+     * The MIME type of the extra format photos are written in, or null if none
+     */
+    String getExtraFormat() {
+        return extraFormat;
+    }
+
+    /**
+     * The count of newly-uploaded photos (and video posters) waiting
+     * to be converted, or being converted right now
+     */
+    int getPendingConversionCount() {
+        return photoResizing.getQueuedCount() + photoResizing.getActiveCount();
+    }
+
+    /**
+     * Whether this photo is still being written to the archive, or converted
+     * to its sizes, by an upload or the making of a video poster.  If so, its
+     * files should be left alone until that is finished.
+     */
+    boolean isConversionInProgress(String photoFilename) {
+        return photosInProgress.contains(photoFilename);
+    }
+
     /**
      * This deletes a {@link Video}
      * @param user the user executing this action. This is used for logging / auditing.
@@ -234,6 +340,7 @@ public class PhotoService {
         // remove the entry for this photo in photo_to_person database
         VideoToPerson entryToDelete = getPersonByVideo(video);
         videoToPersonDb.delete(entryToDelete);
+        cachedData.incrementPersonDataVersion();
 
         // only if no one else is pointing to this URL, will we delete the actual video.
         if (videoDb.values().stream().noneMatch(x -> x.getVideoUrl().equals(video.getVideoUrl()))) {
@@ -242,6 +349,19 @@ public class PhotoService {
 
             // don't delete the video, just move it to trash
             moveVideoToTrash(videoPath, user);
+
+            // the poster made from its frames goes too, if there is one
+            String posterFilename = VideoPosters.posterFilename(video.getVideoUrl());
+            forgetCachedPhoto(posterFilename);
+            for (Path sizedPosterPath : sizedPhotoPaths(posterFilename)) {
+                photoDeleter.deletePhoto(sizedPosterPath, user);
+            }
+            // videos whose poster couldn't be made have none to move, and
+            // there's no sense auditing the move of a file that isn't there
+            Path archivePoster = photoArchiveDirectory.resolve(posterFilename);
+            if (Files.exists(archivePoster)) {
+                movePhotoToTrash(archivePoster, user);
+            }
         }
     }
 
@@ -311,10 +431,7 @@ public class PhotoService {
      * @param person the {@link Person} we are inspecting for photos
      */
     public List<Long> getPhotoIdsForPerson(Person person) {
-        return photoToPersonDb.values().stream()
-                .filter(x -> x.getPersonIndex() == person.getIndex())
-                .map(PhotoToPerson::getPhotoIndex)
-                .toList();
+        return mediaByPerson.getPhotoIdsForPerson(person);
     }
 
     /**
@@ -400,25 +517,42 @@ public class PhotoService {
     }
 
     long handleVideoFile(StreamingMultipartPartition videoPartition, String newFilename) throws IOException {
-        long countOfVideoBytes;
-        Path videoFile = videoDirectory.resolve(newFilename);
-        Files.createFile(videoFile);
+        return writeToNewFile(videoPartition, videoDirectory.resolve(newFilename));
+    }
 
-        FileChannel fc = FileChannel.open(videoFile, StandardOpenOption.WRITE);
-        OutputStream outputStream = Channels.newOutputStream(fc);
-        countOfVideoBytes = copy(videoPartition, outputStream);
-        return countOfVideoBytes;
+    /**
+     * Write an uploaded photo straight into the archive, as it arrives, so
+     * that a large photo is never held in memory all at once.  The
+     * conversions to other sizes read it back from there.
+     * See {@link #writePhotoData(String, String, String, Person)}
+     * @return the count of bytes written
+     */
+    long writePhotoToArchive(InputStream photoStream, String newFilename) throws IOException {
+        // until it is converted, or deleted, it is a work in progress
+        photosInProgress.add(newFilename);
+        return writeToNewFile(photoStream, photoArchiveDirectory.resolve(newFilename));
     }
 
-    long copy(InputStream source, OutputStream target) throws IOException {
-        long countOfBytesRead = 0;
-        byte[] buf = new byte[8192];
-        int length;
-        while ((length = source.read(buf)) != -1) {
-            countOfBytesRead += length;
-            target.write(buf, 0, length);
+    /**
+     * Remove a photo from the archive which was never recorded in the
+     * database - for example, if its upload was incomplete.
+     */
+    void deleteUnrecordedPhoto(String newFilename) {
+        try {
+            Files.deleteIfExists(photoArchiveDirectory.resolve(newFilename));
+        } catch (IOException ex) {
+            logger.logAsyncError(() -> "Unable to delete unrecorded photo " + newFilename + ": " + StacktraceUtils.stackTraceToString(ex));
+        } finally {
+            photosInProgress.remove(newFilename);
+        }
+    }
+
+    private long writeToNewFile(InputStream source, Path file) throws IOException {
+        Files.createFile(file);
+        try (FileChannel fc = FileChannel.open(file, StandardOpenOption.WRITE);
+             OutputStream outputStream = Channels.newOutputStream(fc)) {
+            return copy(source, outputStream);
         }
-        return countOfBytesRead;
     }
 
     /**
@@ -509,71 +643,61 @@ public class PhotoService {
     }
 
     /**
-     * See {@link #photoWaiter(String, int, int, Path, ILogger)}
-     */
-    void waitUntilPhotosConverted(String newFilename, int countOfChecks, int waitTimePerCheck) {
-        photoWaiter(newFilename, countOfChecks, waitTimePerCheck, dbDir, logger);
-    }
-
-    /**
-     * This code will look into all the directories where we expect this photo
-     * to be stored after processing finishes. If the photos do not land in
-     * time, it will just move on (the original file will be in the proper place)
-     * and a debug log will be added.
-     * @param countOfChecks number of times we will check whether the files have arrived in proper place.
-     * @param waitTimePerCheck how long we will wait after checking each time
+     * Wait until a newly-uploaded photo has been converted to all its
+     * sizes - see {@link #writePhotoData(String, String, String, Person)}.
+     * If that doesn't happen in time, it will just move on (the original file
+     * will be in the proper place) and a debug log will be added.
+     * @param maxWaitMillis the longest we will wait
      */
-    static void photoWaiter(String newFilename, int countOfChecks, int waitTimePerCheck, Path dbDir, ILogger logger) {
-        // we will check up to countOfChecks times and then move on.
-        var thumbnailConvertedPhoto = dbDir.resolve("photo_files_thumbnail").resolve(newFilename);
-        var mediumConvertedPhoto = dbDir.resolve("photo_files_medium").resolve(newFilename);
-        var originalConvertedPhoto = dbDir.resolve("photo_files_original").resolve(newFilename);
-        for (int i = 0; i < countOfChecks; i++) {
-            if (
-                    Files.isRegularFile(thumbnailConvertedPhoto) &&
-                            Files.isRegularFile(mediumConvertedPhoto) &&
-                            Files.isRegularFile(originalConvertedPhoto)
-            ) {
-                return;
-            }
-            MyThread.sleep(waitTimePerCheck);
+    void waitUntilPhotosConverted(String newFilename, long maxWaitMillis) {
+        CompletableFuture<Void> conversion = photoConversions.get(newFilename);
+        if (conversion == null) {
+            // either it has already finished, or we don't know of it
+            return;
+        }
+        try {
+            conversion.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            logger.logDebug(() -> "Did not finish converting " + newFilename + " when time ran out");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            logger.logDebug(() -> "Error while waiting for conversion of " + newFilename + ": " + ex.getMessage());
         }
-        // if we get here, we never found the files in all their expected locations
-        logger.logDebug(() -> "Did not find " + newFilename + " stored in its expected locations when time ran out");
     }
 
     /**
-     * Given proper data, writes the new photograph to disk and database.
+     * Given proper data, writes the new photograph to the database.  The
+     * photo itself must already be in the archive - see {@link #writePhotoToArchive(InputStream, String)}
      * <br>
      * This will also add the new photograph to a queue for resizing and
-     * storing in several destination directories. See {@link #photoWaiter(String, int, int, Path, ILogger)}
-     * @param suffix the image file suffix, e.g. ".jpg" or ".png"
+     * storing in several destination directories. See {@link #waitUntilPhotosConverted(String, long)}
+     * @param newFilename the filename of the photo in the archive, e.g. "foo.jpg"
      * @param shortDescription a short description of the image, goes in alt text
      * @param description longer description of the photo - unlimited in length
-     * @param photoBytes the bytes of the image
      * @param person the person associated to this photo
-     * @return the new filename of the image, e.g. "foo.jpg"
      */
-    String writePhotoData(
-            String suffix,
+    void writePhotoData(
+            String newFilename,
             String shortDescription,
             String description,
-            byte[] photoBytes,
-            Person person) throws IOException {
-        var newFilename = UUID.randomUUID() + suffix;
+            Person person) {
         final var newPhotograph = new Photograph(0L, newFilename, shortDescription, description);
-        Files.write(photoArchiveDirectory.resolve(newFilename), photoBytes);
 
         Photograph writtenPhotograph = photographDb.write(newPhotograph);
         final var photoToPerson = new PhotoToPerson(0L, writtenPhotograph.getIndex(), person.getIndex(), newFilename);
         photoToPersonDb.write(photoToPerson);
-
-        // add to queue for resizing
-        photoResizing.addConversionToQueue(new ByteArrayInputStream(photoBytes), 20, photoIconDirectory.resolve(newFilename).toFile());
-        photoResizing.addConversionToQueue(new ByteArrayInputStream(photoBytes), 150, photoThumbnailDirectory.resolve(newFilename).toFile());
-        photoResizing.addConversionToQueue(new ByteArrayInputStream(photoBytes), 1200, photoMediumDirectory.resolve(newFilename).toFile());
-        photoResizing.addConversionToQueue(new ByteArrayInputStream(photoBytes), 3000, photoOriginalDirectory.resolve(newFilename).toFile());
-        return newFilename;
+        cachedData.incrementPersonDataVersion();
+
+        // add to queue for resizing - read from the archive once a worker is free,
+        // decoded once, and written at each size
+        CompletableFuture<Void> conversion = photoResizing.addMultiSizeConversionToQueue(
+                photoArchiveDirectory.resolve(newFilename), resizeTargets(newFilename));
+        photoConversions.put(newFilename, conversion);
+        conversion.whenComplete((result, ex) -> {
+            photoConversions.remove(newFilename);
+            photosInProgress.remove(newFilename);
+        });
     }
 
     /**
@@ -584,11 +708,84 @@ public class PhotoService {
             String description,
             String newVideoFilename,
             Person person) {
-        final var newVideo = new Video(0L, newVideoFilename, shortDescription, description, "/listphotos/video_poster.jpg");
+        final var newVideo = new Video(0L, newVideoFilename, shortDescription, description, PLACEHOLDER_VIDEO_POSTER);
 
         Video writtenVideo = videoDb.write(newVideo);
         final var videoToPerson = new VideoToPerson(0L, writtenVideo.getIndex(), person.getIndex(), newVideoFilename);
         videoToPersonDb.write(videoToPerson);
+        cachedData.incrementPersonDataVersion();
+
+        queueVideoPoster(newVideoFilename);
+    }
+
+    /**
+     * Make a poster for a video from one of its frames, in the background.
+     * <br>
+     * The frame is written to the photo archive and converted to the usual
+     * sizes, so it is served like any other photo.  Once that is done, videos
+     * still showing the placeholder poster are changed to use it.  Posters
+     * chosen by hand are left alone.
+     * @return a future that completes when the poster is in place, or when
+     *         it is clear there won't be one
+     */
+    CompletableFuture<Void> queueVideoPoster(String videoFilename) {
+        String posterFilename = VideoPosters.posterFilename(videoFilename);
+        Path archivePoster = photoArchiveDirectory.resolve(posterFilename);
+        photosInProgress.add(posterFilename);
+        return videoPosters.addExtractionToQueue(videoDirectory.resolve(videoFilename), archivePoster)
+                .thenCompose(wasWritten -> {
+                    if (! wasWritten) {
+                        return CompletableFuture.completedFuture(false);
+                    }
+                    // a poster made before may be mapped, so let go of it before it is replaced
+                    forgetCachedPhoto(posterFilename);
+                    return photoResizing.addMultiSizeConversionToQueue(archivePoster, resizeTargets(posterFilename))
+                            .thenApply(x -> Files.isRegularFile(photoMediumDirectory.resolve(posterFilename)));
+                })
+                .thenAccept(isConverted -> {
+                    if (isConverted) {
+                        forgetCachedPhoto(posterFilename);
+                        usePosterForVideo(videoFilename, "photo?name=" + posterFilename);
+                    }
+                })
+                .exceptionally(ex -> {
+                    logger.logAsyncError(() -> "Error while making a poster for " + videoFilename + ": " + StacktraceUtils.stackTraceToString(ex));
+                    return null;
+                })
+                .whenComplete((result, ex) -> photosInProgress.remove(posterFilename));
+    }
+
+    /**
+     * Make posters for each video still showing the placeholder poster.  This
+     * covers videos uploaded before posters were made, or whose poster
+     * couldn't be made at the time.
+     * @return the count of videos queued
+     */
+    int queueMissingVideoPosters() {
+        List<String> videoFilenames = videoDb.values().stream()
+                .filter(x -> x.getPoster().equals(PLACEHOLDER_VIDEO_POSTER))
+                .map(Video::getVideoUrl)
+                .distinct()
+                .filter(x -> Files.isRegularFile(videoDirectory.resolve(x)))
+                .toList();
+        for (String videoFilename : videoFilenames) {
+            queueVideoPoster(videoFilename);
+        }
+        return videoFilenames.size();
+    }
+
+    private void usePosterForVideo(String videoFilename, String posterUrl) {
+        List<Video> videosWithPlaceholder = videoDb.values().stream()
+                .filter(x -> x.getVideoUrl().equals(videoFilename) && x.getPoster().equals(PLACEHOLDER_VIDEO_POSTER))
+                .toList();
+        for (Video video : videosWithPlaceholder) {
+            enqueueVideoAudit(video);
+            videoDb.write(new Video(video.getIndex(), video.getVideoUrl(), video.getShortDescription(), video.getDescription(), posterUrl));
+        }
+        if (! videosWithPlaceholder.isEmpty()) {
+            logger.logDebug(() -> "Set the poster of " + videoFilename + " to " + posterUrl);
+            cachedData.incrementPersonDataVersion();
+        }
     }
 
     /**
@@ -605,6 +802,7 @@ public class PhotoService {
         Photograph writtenPhotograph = photographDb.write(newPhotograph);
         final var photoToPerson = new PhotoToPerson(0L, writtenPhotograph.getIndex(), person.getIndex(), filename);
         photoToPersonDb.write(photoToPerson);
+        cachedData.incrementPersonDataVersion();
     }
 
     /**
@@ -621,6 +819,7 @@ public class PhotoService {
         Video writtenVideo = videoDb.write(newVideo);
         final var videoToPerson = new VideoToPerson(0L, writtenVideo.getIndex(), person.getIndex(), filename);
         videoToPersonDb.write(videoToPerson);
+        cachedData.incrementPersonDataVersion();
     }
 
     /**
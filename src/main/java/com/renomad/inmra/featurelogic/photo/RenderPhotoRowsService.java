@@ -29,6 +29,7 @@ public class RenderPhotoRowsService {
     private final TemplateProcessor listPhotosItemPreviewTemplateProcessor;
     private final TemplateProcessor listVideosItemPreviewTemplateProcessor;
     private final PersonLruCache personLruCache;
+    private final MediaByPerson mediaByPerson;
 
     // these regex's are used to find the images and videos in the biographies so we can
     // mark them in the table as being used.
@@ -53,6 +54,7 @@ public class RenderPhotoRowsService {
         listPhotosItemPreviewTemplateProcessor = TemplateProcessor.buildProcessor(fileUtils.readTemplate("listphotos/list_photos_item_preview_template.html"));
         listVideosItemPreviewTemplateProcessor = TemplateProcessor.buildProcessor(fileUtils.readTemplate("listphotos/list_videos_item_preview_template.html"));
         this.personLruCache = personLruCache;
+        this.mediaByPerson = new MediaByPerson(photoToPersonDb, videoToPersonDb);
     }
 
     /**
@@ -87,7 +89,7 @@ public class RenderPhotoRowsService {
         // now we have all the photos, we have to find the ones that Memoria owns for this person.
 
         // get all the photos for this person
-        Collection<PhotoToPerson> photoToPersonDataForThisPerson = this.photoToPersonDb.getIndexedData("persons", String.valueOf(foundPerson.getIndex()));
+        Collection<PhotoToPerson> photoToPersonDataForThisPerson = this.photoToPersonDb.getIndexedData(MediaByPerson.PERSONS_INDEX, String.valueOf(foundPerson.getIndex()));
 
         // get the indexes of photos that match against what we found in the bios
         Set<Long> result = new HashSet<>();
@@ -118,7 +120,7 @@ public class RenderPhotoRowsService {
         // now we have all the videos, we have to find the ones that Memoria owns for this person.
 
         // get all the videos for this person
-        Collection<VideoToPerson> videoToPersonDataForThisPerson = this.videoToPersonDb.getIndexedData("persons", String.valueOf(foundPerson.getIndex()));
+        Collection<VideoToPerson> videoToPersonDataForThisPerson = this.videoToPersonDb.getIndexedData(MediaByPerson.PERSONS_INDEX, String.valueOf(foundPerson.getIndex()));
 
         // get the indexes of videos that match against what we found in the bios
         Set<Long> result = new HashSet<>();
@@ -267,9 +269,7 @@ public class RenderPhotoRowsService {
      * @param person the {@link Person} we are inspecting for photos
      */
     private List<Long> getPhotoIdsForPerson(Person person) {
-        return photoToPersonDb.getIndexedData("persons", String.valueOf(person.getIndex())).stream()
-                .map(PhotoToPerson::getPhotoIndex)
-                .toList();
+        return mediaByPerson.getPhotoIdsForPerson(person);
     }
 
     /**
@@ -278,8 +278,6 @@ public class RenderPhotoRowsService {
      * @param person the {@link Person} we are inspecting for videos
      */
     private List<Long> getVideoIdsForPerson(Person person) {
-        return videoToPersonDb.getIndexedData("persons", String.valueOf(person.getIndex())).stream()
-                .map(VideoToPerson::getVideoIndex)
-                .toList();
+        return mediaByPerson.getVideoIdsForPerson(person);
     }
 }
@@ -31,15 +31,9 @@ public class UploadPhoto {
     private final Auditor auditor;
 
     /**
-     * How long we'll wait each check (see {@link #COUNT_OF_PHOTO_CHECKS}
-     * for the photo to be converted
+     * The longest we'll wait for a photo to be converted to all its sizes
      */
-    private static final int WAIT_TIME_PER_PHOTO_CHECK = 1000;
-
-    /**
-     * Count of times we will check for whether a photo has been converted
-     */
-    private static final int COUNT_OF_PHOTO_CHECKS = 10;
+    private static final int MAX_WAIT_FOR_PHOTO_CONVERSION_MILLIS = 10_000;
 
     public UploadPhoto(
             Context context,
@@ -99,40 +93,44 @@ public class UploadPhoto {
                                   StreamingMultipartPartition filePartition,
                                   Person person,
                                   AuthResult authResult) {
-        byte[] photoBytes;
-        try {
-            photoBytes = filePartition.readAllBytes();
-            if (photoBytes == null || photoBytes.length == 0) {
-                throw new InvalidPhotoException("Error: a photograph is required");
-            }
-        } catch (InvalidPhotoException ex) {
-            return Respond.userInputError();
-        }
-
-
-        // the short description
-        String shortDescription = new String(iterator.next().readAllBytes(), StandardCharsets.UTF_8);
-
-        // the long description
-        String longDescription = new String(iterator.next().readAllBytes(), StandardCharsets.UTF_8);
-
+        // the photo goes straight to the archive as it arrives, rather than into memory
         String suffix = photoService.extractSuffix(filePartition);
-        String newFilename;
+        String newFilename = UUID.randomUUID() + suffix;
+        long countOfPhotoBytes;
         try {
-            newFilename = photoService.writePhotoData(suffix, shortDescription, longDescription, photoBytes, person);
+            countOfPhotoBytes = photoService.writePhotoToArchive(filePartition, newFilename);
         } catch (IOException ex) {
+            photoService.deleteUnrecordedPhoto(newFilename);
             logger.logAsyncError(() -> StacktraceUtils.stackTraceToString(ex));
             return Response.buildResponse(CODE_500_INTERNAL_SERVER_ERROR, Map.of("Content-Type", "text/plain"), ex.toString());
         }
+        if (countOfPhotoBytes == 0) {
+            // a photograph is required
+            photoService.deleteUnrecordedPhoto(newFilename);
+            return Respond.userInputError();
+        }
+
+        // the short and long descriptions come after the photo
+        String shortDescription;
+        String longDescription;
+        try {
+            shortDescription = new String(iterator.next().readAllBytes(), StandardCharsets.UTF_8);
+            longDescription = new String(iterator.next().readAllBytes(), StandardCharsets.UTF_8);
+        } catch (RuntimeException ex) {
+            photoService.deleteUnrecordedPhoto(newFilename);
+            throw ex;
+        }
+
+        photoService.writePhotoData(newFilename, shortDescription, longDescription, person);
 
-        // wait until we see the files end up in their destination directories.
-        photoService.waitUntilPhotosConverted(newFilename, COUNT_OF_PHOTO_CHECKS, WAIT_TIME_PER_PHOTO_CHECK);
+        // wait until the files are written to their destination directories.
+        photoService.waitUntilPhotosConverted(newFilename, MAX_WAIT_FOR_PHOTO_CONVERSION_MILLIS);
 
         auditor.audit(() -> String.format("%s has posted a new photo, %s, with short description of %s, size of %d",
                 authResult.user().getUsername(),
                 newFilename,
                 shortDescription,
-                photoBytes.length
+                countOfPhotoBytes
         ), authResult.user());
 
         return Response.buildLeanResponse(CODE_303_SEE_OTHER,
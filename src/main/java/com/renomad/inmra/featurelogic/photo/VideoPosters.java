@@ -0,0 +1,140 @@
+package com.renomad.inmra.featurelogic.photo;
+
+import com.renomad.minum.logging.ILogger;
+import com.renomad.minum.state.Context;
+import com.renomad.minum.utils.StacktraceUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Makes a poster for each video - a still frame from near its start, shown
+ * before the video is played - so that a page with many videos doesn't show
+ * the same placeholder for each one.
+ * <br>
+ * Java has no built-in way to decode the frames of an MP4 video, so we
+ * use a tool installed on the host, ffmpeg by default, which works entirely
+ * offline.  If the tool isn't available, videos keep the placeholder poster.
+ * <br>
+ * The extractions are carried out one at a time, on a background thread,
+ * so that uploading a video doesn't wait on it.  The frame is written as a JPEG
+ * in the photo archive, and from there is converted to the usual photo sizes -
+ * see {@link PhotoService#queueVideoPoster(String)}.
+ */
+public class VideoPosters {
+
+    /**
+     * How far into the video, in seconds, we take the frame.  The very first
+     * frame is often black, as the video fades in.
+     */
+    static final String POSTER_SEEK_SECONDS = "1";
+
+    /**
+     * The longest we will let the tool run for one video
+     */
+    static final long MAX_EXTRACTION_SECONDS = 60;
+
+    private final ILogger logger;
+    private final String posterTool;
+    private final ExecutorService posterExecutor;
+
+    /**
+     * @param posterTool the command for extracting a frame, like "ffmpeg".  If blank, no posters are made.
+     */
+    public VideoPosters(Context context, String posterTool) {
+        this.logger = context.getLogger();
+        this.posterTool = posterTool == null ? "" : posterTool.trim();
+        this.posterExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "video_posters");
+            // don't keep the program alive just for this
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * The filename of the poster for a video, for example "abc.mp4" gets "abc_poster.jpg"
+     */
+    public static String posterFilename(String videoFilename) {
+        int suffixIndex = videoFilename.lastIndexOf('.');
+        String baseName = suffixIndex > 0 ? videoFilename.substring(0, suffixIndex) : videoFilename;
+        return baseName + "_poster.jpg";
+    }
+
+    /**
+     * Extract a frame of the video as a poster, once the previous ones are done.
+     * @return a future that completes with true if the poster was written, or false if not
+     *         (any problems are logged)
+     */
+    public CompletableFuture<Boolean> addExtractionToQueue(Path video, Path poster) {
+        if (posterTool.isEmpty()) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return extractPoster(video, poster);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (Exception ex) {
+                logger.logAsyncError(() -> "Error while making a poster for " + video + ": " + StacktraceUtils.stackTraceToString(ex));
+                return false;
+            }
+        }, posterExecutor);
+    }
+
+    /**
+     * Run the tool to write a frame of the video to the poster file.  If the
+     * video is shorter than {@link #POSTER_SEEK_SECONDS}, the first frame is used.
+     * @return true if the poster was written
+     */
+    boolean extractPoster(Path video, Path poster) throws InterruptedException {
+        if (runTool(buildCommand(posterTool, video, poster, POSTER_SEEK_SECONDS), poster)) {
+            return true;
+        }
+        logger.logDebug(() -> "No frame found at " + POSTER_SEEK_SECONDS + " seconds into " + video + ". Trying the first frame");
+        return runTool(buildCommand(posterTool, video, poster, "0"), poster);
+    }
+
+    private boolean runTool(List<String> command, Path poster) throws InterruptedException {
+        Process process;
+        try {
+            process = new ProcessBuilder(command)
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+        } catch (IOException ex) {
+            logger.logDebug(() -> "Unable to run " + command.getFirst() + " to make a video poster: " + ex.getMessage());
+            return false;
+        }
+        if (! process.waitFor(MAX_EXTRACTION_SECONDS, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            logger.logDebug(() -> "Making a video poster took longer than " + MAX_EXTRACTION_SECONDS + " seconds. Stopped " + command);
+            return false;
+        }
+        try {
+            return process.exitValue() == 0 && Files.isRegularFile(poster) && Files.size(poster) > 0;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * The command for writing a single frame of the video, as a JPEG
+     * @param seekSeconds how far into the video to take the frame
+     */
+    static List<String> buildCommand(String posterTool, Path video, Path poster, String seekSeconds) {
+        return List.of(
+                posterTool,
+                "-nostdin",
+                "-loglevel", "error",
+                "-ss", seekSeconds,
+                "-i", video.toString(),
+                "-frames:v", "1",
+                "-y",
+                poster.toString());
+    }
+}
@@ -0,0 +1,139 @@
+package com.renomad.inmra.security;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps the recent login attempts of each client (by ip address), so we
+ * can tell if they are trying too quickly or too often.
+ * <br>
+ * Each client gets a small ring buffer of its last few attempt times, of a
+ * fixed size, so an attacker trying over and over can't make us hold onto more
+ * than that.  Recording an attempt and checking a client are done without
+ * locking, since many clients may be trying to log in at once - for example,
+ * during a credential-stuffing attack from many addresses.
+ * <br>
+ * Clients which haven't tried in a while are removed by {@link #removeInactive(long)},
+ * which {@link KeyProcessor} calls periodically.
+ */
+public class LoginAttempts {
+
+    /**
+     * How many attempts we keep, for each client.  The checks made
+     * on these never need to look further back than this.
+     */
+    static final int ATTEMPTS_KEPT = 8;
+
+    /**
+     * Indicates there was no earlier attempt
+     */
+    public static final long NO_ATTEMPT = Long.MIN_VALUE;
+
+    /**
+     * The recent attempts of a single client.  {@code times} is a ring
+     * buffer, with {@code count} being the total attempts recorded, so the
+     * next attempt goes at {@code count % ATTEMPTS_KEPT}.
+     */
+    static final class ClientAttempts {
+        private final AtomicLongArray times;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong lastAttempt = new AtomicLong(NO_ATTEMPT);
+
+        ClientAttempts() {
+            long[] emptyTimes = new long[ATTEMPTS_KEPT];
+            Arrays.fill(emptyTimes, NO_ATTEMPT);
+            this.times = new AtomicLongArray(emptyTimes);
+        }
+
+        /**
+         * Record an attempt at this time, and return the time of the
+         * attempt before it, or {@link #NO_ATTEMPT} if none.
+         */
+        long record(long now) {
+            long index = count.getAndIncrement();
+            times.set((int) (index % ATTEMPTS_KEPT), now);
+            return lastAttempt.getAndSet(now);
+        }
+
+        /**
+         * The count of attempts at or after this time, up to {@link #ATTEMPTS_KEPT}
+         */
+        int countSince(long cutoff) {
+            int recent = 0;
+            for (int i = 0; i < ATTEMPTS_KEPT; i++) {
+                long time = times.get(i);
+                if (time != NO_ATTEMPT && time >= cutoff) {
+                    recent += 1;
+                }
+            }
+            return recent;
+        }
+
+        long getLastAttempt() {
+            return lastAttempt.get();
+        }
+    }
+
+    private final ConcurrentHashMap<String, ClientAttempts> clients;
+
+    /**
+     * The length of time, in milliseconds, for which attempts are counted
+     */
+    private final long windowMillis;
+
+    /**
+     * @param windowMillis the length of time, in milliseconds, for which attempts
+     *                     are counted - see {@link #countRecentAttempts(String, long)}
+     */
+    public LoginAttempts(long windowMillis) {
+        this.windowMillis = windowMillis;
+        this.clients = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Record that this client tried to log in at this time
+     * @return the time of their previous attempt, or {@link #NO_ATTEMPT} if
+     *         there wasn't one we remember
+     */
+    public long recordAttempt(String clientAddress, long now) {
+        return clients.computeIfAbsent(clientAddress, x -> new ClientAttempts()).record(now);
+    }
+
+    /**
+     * The count of attempts this client has made within the window
+     * before this time, up to {@link #ATTEMPTS_KEPT}
+     */
+    public int countRecentAttempts(String clientAddress, long now) {
+        ClientAttempts clientAttempts = clients.get(clientAddress);
+        if (clientAttempts == null) {
+            return 0;
+        }
+        return clientAttempts.countSince(now - windowMillis);
+    }
+
+    /**
+     * Drop what we know about this client's attempts, so they start afresh
+     */
+    public void forget(String clientAddress) {
+        clients.remove(clientAddress);
+    }
+
+    /**
+     * Remove the clients whose latest attempt was before this time
+     * @return the count of clients removed
+     */
+    public int removeInactive(long inactiveSince) {
+        int before = clients.size();
+        clients.values().removeIf(x -> x.getLastAttempt() < inactiveSince);
+        return Math.max(0, before - clients.size());
+    }
+
+    /**
+     * The count of clients being tracked
+     */
+    public int size() {
+        return clients.size();
+    }
+}
@@ -4,14 +4,8 @@ import com.renomad.minum.logging.ILogger;
 import com.renomad.minum.utils.MyThread;
 import com.renomad.minum.utils.TimeUtils;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.locks.ReentrantLock;
-import java.util.stream.Stream;
 
 /**
  * Looking for bad actors in our system
@@ -40,13 +34,21 @@ public class SecurityUtils implements ISecurityUtils {
     private Thread myThread;
 
     /**
-     * These are all the keys that have been added
+     * If two login attempts from a client are closer together than
+     * this, in milliseconds, we consider it scripted.
      */
-    private final Map<String, Long> keys;
+    static final long SCRIPTED_LOGIN_MILLIS = 1_000;
 
-    private final Map<String, List<Long>> clientsAndTimes = new HashMap<>();
+    /**
+     * The count of login attempts a client may make within
+     * the investigation lifespan before we consider it too many.
+     */
+    static final int ALLOWED_ATTEMPTS_IN_WINDOW = 4;
 
-    private final ReentrantLock scriptedLoginLock = new ReentrantLock();
+    /**
+     * The recent login attempts of the clients under investigation
+     */
+    private final LoginAttempts loginAttempts;
 
     /**
      * This constructor lets us set the length of time that
@@ -56,7 +58,7 @@ public class SecurityUtils implements ISecurityUtils {
     public SecurityUtils(int investigationLifespan, int sleepTime, ExecutorService es, ILogger logger) {
         this.investigationLifespan = investigationLifespan;
         this.es = es;
-        this.keys = new HashMap<>();
+        this.loginAttempts = new LoginAttempts(investigationLifespan);
         this.sleepTime = sleepTime;
         this.logger = logger;
         this.keyProcessor = new KeyProcessor(logger);
@@ -83,7 +85,7 @@ public class SecurityUtils implements ISecurityUtils {
             while (true) {
                 try {
                     var now = System.currentTimeMillis();
-                    keyProcessor.processKeysUnderConsideration(keys, investigationLifespan, clientsAndTimes, now);
+                    keyProcessor.processKeysUnderConsideration(loginAttempts, investigationLifespan, now);
                     Thread.sleep(sleepTime);
                 } catch (InterruptedException ex) {
 
@@ -134,38 +136,21 @@ public class SecurityUtils implements ISecurityUtils {
         logger.logTrace(() -> "SecurityUtils: Reviewing " + clientAddress + " for scripted brute-force logins");
 
         long currentTime = System.currentTimeMillis();
-        keys.putIfAbsent(clientAddress, currentTime);
-
-        scriptedLoginLock.lock();
-        try {
-            clientsAndTimes.merge(
-                    clientAddress,
-                    List.of(currentTime),
-                    (prev, current) -> Stream.concat(prev.stream(), current.stream()).toList());
-        } finally {
-            scriptedLoginLock.unlock();
-        }
-        var logins = clientsAndTimes.get(clientAddress);
-        if (logins == null) return false;
-        var sortedLogins = logins.stream().sorted().toList();
-        if (sortedLogins.size() <= 1) return false;
-        boolean result = false;
-        for (int i = 1; i < sortedLogins.size(); i++) {
-            // if the time between logins is less than 1 second, then they are scripting this.
-            if (sortedLogins.get(i) - sortedLogins.get(i - 1) < 1_000) {
-                result = true;
-                clientsAndTimes.put(clientAddress, new ArrayList<>());
-                break;
-            }
+        long previousAttempt = loginAttempts.recordAttempt(clientAddress, currentTime);
+
+        // if the time between logins is less than 1 second, then they are scripting this.
+        boolean result = previousAttempt != LoginAttempts.NO_ATTEMPT &&
+                currentTime - previousAttempt < SCRIPTED_LOGIN_MILLIS;
+        if (result) {
+            loginAttempts.forget(clientAddress);
         }
-        boolean finalResult = result;
-        logger.logTrace(() -> "SecurityUtils: " + clientAddress + " authenticating too frequently? " + finalResult);
+        logger.logTrace(() -> "SecurityUtils: " + clientAddress + " authenticating too frequently? " + result);
         return result;
     }
 
     @Override
     public boolean hasExceededAllowedFailuresInTimeWindow(String remoteRequester) {
-        return clientsAndTimes.get(remoteRequester).size() > 4;
+        return loginAttempts.countRecentAttempts(remoteRequester, System.currentTimeMillis()) > ALLOWED_ATTEMPTS_IN_WINDOW;
     }
 
 }
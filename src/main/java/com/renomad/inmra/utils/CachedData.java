@@ -3,6 +3,7 @@ package com.renomad.inmra.utils;
 import com.renomad.inmra.featurelogic.persons.Person;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Data that is cached for performance gains
@@ -36,8 +37,39 @@ public class CachedData {
      */
     private List<Person> mostInterestingPeopleIncludingLiving;
 
+    /**
+     * Incremented every time any person's metrics change.  Anything derived from
+     * the metrics - like rankings by how interesting a person is - can compare
+     * this to the value it saw when it was built, to know it has become stale.
+     */
+    private final AtomicLong personMetricsVersion = new AtomicLong();
+
+    /**
+     * Incremented every time a person is added, changed, or removed, or when
+     * photos and videos are added to or removed from a person.  Similar
+     * to {@link #personMetricsVersion}, this lets anything derived from that
+     * data know it has become stale.
+     */
+    private final AtomicLong personDataVersion = new AtomicLong();
+
     public CachedData() {}
 
+    public long getPersonMetricsVersion() {
+        return personMetricsVersion.get();
+    }
+
+    public void incrementPersonMetricsVersion() {
+        personMetricsVersion.incrementAndGet();
+    }
+
+    public long getPersonDataVersion() {
+        return personDataVersion.get();
+    }
+
+    public void incrementPersonDataVersion() {
+        personDataVersion.incrementAndGet();
+    }
+
     public String getBirthDeathDaysRendered() {
         return birthDeathDaysRendered;
     }
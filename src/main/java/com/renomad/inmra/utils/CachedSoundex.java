@@ -0,0 +1,81 @@
+package com.renomad.inmra.utils;
+
+import com.renomad.minum.utils.LRUCache;
+
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Wraps {@link DaitchMokotoffSoundex}, remembering the codes of
+ * recently-encoded words.
+ * <br>
+ * The encoding works through hundreds of rules for each word, but
+ * the words we encode are mostly the same ones over and over - names
+ * of persons, and what people type into the search box - so it pays
+ * to keep the results.  The cache is bounded, dropping the least-recently
+ * used entries once it is full.
+ */
+public class CachedSoundex {
+
+    private final DaitchMokotoffSoundex soundex;
+    private final Map<String, String> encodingCache;
+    private final ReentrantLock encodingCacheLock;
+    private final int maxSize;
+
+    /**
+     * @param maxSize the most encodings we will hold in the cache
+     */
+    public CachedSoundex(int maxSize) {
+        this.soundex = new DaitchMokotoffSoundex();
+        this.encodingCache = LRUCache.getLruCache(maxSize);
+        this.encodingCacheLock = new ReentrantLock();
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Same as {@link DaitchMokotoffSoundex#encode(String)}, but
+     * uses the cached result if we have one.
+     */
+    public String encode(String source) {
+        if (source == null) {
+            return null;
+        }
+        encodingCacheLock.lock();
+        try {
+            String cachedCode = encodingCache.get(source);
+            if (cachedCode != null) {
+                return cachedCode;
+            }
+        } finally {
+            encodingCacheLock.unlock();
+        }
+
+        // encode outside the lock, so other threads aren't held up.  If two threads
+        // encode the same word at once, they will get the same result.
+        String code = soundex.encode(source);
+
+        encodingCacheLock.lock();
+        try {
+            encodingCache.put(source, code);
+        } finally {
+            encodingCacheLock.unlock();
+        }
+        return code;
+    }
+
+    /**
+     * The count of encodings currently held
+     */
+    public int size() {
+        encodingCacheLock.lock();
+        try {
+            return encodingCache.size();
+        } finally {
+            encodingCacheLock.unlock();
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+}
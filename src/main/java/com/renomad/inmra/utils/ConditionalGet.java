@@ -0,0 +1,177 @@
+package com.renomad.inmra.utils;
+
+import com.renomad.minum.web.Headers;
+import com.renomad.minum.web.IResponse;
+import com.renomad.minum.web.Response;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.renomad.minum.web.StatusLine.StatusCode.CODE_304_NOT_MODIFIED;
+
+/**
+ * Helps with conditional requests, where a browser already has a copy
+ * of a file and asks whether it has changed.  If it hasn't, we reply
+ * with a "304 Not Modified" and no body, instead of sending the whole
+ * file again.
+ * <br>
+ * We describe each file with an ETag and a Last-Modified date (the "validators"),
+ * built from the size and modification time of the file.  Getting those only
+ * needs the attributes of the file, not its contents.
+ * <br>
+ * See <a href="https://developer.mozilla.org/en-US/docs/Web/HTTP/Conditional_requests">Conditional requests</a>
+ */
+public final class ConditionalGet {
+
+    private ConditionalGet() {
+        // disallow construction
+    }
+
+    /**
+     * The format of dates in HTTP headers, like "Tue, 03 Jun 2008 11:05:30 GMT"
+     */
+    private static final DateTimeFormatter httpDateFormatter =
+            DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+
+    /**
+     * The values describing a particular version of a file
+     * @param etag a quoted value, like "1a2b-18f3c4d5e6"
+     * @param lastModified the modification time, to the second, since that's all HTTP dates hold
+     */
+    public record Validators(String etag, Instant lastModified) {
+
+        public String lastModifiedHeader() {
+            return httpDateFormatter.format(lastModified);
+        }
+
+        /**
+         * The given headers, with the ETag and Last-Modified headers added
+         */
+        public Map<String, String> addTo(Map<String, String> headers) {
+            var result = new HashMap<>(headers);
+            result.put("ETag", etag);
+            result.put("Last-Modified", lastModifiedHeader());
+            return result;
+        }
+    }
+
+    /**
+     * Get the validators for a file, from its size and modification time
+     * @throws IOException if the file's attributes can't be read, for example if it does not exist
+     */
+    public static Validators forFile(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        long modifiedMillis = attributes.lastModifiedTime().toMillis();
+        String etag = "\"" + Long.toHexString(attributes.size()) + "-" + Long.toHexString(modifiedMillis) + "\"";
+        return new Validators(etag, Instant.ofEpochSecond(Math.floorDiv(modifiedMillis, 1000)));
+    }
+
+    /**
+     * Whether the browser's copy, as described by its If-None-Match or
+     * If-Modified-Since headers, is still current.  Following the HTTP spec,
+     * If-Modified-Since is only considered when there is no If-None-Match.
+     */
+    public static boolean isNotModified(Headers requestHeaders, Validators validators) {
+        List<String> ifNoneMatch = requestHeaders.valueByKey("if-none-match");
+        if (ifNoneMatch != null && ! ifNoneMatch.isEmpty()) {
+            for (String headerValue : ifNoneMatch) {
+                for (String tag : headerValue.split(",")) {
+                    String trimmedTag = tag.trim();
+                    // a "weak" tag still matches for this purpose
+                    if (trimmedTag.startsWith("W/")) {
+                        trimmedTag = trimmedTag.substring(2);
+                    }
+                    if (trimmedTag.equals("*") ||
+                            trimmedTag.equals(validators.etag()) ||
+                            trimmedTag.equals(gzipEtag(validators.etag()))) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        List<String> ifModifiedSince = requestHeaders.valueByKey("if-modified-since");
+        if (ifModifiedSince != null && ! ifModifiedSince.isEmpty()) {
+            try {
+                Instant since = ZonedDateTime.parse(ifModifiedSince.getFirst().trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+                return ! validators.lastModified().isAfter(since);
+            } catch (DateTimeParseException ex) {
+                // an unreadable date is ignored, per the spec
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The tag for the gzip-compressed form of a response, see {@link ResponseCompression}.
+     * For example, "1a2b-18f3c4d5e6" becomes "1a2b-18f3c4d5e6-gzip"
+     */
+    public static String gzipEtag(String etag) {
+        if (etag.endsWith("\"")) {
+            return etag.substring(0, etag.length() - 1) + "-gzip\"";
+        }
+        return etag + "-gzip";
+    }
+
+    /**
+     * Find the file in the static files directory that a request's path refers
+     * to, like "main.css", or null if there isn't one.  Only paths with a
+     * suffix are considered, so the paths of our endpoints are passed over
+     * without checking the disk.
+     * @param isolatedPath the path of the request, without a query string
+     */
+    public static Path findStaticFile(Path staticFilesDirectory, String isolatedPath) {
+        if (! isolatedPath.contains(".") || FileUtils.badFilePathPatterns.matcher(isolatedPath).find()) {
+            return null;
+        }
+        try {
+            Path normalizedDirectory = staticFilesDirectory.normalize();
+            Path file = normalizedDirectory.resolve(isolatedPath).normalize();
+            if (! file.startsWith(normalizedDirectory) || ! Files.isRegularFile(file)) {
+                return null;
+            }
+            return file;
+        } catch (InvalidPathException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Convert the headers of a response, like "Content-Type: text/css",
+     * to a map, so they may be combined with others.  Like header names,
+     * the keys of the map are case-insensitive.
+     */
+    public static Map<String, String> toMap(Headers headers) {
+        var result = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        for (String header : headers.getHeaderStrings()) {
+            int colonIndex = header.indexOf(':');
+            if (colonIndex > 0) {
+                result.put(header.substring(0, colonIndex).trim(), header.substring(colonIndex + 1).trim());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A "304 Not Modified" response.  Per the spec, this includes the same
+     * caching headers a full response would.
+     */
+    public static IResponse notModified(Validators validators, Map<String, String> extraHeaders) {
+        return Response.buildLeanResponse(CODE_304_NOT_MODIFIED, validators.addTo(extraHeaders));
+    }
+}
@@ -26,6 +26,20 @@ public class Constants {
         PRIVACY_COOKIE_MAX_AGE = getProp("PRIVACY_COOKIE_MAX_AGE", 60 * 60 * 24 * 3); // three days
         REGISTER_PREHANDLER = getProp("REGISTER_PREHANDLER", false);
         DO_NEW_PASSWORD_COUNTDOWN = getProp("DO_NEW_PASSWORD_COUNTDOWN", true);
+        FAMILY_GRAPH_PARALLEL_BUILD = getProp("FAMILY_GRAPH_PARALLEL_BUILD", true);
+        PERSON_METRICS_PARALLEL = getProp("PERSON_METRICS_PARALLEL", true);
+        PHOTO_RESIZING_THREADS = getProp("PHOTO_RESIZING_THREADS", 0);
+        PHOTO_RESIZING_QUEUE_SIZE = getProp("PHOTO_RESIZING_QUEUE_SIZE", 20);
+        PHOTO_CACHE_MEGABYTES = getProp("PHOTO_CACHE_MEGABYTES", 256);
+        PHOTO_MAPPED_MEGABYTES = getProp("PHOTO_MAPPED_MEGABYTES", 1024);
+        COMPRESS_RESPONSES = getProp("COMPRESS_RESPONSES", true);
+        PHOTO_EXTRA_FORMAT = properties.getProperty("PHOTO_EXTRA_FORMAT", "");
+        PHOTO_BACKFILL_THREADS = getProp("PHOTO_BACKFILL_THREADS", 1);
+        PHOTO_BACKFILL_PAUSE_MILLIS = getProp("PHOTO_BACKFILL_PAUSE_MILLIS", 500);
+        VIDEO_POSTER_TOOL = properties.getProperty("VIDEO_POSTER_TOOL", "ffmpeg");
+        SESSION_DEADLINE_WRITE_MINUTES = getProp("SESSION_DEADLINE_WRITE_MINUTES", 15);
+        PASSWORD_HASHING_THREADS = getProp("PASSWORD_HASHING_THREADS", 2);
+        PASSWORD_HASHING_QUEUE_SIZE = getProp("PASSWORD_HASHING_QUEUE_SIZE", 10);
     }
 
     /**
@@ -117,6 +131,94 @@ public class Constants {
      */
     public final boolean DO_NEW_PASSWORD_COUNTDOWN;
 
+    /**
+     * Whether the full build of the family graph (at startup, and on a rebuild) will
+     * read and parse the persons on all the cores of the host, rather than one thread.
+     */
+    public final boolean FAMILY_GRAPH_PARALLEL_BUILD;
+
+    /**
+     * Whether the regular calculation of metrics for every person is
+     * spread across all the cores of the host, rather than one thread.
+     */
+    public final boolean PERSON_METRICS_PARALLEL;
+
+    /**
+     * The count of threads converting uploaded photos to their various
+     * sizes.  If zero, one per core of the host.
+     */
+    public final int PHOTO_RESIZING_THREADS;
+
+    /**
+     * The count of photo conversions that may wait for a thread.  Once this
+     * many are waiting, uploads wait until there is room.
+     */
+    public final int PHOTO_RESIZING_QUEUE_SIZE;
+
+    /**
+     * The most memory, in megabytes, used for holding recently-served
+     * photos.  See {@link com.renomad.inmra.featurelogic.photo.PhotoByteCache}
+     */
+    public final int PHOTO_CACHE_MEGABYTES;
+
+    /**
+     * The most, in megabytes, of thumbnail, icon, and medium photos we will
+     * serve from memory-mapped files.  If zero, photos are not mapped.
+     * See {@link com.renomad.inmra.featurelogic.photo.MappedPhotoStore}
+     */
+    public final int PHOTO_MAPPED_MEGABYTES;
+
+    /**
+     * Whether HTML pages, CSS, and JavaScript are compressed with gzip
+     * for browsers that accept it.  See {@link ResponseCompression}
+     */
+    public final boolean COMPRESS_RESPONSES;
+
+    /**
+     * The MIME type of an extra format, like "image/webp", that photos are
+     * written in alongside the JPEG files, for browsers that accept it.  Blank
+     * for none.  This needs an ImageIO plugin for the format on the classpath.
+     */
+    public final String PHOTO_EXTRA_FORMAT;
+
+    /**
+     * The count of photos converted at the same time when regenerating missing
+     * sizes from the Admin page.  See {@link com.renomad.inmra.featurelogic.photo.PhotoBackfill}
+     */
+    public final int PHOTO_BACKFILL_THREADS;
+
+    /**
+     * How long, in milliseconds, regenerating missing photo sizes rests between
+     * each batch of photos, to leave room for the people using the site.
+     */
+    public final int PHOTO_BACKFILL_PAUSE_MILLIS;
+
+    /**
+     * The command run to take a frame from an uploaded video as its
+     * poster, like "ffmpeg".  Blank for none, in which case videos show
+     * a placeholder.  See {@link com.renomad.inmra.featurelogic.photo.VideoPosters}
+     */
+    public final String VIDEO_POSTER_TOOL;
+
+    /**
+     * Each request by a logged-in user extends their session.  Rather than
+     * writing that to disk every time, it is only written once the deadline on
+     * disk has fallen this many minutes behind.
+     */
+    public final int SESSION_DEADLINE_WRITE_MINUTES;
+
+    /**
+     * The count of passwords hashed at the same time, when people log in,
+     * register, or reset their password.  See {@link com.renomad.inmra.auth.services.PasswordHasher}
+     */
+    public final int PASSWORD_HASHING_THREADS;
+
+    /**
+     * The count of passwords that may wait to be hashed.  Once this many are
+     * waiting, further attempts are refused with a request to try again shortly.
+     */
+    public final int PASSWORD_HASHING_QUEUE_SIZE;
+
     /**
      * A helper method to remove some redundant boilerplate code for grabbing
      * configuration values from memoria.config
@@ -19,6 +19,12 @@ public class MemoriaContext {
     private final CachedData cachedData;
     private ISecurityUtils securityUtils;
 
+    /**
+     * The hash of the privacy password, worked out the first time
+     * it is needed.  See {@link #getHashedPrivacyPassword()}
+     */
+    private volatile String hashedPrivacyPassword;
+
     /**
      * An object we pass around throughout Memoria, holds instances of some
      * values we need throughout.
@@ -49,11 +55,22 @@ public class MemoriaContext {
         return new MemoriaContext(constants, fileUtils, auditor, cachedData);
     }
 
+    /**
+     * The hash of the privacy password.  Hashing is slow on purpose, and the
+     * password only changes with a restart, so this is worked out once - at
+     * startup, when {@link com.renomad.inmra.auth.AuthUtils} is built - and
+     * kept from then on.
+     */
     public String getHashedPrivacyPassword() {
-        if (constants.PRIVACY_PASSWORD == null || constants.PRIVACY_PASSWORD.isBlank()) {
-            throw new MissingPrivacyPasswordException();
+        String hash = hashedPrivacyPassword;
+        if (hash == null) {
+            if (constants.PRIVACY_PASSWORD == null || constants.PRIVACY_PASSWORD.isBlank()) {
+                throw new MissingPrivacyPasswordException();
+            }
+            hash = CryptoUtils.createPasswordHash(constants.PRIVACY_PASSWORD, "this_is_my_salt");
+            hashedPrivacyPassword = hash;
         }
-        return CryptoUtils.createPasswordHash(constants.PRIVACY_PASSWORD, "this_is_my_salt");
+        return hash;
     }
 
 
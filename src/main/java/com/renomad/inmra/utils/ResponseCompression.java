@@ -0,0 +1,209 @@
+package com.renomad.inmra.utils;
+
+import com.renomad.minum.utils.LRUCache;
+import com.renomad.minum.web.IRequest;
+import com.renomad.minum.web.IResponse;
+import com.renomad.minum.web.Response;
+import com.renomad.minum.web.StatusLine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses the bodies of text responses - our HTML pages, CSS, and
+ * JavaScript - with gzip, when the browser says it accepts that.
+ * <br>
+ * Pages about a person, with long biographies and lists of relatives,
+ * shrink to a fraction of their size this way.  Compressing takes some
+ * work, though, so for responses a browser is allowed to cache (static
+ * files, mostly), we keep the compressed form, keyed by a hash of the
+ * original content. When the same content goes out again, it costs
+ * only the hash.
+ * <br>
+ * The compressed body is handed back to the framework as bytes, with its
+ * Content-Encoding already set, so it goes out just as it is - the framework
+ * only compresses bodies it was given as text.  Responses already carrying a
+ * Content-Encoding are left alone here as well, so a body is never
+ * encoded twice.
+ */
+public class ResponseCompression {
+
+    /**
+     * Bodies smaller than this aren't worth compressing
+     */
+    static final int MINIMUM_SIZE = 1024;
+
+    /**
+     * The count of compressed bodies we will keep
+     */
+    static final int MAX_CACHED = 500;
+
+    private final Map<String, byte[]> compressedCache;
+    private final ReentrantLock compressedCacheLock;
+    private final LongAdder cacheHits;
+    private final LongAdder compressions;
+
+    public ResponseCompression() {
+        this.compressedCache = LRUCache.getLruCache(MAX_CACHED);
+        this.compressedCacheLock = new ReentrantLock();
+        this.cacheHits = new LongAdder();
+        this.compressions = new LongAdder();
+    }
+
+    /**
+     * If the browser accepts gzip and the response is text of a reasonable
+     * size, returns the response with its body compressed.  Otherwise,
+     * returns the response unchanged.
+     */
+    public IResponse compressIfAccepted(IRequest request, IResponse response) {
+        if (response.getBody() == null ||
+                response.getBody().length < MINIMUM_SIZE ||
+                ! response.getStatusCode().equals(StatusLine.StatusCode.CODE_200_OK)) {
+            return response;
+        }
+        Map<String, String> headers = ConditionalGet.toMap(response.getExtraHeaders());
+        if (! isCompressible(headers) || ! acceptsGzip(request.getHeaders().valueByKey("accept-encoding"))) {
+            return response;
+        }
+
+        byte[] compressedBody = isCacheable(headers) ? getCompressedCached(response.getBody()) : gzipCounted(response.getBody());
+        headers.put("Content-Encoding", "gzip");
+        headers.put("Vary", addToVary(headers.get("Vary")));
+        // the compressed form is a different representation, so it needs a different tag
+        String etag = headers.get("ETag");
+        if (etag != null) {
+            headers.put("ETag", ConditionalGet.gzipEtag(etag));
+        }
+        return Response.buildResponse(response.getStatusCode(), headers, compressedBody);
+    }
+
+    /**
+     * The count of times we found an already-compressed body
+     */
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    /**
+     * The count of times we compressed a body
+     */
+    public long getCompressions() {
+        return compressions.sum();
+    }
+
+    private byte[] getCompressedCached(byte[] body) {
+        String key = hash(body);
+        compressedCacheLock.lock();
+        try {
+            byte[] compressed = compressedCache.get(key);
+            if (compressed != null) {
+                cacheHits.increment();
+                return compressed;
+            }
+        } finally {
+            compressedCacheLock.unlock();
+        }
+
+        // compress outside the lock so others aren't held up
+        byte[] compressed = gzipCounted(body);
+        compressedCacheLock.lock();
+        try {
+            compressedCache.put(key, compressed);
+        } finally {
+            compressedCacheLock.unlock();
+        }
+        return compressed;
+    }
+
+    /**
+     * Whether the Accept-Encoding header includes gzip, and doesn't forbid
+     * it with a "q" of zero, like "gzip;q=0"
+     */
+    static boolean acceptsGzip(List<String> acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String headerValue : acceptEncoding) {
+            for (String encoding : headerValue.split(",")) {
+                String[] parts = encoding.trim().split(";");
+                if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                    return parts.length < 2 || ! parts[1].replace(" ", "").matches("q=0(\\.0*)?");
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The Vary header with Accept-Encoding added, keeping whatever else the
+     * response already varies on - like "Accept", for photos.
+     */
+    static String addToVary(String vary) {
+        if (vary == null || vary.isBlank()) {
+            return "Accept-Encoding";
+        }
+        for (String field : vary.split(",")) {
+            String trimmedField = field.trim();
+            if (trimmedField.equalsIgnoreCase("Accept-Encoding") || trimmedField.equals("*")) {
+                return vary;
+            }
+        }
+        return vary + ", Accept-Encoding";
+    }
+
+    /**
+     * Only text is worth compressing - images and videos are compressed already
+     */
+    static boolean isCompressible(Map<String, String> headers) {
+        if (headers.containsKey("Content-Encoding")) {
+            return false;
+        }
+        String contentType = headers.getOrDefault("Content-Type", "").toLowerCase();
+        return contentType.startsWith("text/") ||
+                contentType.startsWith("application/javascript") ||
+                contentType.startsWith("application/json") ||
+                contentType.startsWith("image/svg+xml");
+    }
+
+    /**
+     * Responses the browser may cache are likely to go out again just the same
+     */
+    static boolean isCacheable(Map<String, String> headers) {
+        String cacheControl = headers.getOrDefault("Cache-Control", "");
+        return cacheControl.contains("max-age") && ! cacheControl.contains("no-store");
+    }
+
+    static byte[] gzip(byte[] body) {
+        var out = new ByteArrayOutputStream(body.length / 4);
+        try (var gzipOutputStream = new GZIPOutputStream(out)) {
+            gzipOutputStream.write(body);
+        } catch (IOException ex) {
+            // a ByteArrayOutputStream doesn't throw
+            throw new UncheckedIOException(ex);
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] gzipCounted(byte[] body) {
+        compressions.increment();
+        return gzip(body);
+    }
+
+    private static String hash(byte[] body) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body));
+        } catch (NoSuchAlgorithmException ex) {
+            // every Java runtime is required to have SHA-256
+            throw new IllegalStateException(ex);
+        }
+    }
+}
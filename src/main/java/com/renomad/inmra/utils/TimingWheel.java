@@ -0,0 +1,219 @@
+package com.renomad.inmra.utils;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A hierarchical timing wheel, for keeping track of many deadlines and
+ * finding out which have passed, at a constant cost for each one scheduled,
+ * cancelled, or expired - however many are being kept.
+ * <br>
+ * The lowest wheel has a slot for each tick (for example, each second), the
+ * next wheel up has a slot for each full turn of the one below, and so on.
+ * A deadline goes in the lowest wheel whose span reaches it.  As time passes,
+ * the slots of the higher wheels are emptied down into the lower ones, and
+ * the deadlines in the slots of the lowest wheel expire.  Deadlines
+ * beyond the span of the highest wheel are carried around in its furthest
+ * slot until they come within reach.
+ * <br>
+ * See "Hashed and Hierarchical Timing Wheels" by Varghese and Lauck.
+ *
+ * @param <K> the key for a deadline, so it may be replaced or cancelled
+ * @param <V> the value given back when its deadline has passed
+ */
+public class TimingWheel<K, V> {
+
+    /**
+     * How many slots are in each wheel
+     */
+    static final int WHEEL_SIZE = 64;
+
+    private static final class Timer<K, V> {
+        private final K key;
+        private final V value;
+        private final long deadlineMillis;
+        private Set<Timer<K, V>> slot;
+
+        private Timer(K key, V value, long deadlineMillis) {
+            this.key = key;
+            this.value = value;
+            this.deadlineMillis = deadlineMillis;
+        }
+    }
+
+    /**
+     * The length of a slot, in milliseconds, for each wheel
+     */
+    private final long[] tickMillis;
+
+    /**
+     * The slots of each wheel, by wheel and then slot
+     */
+    private final List<List<Set<Timer<K, V>>>> wheels;
+
+    private final Map<K, Timer<K, V>> timersByKey;
+    private final ReentrantLock lock;
+
+    /**
+     * The count of ticks of the lowest wheel since the epoch - that is,
+     * the current time, in ticks.  Everything in slots before this has expired.
+     */
+    private long currentTick;
+
+    /**
+     * @param tickMillis the length, in milliseconds, of a slot in the lowest wheel.  Deadlines
+     *                   expire within this length of time after they pass.
+     * @param wheelCount how many wheels.  Each one reaches {@link #WHEEL_SIZE} times further than the one below.
+     * @param nowMillis the current time, in milliseconds since the epoch
+     */
+    public TimingWheel(long tickMillis, int wheelCount, long nowMillis) {
+        if (tickMillis <= 0 || wheelCount <= 0) {
+            throw new IllegalArgumentException("The tick and count of wheels must be positive");
+        }
+        this.tickMillis = new long[wheelCount];
+        this.wheels = new ArrayList<>();
+        for (int i = 0; i < wheelCount; i++) {
+            this.tickMillis[i] = i == 0 ? tickMillis : Math.multiplyExact(this.tickMillis[i - 1], WHEEL_SIZE);
+            List<Set<Timer<K, V>>> slots = new ArrayList<>();
+            for (int j = 0; j < WHEEL_SIZE; j++) {
+                slots.add(new HashSet<>());
+            }
+            this.wheels.add(slots);
+        }
+        this.timersByKey = new HashMap<>();
+        this.lock = new ReentrantLock();
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    /**
+     * Keep this deadline, replacing any other with the same key.
+     * @return the value, if its deadline has already passed, so the
+     *         caller may handle it now.  Otherwise, null.
+     */
+    public V schedule(K key, V value, long deadlineMillis) {
+        lock.lock();
+        try {
+            removeTimer(timersByKey.remove(key));
+            var timer = new Timer<>(key, value, deadlineMillis);
+            if (! place(timer)) {
+                return value;
+            }
+            timersByKey.put(key, timer);
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stop keeping the deadline for this key, if there is one
+     */
+    public void cancel(K key) {
+        lock.lock();
+        try {
+            removeTimer(timersByKey.remove(key));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Move the wheels along to this time
+     * @return the values whose deadlines have passed, which are no longer kept
+     */
+    public List<V> advance(long nowMillis) {
+        List<V> expired = new ArrayList<>();
+        lock.lock();
+        try {
+            long targetTick = nowMillis / tickMillis[0];
+            while (currentTick < targetTick) {
+                currentTick += 1;
+                long currentMillis = currentTick * tickMillis[0];
+
+                // empty the slots of the higher wheels which have come due down
+                // into the lower wheels, highest first.
+                for (int wheel = tickMillis.length - 1; wheel > 0; wheel--) {
+                    if (currentMillis % tickMillis[wheel] == 0) {
+                        Set<Timer<K, V>> slot = slotFor(wheel, currentMillis);
+                        List<Timer<K, V>> cascading = new ArrayList<>(slot);
+                        slot.clear();
+                        for (Timer<K, V> timer : cascading) {
+                            expireIfNotPlaced(timer, expired);
+                        }
+                    }
+                }
+
+                // the slot for the tick just finished holds deadlines which have now passed
+                Set<Timer<K, V>> slot = slotFor(0, currentMillis - tickMillis[0]);
+                List<Timer<K, V>> expiring = new ArrayList<>(slot);
+                slot.clear();
+                for (Timer<K, V> timer : expiring) {
+                    expireIfNotPlaced(timer, expired);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return expired;
+    }
+
+    /**
+     * The count of deadlines being kept
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return timersByKey.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void expireIfNotPlaced(Timer<K, V> timer, List<V> expired) {
+        timer.slot = null;
+        if (! place(timer)) {
+            timersByKey.remove(timer.key);
+            expired.add(timer.value);
+        }
+    }
+
+    /**
+     * Put the timer in the lowest wheel which reaches its deadline.
+     * @return false if the deadline has already passed
+     */
+    private boolean place(Timer<K, V> timer) {
+        long currentMillis = currentTick * tickMillis[0];
+        if (timer.deadlineMillis < currentMillis) {
+            return false;
+        }
+        for (int wheel = 0; wheel < tickMillis.length; wheel++) {
+            long slotsAhead = timer.deadlineMillis / tickMillis[wheel] - currentMillis / tickMillis[wheel];
+            if (slotsAhead < WHEEL_SIZE) {
+                addToSlot(timer, slotFor(wheel, timer.deadlineMillis));
+                return true;
+            }
+        }
+        // beyond the reach of the highest wheel, so it goes in the furthest
+        // slot, and is placed again when that comes around.
+        int highest = tickMillis.length - 1;
+        long furthestMillis = currentMillis + (WHEEL_SIZE - 1) * tickMillis[highest];
+        addToSlot(timer, slotFor(highest, furthestMillis));
+        return true;
+    }
+
+    private void addToSlot(Timer<K, V> timer, Set<Timer<K, V>> slot) {
+        slot.add(timer);
+        timer.slot = slot;
+    }
+
+    private void removeTimer(Timer<K, V> timer) {
+        if (timer != null && timer.slot != null) {
+            timer.slot.remove(timer);
+            timer.slot = null;
+        }
+    }
+
+    private Set<Timer<K, V>> slotFor(int wheel, long millis) {
+        return wheels.get(wheel).get((int) Math.floorMod(millis / tickMillis[wheel], (long) WHEEL_SIZE));
+    }
+}
@@ -246,7 +246,7 @@ class HeaderPersonSearch {
         do what we can to keep things simple.
         */
         fetch(
-            "/relationsearch?query=" + currentSearch,
+            "/typeahead?query=" + currentSearch,
         )
             .then((response) => {
                 // if we don't get a 2xx, move to error handling
@@ -0,0 +1,141 @@
+package com.renomad.inmra.auth;
+
+import com.renomad.inmra.utils.FakeRequest;
+import com.renomad.inmra.utils.MemoriaContext;
+import com.renomad.minum.database.AbstractDb;
+import com.renomad.minum.logging.TestLogger;
+import com.renomad.minum.state.Context;
+import com.renomad.minum.testing.StopwatchUtils;
+import com.renomad.minum.testing.TestFramework;
+import com.renomad.minum.utils.FileUtils;
+import com.renomad.minum.web.IRequest;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Properties;
+
+import static com.renomad.minum.testing.TestFramework.*;
+
+public class AuthContextRequestTests {
+
+    private static Context context;
+    private static TestLogger logger;
+    private static AuthUtils authUtils;
+    private static String sessionCode;
+
+    @BeforeClass
+    public static void init() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("DB_DIRECTORY", "target/simple_db_for_auth_context_tests");
+        context = buildTestingContext("AuthContextRequestTests", properties);
+        logger = (TestLogger) context.getLogger();
+        new FileUtils(logger, context.getConstants()).deleteDirectoryRecursivelyIfExists(Path.of("target/simple_db_for_auth_context_tests"));
+
+        MemoriaContext memoriaContext = MemoriaContext.buildMemoriaContext(context);
+        AbstractDb<SessionId> sessionDb = context.getDb("sessions", SessionId.EMPTY);
+        sessionDb.registerIndex(SessionId.SESSION_CODE_INDEX, x -> SessionId.normalizeSessionCode(x.getSessionCode()));
+        AbstractDb<User> userDb = context.getDb("users", User.EMPTY);
+        userDb.registerIndex(User.USER_INDEX, x -> String.valueOf(x.getIndex()));
+
+        User user = userDb.write(new User(0L, "tester", "", ""));
+        SessionId session = sessionDb.write(SessionId.createNewSession(0L, user.getIndex(), Instant.now()));
+        sessionCode = session.getSessionCode();
+        authUtils = new AuthUtils(sessionDb, userDb, context, memoriaContext, new SessionExpiry(context, sessionDb));
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        TestFramework.shutdownTestingContext(context);
+    }
+
+    /**
+     * Whether or not the request keeps the results, they are the same
+     */
+    @Test
+    public void testSameResults() {
+        FakeRequest request = buildRequest("Cookie: sessionid=" + sessionCode);
+        var authContextRequest = new AuthContextRequest(request);
+
+        AuthResult authResult = authUtils.processAuth(request);
+        assertTrue(authResult.isAuthenticated());
+        assertEquals(authUtils.processAuth(authContextRequest), authResult);
+        assertEquals(authUtils.canShowPrivateInformation(authContextRequest), authUtils.canShowPrivateInformation(request));
+
+        FakeRequest loggedOutRequest = buildRequest("Cookie: sessionid=not_a_real_session");
+        assertFalse(authUtils.processAuth(new AuthContextRequest(loggedOutRequest)).isAuthenticated());
+    }
+
+    /**
+     * The result is worked out once, and given again to anyone else asking
+     */
+    @Test
+    public void testComputedOnce() {
+        var authContextRequest = new AuthContextRequest(buildRequest("Cookie: sessionid=" + sessionCode));
+
+        AuthResult first = authUtils.processAuth(authContextRequest);
+        assertTrue(first == authUtils.processAuth(authContextRequest));
+        PrivacyCheckStatus privacyCheckStatus = authUtils.canShowPrivateInformation(authContextRequest);
+        assertTrue(privacyCheckStatus.authResult() == first);
+        assertTrue(privacyCheckStatus == authUtils.canShowPrivateInformation(authContextRequest));
+        assertTrue(privacyCheckStatus.canShowPrivateInformation());
+    }
+
+    /**
+     * Two session cookies is invalid, just as before
+     */
+    @Test
+    public void testMultipleSessionCookies() {
+        RequestCookies cookies = RequestCookies.of(buildRequest("Cookie: sessionid=abc; sessionid=def; privacy-key=xyz"));
+        assertEquals(cookies.sessionIdValue(), "abc");
+        assertTrue(cookies.hasMultipleSessionIds());
+        assertEquals(cookies.privacyKeyValue(), "xyz");
+        assertFalse(authUtils.processAuth(buildRequest("Cookie: sessionid=abc; sessionid=def")).isAuthenticated());
+    }
+
+    /**
+     * A rough comparison of the cost of authentication for a page view, with
+     * and without keeping the results with the request.  A person's page asks
+     * about authentication several times - here, twice directly, and twice
+     * through the privacy check.
+     */
+    @Test
+    public void testAuthCostPerPageView() {
+        int pageViews = 2_000;
+        FakeRequest request = buildRequest("Cookie: sessionid=" + sessionCode + "; privacy-key=abc123");
+
+        StopwatchUtils withoutContextStopwatch = new StopwatchUtils().startTimer();
+        for (int i = 0; i < pageViews; i++) {
+            viewPage(request);
+        }
+        long withoutContextMillis = withoutContextStopwatch.stopTimer();
+
+        StopwatchUtils withContextStopwatch = new StopwatchUtils().startTimer();
+        for (int i = 0; i < pageViews; i++) {
+            viewPage(new AuthContextRequest(request));
+        }
+        long withContextMillis = withContextStopwatch.stopTimer();
+
+        logger.logDebug(() -> "Authenticated %d page views: without a request context took %d milliseconds (%d microseconds per view), with it took %d milliseconds (%d microseconds per view)".formatted(
+                pageViews,
+                withoutContextMillis, withoutContextMillis * 1000L / pageViews,
+                withContextMillis, withContextMillis * 1000L / pageViews));
+        assertTrue(authUtils.processAuth(request).isAuthenticated());
+    }
+
+    private static void viewPage(IRequest request) {
+        authUtils.processAuth(request);
+        authUtils.canShowPrivateInformation(request);
+        authUtils.canShowPrivateInformation(request);
+        authUtils.processAuth(request);
+    }
+
+    private static FakeRequest buildRequest(String cookieHeader) {
+        FakeRequest request = new FakeRequest();
+        request.headerString = cookieHeader;
+        return request;
+    }
+}
@@ -0,0 +1,76 @@
+package com.renomad.inmra.auth;
+
+import com.renomad.inmra.featurelogic.persons.*;
+import com.renomad.inmra.featurelogic.persons.services.FamilyGraphBuilder;
+import com.renomad.inmra.featurelogic.photo.MediaByPerson;
+import com.renomad.inmra.featurelogic.photo.PhotoToPerson;
+import com.renomad.inmra.featurelogic.photo.VideoToPerson;
+import com.renomad.inmra.utils.MemoriaContext;
+import com.renomad.minum.database.AbstractDb;
+import com.renomad.minum.logging.TestLogger;
+import com.renomad.minum.queue.ActionQueueKiller;
+import com.renomad.minum.state.Constants;
+import com.renomad.minum.state.Context;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.util.*;
+
+import static com.renomad.minum.testing.TestFramework.*;
+
+public class GettingOlderLoopTests {
+
+    private static Context context;
+    private static GettingOlderLoop gettingOlderLoop;
+    private static Map<UUID, PersonMetrics> personMetricsMap;
+
+    /**
+     * This uses the sample database, restored into target/simple_db_no_media
+     * by "make test"
+     */
+    @BeforeClass
+    public static void init() {
+        Properties properties = Constants.getConfiguredProperties();
+        properties.setProperty("DB_DIRECTORY", "target/simple_db_no_media");
+        context = buildTestingContext("GettingOlderLoopTests", properties);
+        var logger = (TestLogger) context.getLogger();
+        Path personDirectory = Path.of(context.getConstants().dbDirectory).resolve("person_files");
+        var personLruCache = new PersonLruCache(personDirectory, logger);
+        AbstractDb<Person> personDb = context.getDb("persons", Person.EMPTY);
+        var familyGraphBuilder = new FamilyGraphBuilder(personDb, personLruCache, logger);
+        var photoToPersonDb = context.getDb("photo_to_person", PhotoToPerson.EMPTY);
+        var videoToPersonDb = context.getDb("video_to_person", VideoToPerson.EMPTY);
+        photoToPersonDb.registerIndex(MediaByPerson.PERSONS_INDEX, x -> String.valueOf(x.getPersonIndex()));
+        videoToPersonDb.registerIndex(MediaByPerson.PERSONS_INDEX, x -> String.valueOf(x.getPersonIndex()));
+        var personMetricsDb = context.getDb("person_metrics", PersonMetrics.EMPTY);
+        personMetricsDb.registerIndex("id", x -> x.getPersonUuid().toString());
+        personMetricsMap = new HashMap<>();
+        MemoriaContext memoriaContext = MemoriaContext.buildMemoriaContext(context);
+        gettingOlderLoop = new GettingOlderLoop(context, memoriaContext, personMetricsDb, familyGraphBuilder, personLruCache, personDb, photoToPersonDb, videoToPersonDb, personMetricsMap);
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        new ActionQueueKiller(context).killAllQueues();
+    }
+
+    /**
+     * Once the metrics have been calculated, calculating them again
+     * with nothing changed should not write anything.
+     */
+    @Test
+    public void testSecondPassWritesNothing() {
+        gettingOlderLoop.processMetrics();
+        GettingOlderLoop.MetricsPass firstPass = gettingOlderLoop.getLastMetricsPass();
+        assertTrue(firstPass.personCount() > 0);
+        assertEquals(personMetricsMap.size(), firstPass.personCount());
+
+        gettingOlderLoop.processMetrics();
+        GettingOlderLoop.MetricsPass secondPass = gettingOlderLoop.getLastMetricsPass();
+        assertEquals(secondPass.personCount(), firstPass.personCount());
+        assertEquals(secondPass.changedCount(), 0);
+    }
+
+}
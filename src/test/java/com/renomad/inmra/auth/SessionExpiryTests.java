@@ -0,0 +1,92 @@
+package com.renomad.inmra.auth;
+
+import com.renomad.minum.database.AbstractDb;
+import com.renomad.minum.logging.TestLogger;
+import com.renomad.minum.state.Context;
+import com.renomad.minum.testing.TestFramework;
+import com.renomad.minum.utils.FileUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Properties;
+
+import static com.renomad.minum.testing.TestFramework.*;
+
+public class SessionExpiryTests {
+
+    private static Context context;
+    private static AbstractDb<SessionId> sessionDb;
+
+    @BeforeClass
+    public static void init() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("DB_DIRECTORY", "target/simple_db_for_session_expiry_tests");
+        context = buildTestingContext("SessionExpiryTests", properties);
+        new FileUtils((TestLogger) context.getLogger(), context.getConstants()).deleteDirectoryRecursivelyIfExists(Path.of("target/simple_db_for_session_expiry_tests"));
+        sessionDb = context.getDb("sessions", SessionId.EMPTY);
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        TestFramework.shutdownTestingContext(context);
+    }
+
+    /**
+     * Sessions are deleted once their kill time passes, and not before.  One
+     * whose deadline was moved later is kept until the new deadline.
+     */
+    @Test
+    public void testDeleteExpiredSessions() {
+        var sessionExpiry = new SessionExpiry(context, sessionDb);
+        Instant now = Instant.now();
+        SessionId session = sessionDb.write(SessionId.createNewSession(0, 1, now));
+        SessionId extendedSession = sessionDb.write(SessionId.createNewSession(0, 2, now));
+        sessionExpiry.scheduleExpiry(session);
+        sessionExpiry.scheduleExpiry(extendedSession);
+        SessionId updatedSession = sessionDb.write(extendedSession.updateSessionDeadline(now.plus(Duration.ofHours(1))));
+        sessionExpiry.scheduleExpiry(updatedSession);
+        assertEquals(sessionExpiry.getScheduledCount(), 2);
+
+        long justBeforeKillTime = session.getKillDateTime().toEpochMilli() - 1_000;
+        assertEquals(sessionExpiry.deleteExpiredSessions(justBeforeKillTime), List.of());
+
+        long justAfterKillTime = session.getKillDateTime().toEpochMilli() + SessionExpiry.TICK_MILLIS;
+        assertEquals(sessionExpiry.deleteExpiredSessions(justAfterKillTime), List.of(session));
+        assertFalse(isInDatabase(session));
+        assertTrue(isInDatabase(updatedSession));
+
+        long afterUpdatedKillTime = updatedSession.getKillDateTime().toEpochMilli() + SessionExpiry.TICK_MILLIS;
+        assertEquals(sessionExpiry.deleteExpiredSessions(afterUpdatedKillTime), List.of(updatedSession));
+        assertFalse(isInDatabase(updatedSession));
+        assertEquals(sessionExpiry.getScheduledCount(), 0);
+    }
+
+    /**
+     * A session which has already expired is deleted as soon as it is
+     * scheduled, and one which is cancelled is left alone.
+     */
+    @Test
+    public void testAlreadyExpiredAndCancelled() {
+        var sessionExpiry = new SessionExpiry(context, sessionDb);
+        SessionId oldSession = sessionDb.write(SessionId.createNewSession(0, 3, Instant.now().minus(Duration.ofDays(3))));
+        sessionExpiry.scheduleExpiry(oldSession);
+        assertFalse(isInDatabase(oldSession));
+
+        SessionId session = sessionDb.write(SessionId.createNewSession(0, 4, Instant.now()));
+        sessionExpiry.scheduleExpiry(session);
+        sessionExpiry.cancelExpiry(session);
+        assertEquals(sessionExpiry.getScheduledCount(), 0);
+        assertEquals(sessionExpiry.deleteExpiredSessions(session.getKillDateTime().toEpochMilli() + 10_000), List.of());
+        assertTrue(isInDatabase(session));
+    }
+
+    private static boolean isInDatabase(SessionId session) {
+        return sessionDb.values().stream().anyMatch(x -> x.getIndex() == session.getIndex());
+    }
+}
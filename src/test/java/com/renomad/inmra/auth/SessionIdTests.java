@@ -2,13 +2,14 @@ package com.renomad.inmra.auth;
 
 import org.junit.Test;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
 
 import static com.renomad.inmra.auth.SessionId.createNewSession;
-import static com.renomad.minum.testing.TestFramework.assertEquals;
+import static com.renomad.minum.testing.TestFramework.*;
 
 public class SessionIdTests {
 
@@ -39,4 +40,25 @@ public class SessionIdTests {
         assertEquals(hoursBetween, 5L);
     }
 
+    /**
+     * The new deadline is only worth writing once the old one has
+     * fallen behind by the interval
+     */
+    @Test
+    public void testNeedsDeadlineUpdate() {
+        SessionId newSession = createNewSession(1L, 1L, instant1);
+        Duration interval = Duration.ofMinutes(15);
+        assertFalse(newSession.needsDeadlineUpdate(instant1, interval));
+        assertFalse(newSession.needsDeadlineUpdate(instant1.plus(14, ChronoUnit.MINUTES), interval));
+        assertTrue(newSession.needsDeadlineUpdate(instant1.plus(15, ChronoUnit.MINUTES), interval));
+        assertTrue(newSession.needsDeadlineUpdate(instant1.plus(2, ChronoUnit.HOURS), interval));
+    }
+
+    /**
+     * Session codes are compared without regard to case
+     */
+    @Test
+    public void testNormalizeSessionCode() {
+        assertEquals(SessionId.normalizeSessionCode("AbC123"), "abc123");
+    }
 }
@@ -0,0 +1,84 @@
+package com.renomad.inmra.auth.services;
+
+import com.renomad.minum.state.Context;
+import com.renomad.minum.testing.TestFramework;
+import com.renomad.minum.utils.CryptoUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.renomad.minum.testing.TestFramework.*;
+
+public class PasswordHasherTests {
+
+    private static Context context;
+
+    @BeforeClass
+    public static void init() {
+        context = buildTestingContext("PasswordHasherTests");
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        TestFramework.shutdownTestingContext(context);
+    }
+
+    /**
+     * The hash is the same as if it were done directly
+     */
+    @Test
+    public void testHash() {
+        var passwordHasher = new PasswordHasher(context, 2, 10);
+        assertEquals(passwordHasher.hash("my password", "abc"), CryptoUtils.createPasswordHash("my password", "abc"));
+    }
+
+    /**
+     * When every worker is busy and the queue is full, another
+     * password is refused right away, rather than waiting.  Once
+     * there's room again, passwords are hashed as usual.
+     */
+    @Test
+    public void testOverloaded() throws Exception {
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var passwordHasher = new PasswordHasher(context, 1, 1, (password, salt) -> {
+            started.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return password + salt;
+        });
+
+        // one being hashed, and one waiting
+        var first = CompletableFuture.supplyAsync(() -> passwordHasher.hash("a", "1"));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        var second = CompletableFuture.supplyAsync(() -> passwordHasher.hash("b", "2"));
+        waitForQueued(passwordHasher);
+
+        boolean threwException = false;
+        try {
+            passwordHasher.hash("c", "3");
+        } catch (PasswordHashingOverloadedException ex) {
+            threwException = true;
+        }
+        assertTrue(threwException);
+
+        release.countDown();
+        assertEquals(first.get(10, TimeUnit.SECONDS), "a1");
+        assertEquals(second.get(10, TimeUnit.SECONDS), "b2");
+        assertEquals(passwordHasher.hash("d", "4"), "d4");
+    }
+
+    private static void waitForQueued(PasswordHasher passwordHasher) throws InterruptedException {
+        for (int i = 0; i < 500 && passwordHasher.getQueuedCount() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(passwordHasher.getQueuedCount(), 1);
+    }
+}
@@ -14,6 +14,7 @@ import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.net.URLEncoder;
 import java.nio.file.Files;
@@ -21,6 +22,7 @@ import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.zip.GZIPInputStream;
 
 import static com.renomad.inmra.SearchHelpers.*;
 import static com.renomad.inmra.auth.PrivacyCheck.PRIVACY_KEY;
@@ -899,4 +901,27 @@ public class FunctionalTests {
 
     }
 
+    /**
+     * A page asked for with gzip goes out compressed just once, through
+     * everything between our endpoint and the socket - decoding it a single
+     * time gives back the page as it is sent to a browser without gzip.
+     */
+    @Test
+    public void testCompressedPage() throws IOException {
+        var plainResponse = ft.get("");
+        assertEquals(plainResponse.statusLine().status(), CODE_200_OK);
+        assertTrue(plainResponse.headers().valueByKey("content-encoding") == null);
+        String plainPage = plainResponse.body().asString();
+        assertTrue(plainPage.contains("</html>"));
+
+        var compressedResponse = ft.get("", List.of("Accept-Encoding: gzip"));
+        assertEquals(compressedResponse.statusLine().status(), CODE_200_OK);
+        assertEquals(compressedResponse.headers().valueByKey("content-encoding"), List.of("gzip"));
+        byte[] compressedBody = compressedResponse.body().asBytes();
+        assertTrue(compressedBody.length < plainPage.length());
+        try (var gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(compressedBody))) {
+            assertEquals(new String(gzipInputStream.readAllBytes(), UTF_8), plainPage);
+        }
+    }
+
 }
@@ -0,0 +1,53 @@
+package com.renomad.inmra.featurelogic.persons;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static com.renomad.minum.testing.TestFramework.*;
+
+public class FamilyGraphTests {
+
+    private static PersonNode person(String name) {
+        return new PersonNode(UUID.randomUUID(), name, Gender.UNKNOWN, true);
+    }
+
+    private static void connect(PersonNode parent, PersonNode child) {
+        var parentConnections = new ArrayList<>(parent.getConnections());
+        parentConnections.add(Map.entry("child", child));
+        parent.setConnections(parentConnections);
+        var childConnections = new ArrayList<>(child.getConnections());
+        childConnections.add(Map.entry("parent", parent));
+        child.setConnections(childConnections);
+    }
+
+    /**
+     * When a person's relationships change, the persons whose metrics
+     * might change include their cousins, uncles and aunts, and all
+     * their ancestors and descendants - but not someone in a separate tree.
+     */
+    @Test
+    public void testPersonsWithMetricsAffectedBy() {
+        PersonNode greatGrandparent = person("great grandparent");
+        PersonNode grandparent = person("grandparent");
+        PersonNode parent = person("parent");
+        PersonNode aunt = person("aunt");
+        PersonNode alice = person("alice");
+        PersonNode cousin = person("cousin");
+        PersonNode aliceChild = person("alice's child");
+        PersonNode stranger = person("stranger");
+        connect(greatGrandparent, grandparent);
+        connect(grandparent, parent);
+        connect(grandparent, aunt);
+        connect(parent, alice);
+        connect(aunt, cousin);
+        connect(alice, aliceChild);
+
+        Set<UUID> affected = FamilyGraph.personsWithMetricsAffectedBy(List.of(alice));
+
+        for (PersonNode personNode : List.of(greatGrandparent, grandparent, parent, aunt, alice, cousin, aliceChild)) {
+            assertTrue(affected.contains(personNode.getId()), personNode.getName() + " should be affected");
+        }
+        assertFalse(affected.contains(stranger.getId()));
+    }
+}
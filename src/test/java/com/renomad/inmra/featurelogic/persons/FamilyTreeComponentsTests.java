@@ -0,0 +1,93 @@
+package com.renomad.inmra.featurelogic.persons;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static com.renomad.minum.testing.TestFramework.*;
+
+public class FamilyTreeComponentsTests {
+
+    private static PersonNode addPerson(String name, Map<UUID, PersonNode> personNodes) {
+        var personNode = new PersonNode(UUID.randomUUID(), name, Gender.UNKNOWN, true);
+        personNodes.put(personNode.getId(), personNode);
+        return personNode;
+    }
+
+    private static void connect(PersonNode parent, PersonNode child) {
+        var parentConnections = new ArrayList<>(parent.getConnections());
+        parentConnections.add(Map.entry("child", child));
+        parent.setConnections(parentConnections);
+        var childConnections = new ArrayList<>(child.getConnections());
+        childConnections.add(Map.entry("parent", parent));
+        child.setConnections(childConnections);
+    }
+
+    /**
+     * Two separate trees, then joined by a new person, then split
+     * again when that person is removed.
+     */
+    @Test
+    public void testAddingAndRemovingPersons() {
+        var personNodes = new HashMap<UUID, PersonNode>();
+        PersonNode alice = addPerson("alice", personNodes);
+        PersonNode bob = addPerson("bob", personNodes);
+        PersonNode carol = addPerson("carol", personNodes);
+        PersonNode dave = addPerson("dave", personNodes);
+        connect(alice, bob);
+        connect(bob, carol);
+
+        var familyTreeComponents = new FamilyTreeComponents();
+        familyTreeComponents.rebuild(personNodes);
+
+        assertEquals(familyTreeComponents.getComponentCount(), 2);
+        assertEquals(familyTreeComponents.getFamilyTreeSize(alice.getId()), 3);
+        assertEquals(familyTreeComponents.getFamilyTreeSize(dave.getId()), 1);
+
+        // a new person who is the parent of both carol and dave joins the trees
+        PersonNode eve = addPerson("eve", personNodes);
+        connect(eve, carol);
+        connect(eve, dave);
+        familyTreeComponents.personAdded(eve.getId(), personNodes);
+
+        assertEquals(familyTreeComponents.getComponentCount(), 1);
+        assertEquals(familyTreeComponents.getFamilyTreeSize(dave.getId()), 5);
+
+        // removing her splits them apart again
+        FamilyGraph.deleteNode(eve, personNodes);
+        familyTreeComponents.personRemoved(eve.getId(), personNodes);
+
+        assertEquals(familyTreeComponents.getComponentCount(), 2);
+        assertEquals(familyTreeComponents.getFamilyTreeSize(alice.getId()), 3);
+        assertEquals(familyTreeComponents.getFamilyTreeSize(dave.getId()), 1);
+        assertEquals(familyTreeComponents.getFamilyTreeSize(eve.getId()), 0);
+    }
+
+    /**
+     * When an update removes a relationship, the tree may split
+     */
+    @Test
+    public void testUpdateThatRemovesRelationship() {
+        var personNodes = new HashMap<UUID, PersonNode>();
+        PersonNode alice = addPerson("alice", personNodes);
+        PersonNode bob = addPerson("bob", personNodes);
+        PersonNode carol = addPerson("carol", personNodes);
+        connect(alice, bob);
+        connect(bob, carol);
+
+        var familyTreeComponents = new FamilyTreeComponents();
+        familyTreeComponents.rebuild(personNodes);
+        assertEquals(familyTreeComponents.getFamilyTreeSize(carol.getId()), 3);
+
+        // bob is no longer listed as carol's parent
+        Set<UUID> previousRelatives = FamilyTreeComponents.getRelativeIds(bob);
+        bob.setConnections(List.of(Map.entry("parent", alice)));
+        carol.setConnections(List.of());
+        familyTreeComponents.personUpdated(bob.getId(), previousRelatives, personNodes);
+
+        assertEquals(familyTreeComponents.getFamilyTreeSize(alice.getId()), 2);
+        assertEquals(familyTreeComponents.getFamilyTreeSize(carol.getId()), 1);
+        assertEquals(familyTreeComponents.getComponentCount(), 2);
+    }
+
+}
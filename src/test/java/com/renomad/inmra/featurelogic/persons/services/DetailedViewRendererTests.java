@@ -0,0 +1,41 @@
+package com.renomad.inmra.featurelogic.persons.services;
+
+import org.junit.Test;
+
+import static com.renomad.minum.testing.TestFramework.assertEquals;
+
+public class DetailedViewRendererTests {
+
+    /**
+     * Images in a biography are linked to their larger size, and
+     * given a choice of sizes for the browser
+     */
+    @Test
+    public void testAdjustBiographyText() {
+        String biography = "<p>Here he is:</p><img alt=\"in uniform\" src=\"photo?name=abc.jpg\">";
+
+        String result = DetailedViewRenderer.adjustBiographyText(biography, false);
+
+        assertEquals(result, "<p>Here he is:</p>" +
+                "<a href=\"photo?name=abc.jpg&size=original\">" +
+                "<img srcset=\"photo?name=abc.jpg&amp;size=midsize 600w, photo?name=abc.jpg 1200w\" " +
+                "sizes=\"(max-width: 860px) 70vw, 1200px\" alt=\"in uniform\" src=\"photo?name=abc.jpg\">" +
+                "</a>");
+
+        String privateResult = DetailedViewRenderer.adjustBiographyText(biography, true);
+        assertEquals(privateResult.substring(0, privateResult.indexOf("<img")),
+                "<p>Here he is:</p><a href=\"photo?name=abc.jpg&size=archive\">");
+    }
+
+    /**
+     * Images already having a srcset, or asking for a particular
+     * size, are left as they are
+     */
+    @Test
+    public void testAddSrcset_LeftAlone() {
+        String withSrcset = "<img srcset=\"foo.jpg 1x\" src=\"photo?name=abc.jpg\">";
+        assertEquals(DetailedViewRenderer.addSrcset(withSrcset, "abc.jpg"), withSrcset);
+        String withSize = "<img src=\"photo?name=abc.jpg&size=small\">";
+        assertEquals(DetailedViewRenderer.addSrcset(withSize, "abc.jpg&size=small"), withSize);
+    }
+}
@@ -2,8 +2,10 @@ package com.renomad.inmra.featurelogic.persons.services;
 
 import com.renomad.inmra.auth.GettingOlderLoop;
 import com.renomad.inmra.featurelogic.persons.*;
+import com.renomad.inmra.featurelogic.photo.MediaByPerson;
 import com.renomad.inmra.featurelogic.photo.PhotoToPerson;
 import com.renomad.inmra.featurelogic.photo.VideoToPerson;
+import com.renomad.inmra.utils.CachedData;
 import com.renomad.inmra.utils.IFileUtils;
 import com.renomad.inmra.utils.MemoriaContext;
 import com.renomad.minum.database.AbstractDb;
@@ -30,6 +32,8 @@ public class EnhancedPersonListTests {
     private static Context context;
     private static TestLogger logger;
     private static Map<UUID, PersonMetrics> personMetricsMap;
+    private static EnhancedPersonList eplWithCaching;
+    private static CachedData cachedData;
 
     @BeforeClass
     public static void init() {
@@ -61,11 +65,15 @@ public class EnhancedPersonListTests {
         fgb.buildFamilyGraph();
         var photoToPersonDb = context.getDb("photo_to_person", PhotoToPerson.EMPTY);
         var videoToPersonDb = context.getDb("video_to_person", VideoToPerson.EMPTY);
+        photoToPersonDb.registerIndex(MediaByPerson.PERSONS_INDEX, x -> String.valueOf(x.getPersonIndex()));
+        videoToPersonDb.registerIndex(MediaByPerson.PERSONS_INDEX, x -> String.valueOf(x.getPersonIndex()));
         var personMetricsDb = context.getDb("person_metrics", PersonMetrics.EMPTY);
         personMetricsDb.registerIndex("id", x -> x.getPersonUuid().toString());
         personMetricsMap = new HashMap<>();
         var stats = new Stats(logger, fileUtils, personMetricsDb, personMetricsMap, photoToPersonDb, videoToPersonDb);
         epl = new EnhancedPersonList(logger, fileUtils, personDb, personLruCacheLarge, photoToPersonDb, personMetricsMap, stats);
+        cachedData = new CachedData();
+        eplWithCaching = new EnhancedPersonList(logger, fileUtils, personDb, personLruCacheLarge, photoToPersonDb, personMetricsMap, stats, null, cachedData);
         MemoriaContext memoriaContext = MemoriaContext.buildMemoriaContext(context);
         var loopingPersonMetricsReview = new GettingOlderLoop(context, memoriaContext, personMetricsDb, fgb, personLruCacheLarge, personDb, photoToPersonDb, videoToPersonDb, personMetricsMap);
         loopingPersonMetricsReview.processMetrics();
@@ -101,4 +109,64 @@ public class EnhancedPersonListTests {
 
     }
 
+    /**
+     * Sorting with the precomputed sort keys gives the same order as
+     * sorting with the comparators
+     */
+    @Test
+    public void testSortKeysMatchComparators() {
+        List<String> sortCodes = List.of("bda", "bdd", "dda", "ddd", "na", "nd", "lma", "lmd", "cbpa", "cbpd",
+                "rcbpapa", "rcapbpd", "rcavbvd", "vcd", "ccrd", "rfcacd", "cad", "ad", "bsd", "rnsbsa", "intd", "ftsd", "ssa", "");
+        List<Person> persons = eplWithCaching.getSortedView(eplWithCaching.determineSorting(""), "", eplWithCaching.determineFilter(""), "");
+        for (String sortCode : sortCodes) {
+            EnhancedPersonList.SortResult sortResult = eplWithCaching.determineSorting(sortCode);
+            List<Person> expected = persons.stream().sorted(sortResult.personComparator()).toList();
+            assertEquals(EnhancedPersonList.sortPersons(persons, sortResult), expected);
+        }
+    }
+
+    /**
+     * The sorted list is reused until persons or their metrics change
+     */
+    @Test
+    public void testSortedViewIsCached() {
+        EnhancedPersonList.SortResult sortResult = eplWithCaching.determineSorting("intd");
+        EnhancedPersonList.FilterResult filterResult = eplWithCaching.determineFilter("dp");
+
+        List<Person> firstView = eplWithCaching.getSortedView(sortResult, "intd", filterResult, "dp");
+        assertTrue(eplWithCaching.getSortedView(sortResult, "intd", filterResult, "dp") == firstView);
+
+        // a different sort is a different view
+        EnhancedPersonList.SortResult otherSortResult = eplWithCaching.determineSorting("na");
+        assertFalse(eplWithCaching.getSortedView(otherSortResult, "na", filterResult, "dp") == firstView);
+
+        cachedData.incrementPersonDataVersion();
+        List<Person> secondView = eplWithCaching.getSortedView(sortResult, "intd", filterResult, "dp");
+        assertFalse(secondView == firstView);
+        assertEquals(secondView, firstView);
+
+        cachedData.incrementPersonMetricsVersion();
+        assertFalse(eplWithCaching.getSortedView(sortResult, "intd", filterResult, "dp") == secondView);
+    }
+
+    /**
+     * A rough comparison of paging through a sort when the sorted list is kept
+     */
+    @Test
+    public void testRenderInnerPaginatedListWithCaching() {
+        var sortResult = eplWithCaching.determineSorting("pcd");
+        var filterResult = eplWithCaching.determineFilter("");
+
+        StopwatchUtils stopwatchUtils = new StopwatchUtils().startTimer();
+        for (int i = 0; i < 100; i++) {
+            int page = Math.floorMod(i,10) + 1;
+            String result = eplWithCaching.renderInnerPaginatedList("", page, sortResult, "pcd", filterResult, "");
+            assertFalse(result.isEmpty());
+        }
+        long l = stopwatchUtils.stopTimer();
+        logger.logDebug(() -> "Time taken with a cached sorted view was " + l);
+
+        assertTrue(l < 1000, "The time taken to process this data should be less than one second");
+    }
+
 }
@@ -0,0 +1,89 @@
+package com.renomad.inmra.featurelogic.persons.services;
+
+import com.renomad.inmra.featurelogic.persons.*;
+import com.renomad.minum.database.AbstractDb;
+import com.renomad.minum.logging.TestLogger;
+import com.renomad.minum.state.Constants;
+import com.renomad.minum.state.Context;
+import com.renomad.minum.testing.TestFramework;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.util.*;
+
+import static com.renomad.minum.testing.TestFramework.*;
+
+public class FamilyGraphBuilderTests {
+
+    private static Context context;
+    private static TestLogger logger;
+    private static AbstractDb<Person> personDb;
+    private static PersonLruCache personLruCache;
+
+    /**
+     * This uses the sample database, restored into target/simple_db
+     * by "make test"
+     */
+    @BeforeClass
+    public static void init() {
+        Properties properties = Constants.getConfiguredProperties();
+        properties.setProperty("DB_DIRECTORY", "target/simple_db");
+        context = buildTestingContext("FamilyGraphBuilderTests", properties);
+        logger = (TestLogger) context.getLogger();
+        Path personDirectory = Path.of(context.getConstants().dbDirectory).resolve("person_files");
+        personLruCache = new PersonLruCache(personDirectory, logger);
+        personDb = context.getDb("persons", Person.EMPTY);
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        TestFramework.shutdownTestingContext(context);
+    }
+
+    /**
+     * The parallel build of the graph should end up with exactly
+     * the same nodes and connections as the single-threaded build.
+     */
+    @Test
+    public void testParallelBuildMatchesSequentialBuild() {
+        var sequentialBuilder = new FamilyGraphBuilder(personDb, personLruCache, logger, false);
+        var parallelBuilder = new FamilyGraphBuilder(personDb, personLruCache, logger, true);
+
+        Map<UUID, PersonNode> sequentialNodes = sequentialBuilder.getPersonNodes();
+        Map<UUID, PersonNode> parallelNodes = parallelBuilder.getPersonNodes();
+
+        assertFalse(sequentialNodes.isEmpty());
+        assertEquals(sequentialNodes.keySet(), parallelNodes.keySet());
+        for (UUID id : sequentialNodes.keySet()) {
+            assertEquals(sequentialNodes.get(id), parallelNodes.get(id));
+            assertEquals(sequentialNodes.get(id).getConnections(), parallelNodes.get(id).getConnections());
+        }
+        assertEquals(sequentialBuilder.countEdges(), parallelBuilder.countEdges());
+    }
+
+    /**
+     * Deleting a person should report their relatives as having
+     * metrics that may have changed, since those can't be reached
+     * from the graph once the person is gone.
+     */
+    @Test
+    public void testDeleteNodeReturnsAffectedRelatives() {
+        var familyGraphBuilder = new FamilyGraphBuilder(personDb, personLruCache, logger, false);
+        PersonNode personWithRelatives = familyGraphBuilder.getPersonNodes().values().stream()
+                .filter(x -> !x.getConnections().isEmpty())
+                .findFirst()
+                .orElseThrow();
+        List<UUID> relativeIds = personWithRelatives.getConnections().stream()
+                .map(x -> x.getValue().getId())
+                .toList();
+
+        Set<UUID> affectedPersons = familyGraphBuilder.deleteNode(personWithRelatives.getId());
+
+        assertFalse(affectedPersons.contains(personWithRelatives.getId()));
+        assertTrue(affectedPersons.containsAll(relativeIds));
+        assertFalse(familyGraphBuilder.getPersonNodes().containsKey(personWithRelatives.getId()));
+    }
+
+}
@@ -0,0 +1,93 @@
+package com.renomad.inmra.featurelogic.persons.services;
+
+import com.renomad.inmra.featurelogic.persons.Date;
+import com.renomad.inmra.featurelogic.persons.Month;
+import com.renomad.inmra.featurelogic.persons.Person;
+import com.renomad.inmra.featurelogic.persons.PersonLruCache;
+import com.renomad.minum.database.AbstractDb;
+import com.renomad.minum.logging.TestLogger;
+import com.renomad.minum.state.Constants;
+import com.renomad.minum.state.Context;
+import com.renomad.minum.testing.TestFramework;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.util.*;
+
+import static com.renomad.minum.testing.TestFramework.*;
+
+public class PersonSearchIndexTests {
+
+    private static Context context;
+    private static AbstractDb<Person> personDb;
+    private static PersonLruCache personLruCache;
+
+    /**
+     * This uses the sample database, restored into target/simple_db
+     * by "make test"
+     */
+    @BeforeClass
+    public static void init() {
+        Properties properties = Constants.getConfiguredProperties();
+        properties.setProperty("DB_DIRECTORY", "target/simple_db");
+        context = buildTestingContext("PersonSearchIndexTests", properties);
+        var logger = (TestLogger) context.getLogger();
+        Path personDirectory = Path.of(context.getConstants().dbDirectory).resolve("person_files");
+        personLruCache = new PersonLruCache(personDirectory, logger);
+        personDb = context.getDb("persons", Person.EMPTY);
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        TestFramework.shutdownTestingContext(context);
+    }
+
+    /**
+     * Searching with the index should find the same persons as
+     * searching through every person.
+     */
+    @Test
+    public void testIndexMatchesFullScan() {
+        var scanningSearch = new PersonSearch(personDb, personLruCache, Map.of());
+        var indexedSearch = new PersonSearch(personDb, personLruCache, Map.of(), new PersonSearchIndex(personDb));
+
+        for (String query : List.of("a", "el", "smith", "jon", "SMITH", "mary smith", "ann li", "zzzzzz")) {
+            for (boolean showPrivate : List.of(true, false)) {
+                PersonSearchResult expected = scanningSearch.getPeople(query, showPrivate, Integer.MAX_VALUE);
+                PersonSearchResult actual = indexedSearch.getPeople(query, showPrivate, Integer.MAX_VALUE);
+                assertEquals(new HashSet<>(actual.exactMatches()), new HashSet<>(expected.exactMatches()));
+                assertEquals(new HashSet<>(actual.soundsLikeMatches()), new HashSet<>(expected.soundsLikeMatches()));
+            }
+        }
+    }
+
+    /**
+     * The index follows along as persons are added, renamed, and removed.
+     */
+    @Test
+    public void testIndexUpdates() {
+        var index = new PersonSearchIndex(List.of());
+        var alice = new Person(1L, UUID.randomUUID(), "Alice Auerbach", Date.EMPTY, new Date(1950, Month.JANUARY, 1));
+        index.addOrUpdate(alice);
+
+        assertEquals(index.search("lice", true, 10).exactMatches(), List.of(alice));
+        // sounds like Auerbach
+        assertEquals(index.search("ohrbach", true, 10).soundsLikeMatches(), List.of(alice));
+
+        var renamedAlice = new Person(1L, alice.getId(), "Alice Lewinsky", Date.EMPTY, new Date(1950, Month.JANUARY, 1));
+        index.addOrUpdate(renamedAlice);
+        assertTrue(index.search("ohrbach", true, 10).soundsLikeMatches().isEmpty());
+        assertEquals(index.search("levinski", true, 10).soundsLikeMatches(), List.of(renamedAlice));
+
+        // a living person is only found when we can show private information
+        var bob = new Person(2L, UUID.randomUUID(), "Bob Lewinsky", Date.EMPTY, Date.EMPTY);
+        index.addOrUpdate(bob);
+        assertEquals(index.search("lewinsky", true, 10).exactMatches(), List.of(renamedAlice, bob));
+        assertEquals(index.search("lewinsky", false, 10).exactMatches(), List.of(renamedAlice));
+
+        index.remove(renamedAlice.getId());
+        assertEquals(index.search("lewinsky", true, 10).exactMatches(), List.of(bob));
+    }
+}
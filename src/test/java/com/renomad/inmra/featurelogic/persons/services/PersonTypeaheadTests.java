@@ -0,0 +1,269 @@
+package com.renomad.inmra.featurelogic.persons.services;
+
+import com.renomad.inmra.featurelogic.persons.*;
+import com.renomad.inmra.featurelogic.persons.Date;
+import com.renomad.inmra.utils.CachedData;
+import com.renomad.minum.logging.TestLogger;
+import com.renomad.minum.state.Context;
+import com.renomad.minum.testing.StopwatchUtils;
+import com.renomad.minum.testing.TestFramework;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.*;
+
+import static com.renomad.minum.testing.TestFramework.*;
+
+public class PersonTypeaheadTests {
+
+    private static Context context;
+    private static TestLogger logger;
+
+    private static final Date LIVING = Date.EMPTY;
+    private static final Date DECEASED = new Date(1950, Month.MARCH, 3);
+
+    @BeforeClass
+    public static void init() {
+        context = buildTestingContext("PersonTypeaheadTests");
+        logger = (TestLogger) context.getLogger();
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        TestFramework.shutdownTestingContext(context);
+    }
+
+    /**
+     * Each word of a query must be the start of some word of the name
+     */
+    @Test
+    public void testSearchByPrefixes() {
+        PersonFile johnSmith = buildPersonFile("John Smith", DECEASED);
+        PersonFile joanSmithers = buildPersonFile("Joan Smithers", DECEASED);
+        PersonFile maryJohnson = buildPersonFile("Mary Johnson", DECEASED);
+        var typeahead = new PersonTypeahead(List.of(johnSmith, joanSmithers, maryJohnson), Map.of());
+
+        assertEquals(ids(typeahead.search("jo", true)), Set.of(johnSmith.getId(), joanSmithers.getId(), maryJohnson.getId()));
+        assertEquals(ids(typeahead.search("JOHN", true)), Set.of(johnSmith.getId(), maryJohnson.getId()));
+        assertEquals(ids(typeahead.search("smith", true)), Set.of(johnSmith.getId(), joanSmithers.getId()));
+        assertEquals(ids(typeahead.search("jo smith", true)), Set.of(johnSmith.getId(), joanSmithers.getId()));
+        assertEquals(ids(typeahead.search("smithe jo", true)), Set.of(joanSmithers.getId()));
+        // a word in the middle of a name is not a match
+        assertEquals(ids(typeahead.search("mith", true)), Set.of());
+        assertEquals(ids(typeahead.search("zz", true)), Set.of());
+        assertEquals(ids(typeahead.search("  ", true)), Set.of());
+        assertEquals(ids(typeahead.search(null, true)), Set.of());
+    }
+
+    /**
+     * Living persons are only suggested if we may show private information
+     */
+    @Test
+    public void testPrivacy() {
+        PersonFile living = buildPersonFile("Alice Living", LIVING);
+        PersonFile deceased = buildPersonFile("Alice Deceased", DECEASED);
+        var typeahead = new PersonTypeahead(List.of(living, deceased), Map.of());
+
+        assertEquals(ids(typeahead.search("alice", true)), Set.of(living.getId(), deceased.getId()));
+        assertEquals(ids(typeahead.search("alice", false)), Set.of(deceased.getId()));
+        assertEquals(ids(typeahead.search("alice li", false)), Set.of());
+    }
+
+    /**
+     * The most interesting persons come first, and there are never
+     * more than {@link PersonTypeahead#MAX_RESULTS}
+     */
+    @Test
+    public void testRanking() {
+        List<PersonFile> personFiles = new ArrayList<>();
+        Map<UUID, PersonMetrics> metrics = new HashMap<>();
+        for (int i = 0; i < 30; i++) {
+            PersonFile personFile = buildPersonFile("Bob Number" + i, DECEASED);
+            personFiles.add(personFile);
+            metrics.put(personFile.getId(), buildMetrics(personFile, i * 10));
+        }
+        var typeahead = new PersonTypeahead(personFiles, metrics);
+
+        List<PersonTypeahead.TypeaheadEntry> results = typeahead.search("bob", true);
+        assertEquals(results.size(), PersonTypeahead.MAX_RESULTS);
+        assertEquals(results.getFirst().name(), "Bob Number29");
+        assertEquals(results.getLast().name(), "Bob Number20");
+
+        List<PersonTypeahead.TypeaheadEntry> multiWordResults = typeahead.search("bob num", true);
+        assertEquals(multiWordResults.stream().map(PersonTypeahead.TypeaheadEntry::name).toList(),
+                results.stream().map(PersonTypeahead.TypeaheadEntry::name).toList());
+    }
+
+    /**
+     * The rankings are recalculated by whoever changes the metrics - searching
+     * never does that work, even once the metrics version has moved on.
+     */
+    @Test
+    public void testRerankOnMetricsChange() {
+        PersonFile first = buildPersonFile("Carol First", DECEASED);
+        PersonFile second = buildPersonFile("Carol Second", DECEASED);
+        PersonFile third = buildPersonFile("Carol Third", DECEASED);
+        Map<UUID, PersonMetrics> metrics = new HashMap<>();
+        metrics.put(first.getId(), buildMetrics(first, 500));
+        metrics.put(second.getId(), buildMetrics(second, 100));
+        metrics.put(third.getId(), buildMetrics(third, 50));
+        var cachedData = new CachedData();
+        var typeahead = new PersonTypeahead(List.of(first, second, third), metrics);
+        assertEquals(typeahead.search("carol", true).getFirst().id(), first.getId());
+
+        metrics.put(second.getId(), buildMetrics(second, 900));
+        cachedData.incrementPersonMetricsVersion();
+        // searching keeps the rankings it has
+        assertEquals(typeahead.search("carol", true).getFirst().id(), first.getId());
+        assertEquals(typeahead.search("carol sec", true).getFirst().id(), second.getId());
+
+        // re-scoring just the changed person re-ranks the words of their name
+        typeahead.rescore(List.of(second.getId()));
+        assertEquals(typeahead.search("carol", true).getFirst().id(), second.getId());
+
+        // a full rebuild picks up every change
+        metrics.put(third.getId(), buildMetrics(third, 2000));
+        assertEquals(typeahead.search("carol", true).getFirst().id(), second.getId());
+        typeahead.rebuildRankings();
+        assertEquals(typeahead.search("carol", true).getFirst().id(), third.getId());
+        assertEquals(typeahead.search("ca", true).stream().map(PersonTypeahead.TypeaheadEntry::id).toList(),
+                List.of(third.getId(), second.getId(), first.getId()));
+    }
+
+    /**
+     * Searching by several words gives the same results as checking
+     * every person - whether the best persons for each word have enough
+     * in common, or not.
+     */
+    @Test
+    public void testMultiWordSearchMatchesFullScan() {
+        List<String> firstNames = List.of("adam", "abby", "beth", "bill", "carl");
+        List<String> lastNames = List.of("smith", "smythe", "baker", "banks", "clark");
+        List<PersonFile> personFiles = new ArrayList<>();
+        Map<UUID, PersonMetrics> metrics = new HashMap<>();
+        var random = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            String name = firstNames.get(random.nextInt(firstNames.size())) + " " + lastNames.get(random.nextInt(lastNames.size()));
+            PersonFile personFile = buildPersonFile(name, i % 3 == 0 ? LIVING : DECEASED);
+            personFiles.add(personFile);
+            metrics.put(personFile.getId(), buildMetrics(personFile, random.nextInt(5000)));
+        }
+        // a few with a rare pairing, which the best persons of each word won't share
+        for (int i = 0; i < 3; i++) {
+            PersonFile personFile = buildPersonFile("Zelda Smith" + i, DECEASED);
+            personFiles.add(personFile);
+            metrics.put(personFile.getId(), buildMetrics(personFile, 0));
+        }
+        var typeahead = new PersonTypeahead(personFiles, metrics);
+
+        for (String query : List.of("a s", "b b", "adam smith", "s a", "bill sm", "c c", "zelda s", "s zel", "a zel", "ab sm ba")) {
+            for (boolean shouldShowPrivateInformation : List.of(true, false)) {
+                List<String> queryWords = List.of(query.split(" "));
+                List<UUID> expected = personFiles.stream()
+                        .filter(x -> shouldShowPrivateInformation || ! x.getDied().equals(Date.EMPTY))
+                        .filter(x -> queryWords.stream().allMatch(queryWord ->
+                                Arrays.stream(x.getName().toLowerCase().split(" ")).anyMatch(y -> y.startsWith(queryWord))))
+                        .sorted(Comparator
+                                .comparing((PersonFile x) -> InterestingScore.getInterestingScore(metrics.get(x.getId())), Comparator.reverseOrder())
+                                .thenComparing(PersonFile::getName)
+                                .thenComparing(PersonFile::getId))
+                        .limit(PersonTypeahead.MAX_RESULTS)
+                        .map(PersonFile::getId)
+                        .toList();
+                List<UUID> actual = typeahead.search(query, shouldShowPrivateInformation).stream().map(PersonTypeahead.TypeaheadEntry::id).toList();
+                assertEquals(actual, expected);
+            }
+        }
+    }
+
+    /**
+     * Persons may be added, renamed, and removed
+     */
+    @Test
+    public void testAddUpdateRemove() {
+        var typeahead = new PersonTypeahead(List.of(), Map.of());
+        PersonFile dave = buildPersonFile("Dave Original", DECEASED);
+        typeahead.addOrUpdate(dave);
+        assertEquals(ids(typeahead.search("orig", true)), Set.of(dave.getId()));
+
+        PersonFile renamedDave = buildPersonFile(dave.getId(), "Dave Renamed", DECEASED, "", "");
+        typeahead.addOrUpdate(renamedDave);
+        assertEquals(ids(typeahead.search("orig", true)), Set.of());
+        assertEquals(ids(typeahead.search("ren", true)), Set.of(dave.getId()));
+        assertEquals(typeahead.getEntry(dave.getId()).name(), "Dave Renamed");
+
+        typeahead.remove(dave.getId());
+        assertEquals(ids(typeahead.search("dave", true)), Set.of());
+        assertTrue(typeahead.getEntry(dave.getId()) == null);
+    }
+
+    /**
+     * The names of parents and children are taken from the links in the relation fields
+     */
+    @Test
+    public void testRelationSummaries() {
+        UUID id = UUID.randomUUID();
+        PersonFile personFile = buildPersonFile(id, "Ellen Example", DECEASED,
+                "<a href=\"person?id=1\">Frank Example</a><a href=\"person?id=2\">Grace Example</a>",
+                "");
+        var typeahead = new PersonTypeahead(List.of(personFile), Map.of());
+        PersonTypeahead.TypeaheadEntry entry = typeahead.getEntry(id);
+        assertEquals(entry.parentNames(), "Frank Example and Grace Example");
+        assertEquals(entry.childNames(), "no one");
+    }
+
+    /**
+     * A rough measure of how quickly suggestions come back, with
+     * a family-sized set of synthetic persons
+     */
+    @Test
+    public void testSearchTiming() {
+        List<String> firstNames = List.of("adam", "beth", "carl", "dana", "eric", "fran", "gina", "hank", "iris", "jack");
+        List<String> lastNames = List.of("smith", "jones", "baker", "clark", "lewis", "moore", "young", "allen", "scott", "green");
+        List<PersonFile> personFiles = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            String name = firstNames.get(i % 10) + " " + lastNames.get((i / 10) % 10) + i;
+            personFiles.add(buildPersonFile(name, i % 2 == 0 ? DECEASED : LIVING));
+        }
+        var typeahead = new PersonTypeahead(personFiles, Map.of());
+
+        List<String> queries = List.of("a", "ad", "adam", "s", "sm", "smith1", "adam sm", "g", "gr", "gina green");
+        int rounds = 100;
+        StopwatchUtils stopwatch = new StopwatchUtils().startTimer();
+        for (int i = 0; i < rounds; i++) {
+            for (String query : queries) {
+                assertFalse(typeahead.search(query, i % 2 == 0).isEmpty());
+            }
+        }
+        long millis = stopwatch.stopTimer();
+        logger.logDebug(() -> "Ran %d typeahead searches over %d persons in %d milliseconds".formatted(rounds * queries.size(), personFiles.size(), millis));
+    }
+
+    private static Set<UUID> ids(List<PersonTypeahead.TypeaheadEntry> entries) {
+        Set<UUID> ids = new HashSet<>();
+        for (PersonTypeahead.TypeaheadEntry entry : entries) {
+            ids.add(entry.id());
+        }
+        return ids;
+    }
+
+    private static PersonFile buildPersonFile(String name, Date died) {
+        return buildPersonFile(UUID.randomUUID(), name, died, "", "");
+    }
+
+    private static PersonFile buildPersonFile(UUID id, String name, Date died, String parents, String children) {
+        return new PersonFile(0L, id, "", name, new Date(1900, Month.JANUARY, 1), died,
+                "", "", parents, children, "", "", "", Gender.UNKNOWN, Instant.now(), "", "");
+    }
+
+    /**
+     * Metrics whose interesting score is the biography character count given
+     */
+    private static PersonMetrics buildMetrics(PersonFile personFile, int bioCharCount) {
+        return new PersonMetrics(0, personFile.getName(), personFile.getId(),
+                0, 0, 0, 0, 0, 0, 0, 0, bioCharCount, 0, 0, 0, 0, 0, 0,
+                personFile.getBorn(), personFile.getDied(), "", "", false, 1, 0, 0, 0);
+    }
+}
@@ -0,0 +1,55 @@
+package com.renomad.inmra.featurelogic.persons.services;
+
+import com.renomad.inmra.featurelogic.persons.*;
+import com.renomad.inmra.featurelogic.persons.Date;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.*;
+
+import static com.renomad.minum.testing.TestFramework.*;
+
+public class RelationSearchTests {
+
+    private static final Date DECEASED = new Date(1950, Month.MARCH, 3);
+
+    /**
+     * The header search suggests persons by the beginnings of the words of
+     * their names first, and fills in with matches within a name, or by how it
+     * sounds, so those are still found.
+     */
+    @Test
+    public void testTypeaheadFilledInBySearch() {
+        PersonFile alice = buildPersonFile("Alice Auerbach");
+        PersonFile bob = buildPersonFile("Bob Smith");
+        List<PersonFile> personFiles = List.of(alice, bob);
+        var personTypeahead = new PersonTypeahead(personFiles, Map.of());
+        var personSearchIndex = new PersonSearchIndex(personFiles.stream()
+                .map(x -> new Person(0L, x.getId(), x.getName(), x.getBorn(), x.getDied()))
+                .toList());
+        var personSearch = new PersonSearch(null, null, Map.of(), personSearchIndex);
+        var relationSearch = new RelationSearch(null, personSearch, personTypeahead);
+
+        // the start of a word, found once even though both searches find it
+        String bobResults = relationSearch.searchTypeahead("bob", false);
+        assertEquals(countMatches(bobResults, bob.getId().toString()), 1);
+        assertFalse(bobResults.contains(alice.getId().toString()));
+
+        // within a name
+        assertTrue(relationSearch.searchTypeahead("lice", false).contains(alice.getId().toString()));
+
+        // sounds like Auerbach
+        assertTrue(relationSearch.searchTypeahead("ohrbach", false).contains(alice.getId().toString()));
+
+        assertEquals(relationSearch.searchTypeahead("zzzz", false), "");
+    }
+
+    private static int countMatches(String text, String value) {
+        return text.split(value, -1).length - 1;
+    }
+
+    private static PersonFile buildPersonFile(String name) {
+        return new PersonFile(0L, UUID.randomUUID(), "", name, new Date(1900, Month.JANUARY, 1), DECEASED,
+                "", "", "", "", "", "", "", Gender.UNKNOWN, Instant.now(), "", "");
+    }
+}
@@ -0,0 +1,118 @@
+package com.renomad.inmra.featurelogic.photo;
+
+import com.renomad.minum.logging.TestLogger;
+import com.renomad.minum.state.Context;
+import com.renomad.minum.testing.TestFramework;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+import static com.renomad.minum.testing.TestFramework.*;
+
+public class MappedPhotoStoreTests {
+
+    private static Context context;
+    private static TestLogger logger;
+    private static final Path photoPath = Path.of("src/test/resources/images/dad_in_uniform.jpg");
+    private static final Path otherPhotoPath = Path.of("src/test/resources/images/bessie.png");
+
+    @BeforeClass
+    public static void init() {
+        context = buildTestingContext("MappedPhotoStoreTests");
+        logger = (TestLogger) context.getLogger();
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        TestFramework.shutdownTestingContext(context);
+    }
+
+    /**
+     * The mapped contents should be the same as the file, and each
+     * caller gets their own view of them
+     */
+    @Test
+    public void testGet() throws IOException {
+        var store = new MappedPhotoStore(100 * 1024 * 1024, logger);
+        byte[] expected = Files.readAllBytes(photoPath);
+
+        ByteBuffer first = store.get(photoPath);
+        byte[] actual = new byte[first.remaining()];
+        first.get(actual);
+        assertTrue(Arrays.equals(actual, expected));
+
+        // reading the first view doesn't move the second one
+        ByteBuffer second = store.get(photoPath);
+        assertEquals(second.remaining(), expected.length);
+        assertEquals(store.size(), 1);
+        assertEquals(store.getMappedBytes(), (long) expected.length);
+    }
+
+    /**
+     * Once the budget is reached, further photos aren't mapped
+     */
+    @Test
+    public void testBudget() throws IOException {
+        long photoSize = Files.size(photoPath);
+        var store = new MappedPhotoStore(photoSize, logger);
+        assertTrue(store.get(photoPath) != null);
+        assertTrue(store.get(otherPhotoPath) == null);
+        assertEquals(store.getMappedBytes(), photoSize);
+
+        // removing a photo makes room for others
+        store.remove(photoPath);
+        assertEquals(store.getMappedBytes(), 0L);
+        if (Files.size(otherPhotoPath) <= photoSize) {
+            assertTrue(store.get(otherPhotoPath) != null);
+        }
+    }
+
+    /**
+     * A photo that doesn't exist gets an exception, and is not counted
+     */
+    @Test
+    public void testMissingFile() throws IOException {
+        var store = new MappedPhotoStore(100 * 1024 * 1024, logger);
+        boolean threwException = false;
+        try {
+            store.get(Path.of("target/does_not_exist.jpg"));
+        } catch (NoSuchFileException ex) {
+            threwException = true;
+        }
+        assertTrue(threwException);
+        assertEquals(store.size(), 0);
+        assertEquals(store.getMappedBytes(), 0L);
+    }
+
+    /**
+     * A photo rewritten while mapped - here, with a much smaller one - is
+     * replaced with a new file, so the mapping still reads the old contents
+     * in full, and once removed, the next request maps the new file.
+     */
+    @Test
+    public void testRewriteWhileMapped() throws IOException {
+        var store = new MappedPhotoStore(100 * 1024 * 1024, logger);
+        Path mappedPhotoPath = Path.of("target/mapped_photo_store_rewrite.jpg");
+        Files.copy(photoPath, mappedPhotoPath, StandardCopyOption.REPLACE_EXISTING);
+        byte[] oldContents = Files.readAllBytes(mappedPhotoPath);
+        ByteBuffer mapped = store.get(mappedPhotoPath);
+
+        PhotoResizing.writeReplacingFile(mappedPhotoPath.toFile(), outputStream -> outputStream.write(new byte[]{1, 2, 3}));
+
+        byte[] actual = new byte[mapped.remaining()];
+        mapped.get(actual);
+        assertTrue(Arrays.equals(actual, oldContents));
+
+        store.remove(mappedPhotoPath);
+        assertEquals(store.get(mappedPhotoPath).remaining(), 3);
+        Files.delete(mappedPhotoPath);
+    }
+}
@@ -0,0 +1,83 @@
+package com.renomad.inmra.featurelogic.photo;
+
+import com.renomad.inmra.featurelogic.persons.Person;
+import com.renomad.minum.database.AbstractDb;
+import com.renomad.minum.state.Constants;
+import com.renomad.minum.state.Context;
+import com.renomad.minum.testing.TestFramework;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Properties;
+
+import static com.renomad.minum.testing.TestFramework.*;
+
+public class MediaByPersonTests {
+
+    private static Context context;
+    private static AbstractDb<Person> personDb;
+    private static AbstractDb<PhotoToPerson> photoToPersonDb;
+    private static AbstractDb<VideoToPerson> videoToPersonDb;
+    private static MediaByPerson mediaByPerson;
+
+    /**
+     * This uses the sample database, restored into target/simple_db
+     * by "make test"
+     */
+    @BeforeClass
+    public static void init() {
+        Properties properties = Constants.getConfiguredProperties();
+        properties.setProperty("DB_DIRECTORY", "target/simple_db");
+        context = buildTestingContext("MediaByPersonTests", properties);
+        personDb = context.getDb("persons", Person.EMPTY);
+        photoToPersonDb = context.getDb("photo_to_person", PhotoToPerson.EMPTY);
+        videoToPersonDb = context.getDb("video_to_person", VideoToPerson.EMPTY);
+        photoToPersonDb.registerIndex(MediaByPerson.PERSONS_INDEX, x -> String.valueOf(x.getPersonIndex()));
+        videoToPersonDb.registerIndex(MediaByPerson.PERSONS_INDEX, x -> String.valueOf(x.getPersonIndex()));
+        mediaByPerson = new MediaByPerson(photoToPersonDb, videoToPersonDb);
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        TestFramework.shutdownTestingContext(context);
+    }
+
+    /**
+     * The lookups by index should find the same photos and videos as
+     * going through every entry
+     */
+    @Test
+    public void testMatchesFullScan() {
+        int personsWithPhotos = 0;
+        for (Person person : personDb.values()) {
+            var expectedPhotoIds = photoToPersonDb.values().stream()
+                    .filter(x -> x.getPersonIndex() == person.getIndex())
+                    .map(PhotoToPerson::getPhotoIndex)
+                    .toList();
+            var expectedVideoIds = videoToPersonDb.values().stream()
+                    .filter(x -> x.getPersonIndex() == person.getIndex())
+                    .map(VideoToPerson::getVideoIndex)
+                    .toList();
+
+            assertEquals(new HashSet<>(mediaByPerson.getPhotoIdsForPerson(person)), new HashSet<>(expectedPhotoIds));
+            assertEquals(new HashSet<>(mediaByPerson.getVideoIdsForPerson(person)), new HashSet<>(expectedVideoIds));
+            assertEquals(mediaByPerson.getPhotoCount(person.getIndex()), expectedPhotoIds.size());
+            assertEquals(mediaByPerson.getVideoCount(person.getIndex()), expectedVideoIds.size());
+            if (! expectedPhotoIds.isEmpty()) personsWithPhotos++;
+        }
+        assertTrue(personsWithPhotos > 0, "The sample database should have some persons with photos");
+    }
+
+    /**
+     * A person with no photos or videos gets empty results
+     */
+    @Test
+    public void testNoMedia() {
+        assertEquals(mediaByPerson.getPhotoCount(-1), 0);
+        assertEquals(mediaByPerson.getVideoCount(-1), 0);
+        assertTrue(mediaByPerson.getPhotoIdsForPerson(-1).isEmpty());
+        assertTrue(mediaByPerson.getVideoIdsForPerson(-1).isEmpty());
+    }
+}
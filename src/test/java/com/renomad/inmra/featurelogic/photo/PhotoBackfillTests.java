@@ -0,0 +1,226 @@
+package com.renomad.inmra.featurelogic.photo;
+
+import com.renomad.inmra.auth.AuthResult;
+import com.renomad.inmra.auth.IAuthUtils;
+import com.renomad.inmra.auth.PrivacyCheckStatus;
+import com.renomad.inmra.featurelogic.persons.Person;
+import com.renomad.inmra.utils.Auditor;
+import com.renomad.inmra.utils.CachedData;
+import com.renomad.inmra.utils.Constants;
+import com.renomad.inmra.utils.MemoriaContext;
+import com.renomad.minum.logging.TestLogger;
+import com.renomad.minum.state.Context;
+import com.renomad.minum.testing.TestFramework;
+import com.renomad.minum.utils.FileUtils;
+import com.renomad.minum.web.IRequest;
+import com.renomad.minum.web.IResponse;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.BooleanSupplier;
+
+import static com.renomad.minum.testing.TestFramework.*;
+
+public class PhotoBackfillTests {
+
+    private static Context context;
+    private static Path directory;
+    private static FileUtils fileUtils;
+
+    @BeforeClass
+    public static void init() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("DB_DIRECTORY", "target/simple_db_for_photo_backfill_tests");
+        context = buildTestingContext("PhotoBackfillTests", properties);
+        fileUtils = new FileUtils((TestLogger) context.getLogger(), context.getConstants());
+        directory = Path.of("target/photo_backfill_tests");
+        fileUtils.deleteDirectoryRecursivelyIfExists(directory);
+        fileUtils.makeDirectory(directory);
+        fileUtils.deleteDirectoryRecursivelyIfExists(Path.of("target/simple_db_for_photo_backfill_tests"));
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        TestFramework.shutdownTestingContext(context);
+    }
+
+    /**
+     * Sizes which are missing, empty, or older than the archived photo
+     * need to be made again
+     */
+    @Test
+    public void testFindStaleTargets() throws IOException {
+        Path archivePhoto = directory.resolve("archive.jpg");
+        Files.writeString(archivePhoto, "archive");
+        Files.setLastModifiedTime(archivePhoto, FileTime.from(Instant.parse("2024-01-02T00:00:00Z")));
+
+        Path current = directory.resolve("current.jpg");
+        Files.writeString(current, "current");
+        Files.setLastModifiedTime(current, FileTime.from(Instant.parse("2024-01-03T00:00:00Z")));
+        Path older = directory.resolve("older.jpg");
+        Files.writeString(older, "older");
+        Files.setLastModifiedTime(older, FileTime.from(Instant.parse("2024-01-01T00:00:00Z")));
+        Path empty = directory.resolve("empty.jpg");
+        Files.writeString(empty, "");
+        Path missing = directory.resolve("missing.jpg");
+
+        var currentTarget = new PhotoResizing.ResizeTarget(1200, current.toFile());
+        var olderTarget = new PhotoResizing.ResizeTarget(600, older.toFile());
+        var emptyTarget = new PhotoResizing.ResizeTarget(150, empty.toFile());
+        var missingTarget = new PhotoResizing.ResizeTarget(20, missing.toFile());
+
+        List<PhotoResizing.ResizeTarget> staleTargets = PhotoBackfill.findStaleTargets(
+                archivePhoto, List.of(currentTarget, olderTarget, emptyTarget, missingTarget), null);
+
+        assertEquals(staleTargets, List.of(olderTarget, emptyTarget, missingTarget));
+    }
+
+    /**
+     * When there is an extra format, a size lacking it needs to be made again
+     */
+    @Test
+    public void testFindStaleTargets_ExtraFormat() throws IOException {
+        Path archivePhoto = directory.resolve("archive_for_extra_format.jpg");
+        Files.writeString(archivePhoto, "archive");
+        Files.setLastModifiedTime(archivePhoto, FileTime.from(Instant.parse("2024-01-02T00:00:00Z")));
+        Path sized = directory.resolve("sized.jpg");
+        Files.writeString(sized, "sized");
+        Files.setLastModifiedTime(sized, FileTime.from(Instant.parse("2024-01-03T00:00:00Z")));
+        var target = new PhotoResizing.ResizeTarget(1200, sized.toFile());
+
+        assertEquals(PhotoBackfill.findStaleTargets(archivePhoto, List.of(target), null), List.of());
+        assertEquals(PhotoBackfill.findStaleTargets(archivePhoto, List.of(target), "image/webp"), List.of(target));
+
+        Path extraFormatFile = PhotoResizing.extraFormatPath(sized, "image/webp");
+        Files.writeString(extraFormatFile, "sized, extra format");
+        Files.setLastModifiedTime(extraFormatFile, FileTime.from(Instant.parse("2024-01-03T00:00:00Z")));
+        assertEquals(PhotoBackfill.findStaleTargets(archivePhoto, List.of(target), "image/webp"), List.of());
+    }
+
+    /**
+     * The photos are reviewed in order of their filenames, so that
+     * we may continue from where we left off
+     */
+    @Test
+    public void testListArchivedPhotos() throws IOException {
+        Path archive = directory.resolve("archive_listing");
+        Files.createDirectories(archive.resolve("not_a_photo"));
+        Files.writeString(archive.resolve("c.jpg"), "c");
+        Files.writeString(archive.resolve("a.jpg"), "a");
+        Files.writeString(archive.resolve("b.png"), "b");
+
+        assertEquals(PhotoBackfill.listArchivedPhotos(archive), List.of("a.jpg", "b.png", "c.jpg"));
+    }
+
+    /**
+     * A run over a small archive, with a size missing from each photo.  It is
+     * stopped after the first photo, and started again, continuing from
+     * there.  A photo still being uploaded is left alone.
+     */
+    @Test
+    public void testRunStopAndResume() throws Exception {
+        Properties memoriaProperties = new Properties();
+        memoriaProperties.setProperty("PHOTO_BACKFILL_THREADS", "1");
+        memoriaProperties.setProperty("PHOTO_BACKFILL_PAUSE_MILLIS", "1000");
+        Constants constants = new Constants(memoriaProperties);
+        var memoriaContext = new MemoriaContext(
+                constants,
+                new com.renomad.inmra.utils.FileUtils(fileUtils, constants),
+                new Auditor(context),
+                new CachedData());
+        PhotoService photoService = buildPhotoService(memoriaContext);
+        Path archive = photoService.getPhotoArchiveDirectory();
+        Path sourcePhoto = Path.of("src/test/resources/images/dad_in_uniform.jpg");
+        List<String> photoFilenames = List.of("a.jpg", "b.jpg", "c.jpg");
+
+        // every size of each photo in place, then one size missing from each
+        for (String photoFilename : photoFilenames) {
+            Files.copy(sourcePhoto, archive.resolve(photoFilename));
+            try (var inputStream = Files.newInputStream(sourcePhoto)) {
+                PhotoResizing.writeImageFiles(inputStream, photoService.resizeTargets(photoFilename), context.getLogger());
+            }
+        }
+        Path missingMediumPhoto = photoService.resizeTargets("a.jpg").get(1).file().toPath();
+        for (String photoFilename : photoFilenames) {
+            Files.delete(photoService.resizeTargets(photoFilename).get(1).file().toPath());
+        }
+
+        // a photo still arriving, so not yet complete
+        try (var inputStream = Files.newInputStream(sourcePhoto)) {
+            photoService.writePhotoToArchive(inputStream, "d.jpg");
+        }
+        assertTrue(photoService.isConversionInProgress("d.jpg"));
+
+        var photoBackfill = new PhotoBackfill(context, memoriaContext, photoService);
+        assertEquals(photoBackfill.getProgress().state(), PhotoBackfill.State.NOT_STARTED);
+
+        // the first run, stopped after its first photo
+        assertTrue(photoBackfill.start());
+        assertFalse(photoBackfill.start());
+        waitFor(() -> photoBackfill.getProgress().checked() >= 1);
+        photoBackfill.stop();
+        waitFor(() -> photoBackfill.getProgress().state() == PhotoBackfill.State.STOPPED);
+
+        PhotoBackfill.Progress stoppedProgress = photoBackfill.getProgress();
+        assertEquals(stoppedProgress.total(), 4);
+        assertEquals(stoppedProgress.checked(), 1);
+        assertEquals(stoppedProgress.regenerated(), 1);
+        assertEquals(stoppedProgress.failed(), 0);
+        assertTrue(Files.size(missingMediumPhoto) > 0);
+        assertFalse(Files.exists(photoService.resizeTargets("b.jpg").get(1).file().toPath()));
+
+        // the second run continues from the checkpoint
+        assertTrue(photoBackfill.start());
+        waitFor(() -> photoBackfill.getProgress().state() == PhotoBackfill.State.FINISHED);
+
+        PhotoBackfill.Progress finishedProgress = photoBackfill.getProgress();
+        assertEquals(finishedProgress.checkedAtStart(), 1);
+        assertEquals(finishedProgress.checked(), 4);
+        assertEquals(finishedProgress.regenerated(), 2);
+        assertEquals(finishedProgress.failed(), 0);
+        for (String photoFilename : photoFilenames) {
+            assertTrue(Files.size(photoService.resizeTargets(photoFilename).get(1).file().toPath()) > 0);
+        }
+        // the photo still being uploaded was skipped
+        for (PhotoResizing.ResizeTarget target : photoService.resizeTargets("d.jpg")) {
+            assertFalse(Files.exists(target.file().toPath()));
+        }
+        photoService.deleteUnrecordedPhoto("d.jpg");
+        assertFalse(photoService.isConversionInProgress("d.jpg"));
+    }
+
+    private static PhotoService buildPhotoService(MemoriaContext memoriaContext) {
+        IAuthUtils au = new IAuthUtils(){
+            @Override public AuthResult processAuth(IRequest request) {return null;}
+            @Override public String getForbiddenPage() {return null;}
+            @Override public IResponse htmlForbidden() {return null;}
+            @Override public PrivacyCheckStatus canShowPrivateInformation(IRequest request) { return null; }
+        };
+        return new PhotoService(
+                context,
+                memoriaContext,
+                context.getDb("photos", Photograph.EMPTY),
+                context.getDb("videos", Video.EMPTY),
+                new PhotoByteCache(10 * 1024 * 1024),
+                null,
+                context.getDb("photo_to_person", PhotoToPerson.EMPTY),
+                context.getDb("video_to_person", VideoToPerson.EMPTY),
+                context.getDb("persons", Person.EMPTY),
+                au);
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 600 && ! condition.getAsBoolean(); i++) {
+            Thread.sleep(50);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
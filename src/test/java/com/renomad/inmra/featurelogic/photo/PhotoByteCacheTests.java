@@ -0,0 +1,119 @@
+package com.renomad.inmra.featurelogic.photo;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.renomad.minum.testing.TestFramework.*;
+
+public class PhotoByteCacheTests {
+
+    /**
+     * Photos we put in can be found again, and we count the hits and misses
+     */
+    @Test
+    public void testGetAndPut() {
+        var cache = new PhotoByteCache(1000, 1);
+        assertTrue(cache.get("a.jpg") == null);
+        cache.put("a.jpg", new byte[100]);
+        assertEquals(cache.get("a.jpg").length, 100);
+        assertEquals(cache.getHits(), 1L);
+        assertEquals(cache.getMisses(), 1L);
+        assertEquals(cache.size(), 1);
+        assertEquals(cache.getSizeInBytes(), 100L);
+    }
+
+    /**
+     * Once the budget would be exceeded, the least-recently used
+     * photos are dropped until the new one fits
+     */
+    @Test
+    public void testEvictsByBytes() {
+        var cache = new PhotoByteCache(1000, 1);
+        cache.put("a.jpg", new byte[400]);
+        cache.put("b.jpg", new byte[400]);
+        // using "a" makes "b" the least-recently used
+        cache.get("a.jpg");
+        cache.put("c.jpg", new byte[400]);
+
+        assertTrue(cache.get("b.jpg") == null);
+        assertTrue(cache.get("a.jpg") != null);
+        assertTrue(cache.get("c.jpg") != null);
+        assertEquals(cache.getEvictions(), 1L);
+        assertEquals(cache.getSizeInBytes(), 800L);
+
+        // a large photo can push out several small ones
+        cache.put("d.jpg", new byte[1000]);
+        assertEquals(cache.size(), 1);
+        assertEquals(cache.getEvictions(), 3L);
+        assertEquals(cache.getSizeInBytes(), 1000L);
+    }
+
+    /**
+     * A photo larger than the whole budget is not stored
+     */
+    @Test
+    public void testTooLargeToStore() {
+        var cache = new PhotoByteCache(1000, 1);
+        cache.put("a.jpg", new byte[100]);
+        cache.put("huge.jpg", new byte[1001]);
+        assertTrue(cache.get("huge.jpg") == null);
+        assertTrue(cache.get("a.jpg") != null);
+        assertEquals(cache.getEvictions(), 0L);
+    }
+
+    /**
+     * Replacing or removing a photo keeps the count of bytes correct
+     */
+    @Test
+    public void testReplaceAndRemove() {
+        var cache = new PhotoByteCache(1000, 1);
+        cache.put("a.jpg", new byte[100]);
+        cache.put("a.jpg", new byte[300]);
+        assertEquals(cache.getSizeInBytes(), 300L);
+        assertEquals(cache.size(), 1);
+
+        cache.remove("a.jpg");
+        cache.remove("does_not_exist.jpg");
+        assertTrue(cache.get("a.jpg") == null);
+        assertEquals(cache.getSizeInBytes(), 0L);
+        assertEquals(cache.size(), 0);
+    }
+
+    /**
+     * Many threads working on the cache at once should never
+     * push it over its budget
+     */
+    @Test
+    public void testConcurrentUse() throws Exception {
+        long maxBytes = 64 * 1024;
+        var cache = new PhotoByteCache(maxBytes);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                int threadNumber = thread;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 5_000; i++) {
+                        String key = "photo_" + ((i * 7 + threadNumber) % 300) + ".jpg";
+                        if (cache.get(key) == null) {
+                            cache.put(key, new byte[100 + (i % 900)]);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(cache.getSizeInBytes() <= maxBytes, "The cache went over its budget: " + cache);
+        assertEquals(cache.getHits() + cache.getMisses(), 8 * 5_000L);
+        assertTrue(cache.getEvictions() > 0);
+    }
+}
@@ -16,9 +16,13 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 import static com.renomad.inmra.featurelogic.photo.PhotoResizing.writeImageFile;
+import static com.renomad.inmra.featurelogic.photo.PhotoResizing.writeImageFiles;
 import static com.renomad.minum.testing.TestFramework.assertEquals;
+import static com.renomad.minum.testing.TestFramework.assertTrue;
 import static com.renomad.minum.testing.TestFramework.buildTestingContext;
 
 public class PhotoConversionTests {
@@ -79,6 +83,66 @@ public class PhotoConversionTests {
         assertEquals(img.getWidth(), 134);
     }
 
+    /**
+     * Converting to several sizes at once, decoding the image just once
+     * and scaling each size from the one before it.
+     */
+    @Test
+    public void testConvertPhotoToSeveralSizes() throws IOException {
+        var targets = new ArrayList<PhotoResizing.ResizeTarget>();
+        for (int size : new int[]{20, 600, 150}) {
+            File target = new File("target/testing_image_conversion/dad_in_uniform_multi_" + size + ".jpg");
+            target.delete();
+            targets.add(new PhotoResizing.ResizeTarget(size, target));
+        }
+        File file = new File("src/test/resources/images/dad_in_uniform.jpg");
+
+        try (InputStream targetStream = new FileInputStream(file)) {
+            writeImageFiles(targetStream, targets, logger);
+        }
+
+        for (PhotoResizing.ResizeTarget target : targets) {
+            BufferedImage img = ImageIO.read(target.file());
+            int longestSide = Math.max(img.getWidth(), img.getHeight());
+            // scaling from an already-scaled image may lose a pixel to rounding
+            assertTrue(longestSide == target.size() || longestSide == target.size() - 1,
+                    "longest side was " + longestSide + " for a target of " + target.size());
+        }
+    }
+
+    /**
+     * Each size may also be written in an extra format, beside the JPEG.  Java has
+     * no WebP writer built in, so PNG stands in for it here.
+     */
+    @Test
+    public void testConvertPhotoWithExtraFormat() throws IOException {
+        File target = new File("target/testing_image_conversion/dad_in_uniform_extra_600.jpg");
+        File extraFormatTarget = PhotoResizing.extraFormatPath(target.toPath(), "image/png").toFile();
+        target.delete();
+        extraFormatTarget.delete();
+        File file = new File("src/test/resources/images/dad_in_uniform.jpg");
+
+        try (InputStream targetStream = new FileInputStream(file)) {
+            writeImageFiles(targetStream, List.of(new PhotoResizing.ResizeTarget(600, target)), "image/png", logger);
+        }
+
+        assertEquals(extraFormatTarget.getName(), "dad_in_uniform_extra_600.jpg.png");
+        assertTrue(target.isFile());
+        BufferedImage img = ImageIO.read(extraFormatTarget);
+        assertEquals(Math.max(img.getWidth(), img.getHeight()), 600);
+    }
+
+    /**
+     * An extra format is only used if there is a writer for it
+     */
+    @Test
+    public void testUsableExtraFormat() {
+        assertEquals(PhotoResizing.usableExtraFormat(" IMAGE/PNG ", logger), "image/png");
+        assertTrue(PhotoResizing.usableExtraFormat("image/not-a-real-format", logger) == null);
+        assertTrue(PhotoResizing.usableExtraFormat("", logger) == null);
+        assertTrue(PhotoResizing.usableExtraFormat(null, logger) == null);
+    }
+
     /**
      * A bit more involved of a test - this resizes the image
      * inside an {@link com.renomad.minum.queue.ActionQueue}, so we
@@ -1,6 +1,7 @@
 package com.renomad.inmra.featurelogic.photo;
 
 import com.renomad.inmra.auth.*;
+import com.renomad.inmra.featurelogic.persons.Date;
 import com.renomad.inmra.featurelogic.persons.Person;
 import com.renomad.inmra.utils.IFileUtils;
 import com.renomad.inmra.utils.IFileWriteStringWrapper;
@@ -13,8 +14,6 @@ import com.renomad.minum.state.Context;
 import com.renomad.minum.testing.StopwatchUtils;
 import com.renomad.minum.testing.TestFramework;
 import com.renomad.minum.utils.FileUtils;
-import com.renomad.minum.utils.LRUCache;
-import com.renomad.minum.utils.MyThread;
 import com.renomad.minum.web.*;
 import org.junit.*;
 
@@ -26,6 +25,7 @@ import java.time.Instant;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.UUID;
 
 import static com.renomad.inmra.featurelogic.photo.PhotoService.determineSuffixByContentType;
 import static com.renomad.minum.testing.TestFramework.*;
@@ -87,8 +87,8 @@ public class PhotoServiceTests {
             @Override public IResponse htmlForbidden() {return null;}
             @Override public PrivacyCheckStatus canShowPrivateInformation(IRequest request) { return null; }
         };
-        Map<String, byte[]> photoLruCache = LRUCache.getLruCache();
-        photoService = new PhotoService(context, memoriaContext, photoDb, videoDb, photoLruCache, photoToPersonDb, videoToPersonDb, personDb, au);
+        var photoCache = new PhotoByteCache(10 * 1024 * 1024);
+        photoService = new PhotoService(context, memoriaContext, photoDb, videoDb, photoCache, null, photoToPersonDb, videoToPersonDb, personDb, au);
     }
 
     @After
@@ -131,42 +131,58 @@ public class PhotoServiceTests {
     }
 
     /**
-     * This tests a function that will check if files exist in a few
-     * directories before moving on.
+     * After writing a new photo, we can wait until it has been
+     * converted to all its sizes before moving on.
      */
     @Test
     public void testWaitUntilPhotosConverted() throws IOException {
-        Path dbDir = Path.of("target/simple_db_for_photo_service_tests");
-        Files.writeString(thumbnailPhotos.resolve("abc123.jpg"), "testing...");
-        Files.writeString(mediumPhotos.resolve("abc123.jpg"), "testing...");
-        Files.writeString(originalPhotos.resolve("abc123.jpg"), "testing...");
-        // let the disk settle down
-        MyThread.sleep(50);
-        StopwatchUtils stopwatchUtils = new StopwatchUtils();
-        stopwatchUtils.startTimer();
-
-        PhotoService.photoWaiter("abc123.jpg", 10, 50, dbDir, logger);
+        Person person = new Person(1L, UUID.randomUUID(), "Test Person", Date.EMPTY, Date.EMPTY);
+        String newFilename = UUID.randomUUID() + ".jpg";
+        try (var photoStream = Files.newInputStream(Path.of("src/test/resources/images/dad_in_uniform.jpg"))) {
+            photoService.writePhotoToArchive(photoStream, newFilename);
+        }
+        photoService.writePhotoData(newFilename, "a photo", "a photo for testing", person);
+
+        photoService.waitUntilPhotosConverted(newFilename, 10_000);
+
+        // once the wait is over, the converted photos should all be in place
+        assertTrue(Files.isRegularFile(thumbnailPhotos.resolve(newFilename)));
+        assertTrue(Files.isRegularFile(mediumPhotos.resolve(newFilename)));
+        assertTrue(Files.isRegularFile(originalPhotos.resolve(newFilename)));
+    }
 
-        long timeTaken = stopwatchUtils.stopTimer();
-        // the maximum time to wait would be 10 * 50 = 500, we should get here before that
-        assertTrue(timeTaken < 100);
+    /**
+     * An uploaded photo is written to the archive just as it was sent
+     */
+    @Test
+    public void testWritePhotoToArchive() throws IOException {
+        Path photo = Path.of("src/test/resources/images/dad_in_uniform.jpg");
+        String newFilename = UUID.randomUUID() + ".jpg";
+        long countOfBytes;
+        try (var photoStream = Files.newInputStream(photo)) {
+            countOfBytes = photoService.writePhotoToArchive(photoStream, newFilename);
+        }
+        Path archivedPhoto = Path.of("target/simple_db_for_photo_service_tests/photo_archive").resolve(newFilename);
+        assertEquals(countOfBytes, Files.size(photo));
+        assertEquals(Files.mismatch(photo, archivedPhoto), -1L);
+
+        photoService.deleteUnrecordedPhoto(newFilename);
+        assertFalse(Files.exists(archivedPhoto));
     }
 
     /**
-     * Here, the method never finds the photos
+     * Here, there is no conversion happening for the photo,
+     * so there's nothing to wait for
      */
     @Test
     public void testWaitUntilPhotosConverted_NegativeCase() {
-        Path dbDir = Path.of("target/simple_db_for_photo_service_tests");
         StopwatchUtils stopwatchUtils = new StopwatchUtils();
         stopwatchUtils.startTimer();
 
-        // since "does_not_exist" will never show up in the directories, this will
-        // bail after waiting.
-        PhotoService.photoWaiter("does_not_exist", 4, 30, dbDir, logger);
+        photoService.waitUntilPhotosConverted("does_not_exist", 10_000);
 
         long timeTaken = stopwatchUtils.stopTimer();
-        assertTrue(timeTaken > 100);
+        assertTrue(timeTaken < 100);
     }
 
     /**
@@ -177,7 +193,7 @@ public class PhotoServiceTests {
         IFileUtils fileUtils = buildMockFileUtilsThatThrows();
         Path path = Path.of("");
 
-        PhotoService.buildNecessaryDirectories(fileUtils, path, path, path, path, path, path, path, path, path, path, path, path, logger);
+        PhotoService.buildNecessaryDirectories(fileUtils, path, path, path, path, path, path, path, path, path, path, path, path, path, logger);
 
         assertTrue(logger.doesMessageExist("Hi, the directory creation failed"));
     }
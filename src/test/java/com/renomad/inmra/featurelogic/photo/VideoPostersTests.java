@@ -0,0 +1,66 @@
+package com.renomad.inmra.featurelogic.photo;
+
+import com.renomad.minum.state.Context;
+import com.renomad.minum.testing.TestFramework;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static com.renomad.minum.testing.TestFramework.*;
+
+public class VideoPostersTests {
+
+    private static Context context;
+
+    @BeforeClass
+    public static void init() {
+        context = buildTestingContext("VideoPostersTests");
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        TestFramework.shutdownTestingContext(context);
+    }
+
+    /**
+     * The poster of a video is named after it
+     */
+    @Test
+    public void testPosterFilename() {
+        assertEquals(VideoPosters.posterFilename("abc.mp4"), "abc_poster.jpg");
+        assertEquals(VideoPosters.posterFilename("abc"), "abc_poster.jpg");
+    }
+
+    /**
+     * A single frame is taken, at the time given
+     */
+    @Test
+    public void testBuildCommand() {
+        Path video = Path.of("videos/abc.mp4");
+        Path poster = Path.of("archive/abc_poster.jpg");
+        List<String> command = VideoPosters.buildCommand("ffmpeg", video, poster, "1");
+        assertEquals(command, List.of("ffmpeg", "-nostdin", "-loglevel", "error", "-ss", "1",
+                "-i", video.toString(), "-frames:v", "1", "-y", poster.toString()));
+    }
+
+    /**
+     * If there is no tool for making posters, or it can't be run,
+     * no poster is made and nothing breaks
+     */
+    @Test
+    public void testNoPosterTool() throws Exception {
+        Path poster = Path.of("target/video_posters_tests_poster.jpg");
+        Files.deleteIfExists(poster);
+
+        var withoutTool = new VideoPosters(context, "");
+        assertFalse(withoutTool.addExtractionToQueue(Path.of("does_not_exist.mp4"), poster).get());
+
+        var withMissingTool = new VideoPosters(context, "this_tool_does_not_exist_anywhere");
+        assertFalse(withMissingTool.addExtractionToQueue(Path.of("does_not_exist.mp4"), poster).get());
+        assertFalse(Files.exists(poster));
+    }
+}
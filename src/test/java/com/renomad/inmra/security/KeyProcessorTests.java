@@ -5,12 +5,7 @@ import com.renomad.minum.state.Context;
 import com.renomad.minum.testing.TestFramework;
 import org.junit.Test;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
 import static com.renomad.minum.testing.TestFramework.assertEquals;
-import static com.renomad.minum.testing.TestFramework.assertTrue;
 
 public class KeyProcessorTests {
 
@@ -22,42 +17,40 @@ public class KeyProcessorTests {
     public void testKeyProcessor() {
         Context context = TestFramework.buildTestingContext("keyprocessor");
         KeyProcessor keyProcessor = new KeyProcessor(context.getLogger());
-        Map<String, Long> keys = new HashMap<>();
-        keys.put("abc", (long) 2 );
-        keys.put("def", (long) 3 );
         int investigationLifespan = 4;
-        Map<String, List<Long>> clientsAndTimes = new HashMap<>();
-        clientsAndTimes.put("abc", List.of(1L,2L,3L));
+        LoginAttempts loginAttempts = new LoginAttempts(investigationLifespan);
+        loginAttempts.recordAttempt("abc", 1);
+        loginAttempts.recordAttempt("abc", 2);
+        loginAttempts.recordAttempt("abc", 3);
+        loginAttempts.recordAttempt("def", 3);
         long now = 5;
 
-        keyProcessor.processKeysUnderConsideration(keys, investigationLifespan, clientsAndTimes, now);
+        keyProcessor.processKeysUnderConsideration(loginAttempts, investigationLifespan, now);
 
-        assertEquals(clientsAndTimes.get("abc").size(), 3);
+        assertEquals(loginAttempts.countRecentAttempts("abc", now), 3);
+        assertEquals(loginAttempts.size(), 2);
         TestFramework.shutdownTestingContext(context);
     }
 
     /**
-     * If the keys under consideration are very recent, then not
+     * If the keys under consideration haven't tried in a long while, then
      * enough time will have passed to cease inspection of them.
      */
     @Test
-    public void testKeyProcessor_EverythingYoung() {
+    public void testKeyProcessor_EverythingOld() {
         Context context = TestFramework.buildTestingContext("keyprocessor");
         KeyProcessor keyProcessor = new KeyProcessor(context.getLogger());
-        // prepare some entries in the keys map
-        Map<String, Long> keys = new HashMap<>();
-        keys.put("abc", (long) 2 ); // at 2 o'clock, abc got entered for inspection
-        keys.put("def", (long) 3 ); // at 3 o'clock ... (just pretending, bear with me)
         int investigationLifespan = 4;  // the investigation window is 4 hours
-        // prepare some pretend previous entries in clientsAndTimes
-        Map<String, List<Long>> clientsAndTimes = new HashMap<>();
-        clientsAndTimes.put("abc", List.of(1L,2L));
+        // prepare some pretend previous attempts
+        LoginAttempts loginAttempts = new LoginAttempts(investigationLifespan);
+        loginAttempts.recordAttempt("abc", 1); // at 1 o'clock, abc tried to log in
+        loginAttempts.recordAttempt("abc", 2); // at 2 o'clock ... (just pretending, bear with me)
         long now = 10000;
 
-        keyProcessor.processKeysUnderConsideration(keys, investigationLifespan, clientsAndTimes, now);
-
+        keyProcessor.processKeysUnderConsideration(loginAttempts, investigationLifespan, now);
 
-        assertTrue(clientsAndTimes.get("abc") == null);
+        assertEquals(loginAttempts.size(), 0);
+        assertEquals(loginAttempts.recordAttempt("abc", now), LoginAttempts.NO_ATTEMPT);
         TestFramework.shutdownTestingContext(context);
     }
 }
@@ -0,0 +1,138 @@
+package com.renomad.inmra.security;
+
+import com.renomad.minum.logging.TestLogger;
+import com.renomad.minum.state.Context;
+import com.renomad.minum.testing.StopwatchUtils;
+import com.renomad.minum.testing.TestFramework;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.renomad.minum.testing.TestFramework.*;
+
+public class LoginAttemptsTests {
+
+    private static Context context;
+    private static TestLogger logger;
+
+    @BeforeClass
+    public static void init() {
+        context = buildTestingContext("LoginAttemptsTests");
+        logger = (TestLogger) context.getLogger();
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        TestFramework.shutdownTestingContext(context);
+    }
+
+    /**
+     * Each attempt tells us when the one before it was
+     */
+    @Test
+    public void testPreviousAttempt() {
+        var loginAttempts = new LoginAttempts(100_000);
+        assertEquals(loginAttempts.recordAttempt("1.2.3.4", 1_000), LoginAttempts.NO_ATTEMPT);
+        assertEquals(loginAttempts.recordAttempt("1.2.3.4", 5_000), 1_000L);
+        assertEquals(loginAttempts.recordAttempt("5.6.7.8", 5_500), LoginAttempts.NO_ATTEMPT);
+        assertEquals(loginAttempts.recordAttempt("1.2.3.4", 6_000), 5_000L);
+
+        loginAttempts.forget("1.2.3.4");
+        assertEquals(loginAttempts.recordAttempt("1.2.3.4", 7_000), LoginAttempts.NO_ATTEMPT);
+    }
+
+    /**
+     * Only the attempts within the window are counted, and the
+     * window moves along with the time
+     */
+    @Test
+    public void testSlidingWindow() {
+        var loginAttempts = new LoginAttempts(10_000);
+        assertEquals(loginAttempts.countRecentAttempts("1.2.3.4", 0), 0);
+        loginAttempts.recordAttempt("1.2.3.4", 1_000);
+        loginAttempts.recordAttempt("1.2.3.4", 2_000);
+        loginAttempts.recordAttempt("1.2.3.4", 8_000);
+
+        assertEquals(loginAttempts.countRecentAttempts("1.2.3.4", 9_000), 3);
+        assertEquals(loginAttempts.countRecentAttempts("1.2.3.4", 11_500), 2);
+        assertEquals(loginAttempts.countRecentAttempts("1.2.3.4", 15_000), 1);
+        assertEquals(loginAttempts.countRecentAttempts("1.2.3.4", 20_000), 0);
+        assertEquals(loginAttempts.countRecentAttempts("5.6.7.8", 9_000), 0);
+    }
+
+    /**
+     * However many attempts a client makes, we only keep a few
+     */
+    @Test
+    public void testBoundedPerClient() {
+        var loginAttempts = new LoginAttempts(100_000);
+        for (int i = 1; i <= 1_000; i++) {
+            loginAttempts.recordAttempt("1.2.3.4", i);
+        }
+        assertEquals(loginAttempts.countRecentAttempts("1.2.3.4", 1_000), LoginAttempts.ATTEMPTS_KEPT);
+        assertEquals(loginAttempts.recordAttempt("1.2.3.4", 1_001), 1_000L);
+        assertEquals(loginAttempts.size(), 1);
+    }
+
+    /**
+     * Clients which haven't tried lately are removed
+     */
+    @Test
+    public void testRemoveInactive() {
+        var loginAttempts = new LoginAttempts(100_000);
+        loginAttempts.recordAttempt("1.2.3.4", 1_000);
+        loginAttempts.recordAttempt("5.6.7.8", 1_000);
+        loginAttempts.recordAttempt("5.6.7.8", 3_000);
+
+        assertEquals(loginAttempts.removeInactive(2_000), 1);
+        assertEquals(loginAttempts.size(), 1);
+        assertEquals(loginAttempts.countRecentAttempts("1.2.3.4", 3_000), 0);
+        assertEquals(loginAttempts.countRecentAttempts("5.6.7.8", 3_000), 2);
+    }
+
+    /**
+     * Many clients, each trying many times at once, as in a credential-stuffing
+     * attack.  Every client is tracked, and none holds more than the most we keep.
+     */
+    @Test
+    public void testManyClientsAtOnce() throws Exception {
+        var loginAttempts = new LoginAttempts(100_000_000);
+        int threads = 8;
+        int clients = 5_000;
+        int attemptsPerClient = 20;
+        List<Callable<Void>> work = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            work.add(() -> {
+                for (int attempt = 1; attempt <= attemptsPerClient; attempt++) {
+                    for (int client = 0; client < clients; client++) {
+                        loginAttempts.recordAttempt("10.0." + (client / 256) + "." + (client % 256), attempt);
+                    }
+                }
+                return null;
+            });
+        }
+
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        StopwatchUtils stopwatch = new StopwatchUtils().startTimer();
+        try {
+            for (Future<Void> future : executorService.invokeAll(work)) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        long millis = stopwatch.stopTimer();
+        logger.logDebug(() -> "Recorded %d login attempts on %d threads in %d milliseconds".formatted(
+                threads * clients * attemptsPerClient, threads, millis));
+
+        assertEquals(loginAttempts.size(), clients);
+        assertEquals(loginAttempts.countRecentAttempts("10.0.0.0", attemptsPerClient), LoginAttempts.ATTEMPTS_KEPT);
+    }
+}
@@ -34,4 +34,14 @@ public class SecurityUtilsTests {
         assertTrue(securityUtils.isScriptedLogin("1.2.3.4"));
         securityUtils.stop();
     }
+
+    /*
+    A client we haven't seen try to log in hasn't failed too often
+     */
+    @Test
+    public void test_Login_UnknownClient() {
+        var securityUtils = new SecurityUtils(executorService, logger).initialize();
+        assertFalse(securityUtils.hasExceededAllowedFailuresInTimeWindow("5.6.7.8"));
+        securityUtils.stop();
+    }
 }
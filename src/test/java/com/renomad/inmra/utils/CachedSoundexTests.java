@@ -0,0 +1,108 @@
+package com.renomad.inmra.utils;
+
+import com.renomad.inmra.featurelogic.persons.Person;
+import com.renomad.minum.database.AbstractDb;
+import com.renomad.minum.logging.TestLogger;
+import com.renomad.minum.state.Constants;
+import com.renomad.minum.state.Context;
+import com.renomad.minum.testing.StopwatchUtils;
+import com.renomad.minum.testing.TestFramework;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.*;
+
+import static com.renomad.minum.testing.TestFramework.*;
+
+public class CachedSoundexTests {
+
+    private static Context context;
+    private static TestLogger logger;
+    private static List<String> nameWords;
+
+    /**
+     * Gathers the words of the names in the sample database,
+     * restored into target/simple_db by "make test"
+     */
+    @BeforeClass
+    public static void init() {
+        Properties properties = Constants.getConfiguredProperties();
+        properties.setProperty("DB_DIRECTORY", "target/simple_db");
+        context = buildTestingContext("CachedSoundexTests", properties);
+        logger = (TestLogger) context.getLogger();
+        AbstractDb<Person> personDb = context.getDb("persons", Person.EMPTY);
+        nameWords = new ArrayList<>();
+        for (Person person : personDb.values()) {
+            nameWords.addAll(Arrays.asList(person.getName().split("\\s+")));
+        }
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        TestFramework.shutdownTestingContext(context);
+    }
+
+    /**
+     * The cached encoding is the same as the uncached encoding
+     */
+    @Test
+    public void testSameAsUncached() {
+        var soundex = new DaitchMokotoffSoundex();
+        var cachedSoundex = new CachedSoundex(10_000);
+        for (int i = 0; i < 2; i++) {
+            for (String word : nameWords) {
+                assertEquals(cachedSoundex.encode(word), soundex.encode(word));
+            }
+        }
+        assertTrue(cachedSoundex.encode(null) == null);
+    }
+
+    /**
+     * The cache does not grow past its maximum size
+     */
+    @Test
+    public void testBounded() {
+        var cachedSoundex = new CachedSoundex(3);
+        for (String word : List.of("auerbach", "ohrbach", "lipshitz", "lippszyc", "lewinsky")) {
+            cachedSoundex.encode(word);
+        }
+        assertEquals(cachedSoundex.size(), 3);
+        assertEquals(cachedSoundex.encode("auerbach"), "097400");
+    }
+
+    /**
+     * A rough comparison of how many encodings per second we get,
+     * with and without the cache, encoding the words of every name in the
+     * sample database repeatedly - as a search through every person would.
+     */
+    @Test
+    public void testEncodeThroughput() {
+        int rounds = 20;
+        var soundex = new DaitchMokotoffSoundex();
+        var cachedSoundex = new CachedSoundex(10_000);
+
+        StopwatchUtils uncachedStopwatch = new StopwatchUtils().startTimer();
+        for (int i = 0; i < rounds; i++) {
+            for (String word : nameWords) {
+                soundex.encode(word);
+            }
+        }
+        long uncachedMillis = uncachedStopwatch.stopTimer();
+
+        StopwatchUtils cachedStopwatch = new StopwatchUtils().startTimer();
+        for (int i = 0; i < rounds; i++) {
+            for (String word : nameWords) {
+                cachedSoundex.encode(word);
+            }
+        }
+        long cachedMillis = cachedStopwatch.stopTimer();
+
+        int encodings = rounds * nameWords.size();
+        logger.logDebug(() -> "Encoded %d words: uncached took %d milliseconds (%d per second), cached took %d milliseconds (%d per second)".formatted(
+                encodings,
+                uncachedMillis, encodings * 1000L / Math.max(1, uncachedMillis),
+                cachedMillis, encodings * 1000L / Math.max(1, cachedMillis)));
+        assertFalse(nameWords.isEmpty());
+    }
+}
@@ -0,0 +1,97 @@
+package com.renomad.inmra.utils;
+
+import com.renomad.minum.web.Headers;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static com.renomad.minum.testing.TestFramework.*;
+
+public class ConditionalGetTests {
+
+    private static final Path photoPath = Path.of("src/test/resources/images/dad_in_uniform.jpg");
+
+    /**
+     * The validators come from the size and modification time of the file
+     */
+    @Test
+    public void testForFile() throws IOException {
+        Path file = Path.of("target/conditional_get_test.txt");
+        Files.writeString(file, "hello");
+        Files.setLastModifiedTime(file, FileTime.from(Instant.parse("2008-06-03T11:05:30.123Z")));
+
+        ConditionalGet.Validators validators = ConditionalGet.forFile(file);
+
+        assertEquals(validators.etag(), "\"5-" + Long.toHexString(Instant.parse("2008-06-03T11:05:30.123Z").toEpochMilli()) + "\"");
+        assertEquals(validators.lastModifiedHeader(), "Tue, 03 Jun 2008 11:05:30 GMT");
+        Map<String, String> headers = validators.addTo(Map.of("Content-Type", "text/plain"));
+        assertEquals(headers.get("ETag"), validators.etag());
+        assertEquals(headers.get("Last-Modified"), "Tue, 03 Jun 2008 11:05:30 GMT");
+        assertEquals(headers.get("Content-Type"), "text/plain");
+    }
+
+    /**
+     * A matching ETag means the browser's copy is current
+     */
+    @Test
+    public void testIfNoneMatch() throws IOException {
+        ConditionalGet.Validators validators = ConditionalGet.forFile(photoPath);
+
+        assertTrue(ConditionalGet.isNotModified(headers("If-None-Match: " + validators.etag()), validators));
+        assertTrue(ConditionalGet.isNotModified(headers("If-None-Match: \"abc\", W/" + validators.etag()), validators));
+        assertTrue(ConditionalGet.isNotModified(headers("If-None-Match: *"), validators));
+        // the tag of the gzip-compressed form matches too
+        assertTrue(ConditionalGet.isNotModified(headers("If-None-Match: " + ConditionalGet.gzipEtag(validators.etag())), validators));
+        assertFalse(ConditionalGet.isNotModified(headers("If-None-Match: \"abc\""), validators));
+        assertFalse(ConditionalGet.isNotModified(headers("Accept: */*"), validators));
+    }
+
+    /**
+     * Without an ETag, the date is compared.  If there is an ETag, the date is ignored.
+     */
+    @Test
+    public void testIfModifiedSince() throws IOException {
+        ConditionalGet.Validators validators = ConditionalGet.forFile(photoPath);
+        String lastModified = validators.lastModifiedHeader();
+
+        assertTrue(ConditionalGet.isNotModified(headers("If-Modified-Since: " + lastModified), validators));
+        assertTrue(ConditionalGet.isNotModified(headers("If-Modified-Since: Fri, 31 Dec 9999 23:59:59 GMT"), validators));
+        assertFalse(ConditionalGet.isNotModified(headers("If-Modified-Since: Thu, 01 Jan 1970 00:00:00 GMT"), validators));
+        assertFalse(ConditionalGet.isNotModified(headers("If-Modified-Since: not a date"), validators));
+        assertFalse(ConditionalGet.isNotModified(
+                new Headers(List.of("If-None-Match: \"abc\"", "If-Modified-Since: " + lastModified)),
+                validators));
+    }
+
+    /**
+     * Only files within the static directory are found
+     */
+    @Test
+    public void testFindStaticFile() {
+        Path directory = Path.of("src/test/resources");
+        assertEquals(ConditionalGet.findStaticFile(directory, "images/bessie.png"), Path.of("src/test/resources/images/bessie.png"));
+        assertTrue(ConditionalGet.findStaticFile(directory, "images/does_not_exist.png") == null);
+        assertTrue(ConditionalGet.findStaticFile(directory, "images") == null);
+        assertTrue(ConditionalGet.findStaticFile(directory, "../pom.xml") == null);
+        assertTrue(ConditionalGet.findStaticFile(directory, "images/../../../pom.xml") == null);
+    }
+
+    /**
+     * The headers of a response can be converted to a map
+     */
+    @Test
+    public void testToMap() {
+        Map<String, String> map = ConditionalGet.toMap(new Headers(List.of("Content-Type: text/css", "Cache-Control: max-age=60")));
+        assertEquals(map, Map.of("Content-Type", "text/css", "Cache-Control", "max-age=60"));
+    }
+
+    private static Headers headers(String header) {
+        return new Headers(List.of(header));
+    }
+}
@@ -0,0 +1,122 @@
+package com.renomad.inmra.utils;
+
+import com.renomad.minum.web.IResponse;
+import com.renomad.minum.web.Response;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static com.renomad.minum.testing.TestFramework.*;
+import static com.renomad.minum.web.StatusLine.StatusCode.CODE_200_OK;
+
+public class ResponseCompressionTests {
+
+    private static final String LARGE_TEXT = "Once upon a time, in a land far away. ".repeat(200);
+
+    /**
+     * Text goes out compressed when the browser accepts gzip, and the
+     * compressed form of cacheable responses is kept for next time.
+     */
+    @Test
+    public void testCompressAndCache() throws IOException {
+        var responseCompression = new ResponseCompression();
+        FakeRequest request = buildRequest("Accept-Encoding: gzip, deflate, br");
+
+        IResponse compressed = responseCompression.compressIfAccepted(request, buildResponse("text/css", "max-age=60"));
+        Map<String, String> headers = ConditionalGet.toMap(compressed.getExtraHeaders());
+        assertEquals(headers.get("Content-Encoding"), "gzip");
+        assertEquals(headers.get("Vary"), "Accept-Encoding");
+        assertEquals(headers.get("ETag"), "\"abc-gzip\"");
+        assertTrue(compressed.getBody().length < LARGE_TEXT.length());
+        assertEquals(gunzip(compressed.getBody()), LARGE_TEXT);
+        assertEquals(responseCompression.getCompressions(), 1L);
+        assertEquals(responseCompression.getCacheHits(), 0L);
+
+        responseCompression.compressIfAccepted(request, buildResponse("text/css", "max-age=60"));
+        assertEquals(responseCompression.getCompressions(), 1L);
+        assertEquals(responseCompression.getCacheHits(), 1L);
+
+        // pages that may not be cached are compressed each time
+        responseCompression.compressIfAccepted(request, buildResponse("text/html; charset=UTF-8", "no-store"));
+        responseCompression.compressIfAccepted(request, buildResponse("text/html; charset=UTF-8", "no-store"));
+        assertEquals(responseCompression.getCompressions(), 3L);
+    }
+
+    /**
+     * Responses are left alone if the browser doesn't want gzip,
+     * or compressing wouldn't help
+     */
+    @Test
+    public void testNotCompressed() {
+        var responseCompression = new ResponseCompression();
+        IResponse textResponse = buildResponse("text/css", "max-age=60");
+        assertTrue(responseCompression.compressIfAccepted(buildRequest("Accept-Encoding: br"), textResponse) == textResponse);
+        assertTrue(responseCompression.compressIfAccepted(buildRequest("Accept-Encoding: gzip;q=0"), textResponse) == textResponse);
+        assertTrue(responseCompression.compressIfAccepted(buildRequest("Accept: */*"), textResponse) == textResponse);
+
+        FakeRequest gzipRequest = buildRequest("Accept-Encoding: gzip");
+        IResponse imageResponse = buildResponse("image/jpeg", "max-age=60");
+        assertTrue(responseCompression.compressIfAccepted(gzipRequest, imageResponse) == imageResponse);
+        IResponse smallResponse = Response.buildResponse(CODE_200_OK, Map.of("Content-Type", "text/html"), "hello");
+        assertTrue(responseCompression.compressIfAccepted(gzipRequest, smallResponse) == smallResponse);
+        assertEquals(responseCompression.getCompressions(), 0L);
+    }
+
+    @Test
+    public void testAcceptsGzip() {
+        assertTrue(ResponseCompression.acceptsGzip(List.of("gzip")));
+        assertTrue(ResponseCompression.acceptsGzip(List.of("deflate, GZIP;q=0.8")));
+        assertFalse(ResponseCompression.acceptsGzip(List.of("gzip; q=0")));
+        assertFalse(ResponseCompression.acceptsGzip(List.of("deflate, br")));
+        assertFalse(ResponseCompression.acceptsGzip(null));
+    }
+
+    /**
+     * A Vary header the response already has is added to, not replaced
+     */
+    @Test
+    public void testAddToVary() throws IOException {
+        assertEquals(ResponseCompression.addToVary(null), "Accept-Encoding");
+        assertEquals(ResponseCompression.addToVary(""), "Accept-Encoding");
+        assertEquals(ResponseCompression.addToVary("Accept"), "Accept, Accept-Encoding");
+        assertEquals(ResponseCompression.addToVary("Accept, accept-encoding"), "Accept, accept-encoding");
+        assertEquals(ResponseCompression.addToVary("*"), "*");
+
+        var responseCompression = new ResponseCompression();
+        IResponse response = Response.buildResponse(CODE_200_OK,
+                Map.of("Content-Type", "text/html", "Vary", "Cookie"),
+                LARGE_TEXT);
+        IResponse compressed = responseCompression.compressIfAccepted(buildRequest("Accept-Encoding: gzip"), response);
+        assertEquals(ConditionalGet.toMap(compressed.getExtraHeaders()).get("Vary"), "Cookie, Accept-Encoding");
+        assertEquals(gunzip(compressed.getBody()), LARGE_TEXT);
+
+        // already encoded, so left just as it is
+        IResponse encoded = Response.buildResponse(CODE_200_OK,
+                Map.of("Content-Type", "text/html", "Content-Encoding", "gzip"),
+                compressed.getBody());
+        assertTrue(responseCompression.compressIfAccepted(buildRequest("Accept-Encoding: gzip"), encoded) == encoded);
+    }
+
+    private static FakeRequest buildRequest(String header) {
+        var request = new FakeRequest();
+        request.headerString = header;
+        return request;
+    }
+
+    private static IResponse buildResponse(String contentType, String cacheControl) {
+        return Response.buildResponse(CODE_200_OK,
+                Map.of("Content-Type", contentType, "Cache-Control", cacheControl, "ETag", "\"abc\""),
+                LARGE_TEXT);
+    }
+
+    private static String gunzip(byte[] compressed) throws IOException {
+        try (var gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return new String(gzipInputStream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.renomad.inmra.utils;
+
+import com.renomad.minum.logging.TestLogger;
+import com.renomad.minum.state.Context;
+import com.renomad.minum.testing.StopwatchUtils;
+import com.renomad.minum.testing.TestFramework;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.*;
+
+import static com.renomad.minum.testing.TestFramework.*;
+
+public class TimingWheelTests {
+
+    private static final long HOUR = 60 * 60 * 1000L;
+    private static Context context;
+    private static TestLogger logger;
+
+    @BeforeClass
+    public static void init() {
+        context = buildTestingContext("TimingWheelTests");
+        logger = (TestLogger) context.getLogger();
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        TestFramework.shutdownTestingContext(context);
+    }
+
+    /**
+     * A deadline expires in the tick after it passes, whichever
+     * wheel it starts in
+     */
+    @Test
+    public void testExpiresOnTime() {
+        var timingWheel = new TimingWheel<String, String>(1_000, 3, 0);
+        timingWheel.schedule("a", "a", 500);
+        timingWheel.schedule("b", "b", 100_000);
+        timingWheel.schedule("c", "c", 36 * HOUR);
+        assertEquals(timingWheel.size(), 3);
+
+        assertEquals(timingWheel.advance(999), List.of());
+        assertEquals(timingWheel.advance(1_000), List.of("a"));
+        assertEquals(timingWheel.advance(100_000), List.of());
+        assertEquals(timingWheel.advance(101_000), List.of("b"));
+        assertEquals(timingWheel.advance(36 * HOUR), List.of());
+        assertEquals(timingWheel.advance(36 * HOUR + 1_000), List.of("c"));
+        assertEquals(timingWheel.size(), 0);
+    }
+
+    /**
+     * A deadline beyond the reach of the highest wheel still expires on time
+     */
+    @Test
+    public void testBeyondHighestWheel() {
+        var timingWheel = new TimingWheel<String, String>(1_000, 2, 0);
+        long deadline = 10 * 24 * HOUR;
+        timingWheel.schedule("a", "a", deadline);
+
+        assertEquals(timingWheel.advance(deadline), List.of());
+        assertEquals(timingWheel.advance(deadline + 1_000), List.of("a"));
+    }
+
+    /**
+     * Scheduling again replaces the deadline, and a cancelled deadline never expires
+     */
+    @Test
+    public void testRescheduleAndCancel() {
+        var timingWheel = new TimingWheel<String, String>(1_000, 3, 0);
+        timingWheel.schedule("a", "a", 5_000);
+        timingWheel.schedule("a", "a, later", 200_000);
+        timingWheel.schedule("b", "b", 5_000);
+        timingWheel.cancel("b");
+
+        assertEquals(timingWheel.advance(10_000), List.of());
+        assertEquals(timingWheel.size(), 1);
+        assertEquals(timingWheel.advance(201_000), List.of("a, later"));
+    }
+
+    /**
+     * A deadline which has already passed is handed right back
+     */
+    @Test
+    public void testAlreadyPassed() {
+        var timingWheel = new TimingWheel<String, String>(1_000, 3, 50_000);
+        assertEquals(timingWheel.schedule("a", "a", 10_000), "a");
+        assertTrue(timingWheel.schedule("b", "b", 50_000) == null);
+        assertEquals(timingWheel.size(), 1);
+    }
+
+    /**
+     * Many deadlines, with the time moving along in uneven steps.  Each
+     * expires once, in the first step after it has passed.
+     */
+    @Test
+    public void testManyDeadlines() {
+        var random = new Random(123);
+        long start = 1_700_000_000_000L;
+        var timingWheel = new TimingWheel<Integer, Integer>(1_000, 3, start);
+        Map<Integer, Long> deadlines = new HashMap<>();
+        for (int i = 0; i < 5_000; i++) {
+            long deadline = start + (long) (random.nextDouble() * 80 * HOUR);
+            deadlines.put(i, deadline);
+            timingWheel.schedule(i, i, deadline);
+        }
+
+        Set<Integer> expired = new HashSet<>();
+        long previousMillis = start;
+        long now = start;
+        while (now < start + 81 * HOUR) {
+            now += random.nextInt(30 * 60 * 1000);
+            long currentMillis = (now / 1_000) * 1_000;
+            for (Integer i : timingWheel.advance(now)) {
+                assertTrue(deadlines.get(i) < currentMillis);
+                assertTrue(deadlines.get(i) >= (previousMillis / 1_000) * 1_000);
+                assertTrue(expired.add(i));
+            }
+            previousMillis = now;
+        }
+        assertEquals(expired.size(), 5_000);
+        assertEquals(timingWheel.size(), 0);
+    }
+
+    /**
+     * A rough measure of the cost of scheduling, moving the deadline of,
+     * and expiring each of many sessions
+     */
+    @Test
+    public void testTimingWheelPerformance() {
+        int count = 200_000;
+        long start = 1_700_000_000_000L;
+        var timingWheel = new TimingWheel<Integer, Integer>(1_000, 3, start);
+
+        StopwatchUtils stopwatch = new StopwatchUtils().startTimer();
+        for (int i = 0; i < count; i++) {
+            timingWheel.schedule(i, i, start + 36 * HOUR + i);
+        }
+        for (int i = 0; i < count; i++) {
+            timingWheel.schedule(i, i, start + 37 * HOUR + i);
+        }
+        int expired = 0;
+        for (long now = start; now <= start + 38 * HOUR; now += 1_000) {
+            expired += timingWheel.advance(now).size();
+        }
+        long millis = stopwatch.stopTimer();
+
+        int finalExpired = expired;
+        logger.logDebug(() -> "Scheduled, moved, and expired %d deadlines, ticking each second for 38 hours, in %d milliseconds".formatted(finalExpired, millis));
+        assertEquals(expired, count);
+    }
+}